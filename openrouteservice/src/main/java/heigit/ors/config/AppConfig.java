@@ -58,7 +58,8 @@ public class AppConfig {
 		if(System.getenv("ORS_APP_CONFIG") != null)
 			url = RoutingProfileManager.class.getClassLoader().getResource("../" + System.getenv("ORS_APP_CONFIG"));
     	
-    	File file = new File(url.getPath());
+		// an explicit path, used when running outside of the servlet container (e.g. benchmarks)
+    	File file = System.getProperty("ors.app_config") != null ? new File(System.getProperty("ors.app_config")) : new File(url.getPath());
 		_config = ConfigFactory.parseFile(file);
 
 		//Modification by H Leuschner: Save md5 hash of map file in static String for access with every request
@@ -0,0 +1,348 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.vividsolutions.jts.geom.Polygon;
+
+import heigit.ors.common.TravelRangeType;
+import heigit.ors.routing.RouteSearchParameters;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import heigit.ors.routing.parameters.CyclingParameters;
+import heigit.ors.routing.parameters.ProfileParameters;
+import heigit.ors.routing.parameters.VehicleParameters;
+import heigit.ors.routing.parameters.WalkingParameters;
+import heigit.ors.routing.parameters.WheelchairParameters;
+import heigit.ors.services.isochrones.IsochronesServiceSettings;
+
+/**
+ * Keeps the results of recent isochrone searches, so that requests for the same snapped node
+ * with a range up to the cached maximum only need to rebuild the polygons.
+ * <p>
+ * The cache is bounded by an estimated memory footprint and is evicted in least recently used order.
+ * Entries must be invalidated whenever the underlying graph or the traffic data changes. Each traffic invalidation
+ * starts a new traffic generation, traffic dependent results of searches that started in an earlier generation are
+ * not cached.
+ * <p>
+ * A cached map is handed to all requests with the same key, so it must only be read.
+ */
+public class AccessibilityMapCache {
+	private static final Logger LOGGER = Logger.getLogger(AccessibilityMapCache.class.getName());
+
+	// size of an SPTEntry with compressed references: 12 bytes header, up to four ints, a double and the parent reference,
+	// aligned to 8 bytes
+	private static final long BYTES_PER_SPT_ENTRY = 40;
+	// size of a slot of the hash map, an int key and a compressed reference
+	private static final long BYTES_PER_SLOT = 8;
+
+	private static AccessibilityMapCache mInstance;
+
+	public static class Key {
+		private final String _graphLocation;
+		private final String _encoderName;
+		private final TravelRangeType _rangeType;
+		private final String _searchSignature;
+		private final int _nodeId;
+		private final boolean _reverseDirection;
+
+		public Key(String graphLocation, String encoderName, TravelRangeType rangeType, RouteSearchParameters searchParams, int nodeId, boolean reverseDirection)
+		{
+			_graphLocation = graphLocation;
+			_encoderName = encoderName;
+			_rangeType = rangeType;
+			_searchSignature = getSearchSignature(searchParams);
+			_nodeId = nodeId;
+			_reverseDirection = reverseDirection;
+		}
+
+		/**
+		 * Describes the parsed options that change the result of an isochrone search, so that requests which only
+		 * differ in the order or the formatting of their options share an entry.
+		 */
+		static String getSearchSignature(RouteSearchParameters searchParams)
+		{
+			if (searchParams == null)
+				return "";
+
+			StringBuilder sb = new StringBuilder();
+			sb.append("speed=").append(searchParams.getMaximumSpeed());
+			sb.append(";traffic=").append(Boolean.TRUE.equals(searchParams.getConsiderTraffic()));
+			sb.append(";features=").append(searchParams.getAvoidFeatureTypes());
+			sb.append(";borders=").append(searchParams.getAvoidBorders());
+
+			if (searchParams.hasAvoidCountries())
+			{
+				int[] countries = searchParams.getAvoidCountries().clone();
+				Arrays.sort(countries);
+				sb.append(";countries=").append(Arrays.toString(countries));
+			}
+
+			if (searchParams.hasAvoidAreas())
+			{
+				sb.append(";areas=");
+				for (Polygon poly : searchParams.getAvoidAreas())
+					sb.append(poly.norm().toText());
+			}
+
+			ProfileParameters profileParams = searchParams.getProfileParameters();
+			if (profileParams != null)
+			{
+				sb.append(";gradient=").append(profileParams.getMaximumGradient());
+
+				if (profileParams instanceof CyclingParameters)
+				{
+					sb.append(";difficulty=").append(((CyclingParameters)profileParams).getMaximumTrailDifficulty());
+				}
+				else if (profileParams instanceof WalkingParameters)
+				{
+					sb.append(";difficulty=").append(((WalkingParameters)profileParams).getMaximumTrailDifficulty());
+				}
+				else if (profileParams instanceof VehicleParameters)
+				{
+					VehicleParameters vehicleParams = (VehicleParameters)profileParams;
+					sb.append(";vehicle=").append(searchParams.getVehicleType()).append(',').append(vehicleParams.getLength())
+					.append(',').append(vehicleParams.getHeight()).append(',').append(vehicleParams.getWidth())
+					.append(',').append(vehicleParams.getWeight()).append(',').append(vehicleParams.getAxleload())
+					.append(',').append(vehicleParams.getLoadCharacteristics());
+				}
+				else if (profileParams instanceof WheelchairParameters)
+				{
+					WheelchairParameters wheelchairParams = (WheelchairParameters)profileParams;
+					sb.append(";wheelchair=").append(wheelchairParams.getMaximumIncline()).append(',').append(wheelchairParams.getMaximumSlopedCurb())
+					.append(',').append(wheelchairParams.getSurfaceType()).append(',').append(wheelchairParams.getTrackType())
+					.append(',').append(wheelchairParams.getSmoothnessType());
+				}
+			}
+
+			return sb.toString();
+		}
+
+		public String getGraphLocation()
+		{
+			return _graphLocation;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key)obj;
+			return _nodeId == other._nodeId && _reverseDirection == other._reverseDirection && _rangeType == other._rangeType
+					&& _encoderName.equals(other._encoderName) && _graphLocation.equals(other._graphLocation)
+					&& _searchSignature.equals(other._searchSignature);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = _nodeId;
+			hash = 31 * hash + (_reverseDirection ? 1 : 0);
+			hash = 31 * hash + _rangeType.hashCode();
+			hash = 31 * hash + _encoderName.hashCode();
+			hash = 31 * hash + _graphLocation.hashCode();
+			return 31 * hash + _searchSignature.hashCode();
+		}
+	}
+
+	private static class CacheEntry {
+		private final AccessibilityMap _map;
+		private final double _maxRange;
+		private final boolean _trafficDependent;
+		private final long _size;
+
+		public CacheEntry(AccessibilityMap map, double maxRange, boolean trafficDependent)
+		{
+			_map = map;
+			_maxRange = maxRange;
+			_trafficDependent = trafficDependent;
+			_size = getMemoryUsage(map);
+		}
+	}
+
+	/**
+	 * Estimates the memory held by the given map from the capacity of its hash table and the number of its entries.
+	 */
+	static long getMemoryUsage(AccessibilityMap map)
+	{
+		IntObjectMap<?> entries = map.getMap();
+		long slots = entries instanceof IntObjectHashMap ? ((IntObjectHashMap<?>)entries).keys.length : entries.size();
+
+		return slots * BYTES_PER_SLOT + entries.size() * BYTES_PER_SPT_ENTRY;
+	}
+
+	private final LinkedHashMap<Key, CacheEntry> _entries;
+	private final long _memoryLimit;
+	private long _memoryUsage = 0;
+	private long _hits = 0;
+	private long _requests = 0;
+	private long _trafficGeneration = 0;
+
+	public static synchronized AccessibilityMapCache getInstance() {
+		if (mInstance == null)
+			mInstance = new AccessibilityMapCache(IsochronesServiceSettings.getResultCacheMemoryLimit());
+
+		return mInstance;
+	}
+
+	AccessibilityMapCache(long memoryLimit)
+	{
+		_entries = new LinkedHashMap<Key, CacheEntry>(64, 0.75f, true);
+		_memoryLimit = memoryLimit;
+	}
+
+	public boolean isEnabled()
+	{
+		return IsochronesServiceSettings.getResultCacheEnabled();
+	}
+
+	/**
+	 * Rounds a search range up to the next multiple of the configured quantum, so that requests with slightly
+	 * different ranges can share one search.
+	 */
+	public double getSearchRange(double range, TravelRangeType rangeType)
+	{
+		double quantum = IsochronesServiceSettings.getResultCacheRangeQuantum(rangeType);
+		if (quantum <= 0)
+			return range;
+
+		return Math.ceil(range / quantum) * quantum;
+	}
+
+	/**
+	 * Returns the current traffic generation. It must be taken before the lookup of a search whose result is put
+	 * into the cache afterwards.
+	 */
+	public synchronized long getTrafficGeneration()
+	{
+		return _trafficGeneration;
+	}
+
+	/**
+	 * Returns a cached search result that covers at least the given range or null if there is none.
+	 */
+	public synchronized AccessibilityMap get(Key key, double range)
+	{
+		_requests++;
+
+		CacheEntry entry = _entries.get(key);
+		if (entry == null || entry._maxRange < range)
+			return null;
+
+		_hits++;
+
+		if (LOGGER.isDebugEnabled() && _hits % 1000 == 0)
+			LOGGER.debug(String.format("Accessibility map cache: hit ratio %.2f, %d entries, %d bytes.", (double)_hits / _requests, _entries.size(), _memoryUsage));
+
+		return entry._map;
+	}
+
+	/**
+	 * Adds the result of a search. A traffic dependent result is dropped if the traffic data has been updated since
+	 * the given generation was taken, as the search might have used the outdated data.
+	 */
+	public synchronized void put(Key key, AccessibilityMap map, double maxRange, boolean trafficDependent, long trafficGeneration)
+	{
+		if (trafficDependent && trafficGeneration != _trafficGeneration)
+			return;
+
+		CacheEntry entry = new CacheEntry(map, maxRange, trafficDependent);
+
+		if (entry._size > _memoryLimit)
+			return;
+
+		CacheEntry prevEntry = _entries.put(key, entry);
+		if (prevEntry != null)
+			_memoryUsage -= prevEntry._size;
+		_memoryUsage += entry._size;
+
+		Iterator<Map.Entry<Key, CacheEntry>> iter = _entries.entrySet().iterator();
+		while (_memoryUsage > _memoryLimit && iter.hasNext())
+		{
+			CacheEntry eldest = iter.next().getValue();
+			_memoryUsage -= eldest._size;
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Removes all entries computed on the graph stored at the given location. Must be called when the graph is updated.
+	 */
+	public synchronized void invalidate(String graphLocation)
+	{
+		Iterator<Map.Entry<Key, CacheEntry>> iter = _entries.entrySet().iterator();
+		while (iter.hasNext())
+		{
+			Map.Entry<Key, CacheEntry> entry = iter.next();
+			if (entry.getKey().getGraphLocation().equals(graphLocation))
+			{
+				_memoryUsage -= entry.getValue()._size;
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries whose search depended on traffic information. Must be called after each traffic update.
+	 */
+	public synchronized void invalidateTrafficEntries()
+	{
+		_trafficGeneration++;
+
+		Iterator<Map.Entry<Key, CacheEntry>> iter = _entries.entrySet().iterator();
+		while (iter.hasNext())
+		{
+			CacheEntry entry = iter.next().getValue();
+			if (entry._trafficDependent)
+			{
+				_memoryUsage -= entry._size;
+				iter.remove();
+			}
+		}
+	}
+
+	public synchronized void clear()
+	{
+		_entries.clear();
+		_memoryUsage = 0;
+	}
+
+	public synchronized int size()
+	{
+		return _entries.size();
+	}
+
+	public synchronized long getMemoryUsage()
+	{
+		return _memoryUsage;
+	}
+}
@@ -20,7 +20,13 @@
  */
 package heigit.ors.isochrones;
 
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
 import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.util.FlagEncoder;
@@ -45,28 +51,108 @@ import heigit.ors.routing.graphhopper.extensions.weighting.DistanceWeighting;
 public class GraphEdgeMapFinder {
 	
    public static AccessibilityMap findEdgeMap(RouteSearchContext searchCntx, IsochroneSearchParameters parameters, ByteArrayBuffer arrayBuffer) throws Exception {
+		if (parameters.getEdgeMap() != null)
+			return parameters.getEdgeMap();
+
+		Coordinate[] locations = parameters.isMultiSource() ? parameters.getLocations() : new Coordinate[] { parameters.getLocation() };
+
+		return findEdgeMap(searchCntx, parameters, findOriginNodes(searchCntx, locations, arrayBuffer));
+	}
+
+	/**
+	 * Snaps the given locations to the graph. Locations without a node nearby get -1.
+	 */
+	public static int[] findOriginNodes(RouteSearchContext searchCntx, Coordinate[] locations, ByteArrayBuffer arrayBuffer) throws Exception {
+		GraphHopper gh = searchCntx.getGraphHopper();
+		int[] nodes = new int[locations.length];
+		boolean found = false;
+
+		for (int i = 0; i < locations.length; i++)
+		{
+			Coordinate loc = locations[i];
+			QueryResult res = gh.getLocationIndex().findClosest(loc.y, loc.x, searchCntx.getEdgeFilter(), arrayBuffer);
+			nodes[i] = res.getClosestNode();
+			if (nodes[i] != -1)
+				found = true;
+		}
+
+		if (!found)
+			throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "The closest node is null.");
+
+		return nodes;
+	}
+
+	/**
+	 * Runs a single search starting at all given nodes, see {@link DijkstraCostCondition#calcPaths(int[])}.
+	 * Nodes equal to -1 are ignored.
+	 */
+	public static AccessibilityMap findEdgeMap(RouteSearchContext searchCntx, IsochroneSearchParameters parameters, int[] originNodes) throws Exception {
 		GraphHopper gh = searchCntx.getGraphHopper();
 	    FlagEncoder encoder = searchCntx.getEncoder();
 		GraphHopperStorage graph = gh.getGraphHopperStorage();
 
-		Coordinate loc = parameters.getLocation();
-		QueryResult res = gh.getLocationIndex().findClosest(loc.y, loc.x, searchCntx.getEdgeFilter(), arrayBuffer);
-		int fromId = res.getClosestNode();
+		int nOrigins = 0;
+		int[] fromIds = new int[originNodes.length];
+		for (int node : originNodes)
+		{
+			if (node != -1)
+				fromIds[nOrigins++] = node;
+		}
+		fromIds = Arrays.copyOf(fromIds, nOrigins);
+		int fromId = fromIds[0];
+
+		RouteSearchParameters routeParams = parameters.getRouteParameters();
+		double maxRange = parameters.getMaximumRange();
+		AccessibilityMapCache cache = AccessibilityMapCache.getInstance();
+		AccessibilityMapCache.Key cacheKey = null;
+		long trafficGeneration = 0;
 
-		if (fromId == -1)
-			throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "The closest node is null.");
-	
+		// results of multi-source searches are not cached, since they are keyed by a single node
+		if (cache.isEnabled() && fromIds.length == 1)
+		{
+			cacheKey = new AccessibilityMapCache.Key(gh.getGraphHopperLocation(), encoder.toString(), parameters.getRangeType(), routeParams,
+					fromId, parameters.getReverseDirection());
+
+			trafficGeneration = cache.getTrafficGeneration();
+			AccessibilityMap cachedMap = cache.get(cacheKey, maxRange);
+			if (cachedMap != null)
+				return cachedMap;
+
+			maxRange = cache.getSearchRange(maxRange, parameters.getRangeType());
+		}
+
+		Weighting weighting = createWeighting(encoder, parameters);
+		// IMPORTANT: It only works with TraversalMode.NODE_BASED.
+		DijkstraCostCondition dijkstraAlg = new DijkstraCostCondition(graph, weighting, maxRange, parameters.getReverseDirection(),
+				TraversalMode.NODE_BASED);
+		dijkstraAlg.setEdgeFilter(searchCntx.getEdgeFilter());
+		dijkstraAlg.setSearchBudget(searchCntx.getSearchBudget());
+		if (fromIds.length == 1)
+			dijkstraAlg.calcPath(fromId, Integer.MIN_VALUE);
+		else
+			dijkstraAlg.calcPaths(fromIds);
+
+		IntObjectMap<SPTEntry> edgeMap = dijkstraAlg.getMap();
+
+		AccessibilityMap result = new AccessibilityMap(edgeMap, dijkstraAlg.getCurrentEdge());
+
+		if (cacheKey != null)
+			cache.put(cacheKey, result, maxRange, routeParams != null && routeParams.getConsiderTraffic(), trafficGeneration);
+
+		return result;
+	}
+
+	/**
+	 * Returns the weighting of the search for the range type of the given parameters.
+	 */
+	public static Weighting createWeighting(FlagEncoder encoder, IsochroneSearchParameters parameters) {
 		Weighting weighting = null;
-		
+
 		if (parameters.getRangeType() == TravelRangeType.Time)
 		{
-			double maxSpeed = -1;
 			RouteSearchParameters routeParams = parameters.getRouteParameters();
-			if (routeParams != null)
-				maxSpeed = routeParams.getMaximumSpeed();
-			
 			HintsMap hints = new HintsMap();
-			hints.put("max_speed", maxSpeed);
+			hints.put("max_speed", routeParams != null ? routeParams.getMaximumSpeed() : -1);
 		    weighting = new FastestWeighting(encoder, hints);
 			/*Weighting[] weightings = new Weighting[] {new AccelerationWeighting(encoder, hints, graph)};
 			weighting = new AdditionWeighting(weightings,  new FastestWeighting(encoder, hints), encoder, hints, graph);*/
@@ -75,14 +161,55 @@ public class GraphEdgeMapFinder {
 		{
 			weighting  = new DistanceWeighting(encoder);
 		}
-		// IMPORTANT: It only works with TraversalMode.NODE_BASED.
-		DijkstraCostCondition dijkstraAlg = new DijkstraCostCondition(graph, weighting, parameters.getMaximumRange(), parameters.getReverseDirection(),
-				TraversalMode.NODE_BASED);
-		dijkstraAlg.setEdgeFilter(searchCntx.getEdgeFilter());
-		dijkstraAlg.calcPath(fromId, Integer.MIN_VALUE);
 
-		IntObjectMap<SPTEntry> edgeMap = dijkstraAlg.getMap();
+		return weighting;
+	}
+
+	/**
+	 * Splits the result of a multi-source search into the trees of the individual start nodes. The returned map is
+	 * keyed by the start node, all nodes of a tree are reached fastest from its start node. The edge entry of each
+	 * tree is its own entry with the largest weight, i.e. the one its part of the search would have settled last.
+	 */
+	public static IntObjectMap<AccessibilityMap> splitByOrigin(AccessibilityMap edgeMap)
+	{
+		IntObjectMap<SPTEntry> map = edgeMap.getMap();
+		IntIntHashMap roots = new IntIntHashMap(map.size());
+		IntObjectMap<IntObjectMap<SPTEntry>> trees = new GHIntObjectHashMap<IntObjectMap<SPTEntry>>();
+		IntObjectMap<SPTEntry> lastEntries = new GHIntObjectHashMap<SPTEntry>();
+		IntArrayList path = new IntArrayList();
+
+		for (IntObjectCursor<SPTEntry> entry : map)
+		{
+			// walk up to the start node or to a node whose start node is already known
+			SPTEntry e = entry.value;
+			path.clear();
+			while (e.parent != null && !roots.containsKey(e.adjNode))
+			{
+				path.add(e.adjNode);
+				e = e.parent;
+			}
+
+			int root = e.parent == null ? e.adjNode : roots.get(e.adjNode);
+			for (int i = 0; i < path.size(); i++)
+				roots.put(path.get(i), root);
+
+			IntObjectMap<SPTEntry> tree = trees.get(root);
+			if (tree == null)
+			{
+				tree = new GHIntObjectHashMap<SPTEntry>();
+				trees.put(root, tree);
+			}
+			tree.put(entry.key, entry.value);
+
+			SPTEntry lastEntry = lastEntries.get(root);
+			if (lastEntry == null || entry.value.weight > lastEntry.weight)
+				lastEntries.put(root, entry.value);
+		}
+
+		IntObjectMap<AccessibilityMap> result = new GHIntObjectHashMap<AccessibilityMap>(trees.size());
+		for (IntObjectCursor<IntObjectMap<SPTEntry>> tree : trees)
+			result.put(tree.key, new AccessibilityMap(tree.value, lastEntries.get(tree.key)));
 
-		return new AccessibilityMap(edgeMap, dijkstraAlg.getCurrentEdge());
+		return result;
 	}
 }
@@ -38,6 +38,7 @@ public class Isochrone {
 	private double maxRadius;
 	private Envelope envelope;
 	private List<AttributeValue> _attributes;
+	private int _originIndex = -1;
 
 	public Isochrone(Geometry geometry, double value, double maxRadius) {
 		this.geometry = geometry;
@@ -53,6 +54,17 @@ public class Isochrone {
 		return value;
 	}
 
+	/**
+	 * Returns the index of the location this area is reached from fastest or -1 if the isochrone is not labeled.
+	 */
+	public int getOriginIndex() {
+		return _originIndex;
+	}
+
+	public void setOriginIndex(int index) {
+		_originIndex = index;
+	}
+
 	public double getMaxRadius(String units)
 	{
 		if (units != null)
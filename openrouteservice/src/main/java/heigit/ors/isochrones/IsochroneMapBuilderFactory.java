@@ -24,9 +24,22 @@ import heigit.ors.isochrones.IsochroneSearchParameters;
 import heigit.ors.isochrones.builders.IsochroneMapBuilder;
 import heigit.ors.isochrones.builders.concaveballs.ConcaveBallsIsochroneMapBuilder;
 import heigit.ors.isochrones.builders.grid.GridBasedIsochroneMapBuilder;
+import heigit.ors.isochrones.builders.raster.RasterIsochroneMapBuilder;
 import heigit.ors.routing.RouteSearchContext;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import heigit.ors.services.isochrones.IsochronesServiceSettings;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.util.ByteArrayBuffer;
 import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.operation.union.CascadedPolygonUnion;
 
 public class IsochroneMapBuilderFactory {
 	private RouteSearchContext _searchContext;
@@ -36,9 +49,82 @@ public class IsochroneMapBuilderFactory {
 	}
 
 	public IsochroneMap buildMap(IsochroneSearchParameters parameters) throws Exception {
+		if (parameters.isMultiSource())
+			return buildMultiSourceMap(parameters);
+
+		return createBuilder(parameters).compute(parameters);
+	}
+
+	/**
+	 * Builds the isochrones of several locations from a single search that starts at all of them. The search tree
+	 * is split by the location each node is reached from fastest and the polygons are built for each part. If the
+	 * origins are not to be labeled, the parts are merged into one (multi)polygon per range.
+	 */
+	private IsochroneMap buildMultiSourceMap(IsochroneSearchParameters parameters) throws Exception {
+		Coordinate[] locations = parameters.getLocations();
+		double[] ranges = parameters.getRanges();
+
+		int[] originNodes = GraphEdgeMapFinder.findOriginNodes(_searchContext, locations, new ByteArrayBuffer());
+		AccessibilityMap edgeMap = GraphEdgeMapFinder.findEdgeMap(_searchContext, parameters, originNodes);
+		IntObjectMap<AccessibilityMap> trees = GraphEdgeMapFinder.splitByOrigin(edgeMap);
+
+		IsochroneMap result = new IsochroneMap(parameters.getTravellerId(), parameters.getLocation());
+		Map<Double, List<Geometry>> rangeGeometries = new TreeMap<Double, List<Geometry>>();
+		Map<Double, Double> rangeRadius = new TreeMap<Double, Double>();
+
+		for (int i = 0; i < locations.length; i++)
+		{
+			// several locations can be snapped to the same node, the first of them gets the tree
+			AccessibilityMap tree = originNodes[i] == -1 ? null : trees.remove(originNodes[i]);
+			if (tree == null)
+				continue;
+
+			IsochroneSearchParameters treeParams = new IsochroneSearchParameters(parameters.getTravellerId(), locations[i], ranges);
+			treeParams.setRangeType(parameters.getRangeType());
+			treeParams.setReverseDirection(parameters.getReverseDirection());
+			treeParams.setRouteParameters(parameters.getRouteParameters());
+			treeParams.setCalcMethod(parameters.getCalcMethod());
+			treeParams.setEdgeMap(tree);
+
+			IsochroneMap treeMap = createBuilder(treeParams).compute(treeParams);
+
+			for (Isochrone isochrone : treeMap.getIsochrones())
+			{
+				if (parameters.getLabelOrigins())
+				{
+					isochrone.setOriginIndex(i);
+					result.addIsochrone(isochrone);
+				}
+				else
+				{
+					List<Geometry> geometries = rangeGeometries.get(isochrone.getValue());
+					if (geometries == null)
+					{
+						geometries = new ArrayList<Geometry>();
+						rangeGeometries.put(isochrone.getValue(), geometries);
+						rangeRadius.put(isochrone.getValue(), isochrone.getMaxRadius(null));
+					}
+					geometries.add(isochrone.getGeometry());
+				}
+			}
+		}
+
+		for (Map.Entry<Double, List<Geometry>> entry : rangeGeometries.entrySet())
+		{
+			Geometry geom = CascadedPolygonUnion.union(entry.getValue());
+			if (geom != null && !geom.isEmpty())
+				result.addIsochrone(new Isochrone(geom, entry.getKey(), rangeRadius.get(entry.getKey())));
+		}
+
+		return result;
+	}
+
+	private IsochroneMapBuilder createBuilder(IsochroneSearchParameters parameters) throws Exception {
 		IsochroneMapBuilder isochroneBuilder = null;
 
 		String method = parameters.getCalcMethod();
+		if ((Helper.isEmpty(method) || "Default".equalsIgnoreCase(method)) && parameters.getRouteParameters() != null)
+			method = IsochronesServiceSettings.getCalcMethod(parameters.getRouteParameters().getProfileType());
 
 		if (Helper.isEmpty(method) || "Default".equalsIgnoreCase(method) || "ConcaveBalls".equalsIgnoreCase(method)) {
 			isochroneBuilder = new ConcaveBallsIsochroneMapBuilder();
@@ -47,12 +133,16 @@ public class IsochroneMapBuilderFactory {
         {
         	isochroneBuilder= new GridBasedIsochroneMapBuilder();
         }
+        else if ("raster".equalsIgnoreCase(method))
+        {
+        	isochroneBuilder = new RasterIsochroneMapBuilder();
+        }
         else
         {
 			throw new Exception("Unknown method.");
 		}
 		
 		isochroneBuilder.initialize(_searchContext);
-		return isochroneBuilder.compute(parameters);
+		return isochroneBuilder;
 	}
 }
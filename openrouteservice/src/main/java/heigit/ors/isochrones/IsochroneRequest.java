@@ -35,6 +35,9 @@ public class IsochroneRequest extends ServiceRequest
 	private String _calcMethod;
 	private String _units = null;
 	private Boolean _includeIntersections = false;
+	private boolean _union = false;
+	private boolean _labelOrigins = false;
+	private String _output = "polygons";
 	private String[] _attributes;
 
 	public IsochroneRequest()
@@ -118,6 +121,47 @@ public class IsochroneRequest extends ServiceRequest
 		_includeIntersections = value;
 	}
 
+	/**
+	 * Returns true if the isochrones of all locations are to be computed by a single search and merged.
+	 */
+	public boolean getUnion()
+	{
+		return _union;
+	}
+
+	public void setUnion(boolean value)
+	{
+		_union = value;
+	}
+
+	public boolean getLabelOrigins()
+	{
+		return _labelOrigins;
+	}
+
+	public void setLabelOrigins(boolean value)
+	{
+		_labelOrigins = value;
+	}
+
+	/**
+	 * Returns the type of the result, either "polygons" or "network" (the reachable road segments with their costs).
+	 */
+	public String getOutput()
+	{
+		return _output;
+	}
+
+	public void setOutput(String output)
+	{
+		_output = output;
+	}
+
+	public boolean isNetworkOutput()
+	{
+		return "network".equalsIgnoreCase(_output);
+	}
+
 	public Coordinate[] getLocations()
 	{
 		Coordinate[] locations = new Coordinate[_travellers.size()];
@@ -168,6 +212,11 @@ public class IsochroneRequest extends ServiceRequest
 		parameters.setRouteParameters(traveller.getRouteSearchParameters());
 		if ("destination".equalsIgnoreCase(traveller.getLocationType()))
 			parameters.setReverseDirection(true);
+		if (_union)
+		{
+			parameters.setLocations(getLocations());
+			parameters.setLabelOrigins(_labelOrigins);
+		}
 
 		return parameters;
 	}
@@ -24,6 +24,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 
 import heigit.ors.common.TravelRangeType;
 import heigit.ors.routing.RouteSearchParameters;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
 
 public class IsochroneSearchParameters {
 	private int _travellerId;
@@ -33,6 +34,9 @@ public class IsochroneSearchParameters {
 	private double[] _ranges;
 	private RouteSearchParameters _parameters;
 	private String _calcMethod;
+	private Coordinate[] _locations;
+	private boolean _labelOrigins = false;
+	private AccessibilityMap _edgeMap;
 
 	public IsochroneSearchParameters(int travellerId, Coordinate location, double[] ranges) {
 		_travellerId = travellerId;
@@ -55,6 +59,48 @@ public class IsochroneSearchParameters {
 		_location = location;
 	}
 
+	/**
+	 * Returns all origins of a multi-source search or null if the search starts at a single location.
+	 */
+	public Coordinate[] getLocations()
+	{
+		return _locations;
+	}
+
+	public void setLocations(Coordinate[] locations)
+	{
+		_locations = locations;
+	}
+
+	public boolean isMultiSource()
+	{
+		return _locations != null && _locations.length > 1;
+	}
+
+	public boolean getLabelOrigins()
+	{
+		return _labelOrigins;
+	}
+
+	public void setLabelOrigins(boolean value)
+	{
+		_labelOrigins = value;
+	}
+
+	/**
+	 * Returns the result of a search that has already been run for these parameters, builders use it instead of
+	 * searching the graph again.
+	 */
+	public AccessibilityMap getEdgeMap()
+	{
+		return _edgeMap;
+	}
+
+	public void setEdgeMap(AccessibilityMap edgeMap)
+	{
+		_edgeMap = edgeMap;
+	}
+
 	public Boolean getReverseDirection()
 	{
 		return _reverseDirection;
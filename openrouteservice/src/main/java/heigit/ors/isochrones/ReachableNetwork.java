@@ -0,0 +1,330 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.ByteArrayBuffer;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+import com.vividsolutions.jts.geom.Envelope;
+
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+
+/**
+ * The road segments reached by an isochrone search together with the costs at their start and end points.
+ * Geometries are stored in flat arrays, so that large networks can be written to a response without
+ * creating geometry objects for each edge.
+ */
+public class ReachableNetwork {
+	private int _travellerId;
+	private int _size = 0;
+	private int[] _edgeIds = new int[256];
+	private float[] _fromCosts = new float[256];
+	private float[] _toCosts = new float[256];
+	// index of the first point of each edge, the points of edge i end at _offsets[i + 1]
+	private int[] _offsets = new int[257];
+	private double[] _coordinates = new double[2048];
+	private Envelope _envelope = new Envelope();
+
+	public ReachableNetwork(int travellerId)
+	{
+		_travellerId = travellerId;
+	}
+
+	/**
+	 * Collects the geometries of all edges of the search tree that can be reached within the given cost. Edges that
+	 * are only partially reached are cut at the point where the cost limit is reached. Edges that are not part of the
+	 * tree but start at a reached node are added as well. They are cut from both ends in the same way and are added
+	 * whole, with the costs of their end nodes, only if the reached parts meet.
+	 *
+	 * @param weighting the weighting of the search
+	 * @param edgeFilter the filter of the search
+	 * @param reverseDirection true if the costs of the search are those of the routes to its start
+	 */
+	public static ReachableNetwork create(int travellerId, Graph graph, Weighting weighting, EdgeFilter edgeFilter, boolean reverseDirection,
+			AccessibilityMap edgeMap, double maxCost)
+	{
+		ReachableNetwork network = new ReachableNetwork(travellerId);
+		ByteArrayBuffer arrayBuffer = new ByteArrayBuffer();
+		DistanceCalc dcFast = new DistancePlaneProjection();
+		int maxNodeId = graph.getNodes();
+		double[] points = new double[64];
+		IntObjectMap<SPTEntry> map = edgeMap.getMap();
+		// edges that have already been added or belong to the search tree
+		BitSet visitedEdges = new BitSet(graph.getAllEdges().getMaxId());
+
+		for (IntObjectCursor<SPTEntry> entry : map)
+		{
+			SPTEntry goalEdge = entry.value;
+			int nodeId = goalEdge.adjNode;
+
+			if (goalEdge.originalEdge == -1 || goalEdge.parent == null || nodeId == -1 || nodeId >= maxNodeId)
+				continue;
+
+			visitedEdges.set(goalEdge.originalEdge);
+
+			double minCost = goalEdge.parent.weight;
+			double edgeMaxCost = goalEdge.weight;
+			if (minCost > maxCost)
+				continue;
+
+			EdgeIteratorState iter = graph.getEdgeIteratorState(goalEdge.originalEdge, nodeId);
+			// always use mode=3, since other ones do not provide correct results
+			PointList pl = iter.fetchWayGeometry(3, arrayBuffer);
+			int size = pl.getSize();
+			if (size < 2)
+				continue;
+
+			if (points.length < 2 * size)
+				points = new double[2 * size];
+
+			int n;
+			double toCost = edgeMaxCost;
+			if (edgeMaxCost <= maxCost)
+			{
+				n = cutGeometry(pl, Double.POSITIVE_INFINITY, points, dcFast);
+			}
+			else
+			{
+				// cut the edge where the cost limit is reached
+				n = cutGeometry(pl, iter.getDistance() * (maxCost - minCost) / (edgeMaxCost - minCost), points, dcFast);
+				toCost = maxCost;
+			}
+
+			network.addEdge(goalEdge.originalEdge, (float)minCost, (float)toCost, points, n);
+		}
+
+		// the direction of the edges is checked for each of their ends, see calcWeightFrom
+		EdgeExplorer explorer = graph.createEdgeExplorer(EdgeFilter.ALL_EDGES);
+
+		for (IntObjectCursor<SPTEntry> entry : map)
+		{
+			SPTEntry baseEntry = entry.value;
+			int baseNode = baseEntry.adjNode;
+			if (baseNode == -1 || baseNode >= maxNodeId || baseEntry.weight > maxCost)
+				continue;
+
+			EdgeIterator iter = explorer.setBaseNode(baseNode);
+			while (iter.next())
+			{
+				int edgeId = iter.getEdge();
+				// edges are found from both of their end nodes, so duplicates are detected by the edge id
+				if (visitedEdges.get(edgeId))
+					continue;
+
+				visitedEdges.set(edgeId);
+
+				// the edge in the direction in which it is stored, so that the result does not depend on the order of the nodes
+				EdgeIteratorState fromState = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+				EdgeIteratorState toState = graph.getEdgeIteratorState(edgeId, fromState.getBaseNode());
+				SPTEntry fromEntry = map.get(fromState.getBaseNode());
+				SPTEntry toEntry = map.get(toState.getBaseNode());
+				double fromNodeCost = fromEntry == null ? Double.POSITIVE_INFINITY : fromEntry.weight;
+				double toNodeCost = toEntry == null ? Double.POSITIVE_INFINITY : toEntry.weight;
+				double fromWeight = calcWeightFrom(fromState, weighting, edgeFilter, reverseDirection);
+				double toWeight = calcWeightFrom(toState, weighting, edgeFilter, reverseDirection);
+
+				// the parts of the edge, as fraction of its length, which are reached from its end nodes
+				double fromPart = getReachedPart(fromNodeCost, fromWeight, maxCost);
+				double toPart = getReachedPart(toNodeCost, toWeight, maxCost);
+				if (fromPart <= 0 && toPart <= 0)
+					continue;
+
+				PointList pl = fromState.fetchWayGeometry(3, arrayBuffer);
+				int size = pl.getSize();
+				if (size < 2)
+					continue;
+
+				if (points.length < 2 * size)
+					points = new double[2 * size];
+
+				double edgeDist = fromState.getDistance();
+				if (fromPart + toPart >= 1)
+				{
+					// the end nodes may also be reached over the edge itself
+					double fromCost = Math.min(fromNodeCost, toNodeCost + toWeight);
+					double toCost = Math.min(toNodeCost, fromNodeCost + fromWeight);
+					int n = cutGeometry(pl, Double.POSITIVE_INFINITY, points, dcFast);
+					network.addEdge(edgeId, (float)fromCost, (float)toCost, points, n);
+					continue;
+				}
+
+				if (fromPart > 0)
+				{
+					int n = cutGeometry(pl, edgeDist * fromPart, points, dcFast);
+					network.addEdge(edgeId, (float)fromNodeCost, (float)maxCost, points, n);
+				}
+
+				if (toPart > 0)
+				{
+					int n = cutGeometry(pl.clone(true), edgeDist * toPart, points, dcFast);
+					network.addEdge(edgeId, (float)toNodeCost, (float)maxCost, points, n);
+				}
+			}
+		}
+
+		return network;
+	}
+
+	/**
+	 * Returns the weight of the given edge for the search if it can be used from its base node, i.e. away from it in a
+	 * forward search and towards it in a reverse one.
+	 */
+	private static double calcWeightFrom(EdgeIteratorState state, Weighting weighting, EdgeFilter edgeFilter, boolean reverseDirection)
+	{
+		FlagEncoder encoder = weighting.getFlagEncoder();
+		if (!edgeFilter.accept(state) || (reverseDirection ? !state.isBackward(encoder) : !state.isForward(encoder)))
+			return Double.POSITIVE_INFINITY;
+
+		return weighting.calcWeight(state, reverseDirection, EdgeIterator.NO_EDGE);
+	}
+
+	private static double getReachedPart(double nodeCost, double weight, double maxCost)
+	{
+		if (nodeCost > maxCost || Double.isInfinite(weight))
+			return 0;
+		if (weight <= 0)
+			return 1;
+
+		return Math.min(1, (maxCost - nodeCost) / weight);
+	}
+
+	/**
+	 * Writes the points of the given geometry up to the given distance from its start to the array and returns the
+	 * number of coordinates written.
+	 */
+	private static int cutGeometry(PointList pl, double cutDist, double[] points, DistanceCalc dcFast)
+	{
+		int n = 0;
+		double lat0 = pl.getLat(0);
+		double lon0 = pl.getLon(0);
+		points[n++] = lon0;
+		points[n++] = lat0;
+
+		double dist = 0.0;
+		for (int i = 1; i < pl.getSize(); i++)
+		{
+			double lat1 = pl.getLat(i);
+			double lon1 = pl.getLon(i);
+			double segDist = dcFast.calcDist(lat0, lon0, lat1, lon1);
+
+			if (dist + segDist >= cutDist)
+			{
+				double f = segDist > 0 ? (cutDist - dist) / segDist : 0;
+				points[n++] = lon0 + f * (lon1 - lon0);
+				points[n++] = lat0 + f * (lat1 - lat0);
+				break;
+			}
+
+			points[n++] = lon1;
+			points[n++] = lat1;
+			dist += segDist;
+			lat0 = lat1;
+			lon0 = lon1;
+		}
+
+		return n;
+	}
+
+	public void addEdge(int edgeId, float fromCost, float toCost, double[] coordinates, int length)
+	{
+		if (_size == _edgeIds.length)
+		{
+			int capacity = _size * 2;
+			_edgeIds = Arrays.copyOf(_edgeIds, capacity);
+			_fromCosts = Arrays.copyOf(_fromCosts, capacity);
+			_toCosts = Arrays.copyOf(_toCosts, capacity);
+			_offsets = Arrays.copyOf(_offsets, capacity + 1);
+		}
+
+		int offset = _offsets[_size];
+		if (offset + length > _coordinates.length)
+			_coordinates = Arrays.copyOf(_coordinates, Math.max(_coordinates.length * 2, offset + length));
+
+		System.arraycopy(coordinates, 0, _coordinates, offset, length);
+		for (int i = 0; i < length; i += 2)
+			_envelope.expandToInclude(coordinates[i], coordinates[i + 1]);
+
+		_edgeIds[_size] = edgeId;
+		_fromCosts[_size] = fromCost;
+		_toCosts[_size] = toCost;
+		_size++;
+		_offsets[_size] = offset + length;
+	}
+
+	public int getTravellerId()
+	{
+		return _travellerId;
+	}
+
+	public int size()
+	{
+		return _size;
+	}
+
+	public int getEdgeId(int index)
+	{
+		return _edgeIds[index];
+	}
+
+	public float getFromCost(int index)
+	{
+		return _fromCosts[index];
+	}
+
+	public float getToCost(int index)
+	{
+		return _toCosts[index];
+	}
+
+	public int getPointCount(int index)
+	{
+		return (_offsets[index + 1] - _offsets[index]) / 2;
+	}
+
+	public double getLon(int index, int point)
+	{
+		return _coordinates[_offsets[index] + 2 * point];
+	}
+
+	public double getLat(int index, int point)
+	{
+		return _coordinates[_offsets[index] + 2 * point + 1];
+	}
+
+	public Envelope getEnvelope()
+	{
+		return _envelope;
+	}
+}
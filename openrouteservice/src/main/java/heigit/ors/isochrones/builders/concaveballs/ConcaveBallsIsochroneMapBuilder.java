@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.TreeSet;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.graphhopper.coll.GHIntObjectHashMap;
@@ -119,7 +120,7 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 			sw.start();
 		}
 
-		markDeadEndEdges(edgeMap);
+		IntHashSet deadEnds = findDeadEndEdges(edgeMap);
 
 		if (LOGGER.isDebugEnabled())
 		{
@@ -140,7 +141,7 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 				sw.start();
 			}
 
-			GeometryCollection points = buildIsochrone(edgeMap, isoPoints, loc.x, loc.y, isoValue, prevCost,maxSpeed, 0.85, arrayBuffer);
+			GeometryCollection points = buildIsochrone(edgeMap, deadEnds, isoPoints, loc.x, loc.y, isoValue, prevCost,maxSpeed, 0.85, arrayBuffer);
 
 			if (LOGGER.isDebugEnabled())
 			{
@@ -204,10 +205,15 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 		isochroneMap.addIsochrone(new Isochrone(poly, isoValue, maxRadius));
 	}
 
-	private void markDeadEndEdges(AccessibilityMap edgeMap)
+	/**
+	 * Returns the keys of the entries whose edge is not continued by any other edge of the tree. The entries of the
+	 * map are not modified, since the map may be shared with other requests by the {@link heigit.ors.isochrones.AccessibilityMapCache}.
+	 */
+	private IntHashSet findDeadEndEdges(AccessibilityMap edgeMap)
 	{
 		IntObjectMap<SPTEntry> map = edgeMap.getMap();
 		IntObjectMap<Integer> result = new GHIntObjectHashMap<Integer>(map.size()/20);
+		IntHashSet deadEnds = new IntHashSet(map.size()/4);
 
 		for (IntObjectCursor<SPTEntry> entry : map) {
 			SPTEntry  edge = entry.value;
@@ -223,8 +229,10 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 				continue;
 
 			if (!result.containsKey(edge.originalEdge))
-				edge.edge =-2;
+				deadEnds.add(entry.key);
 		}
+
+		return deadEnds;
 	}
 
 	public Boolean addPoint(List<Coordinate> points, Quadtree tree, double lon, double lat, boolean checkNeighbours) {
@@ -291,7 +299,7 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 		} 
 	}
 
-	private GeometryCollection buildIsochrone(AccessibilityMap edgeMap, List<Coordinate> points, double lon, double lat,
+	private GeometryCollection buildIsochrone(AccessibilityMap edgeMap, IntHashSet deadEnds, List<Coordinate> points, double lon, double lat,
 			double isolineCost, double prevCost,  double maxSpeed, double detailedGeomFactor, ByteArrayBuffer arrayBuffer) {
 		IntObjectMap<SPTEntry> map = edgeMap.getMap();
 
@@ -358,7 +366,8 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 			// edges that are fully inside of the isochrone
 			if (isolineCost >= maxCost) {
 
-				if (goalEdge.edge == -2)
+				boolean deadEnd = deadEnds.contains(entry.key);
+				if (deadEnd)
 				{
 					//addPoint(points, qtree, nodeAccess.getLon(nodeId), nodeAccess.getLat(nodeId), true);
 				}
@@ -382,7 +391,7 @@ public class ConcaveBallsIsochroneMapBuilder extends AbstractIsochroneMapBuilder
 									lat1 = pl.getLat(i);
 									lon1 = pl.getLon(i);
 
-									addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, goalEdge.edge < 0 && i == size - 1, true, bufferSize);
+									addBufferPoints(points, qtree, lon0, lat0, lon1, lat1, deadEnd && i == size - 1, true, bufferSize);
 
 									lon0 = lon1;
 									lat0 = lat1;
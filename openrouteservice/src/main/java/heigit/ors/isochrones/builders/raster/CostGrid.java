@@ -0,0 +1,150 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import java.util.Arrays;
+
+/**
+ * A regular lon/lat grid storing the minimum cost with which each cell has been reached.
+ * Cell values are treated as samples located at the cell centers, which makes the grid
+ * directly usable as the lattice for {@link MarchingSquares}.
+ * <p>
+ * Every cost written into the grid is also spread to all cells within a fixed radius
+ * (the buffer), so that a rasterized road network covers a band around the roads in
+ * the same way the buffer points of the concave balls builder do.
+ */
+public class CostGrid
+{
+	private final int _width;
+	private final int _height;
+	private final double _minX;
+	private final double _minY;
+	private final double _cellSizeX;
+	private final double _cellSizeY;
+	private final float[] _values;
+	private final int[] _stampOffsetsX;
+	private final int[] _stampOffsetsY;
+
+	/**
+	 * @param minX longitude of the center of the lower left cell
+	 * @param minY latitude of the center of the lower left cell
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param cellSizeX cell width in degrees
+	 * @param cellSizeY cell height in degrees
+	 * @param bufferCells radius (measured in cells) around each written sample that receives the same cost
+	 */
+	public CostGrid(double minX, double minY, int width, int height, double cellSizeX, double cellSizeY, int bufferCells)
+	{
+		_minX = minX;
+		_minY = minY;
+		_width = width;
+		_height = height;
+		_cellSizeX = cellSizeX;
+		_cellSizeY = cellSizeY;
+		_values = new float[width * height];
+		Arrays.fill(_values, Float.POSITIVE_INFINITY);
+
+		int n = 0;
+		int r2 = bufferCells * bufferCells;
+		int[] ox = new int[(2 * bufferCells + 1) * (2 * bufferCells + 1)];
+		int[] oy = new int[ox.length];
+		for (int dy = -bufferCells; dy <= bufferCells; dy++)
+		{
+			for (int dx = -bufferCells; dx <= bufferCells; dx++)
+			{
+				if (dx * dx + dy * dy <= r2)
+				{
+					ox[n] = dx;
+					oy[n] = dy;
+					n++;
+				}
+			}
+		}
+
+		_stampOffsetsX = Arrays.copyOf(ox, n);
+		_stampOffsetsY = Arrays.copyOf(oy, n);
+	}
+
+	public int getWidth()
+	{
+		return _width;
+	}
+
+	public int getHeight()
+	{
+		return _height;
+	}
+
+	public double getX(int column)
+	{
+		return _minX + column * _cellSizeX;
+	}
+
+	public double getY(int row)
+	{
+		return _minY + row * _cellSizeY;
+	}
+
+	public double getCellSizeX()
+	{
+		return _cellSizeX;
+	}
+
+	public double getCellSizeY()
+	{
+		return _cellSizeY;
+	}
+
+	public float getValue(int column, int row)
+	{
+		return _values[row * _width + column];
+	}
+
+	public void setValue(int column, int row, float value)
+	{
+		_values[row * _width + column] = value;
+	}
+
+	/**
+	 * Writes the given cost into the cell containing the location and into all cells within the buffer radius,
+	 * keeping the minimum of the existing and the new value.
+	 */
+	public void addSample(double x, double y, float cost)
+	{
+		int column = (int)Math.round((x - _minX) / _cellSizeX);
+		int row = (int)Math.round((y - _minY) / _cellSizeY);
+
+		for (int k = 0; k < _stampOffsetsX.length; k++)
+		{
+			int c = column + _stampOffsetsX[k];
+			int r = row + _stampOffsetsY[k];
+
+			// leave the outermost cells untouched so that all contours are closed
+			if (c < 1 || r < 1 || c >= _width - 1 || r >= _height - 1)
+				continue;
+
+			int index = r * _width + c;
+			if (cost < _values[index])
+				_values[index] = cost;
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * Extracts closed iso-lines from a {@link CostGrid} using the marching squares algorithm.
+ * <p>
+ * Cells with a value less than or equal to the requested level are considered to be inside.
+ * All segments are oriented so that the inside lies on their left, therefore outer rings are
+ * returned in counter-clockwise and holes in clockwise order. Rings are returned as arrays of
+ * interleaved x/y values where the first and the last coordinate are equal.
+ * <p>
+ * The outermost rows and columns of the grid must not be inside, which {@link CostGrid} guarantees.
+ * The segments are linked in a hash map keyed by the crossed grid edge, so that the memory needed for tracing grows
+ * with the length of the contours and not with the size of the grid.
+ */
+public class MarchingSquares
+{
+	private final CostGrid _grid;
+	private final int _width;
+	private final IntIntHashMap _next;
+	private int[] _startKeys;
+	private int _startKeysCount;
+
+	public MarchingSquares(CostGrid grid)
+	{
+		_grid = grid;
+		_width = grid.getWidth();
+		_next = new IntIntHashMap();
+		_startKeys = new int[1024];
+	}
+
+	public List<double[]> traceContours(double level)
+	{
+		_startKeysCount = 0;
+		_next.clear();
+
+		int width = _grid.getWidth();
+		int height = _grid.getHeight();
+		boolean[] inside = new boolean[4];
+		int[] edgeKeys = new int[4];
+		int[] exits = new int[2];
+		int[] entries = new int[2];
+
+		for (int j = 0; j < height - 1; j++)
+		{
+			for (int i = 0; i < width - 1; i++)
+			{
+				// corners in counter-clockwise order: bottom-left, bottom-right, top-right, top-left
+				float v0 = _grid.getValue(i, j);
+				float v1 = _grid.getValue(i + 1, j);
+				float v2 = _grid.getValue(i + 1, j + 1);
+				float v3 = _grid.getValue(i, j + 1);
+
+				inside[0] = v0 <= level;
+				inside[1] = v1 <= level;
+				inside[2] = v2 <= level;
+				inside[3] = v3 <= level;
+
+				if (inside[0] == inside[1] && inside[1] == inside[2] && inside[2] == inside[3])
+					continue;
+
+				// edge k connects corner k with corner k + 1
+				edgeKeys[0] = getHorizontalEdgeKey(i, j);
+				edgeKeys[1] = getVerticalEdgeKey(i + 1, j);
+				edgeKeys[2] = getHorizontalEdgeKey(i, j + 1);
+				edgeKeys[3] = getVerticalEdgeKey(i, j);
+
+				int nExits = 0;
+				int nEntries = 0;
+				for (int k = 0; k < 4; k++)
+				{
+					boolean in0 = inside[k];
+					boolean in1 = inside[(k + 1) & 3];
+					if (in0 && !in1)
+						exits[nExits++] = k;
+					else if (!in0 && in1)
+						entries[nEntries++] = k;
+				}
+
+				if (nExits == 1)
+				{
+					addSegment(edgeKeys[exits[0]], edgeKeys[entries[0]]);
+				}
+				else
+				{
+					// saddle point, decide using the average value of the cell center
+					boolean centerInside = isFinite(v0, v1, v2, v3) && (v0 + v1 + v2 + v3) / 4.0 <= level;
+
+					for (int e = 0; e < 2; e++)
+					{
+						int k = exits[e];
+						int entry = centerInside ? (k + 1) & 3 : (k + 3) & 3;
+						addSegment(edgeKeys[k], edgeKeys[entry]);
+					}
+				}
+			}
+		}
+
+		List<double[]> rings = new ArrayList<double[]>();
+		double[] buffer = new double[256];
+
+		for (int s = 0; s < _startKeysCount; s++)
+		{
+			int startKey = _startKeys[s];
+			if (!_next.containsKey(startKey))
+				continue;
+
+			int n = 0;
+			int key = startKey;
+			do
+			{
+				if (n + 4 > buffer.length)
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+				n = addCrossingPoint(buffer, n, key, level);
+
+				key = _next.containsKey(key) ? _next.remove(key) : -1;
+			}
+			while (key != startKey && key != -1);
+
+			if (key == -1)
+				continue;
+
+			buffer[n] = buffer[0];
+			buffer[n + 1] = buffer[1];
+			n += 2;
+
+			if (n >= 8)
+				rings.add(Arrays.copyOf(buffer, n));
+		}
+
+		return rings;
+	}
+
+	/**
+	 * Computes the signed area of a ring returned by {@link #traceContours(double)}. Outer rings have
+	 * a positive and holes a negative area.
+	 */
+	public static double getSignedArea(double[] ring)
+	{
+		double sum = 0.0;
+		for (int i = 0; i < ring.length - 2; i += 2)
+			sum += ring[i] * ring[i + 3] - ring[i + 2] * ring[i + 1];
+
+		return sum / 2.0;
+	}
+
+	private void addSegment(int fromKey, int toKey)
+	{
+		_next.put(fromKey, toKey);
+
+		if (_startKeysCount == _startKeys.length)
+			_startKeys = Arrays.copyOf(_startKeys, _startKeys.length * 2);
+		_startKeys[_startKeysCount++] = fromKey;
+	}
+
+	private int getHorizontalEdgeKey(int i, int j)
+	{
+		return 2 * (j * _width + i);
+	}
+
+	private int getVerticalEdgeKey(int i, int j)
+	{
+		return 2 * (j * _width + i) + 1;
+	}
+
+	private int addCrossingPoint(double[] buffer, int n, int key, double level)
+	{
+		int node = key >> 1;
+		int i = node % _width;
+		int j = node / _width;
+
+		if ((key & 1) == 0)
+		{
+			double t = getInterpolationFactor(_grid.getValue(i, j), _grid.getValue(i + 1, j), level);
+			buffer[n] = _grid.getX(i) + t * _grid.getCellSizeX();
+			buffer[n + 1] = _grid.getY(j);
+		}
+		else
+		{
+			double t = getInterpolationFactor(_grid.getValue(i, j), _grid.getValue(i, j + 1), level);
+			buffer[n] = _grid.getX(i);
+			buffer[n + 1] = _grid.getY(j) + t * _grid.getCellSizeY();
+		}
+
+		return n + 2;
+	}
+
+	private static double getInterpolationFactor(float v0, float v1, double level)
+	{
+		// unreached cells carry no cost information, put the iso-line half way
+		if (Float.isInfinite(v0) || Float.isInfinite(v1))
+			return 0.5;
+
+		return (level - v0) / (v1 - v0);
+	}
+
+	private static boolean isFinite(float v0, float v1, float v2, float v3)
+	{
+		return !(Float.isInfinite(v0) || Float.isInfinite(v1) || Float.isInfinite(v2) || Float.isInfinite(v3));
+	}
+}
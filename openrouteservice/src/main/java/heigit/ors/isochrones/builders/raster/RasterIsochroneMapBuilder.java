@@ -0,0 +1,316 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.ByteArrayBuffer;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.StopWatch;
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+import heigit.ors.isochrones.GraphEdgeMapFinder;
+import heigit.ors.isochrones.Isochrone;
+import heigit.ors.isochrones.IsochroneMap;
+import heigit.ors.isochrones.IsochroneSearchParameters;
+import heigit.ors.isochrones.builders.AbstractIsochroneMapBuilder;
+import heigit.ors.routing.RouteSearchContext;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+
+/**
+ * Builds isochrones by rasterizing the costs of all reached edges into a single {@link CostGrid} and
+ * extracting the polygons of all requested ranges from it with {@link MarchingSquares}. In contrast to
+ * {@link heigit.ors.isochrones.builders.concaveballs.ConcaveBallsIsochroneMapBuilder}, no triangulation
+ * is needed and the expensive part (rasterization) is done only once for all ranges.
+ */
+public class RasterIsochroneMapBuilder extends AbstractIsochroneMapBuilder
+{
+	private final Logger LOGGER = Logger.getLogger(RasterIsochroneMapBuilder.class.getName());
+
+	private static final double METERS_PER_DEGREE = 111319.49;
+	// default size of a grid cell, measured in meters
+	private static final double CELL_SIZE = 100;
+	// the number of cells around a road that are considered to be reached
+	private static final int BUFFER_CELLS = 2;
+	// the grid is coarsened if one of its dimensions would exceed this value
+	private static final int MAX_GRID_DIMENSION = 2000;
+	// holes smaller than this number of cells are filled
+	private static final int MIN_HOLE_CELLS = 4;
+
+	private GeometryFactory _geomFactory;
+	private RouteSearchContext _searchContext;
+
+	@Override
+	public void initialize(RouteSearchContext searchContext)
+	{
+		_geomFactory = new GeometryFactory();
+		_searchContext = searchContext;
+	}
+
+	@Override
+	public IsochroneMap compute(IsochroneSearchParameters parameters) throws Exception
+	{
+		StopWatch swTotal = null;
+		StopWatch sw = null;
+		if (LOGGER.isDebugEnabled())
+		{
+			swTotal = new StopWatch();
+			swTotal.start();
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		double maxSpeed = _searchContext.getEncoder().getMaxSpeed();
+		double metersPerSecond = maxSpeed / 3.6;
+
+		Coordinate loc = parameters.getLocation();
+		IsochroneMap isochroneMap = new IsochroneMap(parameters.getTravellerId(), loc);
+		ByteArrayBuffer arrayBuffer = new ByteArrayBuffer();
+
+		AccessibilityMap edgeMap = GraphEdgeMapFinder.findEdgeMap(_searchContext, parameters, arrayBuffer);
+
+		if (LOGGER.isDebugEnabled())
+		{
+			sw.stop();
+			LOGGER.debug("Find edges: " + sw.getSeconds());
+			sw = new StopWatch();
+			sw.start();
+		}
+
+		if (edgeMap.isEmpty())
+			return isochroneMap;
+
+		CostGrid grid = buildCostGrid(edgeMap, parameters.getMaximumRange(), arrayBuffer);
+
+		if (LOGGER.isDebugEnabled())
+		{
+			sw.stop();
+			LOGGER.debug("Rasterize edges: " + sw.getSeconds() + " (" + grid.getWidth() + "x" + grid.getHeight() + ")");
+		}
+
+		MarchingSquares marchingSquares = new MarchingSquares(grid);
+		double minHoleArea = MIN_HOLE_CELLS * grid.getCellSizeX() * grid.getCellSizeY();
+
+		for (double isoValue : parameters.getRanges())
+		{
+			if (LOGGER.isDebugEnabled())
+			{
+				sw = new StopWatch();
+				sw.start();
+			}
+
+			Geometry geom = createGeometry(_geomFactory, marchingSquares.traceContours(isoValue), minHoleArea);
+			if (geom != null)
+				isochroneMap.addIsochrone(new Isochrone(geom, isoValue, metersPerSecond * isoValue));
+
+			if (LOGGER.isDebugEnabled())
+				LOGGER.debug("Trace contours " + isoValue + ": " + sw.stop().getSeconds());
+		}
+
+		if (LOGGER.isDebugEnabled())
+			LOGGER.debug("Total time: " + swTotal.stop().getSeconds());
+
+		return isochroneMap;
+	}
+
+	private CostGrid buildCostGrid(AccessibilityMap edgeMap, double maxCost, ByteArrayBuffer arrayBuffer)
+	{
+		IntObjectMap<SPTEntry> map = edgeMap.getMap();
+		GraphHopperStorage graph = _searchContext.getGraphHopper().getGraphHopperStorage();
+		NodeAccess nodeAccess = graph.getNodeAccess();
+		int maxNodeId = graph.getNodes();
+
+		Envelope env = new Envelope();
+		for (IntObjectCursor<SPTEntry> entry : map)
+		{
+			int nodeId = entry.value.adjNode;
+			if (nodeId != -1 && nodeId < maxNodeId)
+				env.expandToInclude(nodeAccess.getLon(nodeId), nodeAccess.getLat(nodeId));
+		}
+
+		double cellSize = CELL_SIZE;
+		double cellSizeY = cellSize / METERS_PER_DEGREE;
+		double cellSizeX = cellSizeY / Math.cos(Math.toRadians(env.centre().y));
+		double maxCells = Math.max(env.getWidth() / cellSizeX, env.getHeight() / cellSizeY);
+		if (maxCells > MAX_GRID_DIMENSION)
+		{
+			double scale = maxCells / MAX_GRID_DIMENSION;
+			cellSize *= scale;
+			cellSizeX *= scale;
+			cellSizeY *= scale;
+		}
+
+		// leave enough room for the buffer plus an unreached border
+		int margin = BUFFER_CELLS + 2;
+		int width = (int)Math.ceil(env.getWidth() / cellSizeX) + 2 * margin + 1;
+		int height = (int)Math.ceil(env.getHeight() / cellSizeY) + 2 * margin + 1;
+		CostGrid grid = new CostGrid(env.getMinX() - margin * cellSizeX, env.getMinY() - margin * cellSizeY, width, height, cellSizeX, cellSizeY, BUFFER_CELLS);
+
+		DistanceCalc dcFast = new DistancePlaneProjection();
+		double sampleStep = cellSize / 2.0;
+
+		for (IntObjectCursor<SPTEntry> entry : map)
+		{
+			SPTEntry goalEdge = entry.value;
+			int nodeId = goalEdge.adjNode;
+
+			if (nodeId == -1 || nodeId >= maxNodeId)
+				continue;
+
+			if (goalEdge.originalEdge == -1)
+			{
+				// start node
+				grid.addSample(nodeAccess.getLon(nodeId), nodeAccess.getLat(nodeId), (float)goalEdge.weight);
+				continue;
+			}
+
+			double minCost = goalEdge.parent.weight;
+			double edgeMaxCost = goalEdge.weight;
+			if (minCost > maxCost)
+				continue;
+
+			EdgeIteratorState iter = graph.getEdgeIteratorState(goalEdge.originalEdge, nodeId);
+			// always use mode=3, since other ones do not provide correct results
+			PointList pl = iter.fetchWayGeometry(3, arrayBuffer);
+			int size = pl.getSize();
+			if (size == 0)
+				continue;
+
+			double edgeDist = iter.getDistance();
+			double costPerMeter = edgeDist > 0 ? (edgeMaxCost - minCost) / edgeDist : 0;
+			double distPolyline = 0.0;
+
+			double lat0 = pl.getLat(0);
+			double lon0 = pl.getLon(0);
+			grid.addSample(lon0, lat0, (float)minCost);
+
+			for (int i = 1; i < size; ++i)
+			{
+				double lat1 = pl.getLat(i);
+				double lon1 = pl.getLon(i);
+				double segDist = dcFast.calcDist(lat0, lon0, lat1, lon1);
+				int nSamples = Math.max(1, (int)Math.ceil(segDist / sampleStep));
+
+				for (int k = 1; k <= nSamples; k++)
+				{
+					double f = (double)k / nSamples;
+					double cost = minCost + (distPolyline + f * segDist) * costPerMeter;
+					if (cost > maxCost)
+						break;
+
+					grid.addSample(lon0 + f * (lon1 - lon0), lat0 + f * (lat1 - lat0), (float)cost);
+				}
+
+				distPolyline += segDist;
+				if (minCost + distPolyline * costPerMeter > maxCost)
+					break;
+
+				lat0 = lat1;
+				lon0 = lon1;
+			}
+		}
+
+		return grid;
+	}
+
+	/**
+	 * Assembles the isochrone from the traced rings. Every outer ring becomes a polygon together with the holes that
+	 * lie directly inside of it, so that areas which are only connected by a ferry or a bridge are kept. Returns a
+	 * polygon if there is a single outer ring and a multi polygon otherwise.
+	 */
+	static Geometry createGeometry(GeometryFactory geomFactory, List<double[]> rings, double minHoleArea)
+	{
+		List<LinearRing> shells = new ArrayList<LinearRing>();
+		List<Double> shellAreas = new ArrayList<Double>();
+		List<LinearRing> holes = new ArrayList<LinearRing>();
+
+		for (double[] ring : rings)
+		{
+			double area = MarchingSquares.getSignedArea(ring);
+			if (area > 0)
+			{
+				shells.add(createRing(geomFactory, ring));
+				shellAreas.add(area);
+			}
+			else if (-area >= minHoleArea)
+			{
+				holes.add(createRing(geomFactory, ring));
+			}
+		}
+
+		if (shells.isEmpty())
+			return null;
+
+		List<List<LinearRing>> shellHoles = new ArrayList<List<LinearRing>>(shells.size());
+		for (int i = 0; i < shells.size(); i++)
+			shellHoles.add(new ArrayList<LinearRing>());
+
+		for (LinearRing hole : holes)
+		{
+			// a hole belongs to the smallest outer ring that contains it
+			Coordinate p = hole.getCoordinateN(0);
+			int owner = -1;
+			for (int i = 0; i < shells.size(); i++)
+			{
+				if ((owner == -1 || shellAreas.get(i) < shellAreas.get(owner)) && CGAlgorithms.isPointInRing(p, shells.get(i).getCoordinates()))
+					owner = i;
+			}
+
+			if (owner != -1)
+				shellHoles.get(owner).add(hole);
+		}
+
+		Polygon[] polygons = new Polygon[shells.size()];
+		for (int i = 0; i < shells.size(); i++)
+		{
+			List<LinearRing> ownHoles = shellHoles.get(i);
+			polygons[i] = geomFactory.createPolygon(shells.get(i), ownHoles.toArray(new LinearRing[ownHoles.size()]));
+		}
+
+		return polygons.length == 1 ? polygons[0] : geomFactory.createMultiPolygon(polygons);
+	}
+
+	private static LinearRing createRing(GeometryFactory geomFactory, double[] ring)
+	{
+		Coordinate[] coords = new Coordinate[ring.length / 2];
+		for (int i = 0; i < coords.length; i++)
+			coords[i] = new Coordinate(ring[2 * i], ring[2 * i + 1]);
+
+		return geomFactory.createLinearRing(coords);
+	}
+}
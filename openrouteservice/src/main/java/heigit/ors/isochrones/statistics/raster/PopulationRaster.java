@@ -0,0 +1,317 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.statistics.raster;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A population grid in WGS84 coordinates that answers sums over horizontal runs of cells in constant time.
+ * <p>
+ * The raster is read from a single band 32-bit float grid in ESRI/EHdr format (a raw .flt/.bil file with a .hdr
+ * file next to it), as produced by {@code gdal_translate -of EHdr -ot Float32}. On first use the raster is converted
+ * into a table holding the running sum of every row (a one dimensional summed-area table), which is written to a
+ * cache file and memory-mapped. Therefore the data does not need to fit into the heap and the sum of any run of cells
+ * is the difference of two table values.
+ */
+public class PopulationRaster {
+    private static final Logger LOGGER = Logger.getLogger(PopulationRaster.class.getName());
+
+    private static final long MAGIC = 0x4f52535053554d31L; // "ORSPSUM1"
+    private static final int HEADER_SIZE = 64;
+
+    private final int _width;
+    private final int _height;
+    private final double _minX;
+    private final double _maxY;
+    private final double _cellSizeX;
+    private final double _cellSizeY;
+    private final int _rowsPerBuffer;
+    private final long _rowBytes;
+    private MappedByteBuffer[] _buffers;
+
+    /**
+     * @param rasterFile path to the .flt or .bil file, the header is expected in a file with the same name and the extension .hdr
+     * @param cacheFile  path to the file holding the row sums, it is (re)created if it is missing or older than the raster
+     */
+    public PopulationRaster(String rasterFile, String cacheFile) throws IOException {
+        File dataFile = new File(rasterFile);
+        if (!dataFile.exists())
+            throw new IOException("Raster file '" + rasterFile + "' does not exist.");
+
+        Map<String, String> header = readHeader(getHeaderFile(dataFile));
+
+        _width = getIntValue(header, "ncols");
+        _height = getIntValue(header, "nrows");
+
+        if (header.containsKey("ulxmap")) {
+            // EHdr header, the map coordinates refer to the center of the upper left cell
+            _cellSizeX = getDoubleValue(header, "xdim");
+            _cellSizeY = getDoubleValue(header, "ydim");
+            _minX = getDoubleValue(header, "ulxmap") - _cellSizeX / 2;
+            _maxY = getDoubleValue(header, "ulymap") + _cellSizeY / 2;
+        } else {
+            // ESRI float grid header
+            _cellSizeX = getDoubleValue(header, "cellsize");
+            _cellSizeY = _cellSizeX;
+            if (header.containsKey("xllcenter")) {
+                _minX = getDoubleValue(header, "xllcenter") - _cellSizeX / 2;
+                _maxY = getDoubleValue(header, "yllcenter") - _cellSizeY / 2 + _height * _cellSizeY;
+            } else {
+                _minX = getDoubleValue(header, "xllcorner");
+                _maxY = getDoubleValue(header, "yllcorner") + _height * _cellSizeY;
+            }
+        }
+
+        String pixelType = header.get("pixeltype");
+        String nbits = header.get("nbits");
+        if ((pixelType != null && !pixelType.equals("float")) || (nbits != null && !nbits.equals("32")))
+            throw new IOException("Only 32-bit float rasters are supported.");
+        if (header.containsKey("nbands") && !header.get("nbands").equals("1"))
+            throw new IOException("Only single band rasters are supported.");
+        if (dataFile.length() < 4L * _width * _height)
+            throw new IOException("Raster file '" + rasterFile + "' is smaller than specified in its header.");
+
+        String byteOrder = header.get("byteorder");
+        ByteOrder order = (byteOrder != null && (byteOrder.equals("m") || byteOrder.equals("msbfirst"))) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        float noDataValue = header.containsKey("nodata_value") ? (float) getDoubleValue(header, "nodata_value") :
+                header.containsKey("nodata") ? (float) getDoubleValue(header, "nodata") : Float.NaN;
+
+        _rowBytes = 8L * (_width + 1);
+        _rowsPerBuffer = (int) Math.max(1, Integer.MAX_VALUE / _rowBytes);
+
+        File sumFile = new File(cacheFile);
+        if (!isValidCache(sumFile, dataFile)) {
+            long startTime = System.currentTimeMillis();
+            buildCache(dataFile, sumFile, order, noDataValue);
+            LOGGER.info(String.format("Population row sums for '%s' have been built in %.2f s.", rasterFile, (System.currentTimeMillis() - startTime) / 1000.0));
+        }
+
+        mapCache(sumFile);
+    }
+
+    public int getWidth() {
+        return _width;
+    }
+
+    public int getHeight() {
+        return _height;
+    }
+
+    public double getMinX() {
+        return _minX;
+    }
+
+    public double getMaxY() {
+        return _maxY;
+    }
+
+    public double getCellSizeX() {
+        return _cellSizeX;
+    }
+
+    public double getCellSizeY() {
+        return _cellSizeY;
+    }
+
+    public float getValue(int column, int row) {
+        return (float) (getRowPrefix(row, column + 1) - getRowPrefix(row, column));
+    }
+
+    /**
+     * Returns the population of the given row between two fractional column positions, cells that are only partially
+     * covered contribute proportionally to the covered part of their width.
+     *
+     * @param row   index of the row, 0 is the northernmost one
+     * @param from  start position measured in cells from the left edge of the raster
+     * @param to    end position measured in cells from the left edge of the raster
+     */
+    public double getRowSum(int row, double from, double to) {
+        if (from < 0)
+            from = 0;
+        if (to > _width)
+            to = _width;
+        if (to <= from)
+            return 0.0;
+
+        int c0 = (int) from;
+        int c1 = (int) to;
+
+        if (c0 == c1)
+            return getValue(c0, row) * (to - from);
+
+        double sum = getValue(c0, row) * (c0 + 1 - from);
+        sum += getRowPrefix(row, c1) - getRowPrefix(row, c0 + 1);
+        if (c1 < _width)
+            sum += getValue(c1, row) * (to - c1);
+
+        return sum;
+    }
+
+    public void close() {
+        // mapped buffers are released by the garbage collector
+        _buffers = null;
+    }
+
+    private double getRowPrefix(int row, int column) {
+        MappedByteBuffer buffer = _buffers[row / _rowsPerBuffer];
+        return buffer.getDouble((int) ((row % _rowsPerBuffer) * _rowBytes + 8L * column));
+    }
+
+    private boolean isValidCache(File sumFile, File dataFile) throws IOException {
+        if (!sumFile.exists() || sumFile.length() != HEADER_SIZE + _rowBytes * _height)
+            return false;
+
+        RandomAccessFile raf = new RandomAccessFile(sumFile, "r");
+        try {
+            return raf.readLong() == MAGIC && raf.readInt() == _width && raf.readInt() == _height
+                    && raf.readLong() == dataFile.length() && raf.readLong() == dataFile.lastModified();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void buildCache(File dataFile, File sumFile, ByteOrder order, float noDataValue) throws IOException {
+        File tmpFile = new File(sumFile.getPath() + ".tmp");
+        FileInputStream input = new FileInputStream(dataFile);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 20));
+
+        try {
+            output.writeLong(MAGIC);
+            output.writeInt(_width);
+            output.writeInt(_height);
+            output.writeLong(dataFile.length());
+            output.writeLong(dataFile.lastModified());
+            output.write(new byte[HEADER_SIZE - 32]);
+
+            FileChannel channel = input.getChannel();
+            ByteBuffer rowBuffer = ByteBuffer.allocate(4 * _width).order(order);
+
+            for (int row = 0; row < _height; row++) {
+                rowBuffer.clear();
+                while (rowBuffer.hasRemaining()) {
+                    if (channel.read(rowBuffer) < 0)
+                        throw new IOException("Unexpected end of raster file '" + dataFile.getPath() + "'.");
+                }
+                rowBuffer.flip();
+
+                double sum = 0.0;
+                output.writeDouble(sum);
+                for (int col = 0; col < _width; col++) {
+                    float value = rowBuffer.getFloat();
+                    // no data, NaN and negative values do not count
+                    if (value > 0 && value != noDataValue && !Float.isInfinite(value))
+                        sum += value;
+                    output.writeDouble(sum);
+                }
+            }
+        } finally {
+            output.close();
+            input.close();
+        }
+
+        if (sumFile.exists() && !sumFile.delete())
+            throw new IOException("Unable to replace '" + sumFile.getPath() + "'.");
+        if (!tmpFile.renameTo(sumFile))
+            throw new IOException("Unable to create '" + sumFile.getPath() + "'.");
+    }
+
+    private void mapCache(File sumFile) throws IOException {
+        int nBuffers = (_height + _rowsPerBuffer - 1) / _rowsPerBuffer;
+        _buffers = new MappedByteBuffer[nBuffers];
+
+        RandomAccessFile raf = new RandomAccessFile(sumFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < nBuffers; i++) {
+                int rows = Math.min(_rowsPerBuffer, _height - i * _rowsPerBuffer);
+                _buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + i * _rowsPerBuffer * _rowBytes, rows * _rowBytes);
+                // DataOutputStream writes big endian values
+                _buffers[i].order(ByteOrder.BIG_ENDIAN);
+            }
+        } finally {
+            // the mappings stay valid after the channel has been closed
+            raf.close();
+        }
+    }
+
+    private static File getHeaderFile(File dataFile) throws IOException {
+        String name = dataFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+
+        File headerFile = new File(dataFile.getParentFile(), baseName + ".hdr");
+        if (!headerFile.exists())
+            throw new IOException("Raster header file '" + headerFile.getPath() + "' does not exist.");
+
+        return headerFile;
+    }
+
+    private static Map<String, String> readHeader(File headerFile) throws IOException {
+        Map<String, String> header = new HashMap<String, String>();
+
+        BufferedReader reader = new BufferedReader(new FileReader(headerFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens.length >= 2)
+                    header.put(tokens[0].toLowerCase(Locale.ENGLISH), tokens[1].toLowerCase(Locale.ENGLISH));
+            }
+        } finally {
+            reader.close();
+        }
+
+        return header;
+    }
+
+    private static int getIntValue(Map<String, String> header, String key) throws IOException {
+        return (int) getDoubleValue(header, key);
+    }
+
+    private static double getDoubleValue(Map<String, String> header, String key) throws IOException {
+        String value = header.get(key);
+        if (value == null)
+            throw new IOException("Raster header does not contain '" + key + "'.");
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Raster header contains an invalid value for '" + key + "'.");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.statistics.raster;
+
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.graphhopper.util.Helper;
+
+import heigit.ors.exceptions.InternalServerException;
+import heigit.ors.isochrones.Isochrone;
+import heigit.ors.isochrones.IsochronesErrorCodes;
+import heigit.ors.isochrones.statistics.AbstractStatisticsProvider;
+
+/**
+ * This class computes population statistics of isochrones in-process from a population raster (e.g. GHS-POP in WGS84),
+ * so that no database is needed. See {@link PopulationRaster} for the supported raster format.
+ */
+public class RasterStatisticsProvider extends AbstractStatisticsProvider {
+    private static final Logger LOGGER = Logger.getLogger(RasterStatisticsProvider.class.getName());
+
+    private PopulationRaster _raster;
+    private ScanLineRasterizer _rasterizer;
+
+    /**
+     * Opens the raster given by the 'raster_file' parameter. The row sums are stored in the file given by the
+     * optional 'cache_file' parameter, which defaults to the raster file name with the extension .psum.
+     *
+     * @param parameters {@link Map} holding the provider parameters from the app.config.
+     * @throws Exception
+     */
+    @Override
+    public void init(Map<String, Object> parameters) throws Exception {
+        _raster = null;
+        _rasterizer = null;
+
+        String rasterFile = (String) parameters.get("raster_file");
+        if (Helper.isEmpty(rasterFile))
+            throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "'raster_file' parameter can not be null or empty.");
+
+        String cacheFile = (String) parameters.get("cache_file");
+        if (Helper.isEmpty(cacheFile)) {
+            int dot = rasterFile.lastIndexOf('.');
+            cacheFile = (dot > rasterFile.lastIndexOf('/') ? rasterFile.substring(0, dot) : rasterFile) + ".psum";
+        }
+
+        _raster = new PopulationRaster(rasterFile, cacheFile);
+        _rasterizer = new ScanLineRasterizer(_raster);
+    }
+
+    @Override
+    public void close() {
+        if (_raster != null) {
+            _raster.close();
+            _raster = null;
+            _rasterizer = null;
+        }
+    }
+
+    /**
+     * Supports the properties total_pop and total_area_km.
+     *
+     * @param isochrone  {@link Isochrone} as input.
+     * @param properties {@link String}[] as input holding the attributes parameters.
+     * @return Returns a double[] holding the desired values in the order that was asked for in the attributes.
+     * @throws Exception
+     */
+    @Override
+    public double[] getStatistics(Isochrone isochrone, String[] properties) throws Exception {
+        double[] res = new double[properties.length];
+
+        try {
+            for (int i = 0; i < properties.length; i++) {
+                switch (properties[i]) {
+                    case "total_pop":
+                        res[i] = Math.round(_rasterizer.getSum(isochrone.getGeometry()));
+                        break;
+                    case "total_area_km":
+                        res[i] = isochrone.getArea("km");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (Exception ex) {
+            LOGGER.error(ex);
+            throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "Unable to retrieve data from the data source.");
+        }
+
+        return res;
+    }
+
+    /**
+     * Returns the driver name to be queried against the {@link heigit.ors.isochrones.statistics.StatisticsProviderFactory}.
+     *
+     * @return Returns the provider name in a {@link String} format.
+     */
+    @Override
+    public String getName() {
+        return "raster";
+    }
+}
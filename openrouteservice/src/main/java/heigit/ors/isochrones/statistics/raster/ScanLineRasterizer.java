@@ -0,0 +1,173 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.statistics.raster;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Sums the values of a {@link PopulationRaster} inside of polygons.
+ * <p>
+ * Every raster row is intersected with the polygon at the latitude of its cell centers. The resulting runs
+ * (even-odd rule, so holes are excluded) are summed using the row sums of the raster, which makes the cost
+ * proportional to the number of rows and polygon edges rather than to the number of covered cells.
+ */
+public class ScanLineRasterizer {
+    private final PopulationRaster _raster;
+
+    public ScanLineRasterizer(PopulationRaster raster) {
+        _raster = raster;
+    }
+
+    public double getSum(Geometry geometry) {
+        Edges edges = new Edges();
+
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry geom = geometry.getGeometryN(i);
+            if (geom instanceof Polygon) {
+                Polygon poly = (Polygon) geom;
+                addRing(edges, poly.getExteriorRing().getCoordinateSequence());
+                for (int j = 0; j < poly.getNumInteriorRing(); j++)
+                    addRing(edges, poly.getInteriorRingN(j).getCoordinateSequence());
+            }
+        }
+
+        if (edges.size == 0)
+            return 0.0;
+
+        // process the edges in the order of the first row they cross
+        Integer[] order = new Integer[edges.size];
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = Integer.MIN_VALUE;
+        for (int i = 0; i < edges.size; i++) {
+            order[i] = i;
+            firstRow = Math.min(firstRow, edges.startRow[i]);
+            lastRow = Math.max(lastRow, edges.endRow[i]);
+        }
+        final int[] startRows = edges.startRow;
+        Arrays.sort(order, (a, b) -> Integer.compare(startRows[a], startRows[b]));
+
+        int[] active = new int[16];
+        int nActive = 0;
+        double[] crossings = new double[16];
+        int next = 0;
+        double sum = 0.0;
+        double minX = _raster.getMinX();
+        double cellSizeX = _raster.getCellSizeX();
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            while (next < order.length && edges.startRow[order[next]] <= row) {
+                if (nActive == active.length)
+                    active = Arrays.copyOf(active, nActive * 2);
+                active[nActive++] = order[next++];
+            }
+
+            double y = getRowY(row);
+            int nCrossings = 0;
+            int k = 0;
+            for (int a = 0; a < nActive; a++) {
+                int e = active[a];
+                if (edges.endRow[e] < row)
+                    continue;
+
+                active[k++] = e;
+                if (nCrossings == crossings.length)
+                    crossings = Arrays.copyOf(crossings, nCrossings * 2);
+                double t = (y - edges.y0[e]) / (edges.y1[e] - edges.y0[e]);
+                crossings[nCrossings++] = edges.x0[e] + t * (edges.x1[e] - edges.x0[e]);
+            }
+            nActive = k;
+
+            Arrays.sort(crossings, 0, nCrossings);
+            for (int c = 0; c + 1 < nCrossings; c += 2)
+                sum += _raster.getRowSum(row, (crossings[c] - minX) / cellSizeX, (crossings[c + 1] - minX) / cellSizeX);
+        }
+
+        return sum;
+    }
+
+    private double getRowY(int row) {
+        return _raster.getMaxY() - (row + 0.5) * _raster.getCellSizeY();
+    }
+
+    private void addRing(Edges edges, CoordinateSequence seq) {
+        double originY = _raster.getMaxY() / _raster.getCellSizeY() - 0.5;
+        int maxRow = _raster.getHeight() - 1;
+
+        for (int i = 0; i < seq.size() - 1; i++) {
+            double x0 = seq.getX(i);
+            double y0 = seq.getY(i);
+            double x1 = seq.getX(i + 1);
+            double y1 = seq.getY(i + 1);
+
+            if (y0 == y1)
+                continue;
+
+            // an edge crosses all rows whose center latitude lies in [minY, maxY)
+            double minY = Math.min(y0, y1);
+            double maxY = Math.max(y0, y1);
+            int startRow = (int) Math.floor(originY - maxY / _raster.getCellSizeY()) + 1;
+            int endRow = (int) Math.floor(originY - minY / _raster.getCellSizeY());
+
+            if (startRow < 0)
+                startRow = 0;
+            if (endRow > maxRow)
+                endRow = maxRow;
+            if (startRow > endRow)
+                continue;
+
+            edges.add(x0, y0, x1, y1, startRow, endRow);
+        }
+    }
+
+    private static class Edges {
+        double[] x0 = new double[64];
+        double[] y0 = new double[64];
+        double[] x1 = new double[64];
+        double[] y1 = new double[64];
+        int[] startRow = new int[64];
+        int[] endRow = new int[64];
+        int size = 0;
+
+        void add(double ax, double ay, double bx, double by, int start, int end) {
+            if (size == x0.length) {
+                int capacity = size * 2;
+                x0 = Arrays.copyOf(x0, capacity);
+                y0 = Arrays.copyOf(y0, capacity);
+                x1 = Arrays.copyOf(x1, capacity);
+                y1 = Arrays.copyOf(y1, capacity);
+                startRow = Arrays.copyOf(startRow, capacity);
+                endRow = Arrays.copyOf(endRow, capacity);
+            }
+
+            x0[size] = ax;
+            y0[size] = ay;
+            x1[size] = bx;
+            y1[size] = by;
+            startRow[size] = start;
+            endRow[size] = end;
+            size++;
+        }
+    }
+}
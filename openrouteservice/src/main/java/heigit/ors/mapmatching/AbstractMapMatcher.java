@@ -42,6 +42,11 @@ public abstract class AbstractMapMatcher implements MapMatcher {
 	{
 		_graphHopper = gh;
 	}
+
+	public GraphHopper getGraphHopper()
+	{
+		return _graphHopper;
+	}
 	
 	public RouteSegmentInfo match(double lat0, double lon0, double lat1, double lon1)
 	{
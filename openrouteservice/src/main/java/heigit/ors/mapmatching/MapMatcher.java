@@ -31,6 +31,8 @@ public interface MapMatcher {
 	public void setEdgeFilter(EdgeFilter edgeFilter);
 	
 	public void setGraphHopper(GraphHopper gh);
+
+	public GraphHopper getGraphHopper();
 	
 	public RouteSegmentInfo[] match(Coordinate[] locations, boolean bothDirections);
 }
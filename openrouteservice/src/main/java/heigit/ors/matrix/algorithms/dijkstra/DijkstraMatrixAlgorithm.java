@@ -34,6 +34,7 @@ import heigit.ors.matrix.MatrixLocations;
 import heigit.ors.matrix.PathMetricsExtractor;
 import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
 import heigit.ors.routing.algorithms.DijkstraOneToManyAlgorithm;
+import heigit.ors.routing.algorithms.SearchBudget;
 import heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
@@ -71,7 +72,9 @@ public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
 		{
 			DijkstraOneToManyAlgorithm algorithm = new DijkstraOneToManyAlgorithm(_graph, _weighting, TraversalMode.NODE_BASED);
 			algorithm.prepare(srcData.getNodeIds(),  dstData.getNodeIds());
-			algorithm.setMaxVisitedNodes(MatrixServiceSettings.getMaximumVisitedNodes());
+			SearchBudget budget = new SearchBudget(MatrixServiceSettings.getMaximumVisitedNodes(), MatrixServiceSettings.getMaximumSearchTime());
+			algorithm.setMaxVisitedNodes(budget.getMaxVisitedNodes());
+			algorithm.setSearchBudget(budget);
 			
 			int sourceId = -1;
 
@@ -88,7 +91,7 @@ public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
 					SPTEntry[] targets = algorithm.calcPaths(sourceId, dstData.getNodeIds());
 
 					if (algorithm.getFoundTargets() != algorithm.getTargetsCount())
-						throw new Exception("Search exceeds the limit of visited nodes.");
+						throw new SearchBudget.ExceededException("Search exceeds the limit of visited nodes.");
 
 					if (targets != null)
 					{
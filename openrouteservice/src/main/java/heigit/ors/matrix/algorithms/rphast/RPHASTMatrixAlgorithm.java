@@ -37,7 +37,9 @@ import heigit.ors.matrix.MatrixResult;
 import heigit.ors.matrix.MultiTreeMetricsExtractor;
 import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
 import heigit.ors.routing.algorithms.RPHASTAlgorithm;
+import heigit.ors.routing.algorithms.SearchBudget;
 import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 	private PrepareContractionHierarchies _prepareCH;
@@ -81,6 +83,8 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 			int[] destIds = getValidNodeIds(dstData.getNodeIds());
 			
 			algorithm.prepare(srcIds, destIds);
+			// the limit of visited nodes is meant for the searches on the base graph, the hierarchy is only limited in time
+			algorithm.setSearchBudget(new SearchBudget(Integer.MAX_VALUE, MatrixServiceSettings.getMaximumSearchTime()));
 
 			MultiTreeSPEntry[] destTrees = algorithm.calcPaths(srcIds, destIds);
 
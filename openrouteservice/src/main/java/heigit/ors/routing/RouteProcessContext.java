@@ -23,9 +23,12 @@ package heigit.ors.routing;
 import com.graphhopper.routing.util.PathProcessor;
 import com.graphhopper.util.ByteArrayBuffer;
 
+import heigit.ors.routing.algorithms.SearchBudget;
+
 public class RouteProcessContext {
 	private PathProcessor _pathProcessor;
 	private ByteArrayBuffer _arrayBuffer;
+	private SearchBudget _searchBudget = SearchBudget.UNLIMITED;
 	
    public RouteProcessContext(PathProcessor pathProcessor)
    {
@@ -44,4 +47,17 @@ public class RouteProcessContext {
 	   
 	   return _arrayBuffer;
    }
+
+   /**
+    * The budget is shared by the searches of all segments of the route.
+    */
+   public SearchBudget getSearchBudget()
+   {
+	   return _searchBudget;
+   }
+
+   public void setSearchBudget(SearchBudget searchBudget)
+   {
+	   _searchBudget = searchBudget;
+   }
 }
@@ -25,12 +25,15 @@ import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.util.PMap;
 
+import heigit.ors.routing.algorithms.SearchBudget;
+
 public class RouteSearchContext {
 	private GraphHopper _graphhopper;
 	private EdgeFilter _edgeFilter;
 	private FlagEncoder _encoder;
 	
 	private PMap _properties;
+	private SearchBudget _searchBudget = SearchBudget.UNLIMITED;
 
 	public RouteSearchContext(GraphHopper gh, EdgeFilter edgeFilter, FlagEncoder encoder)
 	{
@@ -60,4 +63,14 @@ public class RouteSearchContext {
 	{
 		_properties = value;
 	}
+
+	public SearchBudget getSearchBudget()
+	{
+		return _searchBudget;
+	}
+
+	public void setSearchBudget(SearchBudget value)
+	{
+		_searchBudget = value;
+	}
 }
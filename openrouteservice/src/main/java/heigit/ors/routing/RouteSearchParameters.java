@@ -21,6 +21,7 @@
 package heigit.ors.routing;
 
 import java.text.ParseException;
+import java.time.LocalDateTime;
 import java.util.Iterator;
 
 import heigit.ors.routing.pathprocessors.BordersExtractor;
@@ -59,6 +60,11 @@ public class RouteSearchParameters {
     private WayPointBearing[] _bearings = null;
     private double[] _maxRadiuses;
     private boolean _flexibleMode = false;
+    private LocalDateTime _departure = null;
+    private int _alternativeRoutesCount = 1;
+    private double _alternativeRoutesWeightFactor = 1.4;
+    private double _alternativeRoutesShareFactor = 0.6;
+    private double _alternativeRoutesLocalOptimality = 0.2;
 
     private int[] _avoidCountries = null;
     private BordersExtractor.Avoid _avoidBorders = BordersExtractor.Avoid.NONE;
@@ -456,4 +462,70 @@ public class RouteSearchParameters {
     public void setBearings(WayPointBearing[] bearings) {
         _bearings = bearings;
     }
+
+    /**
+     * Returns the departure time in the local time of the graph or null if the route does not depend on the time.
+     */
+    public LocalDateTime getDeparture() {
+        return _departure;
+    }
+
+    public void setDeparture(LocalDateTime departure) {
+        _departure = departure;
+    }
+
+    public boolean hasDeparture() {
+        return _departure != null;
+    }
+
+    /**
+     * Returns the maximum number of routes including the best one, alternative routes are requested if it is greater
+     * than one.
+     */
+    public int getAlternativeRoutesCount() {
+        return _alternativeRoutesCount;
+    }
+
+    public void setAlternativeRoutesCount(int count) {
+        _alternativeRoutesCount = count;
+    }
+
+    /**
+     * Returns the factor of the weight of the best route which an alternative route may not exceed.
+     */
+    public double getAlternativeRoutesWeightFactor() {
+        return _alternativeRoutesWeightFactor;
+    }
+
+    public void setAlternativeRoutesWeightFactor(double weightFactor) {
+        _alternativeRoutesWeightFactor = weightFactor;
+    }
+
+    /**
+     * Returns the factor of the weight of the best route which an alternative route may share with the routes found
+     * before.
+     */
+    public double getAlternativeRoutesShareFactor() {
+        return _alternativeRoutesShareFactor;
+    }
+
+    public void setAlternativeRoutesShareFactor(double shareFactor) {
+        _alternativeRoutesShareFactor = shareFactor;
+    }
+
+    /**
+     * Returns the factor of the weight of the best route for which the part of an alternative route around its via
+     * node has to be a shortest path.
+     */
+    public double getAlternativeRoutesLocalOptimality() {
+        return _alternativeRoutesLocalOptimality;
+    }
+
+    public void setAlternativeRoutesLocalOptimality(double localOptimality) {
+        _alternativeRoutesLocalOptimality = localOptimality;
+    }
+
+    public boolean hasAlternativeRoutes() {
+        return _alternativeRoutesCount > 1;
+    }
 }
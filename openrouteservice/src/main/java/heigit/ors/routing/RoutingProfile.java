@@ -27,14 +27,17 @@ import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
 import com.graphhopper.util.shapes.GHPoint;
 import com.typesafe.config.Config;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import heigit.ors.exceptions.InternalServerException;
+import heigit.ors.exceptions.ServerLimitExceededException;
 import heigit.ors.isochrones.*;
 import heigit.ors.isochrones.statistics.StatisticsProvider;
 import heigit.ors.isochrones.statistics.StatisticsProviderConfiguration;
@@ -52,13 +55,26 @@ import heigit.ors.optimization.solvers.OptimizationProblemSolver;
 import heigit.ors.optimization.solvers.OptimizationProblemSolverFactory;
 import heigit.ors.optimization.solvers.OptimizationSolution;
 import heigit.ors.routing.configuration.RouteProfileConfiguration;
+import heigit.ors.routing.algorithms.CHAlternativeRoute;
+import heigit.ors.routing.algorithms.SearchBudget;
+import heigit.ors.routing.algorithms.TurnRestrictionsCheckAlgorithm;
 import heigit.ors.routing.graphhopper.extensions.*;
 import heigit.ors.routing.graphhopper.extensions.edgefilters.*;
 import heigit.ors.routing.graphhopper.extensions.flagencoders.WheelchairFlagEncoder;
+import heigit.ors.routing.graphhopper.extensions.storages.BordersGraphStorage;
 import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
+import heigit.ors.routing.graphhopper.extensions.storages.GreenIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.HillIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.NoiseIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.SpeedProfilesGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.weighting.EdgeRestrictionsWeighting;
+import heigit.ors.routing.graphhopper.extensions.weighting.HeavyVehicleClassWeighting;
+import heigit.ors.routing.graphhopper.extensions.weighting.TrafficCHWeighting;
+import heigit.ors.routing.graphhopper.extensions.weighting.WheelchairPresetWeighting;
 import heigit.ors.routing.parameters.*;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
-import heigit.ors.routing.traffic.TrafficEdgeAnnotator;
+import heigit.ors.routing.traffic.TrafficCHCustomizer;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 import heigit.ors.services.isochrones.IsochronesServiceSettings;
 import heigit.ors.services.matrix.MatrixServiceSettings;
 import heigit.ors.services.optimization.OptimizationServiceSettings;
@@ -74,7 +90,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class generates {@link RoutingProfile} classes and is used by mostly all service classes e.g.
@@ -90,13 +113,24 @@ public class RoutingProfile {
     private static final Logger LOGGER = Logger.getLogger(RoutingProfileManager.class.getName());
     private static int profileIdentifier = 0;
     private static final Object lockObj = new Object();
+    // the traffic hierarchies are reloaded once customizations have added this share of their prepared shortcuts
+    private static final double MAX_TRAFFIC_CH_GROWTH = 0.25;
 
     private ORSGraphHopper mGraphHopper;
     private boolean mUseTrafficInfo;
     private Integer[] mRoutePrefs;
     private Integer mUseCounter;
     private boolean mUpdateRun;
-    private MapMatcher mMapMatcher;
+    // idle map matchers, a matcher keeps the state of a match, so that it is only used by one thread at a time
+    private final ConcurrentLinkedQueue<MapMatcher> mMapMatchers = new ConcurrentLinkedQueue<MapMatcher>();
+    private final ReentrantReadWriteLock mTrafficCHLock = new ReentrantReadWriteLock();
+    // the thread is only started with the first customization
+    private final ExecutorService mTrafficCHExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicReference<TrafficSnapshot> mPendingTrafficSnapshot = new AtomicReference<TrafficSnapshot>();
+    // the number of shortcuts of the traffic hierarchies as they were prepared, keyed by their weighting
+    private final Map<String, Integer> mPreparedTrafficCHShortcuts = new ConcurrentHashMap<String, Integer>();
+    // the prepared vehicle classes of all encoders, tightest class first
+    private volatile List<HeavyVehicleClassWeighting> mVehicleClassWeightings;
 
     private RouteProfileConfiguration _config;
     private String _astarApproximation;
@@ -108,6 +142,7 @@ public class RoutingProfile {
         mUseTrafficInfo = /*mHasDynamicWeights &&*/ hasCarPreferences() ? rpc.getUseTrafficInformation() : false;
 
         mGraphHopper = initGraphHopper(osmFile, rpc, profiles, loadCntx);
+        mVehicleClassWeightings = findVehicleClassWeightings();
 
         _config = rpc;
 
@@ -152,7 +187,12 @@ public class RoutingProfile {
         gh.init(args);
 
         gh.setGraphStorageFactory(new ORSGraphStorageFactory(gpc.getStorageBuilders()));
-        gh.setWeightingFactory(new ORSWeightingFactory(RealTrafficDataProvider.getInstance()));
+        ORSWeightingFactory weightingFactory = new ORSWeightingFactory(RealTrafficDataProvider.getInstance());
+        for (HeavyVehicleClass vehicleClass : getVehicleClasses(config))
+            weightingFactory.addVehicleClass(vehicleClass);
+        for (WheelchairPreset preset : getWheelchairPresets(config))
+            weightingFactory.addWheelchairPreset(preset);
+        gh.setWeightingFactory(weightingFactory);
 
         if (!Helper.isEmpty(config.getElevationProvider()) && !Helper.isEmpty(config.getElevationCachePath())) {
             ElevationProvider elevProvider = loadCntx.getElevationProvider(config.getElevationProvider(), config.getElevationCachePath(), config.getElevationDataAccess(), config.getElevationCacheClear());
@@ -161,6 +201,29 @@ public class RoutingProfile {
 
         gh.importOrLoad();
 
+        // avoid_borders and avoid_countries requests look up the border edges in an index instead of the storage
+        BordersGraphStorage bordersStorage = GraphStorageUtils.getGraphExtension(gh.getGraphHopperStorage(), BordersGraphStorage.class);
+        if (bordersStorage != null)
+            bordersStorage.getEdgeIndex();
+
+        // avoid_polygons requests look up the edges within the areas in a grid index
+        gh.setEdgeGridIndex(new EdgeGridIndex(gh.getGraphHopperStorage()));
+
+        // the soft weightings read the green, noise and hill indices of the edges from arrays
+        GreenIndexGraphStorage greenStorage = GraphStorageUtils.getGraphExtension(gh.getGraphHopperStorage(), GreenIndexGraphStorage.class);
+        if (greenStorage != null)
+            greenStorage.getEdgeLevels();
+        NoiseIndexGraphStorage noiseStorage = GraphStorageUtils.getGraphExtension(gh.getGraphHopperStorage(), NoiseIndexGraphStorage.class);
+        if (noiseStorage != null)
+            noiseStorage.getEdgeLevels();
+        HillIndexGraphStorage hillStorage = GraphStorageUtils.getGraphExtension(gh.getGraphHopperStorage(), HillIndexGraphStorage.class);
+        if (hillStorage != null)
+            hillStorage.getEdgeLevels(false);
+
+        // turn restrictions are checked on the routes of the hierarchy, see canCheckTurnRestrictions
+        if (gh.isCHEnabled())
+            gh.setTurnCostExtension(weightingFactory.getTurnCostExtension(gh.getGraphHopperStorage()));
+
         if (LOGGER.isInfoEnabled()) {
             EncodingManager encodingMgr = gh.getEncodingManager();
             GraphHopperStorage ghStorage = gh.getGraphHopperStorage();
@@ -181,6 +244,44 @@ public class RoutingProfile {
         return gh;
     }
 
+    /**
+     * Returns the vehicle classes configured for the contraction hierarchies of the profile, ordered from the
+     * tightest to the widest class.
+     */
+    private static List<HeavyVehicleClass> getVehicleClasses(RouteProfileConfiguration config) {
+        List<HeavyVehicleClass> result = new ArrayList<HeavyVehicleClass>();
+
+        Config opts = config.getPreparationOpts();
+        if (opts != null && opts.hasPath("methods.ch.vehicle_classes")) {
+            Config classesOpts = opts.getConfig("methods.ch.vehicle_classes");
+            for (Map.Entry<String, Object> kv : classesOpts.root().unwrapped().entrySet())
+                result.add(HeavyVehicleClass.parse(kv.getKey(), StringUtility.trimQuotes(kv.getValue().toString())));
+        }
+
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the wheelchair presets for which the contraction hierarchies and landmarks of the profile are prepared.
+     */
+    private static List<WheelchairPreset> getWheelchairPresets(RouteProfileConfiguration config) {
+        List<WheelchairPreset> result = new ArrayList<WheelchairPreset>();
+
+        Config opts = config.getPreparationOpts();
+        if (opts != null && opts.hasPath("wheelchair_presets")) {
+            Config presetsOpts = opts.getConfig("wheelchair_presets");
+            for (Map.Entry<String, Object> kv : presetsOpts.root().unwrapped().entrySet())
+                result.add(WheelchairPreset.parse(kv.getKey(), StringUtility.trimQuotes(kv.getValue().toString())));
+        }
+
+        return result;
+    }
+
+    private static String addWeighting(String weightings, String name) {
+        return weightings == null ? name : weightings + "|" + name;
+    }
+
     public long getCapacity() {
         GraphHopperStorage graph = mGraphHopper.getGraphHopperStorage();
         return graph.getCapacity() + GraphStorageUtils.getCapacity(graph.getExtension());
@@ -229,8 +330,14 @@ public class RoutingProfile {
                     if (prepareCH) {
                         if (chOpts.hasPath("threads"))
                             args.put("prepare.ch.threads", chOpts.getInt("threads"));
-                        if (chOpts.hasPath("weightings"))
-                            args.put("prepare.ch.weightings", StringUtility.trimQuotes(chOpts.getString("weightings")));
+                        String weightings = chOpts.hasPath("weightings") ? StringUtility.trimQuotes(chOpts.getString("weightings")) : null;
+                        // every vehicle class and wheelchair preset gets a hierarchy of its own
+                        for (HeavyVehicleClass vehicleClass : getVehicleClasses(config))
+                            weightings = addWeighting(weightings, vehicleClass.getWeightingName());
+                        for (WheelchairPreset preset : getWheelchairPresets(config))
+                            weightings = addWeighting(weightings, preset.getWeightingName());
+                        if (weightings != null)
+                            args.put("prepare.ch.weightings", weightings);
                     }
                 }
 
@@ -247,10 +354,16 @@ public class RoutingProfile {
                     if (prepareLM) {
                         if (lmOpts.hasPath("threads"))
                             args.put("prepare.lm.threads", lmOpts.getInt("threads"));
-                        if (lmOpts.hasPath("weightings"))
-                            args.put("prepare.lm.weightings", StringUtility.trimQuotes(lmOpts.getString("weightings")));
+                        String weightings = lmOpts.hasPath("weightings") ? StringUtility.trimQuotes(lmOpts.getString("weightings")) : null;
+                        for (WheelchairPreset preset : getWheelchairPresets(config))
+                            weightings = addWeighting(weightings, preset.getWeightingName());
+                        if (weightings != null)
+                            args.put("prepare.lm.weightings", weightings);
                         if (lmOpts.hasPath("landmarks"))
                             args.put("prepare.lm.landmarks", lmOpts.getInt("landmarks"));
+                        // the landmarks are selected per region and stored with the graph
+                        if (lmOpts.hasPath("regions"))
+                            args.put("prepare.lm.split_area_location", StringUtility.trimQuotes(lmOpts.getString("regions")));
                     }
                 }
             }
@@ -298,12 +411,8 @@ public class RoutingProfile {
         return args;
     }
 
-    public HashMap<Integer, Long> getTmcEdges() {
-        return mGraphHopper.getTmcGraphEdges();
-    }
-
-    public HashMap<Long, ArrayList<Integer>> getOsmId2edgeIds() {
-        return mGraphHopper.getOsmId2EdgeIds();
+    public OsmIdEdgeIndex getOsmIdEdgeIndex() {
+        return mGraphHopper.getOsmIdEdgeIndex();
     }
 
     public ORSGraphHopper getGraphhopper() {
@@ -350,6 +459,8 @@ public class RoutingProfile {
     }
 
     public void close() {
+        mTrafficCHExecutor.shutdownNow();
+        mMapMatchers.clear();
         mGraphHopper.close();
     }
 
@@ -394,9 +505,13 @@ public class RoutingProfile {
                     RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
 
                     mGraphHopper = initGraphHopper(ghOld.getDataReaderFile(), _config, RoutingProfileManager.getInstance().getProfiles(), loadCntx);
+                    mVehicleClassWeightings = findVehicleClassWeightings();
+                    mPreparedTrafficCHShortcuts.clear();
 
                     loadCntx.release();
 
+                    AccessibilityMapCache.getInstance().invalidate(oldLocation);
+
                     break;
                 }
 
@@ -467,11 +582,16 @@ public class RoutingProfile {
 
         try {
             RouteSearchContext searchCntx = createSearchContext(parameters.getRouteParameters(), RouteSearchMode.Isochrones, null);
+            searchCntx.setSearchBudget(createIsochronesSearchBudget());
 
             IsochroneMapBuilderFactory isochroneMapBuilderFactory = new IsochroneMapBuilderFactory(searchCntx);
             result = isochroneMapBuilderFactory.buildMap(parameters);
 
             endUseGH();
+        } catch (SearchBudget.ExceededException ex) {
+            endUseGH();
+
+            throw new ServerLimitExceededException(IsochronesErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, ex.getMessage());
         } catch (Exception ex) {
             endUseGH();
 
@@ -519,10 +639,53 @@ public class RoutingProfile {
         return result;
     }
 
+    /**
+     * Computes the road segments that can be reached within the maximum range of the given parameters. No polygons are
+     * built, which makes this considerably cheaper than {@link #buildIsochrone(IsochroneSearchParameters, String[])}.
+     *
+     * @param parameters The input are {@link IsochroneSearchParameters}
+     * @return The return will be a {@link ReachableNetwork}
+     * @throws Exception
+     */
+    public ReachableNetwork computeReachableNetwork(IsochroneSearchParameters parameters) throws Exception {
+        ReachableNetwork result = null;
+        waitForUpdateCompletion();
+
+        beginUseGH();
+
+        try {
+            RouteSearchContext searchCntx = createSearchContext(parameters.getRouteParameters(), RouteSearchMode.Isochrones, null);
+            searchCntx.setSearchBudget(createIsochronesSearchBudget());
+
+            AccessibilityMap edgeMap = GraphEdgeMapFinder.findEdgeMap(searchCntx, parameters, new ByteArrayBuffer());
+            Weighting weighting = GraphEdgeMapFinder.createWeighting(searchCntx.getEncoder(), parameters);
+            result = ReachableNetwork.create(parameters.getTravellerId(), mGraphHopper.getGraphHopperStorage(), weighting, searchCntx.getEdgeFilter(),
+                    parameters.getReverseDirection(), edgeMap, parameters.getMaximumRange());
+
+            endUseGH();
+        } catch (SearchBudget.ExceededException ex) {
+            endUseGH();
+
+            throw new ServerLimitExceededException(IsochronesErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, ex.getMessage());
+        } catch (Exception ex) {
+            endUseGH();
+
+            LOGGER.error(ex);
+
+            throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "Unable to compute the reachable network.");
+        }
+
+        return result;
+    }
+
+    private static SearchBudget createIsochronesSearchBudget() {
+        return new SearchBudget(IsochronesServiceSettings.getMaximumVisitedNodes(), IsochronesServiceSettings.getMaximumSearchTime());
+    }
+
     public MatrixResult computeMatrix(MatrixRequest req) throws Exception {
         MatrixResult mtxResult = null;
 
-        GraphHopper gh = getGraphhopper();
+        ORSGraphHopper gh = getGraphhopper();
         String encoderName = RoutingProfileType.getEncoderName(req.getProfileType());
         FlagEncoder flagEncoder = gh.getEncodingManager().getEncoder(encoderName);
 
@@ -544,11 +707,13 @@ public class RoutingProfile {
 
             HintsMap hintsMap = new HintsMap();
             hintsMap.setWeighting(weightingStr);
-            Weighting weighting = new ORSWeightingFactory(RealTrafficDataProvider.getInstance()).createWeighting(hintsMap, gh.getTraversalMode(), flagEncoder, graph, null, gh.getGraphHopperStorage());
+            Weighting weighting = gh.getWeightingFactory().createWeighting(hintsMap, gh.getTraversalMode(), flagEncoder, graph, null, gh.getGraphHopperStorage());
 
             alg.init(req, gh, mtxSearchCntx.getGraph(), flagEncoder, weighting);
 
             mtxResult = alg.compute(mtxSearchCntx.getSources(), mtxSearchCntx.getDestinations(), req.getMetrics());
+        } catch (SearchBudget.ExceededException ex) {
+            throw new ServerLimitExceededException(MatrixErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, ex.getMessage());
         } catch (Exception ex) {
             LOGGER.error(ex);
             throw new InternalServerException(MatrixErrorCodes.UNKNOWN, "Unable to compute a distance/duration matrix.");
@@ -612,6 +777,8 @@ public class RoutingProfile {
         String encoderName = RoutingProfileType.getEncoderName(profileType);
         EdgeFilter edgeFilter = null;
         FlagEncoder flagEncoder = mGraphHopper.getEncodingManager().getEncoder(encoderName);
+        // attribute based restrictions are checked by a single compiled filter
+        CompiledEdgeFilter.Builder filterBuilder = new CompiledEdgeFilter.Builder(flagEncoder, mGraphHopper.getGraphHopperStorage());
         //String algorithm = null;
         PMap props = new PMap();
 
@@ -624,7 +791,7 @@ public class RoutingProfile {
                         + mGraphHopper.getEncodingManager());
             }
 
-            edgeFilter = new AvoidAreasEdgeFilter(flagEncoder, searchParams.getAvoidAreas());
+            edgeFilter = new AvoidAreasEdgeFilter(flagEncoder, searchParams.getAvoidAreas(), mGraphHopper.getEdgeGridIndex());
         }
 
         if (RoutingProfileType.isDriving(profileType)) {
@@ -645,11 +812,8 @@ public class RoutingProfile {
                     || profileType == RoutingProfileType.FOOT_WALKING || profileType == RoutingProfileType.FOOT_HIKING
                     || profileType == RoutingProfileType.WHEELCHAIR) {
 
-                if (searchParams.getAvoidFeatureTypes() != AvoidFeatureFlags.Hills) {
-                    EdgeFilter ef = new AvoidFeaturesEdgeFilter(flagEncoder, searchParams,
-                            mGraphHopper.getGraphHopperStorage());
-                    edgeFilter = createEdgeFilter(ef, edgeFilter);
-                }
+                if (searchParams.getAvoidFeatureTypes() != AvoidFeatureFlags.Hills)
+                    filterBuilder.avoidFeatures(searchParams);
 
                 if (mode == RouteSearchMode.Routing) {
                     if ((searchParams.getAvoidFeatureTypes() & AvoidFeatureFlags.Hills) == AvoidFeatureFlags.Hills) {
@@ -668,36 +832,26 @@ public class RoutingProfile {
 
         if (searchParams.hasAvoidBorders() || searchParams.hasAvoidCountries()) {
             // We want to avoid borders of some form
-            if (RoutingProfileType.isDriving(profileType) || RoutingProfileType.isCycling(profileType)) {
-                EdgeFilter ef = new AvoidBordersEdgeFilter(flagEncoder, searchParams, mGraphHopper.getGraphHopperStorage());
-                edgeFilter = createEdgeFilter(ef, edgeFilter);
-            }
+            if (RoutingProfileType.isDriving(profileType) || RoutingProfileType.isCycling(profileType))
+                filterBuilder.avoidBorders(searchParams);
         }
 
         if (searchParams.hasParameters(CyclingParameters.class)) {
             CyclingParameters cyclingParams = (CyclingParameters) searchParams.getProfileParameters();
 
-            if (cyclingParams.getMaximumGradient() > 0) {
-                EdgeFilter ef = new AvoidSteepnessEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), cyclingParams.getMaximumGradient());
-                edgeFilter = createEdgeFilter(ef, edgeFilter);
-            }
+            if (cyclingParams.getMaximumGradient() > 0)
+                filterBuilder.maximumSteepness(cyclingParams.getMaximumGradient());
 
-            if (cyclingParams.getMaximumTrailDifficulty() > 0) {
-                EdgeFilter ef = new TrailDifficultyEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), cyclingParams.getMaximumTrailDifficulty());
-                edgeFilter = createEdgeFilter(ef, edgeFilter);
-            }
+            if (cyclingParams.getMaximumTrailDifficulty() > 0)
+                filterBuilder.maximumTrailDifficulty(cyclingParams.getMaximumTrailDifficulty());
         } else if (searchParams.hasParameters(WalkingParameters.class)) {
             WalkingParameters walkingParams = (WalkingParameters) searchParams.getProfileParameters();
 
-            if (walkingParams.getMaximumGradient() > 0) {
-                EdgeFilter ef = new AvoidSteepnessEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), walkingParams.getMaximumGradient());
-                edgeFilter = createEdgeFilter(ef, edgeFilter);
-            }
+            if (walkingParams.getMaximumGradient() > 0)
+                filterBuilder.maximumSteepness(walkingParams.getMaximumGradient());
 
-            if (walkingParams.getMaximumTrailDifficulty() > 0) {
-                EdgeFilter ef = new TrailDifficultyEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), walkingParams.getMaximumTrailDifficulty());
-                edgeFilter = createEdgeFilter(ef, edgeFilter);
-            }
+            if (walkingParams.getMaximumTrailDifficulty() > 0)
+                filterBuilder.maximumTrailDifficulty(walkingParams.getMaximumTrailDifficulty());
         }
 
         ProfileParameters profileParams = searchParams.getProfileParameters();
@@ -719,14 +873,11 @@ public class RoutingProfile {
                     && RealTrafficDataProvider.getInstance().isInitialized()) {
                 props.put("weighting_traffic_block", true);
 
-                EdgeFilter ef = new BlockedEdgesEdgeFilter(flagEncoder, RealTrafficDataProvider.getInstance()
-                        .getBlockedEdges(mGraphHopper.getGraphHopperStorage()), RealTrafficDataProvider.getInstance()
-                        .getHeavyVehicleBlockedEdges(mGraphHopper.getGraphHopperStorage()));
-
-                edgeFilter = createEdgeFilter(ef, edgeFilter);
+                filterBuilder.blockedEdges(RealTrafficDataProvider.getInstance().getSnapshot(mGraphHopper.getGraphHopperStorage()));
             }
         }
 
+        edgeFilter = filterBuilder.addFilter(edgeFilter).build();
         if (edgeFilter == null)
             edgeFilter = new DefaultEdgeFilter(flagEncoder);
 
@@ -759,15 +910,24 @@ public class RoutingProfile {
 
     private RouteSegmentInfo[] getMatchedSegmentsInternal(Coordinate[] locations,
                                                           double searchRadius, EdgeFilter edgeFilter, boolean bothDirections) {
-        if (mMapMatcher == null) {
-            mMapMatcher = new HiddenMarkovMapMatcher();
-            mMapMatcher.setGraphHopper(mGraphHopper);
+        MapMatcher mapMatcher = mMapMatchers.poll();
+        // matchers of a replaced graph are dropped
+        while (mapMatcher != null && mapMatcher.getGraphHopper() != mGraphHopper)
+            mapMatcher = mMapMatchers.poll();
+
+        if (mapMatcher == null) {
+            mapMatcher = new HiddenMarkovMapMatcher();
+            mapMatcher.setGraphHopper(mGraphHopper);
         }
 
-        mMapMatcher.setSearchRadius(searchRadius);
-        mMapMatcher.setEdgeFilter(edgeFilter);
+        try {
+            mapMatcher.setSearchRadius(searchRadius);
+            mapMatcher.setEdgeFilter(edgeFilter);
 
-        return mMapMatcher.match(locations, bothDirections);
+            return mapMatcher.match(locations, bothDirections);
+        } finally {
+            mMapMatchers.offer(mapMatcher);
+        }
     }
 
     public boolean canProcessRequest(double totalDistance, double longestSegmentDistance, int wayPoints) {
@@ -843,22 +1003,56 @@ public class RoutingProfile {
             }
 
             if (RoutingProfileType.isDriving(profileType) && RealTrafficDataProvider.getInstance().isInitialized())
-                req.setEdgeAnnotator(new TrafficEdgeAnnotator(mGraphHopper.getGraphHopperStorage()));
+                req.setEdgeAnnotator(RealTrafficDataProvider.getInstance().getSnapshot(mGraphHopper.getGraphHopperStorage()).getEdgeAnnotator());
+
+            SearchBudget budget = routeProcCntx.getSearchBudget();
+            budget.putHints(req.getHints());
 
-            req.setEdgeFilter(searchCntx.getEdgeFilter());
+            // the time is checked by GraphHopper's algorithms for every explored edge, see CHAlgorithmFactory for the hierarchy
+            req.setEdgeFilter(budget.hasMaxSearchTime() ? new SearchBudgetEdgeFilter(searchCntx.getEdgeFilter(), budget) : searchCntx.getEdgeFilter());
             req.setPathProcessor(routeProcCntx.getPathProcessor());
 
-            if (useDynamicWeights(searchParams) || flexibleMode) {
-                if (mGraphHopper.isCHEnabled())
+            boolean timeDependent = searchParams.hasDeparture() && hasSpeedProfiles();
+            boolean useTrafficCH = !timeDependent && !flexibleMode && useTrafficCH(searchParams, searchCntx.getEncoder());
+            EdgeRestrictionsWeighting restrictionsWeighting = null;
+            if (!timeDependent && !flexibleMode && !req.getHints().has("custom_weightings"))
+                restrictionsWeighting = getRestrictionsWeighting(req, searchParams, searchCntx.getEncoder());
+            boolean checkTurnRestrictions = !timeDependent && !flexibleMode && !req.getHints().has("custom_weightings") && canCheckTurnRestrictions(searchParams);
+            if (timeDependent) {
+                // the historical speeds are only considered by the time dependent search on the base graph
+                req.getHints().put("departure", getWeekTime(searchParams.getDeparture()));
+                req.getHints().put("ch.disable", true);
+                req.getHints().put("lm.disable", true);
+                req.setAlgorithm("astar");
+            } else if (useTrafficCH) {
+                // live traffic is the only dynamic part of the request, use the customized hierarchy
+                req.setWeighting(TrafficCHWeighting.NAME);
+                req.getHints().put("lm.disable", true);
+            } else if (restrictionsWeighting != null) {
+                // the restrictions of the vehicle class or wheelchair preset are already contained in its preparation
+                req.setWeighting(restrictionsWeighting.getName());
+                if (isPreparedForCH(restrictionsWeighting)) {
+                    req.getHints().put("lm.disable", true);
+                } else {
                     req.getHints().put("ch.disable", true);
-                if (mGraphHopper.getLMFactoryDecorator().isEnabled())
+                    req.getHints().put("lm.disable", false);
                     req.setAlgorithm("astarbi");
-                req.getHints().put("lm.disable", false);
+                }
+            } else if (checkTurnRestrictions) {
+                // the route of the hierarchy is only used if it does not pass a restricted turn
+                req.getHints().put(TurnRestrictionsCheckAlgorithm.KEY, true);
+                req.getHints().put("lm.disable", true);
+            } else if (useDynamicWeights(searchParams) || flexibleMode) {
+                disableCH(req);
             } else {
-                if (mGraphHopper.isCHEnabled())
+                if (mGraphHopper.isCHEnabled()) {
                     req.getHints().put("lm.disable", true);
-                else
+                } else {
                     req.getHints().put("ch.disable", true);
+                    // profiles without a hierarchy, e.g. cycling and walking, use the landmarks which only speed up A*
+                    if (mGraphHopper.getLMFactoryDecorator().isEnabled())
+                        req.setAlgorithm("astarbi");
+                }
             }
 
             if (profileType == RoutingProfileType.DRIVING_EMERGENCY) {
@@ -867,6 +1061,15 @@ public class RoutingProfile {
                 req.getHints().put("lm.disable", true); // REMOVE
             }
 
+            if (searchParams.hasAlternativeRoutes() && !timeDependent) {
+                // answered by CHAlternativeRoute on the hierarchy and by GraphHopper's AlternativeRoute otherwise
+                req.setAlgorithm(CHAlternativeRoute.NAME);
+                req.getHints().put(CHAlternativeRoute.MAX_PATHS, searchParams.getAlternativeRoutesCount());
+                req.getHints().put(CHAlternativeRoute.MAX_WEIGHT_FACTOR, searchParams.getAlternativeRoutesWeightFactor());
+                req.getHints().put(CHAlternativeRoute.MAX_SHARE_FACTOR, searchParams.getAlternativeRoutesShareFactor());
+                req.getHints().put(CHAlternativeRoute.MIN_PLATEAU_FACTOR, searchParams.getAlternativeRoutesLocalOptimality());
+            }
+
             if (_astarEpsilon != null)
                 req.getHints().put("astarbi.epsilon", _astarEpsilon);
             if (_astarApproximation != null)
@@ -875,7 +1078,33 @@ public class RoutingProfile {
 			/*if (directedSegment)
 				resp = mGraphHopper.directRoute(req); NOTE IMPLEMENTED!!!
 			else */
-            resp = mGraphHopper.route(req, routeProcCntx.getArrayBuffer());
+            if (useTrafficCH) {
+                mTrafficCHLock.readLock().lock();
+                try {
+                    resp = mGraphHopper.route(req, routeProcCntx.getArrayBuffer());
+                } finally {
+                    mTrafficCHLock.readLock().unlock();
+                }
+            } else {
+                resp = mGraphHopper.route(req, routeProcCntx.getArrayBuffer());
+
+                if (useLandmarks(req) && isConnectionNotFound(resp)) {
+                    // the landmarks of a region (lm.regions) only cover its nodes, a query across regions fails with
+                    // "Different subnetworks" and is searched again without landmarks
+                    req.getHints().put("lm.disable", true);
+                    resp = mGraphHopper.route(req, routeProcCntx.getArrayBuffer());
+                }
+
+                if (checkTurnRestrictions && TurnRestrictionsCheckAlgorithm.hasRestrictedTurn(resp)) {
+                    String algorithm = req.getAlgorithm();
+                    req.getHints().put(TurnRestrictionsCheckAlgorithm.KEY, false);
+                    disableCH(req);
+                    // alternative routes are computed by GraphHopper's AlternativeRoute on the graph with turn costs
+                    if (CHAlternativeRoute.NAME.equals(algorithm))
+                        req.setAlgorithm(algorithm);
+                    resp = mGraphHopper.route(req, routeProcCntx.getArrayBuffer());
+                }
+            }
 
             if (DebugUtility.isDebug()) {
                 System.out.println("visited_nodes.average - " + resp.getHints().get("visited_nodes.average", ""));
@@ -893,12 +1122,305 @@ public class RoutingProfile {
         return resp;
     }
 
+    /**
+     * Lets the request be answered on the base graph, with landmarks if they are available.
+     */
+    private void disableCH(GHRequest req) {
+        if (mGraphHopper.isCHEnabled())
+            req.getHints().put("ch.disable", true);
+        if (mGraphHopper.getLMFactoryDecorator().isEnabled())
+            req.setAlgorithm("astarbi");
+        req.getHints().put("lm.disable", false);
+    }
+
+    /**
+     * Returns true if the request is answered with landmarks, i.e. if it does not use the contraction hierarchy.
+     */
+    private boolean useLandmarks(GHRequest req) {
+        if (mGraphHopper.isCHEnabled() && !req.getHints().getBool("ch.disable", false))
+            return false;
+
+        return mGraphHopper.getLMFactoryDecorator().isEnabled() && !req.getHints().getBool("lm.disable", false);
+    }
+
+    static boolean isConnectionNotFound(GHResponse resp) {
+        for (Throwable error : resp.getErrors()) {
+            if (error instanceof ConnectionNotFoundException)
+                return true;
+        }
+
+        return false;
+    }
+
     private boolean useDynamicWeights(RouteSearchParameters searchParams) {
-        boolean dynamicWeights = (searchParams.hasAvoidAreas() || searchParams.hasAvoidFeatures() || searchParams.hasAvoidCountries() || searchParams.hasAvoidBorders() || searchParams.getMaximumSpeed() > 0 || (RoutingProfileType.isDriving(searchParams.getProfileType()) && (searchParams.hasParameters(VehicleParameters.class) || searchParams.getConsiderTraffic())) || (searchParams.getWeightingMethod() == WeightingMethod.SHORTEST || searchParams.getWeightingMethod() == WeightingMethod.RECOMMENDED) || searchParams.getConsiderTurnRestrictions() /*|| RouteExtraInformationFlag.isSet(extraInfo, value) searchParams.getIncludeWaySurfaceInfo()*/);
+        return useDynamicWeights(searchParams, true, true, true);
+    }
+
+    private boolean useDynamicWeights(RouteSearchParameters searchParams, boolean considerTraffic, boolean considerRestrictions, boolean considerTurnRestrictions) {
+        boolean dynamicWeights = (searchParams.hasAvoidAreas() || searchParams.hasAvoidFeatures() || searchParams.hasAvoidCountries() || searchParams.hasAvoidBorders() || searchParams.getMaximumSpeed() > 0 || (considerRestrictions && searchParams.hasParameters(WheelchairParameters.class)) || (RoutingProfileType.isDriving(searchParams.getProfileType()) && ((considerRestrictions && searchParams.hasParameters(VehicleParameters.class)) || (considerTraffic && searchParams.getConsiderTraffic()))) || (searchParams.getWeightingMethod() == WeightingMethod.SHORTEST || searchParams.getWeightingMethod() == WeightingMethod.RECOMMENDED) || (considerTurnRestrictions && searchParams.getConsiderTurnRestrictions()) || searchParams.hasDeparture() /*|| RouteExtraInformationFlag.isSet(extraInfo, value) searchParams.getIncludeWaySurfaceInfo()*/);
 
         return dynamicWeights;
     }
 
+    /**
+     * Returns true if turn restrictions are the only dynamic part of the request. The hierarchy does not know about
+     * turns, its route is only used if it does not pass a restricted turn and the search is repeated on the graph with
+     * turn costs otherwise.
+     */
+    private boolean canCheckTurnRestrictions(RouteSearchParameters searchParams) {
+        return searchParams.getConsiderTurnRestrictions() && mGraphHopper.getTurnCostExtension() != null
+                && searchParams.getWeightingMethod() == WeightingMethod.FASTEST && !useDynamicWeights(searchParams, true, true, false);
+    }
+
+    private boolean useTrafficCH(RouteSearchParameters searchParams, FlagEncoder encoder) {
+        if (!searchParams.getConsiderTraffic() || searchParams.getWeightingMethod() != WeightingMethod.FASTEST || useDynamicWeights(searchParams, false, true, true))
+            return false;
+
+        TrafficCHWeighting weighting = getTrafficCHWeighting(encoder);
+        return weighting != null && weighting.isCustomized();
+    }
+
+    private TrafficCHWeighting getTrafficCHWeighting(FlagEncoder encoder) {
+        for (TrafficCHWeighting weighting : getTrafficCHWeightings()) {
+            if (weighting.getFlagEncoder() == encoder)
+                return weighting;
+        }
+
+        return null;
+    }
+
+    private List<TrafficCHWeighting> getTrafficCHWeightings() {
+        List<TrafficCHWeighting> result = new ArrayList<TrafficCHWeighting>();
+        if (mGraphHopper.isCHEnabled()) {
+            for (Weighting weighting : mGraphHopper.getCHFactoryDecorator().getWeightings()) {
+                if (weighting instanceof TrafficCHWeighting)
+                    result.add((TrafficCHWeighting) weighting);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the prepared weighting for the restrictions of a heavy vehicle or wheelchair request, or null if the
+     * request has to be answered in the flexible mode. A heavy vehicle is routed with the tightest class that covers
+     * it unless one of the points lies on an edge reserved for destination traffic, a wheelchair with the preset of
+     * exactly the same restrictions.
+     */
+    private EdgeRestrictionsWeighting getRestrictionsWeighting(GHRequest req, RouteSearchParameters searchParams, FlagEncoder encoder) {
+        if (searchParams.getWeightingMethod() != WeightingMethod.FASTEST || useDynamicWeights(searchParams, true, false, true))
+            return null;
+
+        if (searchParams.getProfileType() == RoutingProfileType.DRIVING_HGV && searchParams.hasParameters(VehicleParameters.class)) {
+            VehicleParameters vehicleParams = (VehicleParameters) searchParams.getProfileParameters();
+            if (!vehicleParams.hasAttributes())
+                return null;
+
+            for (HeavyVehicleClassWeighting weighting : mVehicleClassWeightings) {
+                if (weighting.getFlagEncoder() == encoder && weighting.getVehicleClass().covers(searchParams.getVehicleType(), vehicleParams))
+                    return snapsToDestinationEdge(req, weighting) ? null : weighting;
+            }
+        } else if (searchParams.getProfileType() == RoutingProfileType.WHEELCHAIR && searchParams.hasParameters(WheelchairParameters.class)) {
+            WheelchairParameters wheelchairParams = (WheelchairParameters) searchParams.getProfileParameters();
+            for (WheelchairPresetWeighting weighting : getPreparedWeightings(WheelchairPresetWeighting.class, encoder)) {
+                if (weighting.getPreset().matches(wheelchairParams))
+                    return weighting;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns true if one of the points of the request snaps to an edge reserved for the destination traffic of the
+     * vehicle class. The edge is closed in the preparation of the class, only the flexible mode lets the vehicle use it.
+     */
+    private boolean snapsToDestinationEdge(GHRequest req, HeavyVehicleClassWeighting weighting) {
+        EdgeFilter edgeFilter = new DefaultEdgeFilter(weighting.getFlagEncoder());
+        for (GHPoint point : req.getPoints()) {
+            QueryResult qr = mGraphHopper.getLocationIndex().findClosest(point.lat, point.lon, edgeFilter);
+            if (qr.isValid() && weighting.isDestinationEdge(qr.getClosestEdge().getEdge()))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the prepared vehicle classes of all encoders ordered from the tightest to the widest class, so that the
+     * first class which covers a vehicle is the one with the fewest roads closed for it.
+     */
+    private List<HeavyVehicleClassWeighting> findVehicleClassWeightings() {
+        List<HeavyVehicleClassWeighting> result = new ArrayList<HeavyVehicleClassWeighting>();
+        for (FlagEncoder encoder : mGraphHopper.getEncodingManager().fetchEdgeEncoders())
+            result.addAll(getPreparedWeightings(HeavyVehicleClassWeighting.class, encoder));
+
+        result.sort(Comparator.comparing(HeavyVehicleClassWeighting::getVehicleClass));
+        return result;
+    }
+
+    /**
+     * Returns the weightings of the given type for which contraction hierarchies or, if there are none, landmarks
+     * have been prepared.
+     */
+    private <T extends Weighting> List<T> getPreparedWeightings(Class<T> type, FlagEncoder encoder) {
+        List<T> result = new ArrayList<T>();
+        Set<String> names = new HashSet<String>();
+
+        List<Weighting> weightings = new ArrayList<Weighting>();
+        if (mGraphHopper.isCHEnabled())
+            weightings.addAll(mGraphHopper.getCHFactoryDecorator().getWeightings());
+        if (mGraphHopper.getLMFactoryDecorator().isEnabled())
+            weightings.addAll(mGraphHopper.getLMFactoryDecorator().getWeightings());
+
+        for (Weighting weighting : weightings) {
+            if (type.isInstance(weighting) && weighting.getFlagEncoder() == encoder && names.add(weighting.getName()))
+                result.add(type.cast(weighting));
+        }
+
+        return result;
+    }
+
+    private boolean isPreparedForCH(Weighting weighting) {
+        return mGraphHopper.isCHEnabled() && mGraphHopper.getCHFactoryDecorator().getWeightings().contains(weighting);
+    }
+
+    public boolean hasSpeedProfiles() {
+        return GraphStorageUtils.getGraphExtension(mGraphHopper.getGraphHopperStorage(), SpeedProfilesGraphStorage.class) != null;
+    }
+
+    /**
+     * Returns the milliseconds since Monday 00:00 of the week of the given time, the time base of the speed profiles.
+     */
+    private static long getWeekTime(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * 24 * 3600 * 1000L + time.toLocalTime().toNanoOfDay() / 1000000L;
+    }
+
+    public boolean hasTrafficCH() {
+        return !getTrafficCHWeightings().isEmpty();
+    }
+
+    /**
+     * Schedules the customization of the contraction hierarchies prepared with the traffic weighting for the given
+     * snapshot. It runs in a background thread, so that traffic updates are not delayed by it. Snapshots which arrive
+     * while a customization is running replace each other, only the latest of them is customized next.
+     */
+    public void customizeTrafficCH(TrafficSnapshot snapshot) {
+        if (mPendingTrafficSnapshot.getAndSet(snapshot) == null) {
+            mTrafficCHExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TrafficSnapshot pendingSnapshot = mPendingTrafficSnapshot.getAndSet(null);
+                    if (pendingSnapshot == null)
+                        return;
+
+                    try {
+                        runTrafficCHCustomization(pendingSnapshot);
+                    } catch (Exception ex) {
+                        LOGGER.error("Unable to customize traffic contraction hierarchy: " + ex.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Recomputes the shortcuts and their weights of the contraction hierarchies prepared with the traffic weighting.
+     * They are computed while routes are being calculated, queries on the hierarchies are only blocked while the
+     * changes are written. Customizations add shortcuts but never remove them, so the graph is reloaded with the
+     * prepared hierarchies before they have grown by more than {@link #MAX_TRAFFIC_CH_GROWTH}.
+     */
+    private void runTrafficCHCustomization(TrafficSnapshot snapshot) throws Exception {
+        waitForUpdateCompletion();
+
+        if (exceedsTrafficCHGrowth()) {
+            LOGGER.warn(String.format("Traffic contraction hierarchies of '%s' have grown by %d shortcuts, reloading the prepared hierarchies.", getGraphLocation(), getAddedTrafficCHShortcutsCount()));
+            reloadGH();
+        }
+
+        beginUseGH();
+
+        try {
+            for (TrafficCHWeighting weighting : getTrafficCHWeightings()) {
+                long startTime = System.currentTimeMillis();
+
+                CHGraph chGraph = mGraphHopper.getGraphHopperStorage().getGraph(CHGraph.class, weighting);
+                if (!mPreparedTrafficCHShortcuts.containsKey(weighting.toString()))
+                    mPreparedTrafficCHShortcuts.put(weighting.toString(), TrafficCHCustomizer.countShortcuts(chGraph));
+
+                TrafficCHCustomizer customizer = new TrafficCHCustomizer(chGraph, weighting.getFlagEncoder(), new TrafficCHWeighting(weighting.getFlagEncoder(), snapshot));
+                customizer.customize();
+
+                mTrafficCHLock.writeLock().lock();
+                try {
+                    customizer.apply();
+                    weighting.setSnapshot(snapshot);
+                } finally {
+                    mTrafficCHLock.writeLock().unlock();
+                }
+
+                LOGGER.info(String.format("Customized %d shortcuts of '%s' for traffic and added %d shortcuts in %d ms.", customizer.getShortcutsCount(), weighting.toString(), customizer.getAddedShortcutsCount(), System.currentTimeMillis() - startTime));
+            }
+        } finally {
+            endUseGH();
+        }
+    }
+
+    /**
+     * Returns the number of shortcuts the customizations have added to the traffic hierarchies since they were loaded.
+     */
+    public int getAddedTrafficCHShortcutsCount() {
+        int result = 0;
+        for (TrafficCHWeighting weighting : getTrafficCHWeightings()) {
+            Integer prepared = mPreparedTrafficCHShortcuts.get(weighting.toString());
+            if (prepared != null)
+                result += countTrafficCHShortcuts(weighting) - prepared;
+        }
+
+        return result;
+    }
+
+    private boolean exceedsTrafficCHGrowth() {
+        for (TrafficCHWeighting weighting : getTrafficCHWeightings()) {
+            Integer prepared = mPreparedTrafficCHShortcuts.get(weighting.toString());
+            if (prepared != null && countTrafficCHShortcuts(weighting) - prepared > MAX_TRAFFIC_CH_GROWTH * prepared)
+                return true;
+        }
+
+        return false;
+    }
+
+    private int countTrafficCHShortcuts(TrafficCHWeighting weighting) {
+        return TrafficCHCustomizer.countShortcuts(mGraphHopper.getGraphHopperStorage().getGraph(CHGraph.class, weighting));
+    }
+
+    /**
+     * Loads the graph again from its location, the customizations of the traffic hierarchies only change the graph in
+     * memory, so the hierarchies are loaded as they were prepared. Like a graph update, it waits for running requests.
+     */
+    private void reloadGH() throws Exception {
+        mUpdateRun = true;
+
+        try {
+            while (isGHUsed())
+                Thread.sleep(100);
+
+            GraphHopper ghOld = mGraphHopper;
+            ghOld.close();
+
+            RuntimeUtility.clearMemory(LOGGER);
+
+            RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
+            mGraphHopper = initGraphHopper(ghOld.getDataReaderFile(), _config, RoutingProfileManager.getInstance().getProfiles(), loadCntx);
+            mVehicleClassWeightings = findVehicleClassWeightings();
+            loadCntx.release();
+
+            mPreparedTrafficCHShortcuts.clear();
+        } finally {
+            mUpdateRun = false;
+        }
+    }
+
     private EdgeFilter createEdgeFilter(EdgeFilter edgeFilter, EdgeFilter seq) {
         if (seq != null && seq instanceof EdgeFilterSequence) {
             EdgeFilterSequence seqFilter = (EdgeFilterSequence) seq;
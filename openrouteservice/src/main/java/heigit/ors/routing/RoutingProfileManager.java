@@ -23,6 +23,7 @@ package heigit.ors.routing;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -35,7 +36,9 @@ import java.util.concurrent.Future;
 import heigit.ors.exceptions.RouteNotFoundException;
 import org.apache.log4j.Logger;
 
+import heigit.ors.routing.algorithms.SearchBudget;
 import heigit.ors.routing.parameters.VehicleParameters;
+import heigit.ors.routing.parameters.WheelchairParameters;
 import heigit.ors.routing.pathprocessors.ElevationSmoothPathProcessor;
 import heigit.ors.routing.pathprocessors.ExtraInfoProcessor;
 import heigit.ors.routing.configuration.RoutingManagerConfiguration;
@@ -54,6 +57,7 @@ import heigit.ors.optimization.RouteOptimizationResult;
 import heigit.ors.exceptions.InternalServerException;
 import heigit.ors.exceptions.ServerLimitExceededException;
 import heigit.ors.isochrones.IsochroneMap;
+import heigit.ors.isochrones.ReachableNetwork;
 import heigit.ors.routing.RoutingProfilesCollection;
 import heigit.ors.routing.RouteSearchParameters;
 import heigit.ors.routing.RoutingProfileType;
@@ -62,6 +66,7 @@ import heigit.ors.util.RuntimeUtility;
 import heigit.ors.util.TimeUtility;
 
 import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
 import com.graphhopper.routing.util.BikeCommonFlagEncoder;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.PathProcessor;
@@ -354,7 +359,11 @@ public class RoutingProfileManager {
         return null;
     }
 
-    public RouteResult computeRoute(RoutingRequest req) throws Exception {
+    /**
+     * Computes the route of the request and, if requested, its alternative routes, which are only computed between two
+     * locations.
+     */
+    public RouteResult[] computeRoute(RoutingRequest req) throws Exception {
         List<GHResponse> routes = new ArrayList<GHResponse>();
 
         RoutingProfile rp = getRouteProfile(req, false);
@@ -376,6 +385,7 @@ public class RoutingProfileManager {
         Coordinate c1;
         int nSegments = coords.length - 1;
         RouteProcessContext routeProcCntx = new RouteProcessContext(pathProcessor);
+        routeProcCntx.setSearchBudget(new SearchBudget(RoutingServiceSettings.getMaximumVisitedNodes(), RoutingServiceSettings.getMaximumSearchTime()));
         EdgeFilter customEdgeFilter = rp.createAccessRestrictionFilter(coords);
         GHResponse prevResp = null;
         WayPointBearing[] bearings = (req.getContinueStraight() || searchParams.getBearings() != null) ? new WayPointBearing[2] : null;
@@ -417,6 +427,8 @@ public class RoutingProfileManager {
                                         i + 1,
                                         FormatUtility.formatCoordinate(c1))
                         );
+                    } else if (SearchBudget.isExceeded(gr.getErrors())) {
+                        throw new ServerLimitExceededException(RoutingErrorCodes.REQUEST_EXCEEDS_SERVER_LIMIT, gr.getErrors().get(0).getMessage());
                     } else {
                         throw new InternalServerException(RoutingErrorCodes.UNKNOWN, gr.getErrors().get(0).getMessage());
                     }
@@ -439,7 +451,19 @@ public class RoutingProfileManager {
             c0 = c1;
         }
 
-        return new RouteResultBuilder().createRouteResult(routes, req, (pathProcessor != null && (pathProcessor instanceof ExtraInfoProcessor)) ? ((ExtraInfoProcessor) pathProcessor).getExtras() : null);
+        if (searchParams.hasAlternativeRoutes() && routes.size() == 1) {
+            List<PathWrapper> paths = routes.get(0).getAll();
+            RouteResult[] result = new RouteResult[paths.size()];
+            for (int i = 0; i < paths.size(); i++) {
+                GHResponse alternative = new GHResponse();
+                alternative.add(paths.get(i));
+                result[i] = new RouteResultBuilder().createRouteResult(Collections.singletonList(alternative), req, null);
+            }
+
+            return result;
+        }
+
+        return new RouteResult[] { new RouteResultBuilder().createRouteResult(routes, req, (pathProcessor != null && (pathProcessor instanceof ExtraInfoProcessor)) ? ((ExtraInfoProcessor) pathProcessor).getExtras() : null) };
     }
 
     private double getHeadingDirection(GHResponse resp) {
@@ -464,7 +488,7 @@ public class RoutingProfileManager {
         RouteSearchParameters searchParams = req.getSearchParameters();
         int profileType = searchParams.getProfileType();
 
-        boolean dynamicWeights = (searchParams.hasAvoidAreas() || searchParams.hasAvoidFeatures() || searchParams.hasAvoidBorders() || searchParams.hasAvoidCountries() || searchParams.getMaximumSpeed() > 0 || (RoutingProfileType.isDriving(profileType) && ((RoutingProfileType.isHeavyVehicle(profileType) && searchParams.getVehicleType() > 0) || searchParams.hasParameters(VehicleParameters.class) || searchParams.getConsiderTraffic())) || (searchParams.getWeightingMethod() == WeightingMethod.SHORTEST || searchParams.getWeightingMethod() == WeightingMethod.RECOMMENDED) || searchParams.getConsiderTurnRestrictions() /*|| RouteExtraInformationFlag.isSet(extraInfo, value) searchParams.getIncludeWaySurfaceInfo()*/);
+        boolean dynamicWeights = (searchParams.hasAvoidAreas() || searchParams.hasAvoidFeatures() || searchParams.hasAvoidBorders() || searchParams.hasAvoidCountries() || searchParams.getMaximumSpeed() > 0 || searchParams.hasParameters(WheelchairParameters.class) || (RoutingProfileType.isDriving(profileType) && ((RoutingProfileType.isHeavyVehicle(profileType) && searchParams.getVehicleType() > 0) || searchParams.hasParameters(VehicleParameters.class) || searchParams.getConsiderTraffic())) || (searchParams.getWeightingMethod() == WeightingMethod.SHORTEST || searchParams.getWeightingMethod() == WeightingMethod.RECOMMENDED) || searchParams.getConsiderTurnRestrictions() || searchParams.hasDeparture() /*|| RouteExtraInformationFlag.isSet(extraInfo, value) searchParams.getIncludeWaySurfaceInfo()*/);
 
         RoutingProfile rp = _routeProfiles.getRouteProfile(profileType, !dynamicWeights);
 
@@ -544,6 +568,13 @@ public class RoutingProfileManager {
         return rp.buildIsochrone(parameters, attributes);
     }
 
+    public ReachableNetwork computeReachableNetwork(IsochroneSearchParameters parameters) throws Exception {
+        int profileType = parameters.getRouteParameters().getProfileType();
+        RoutingProfile rp = _routeProfiles.getRouteProfile(profileType, false);
+
+        return rp.computeReachableNetwork(parameters);
+    }
+
     public MatrixResult computeMatrix(MatrixRequest req) throws Exception {
         RoutingProfile rp = _routeProfiles.getRouteProfile(req.getProfileType(), !req.getFlexibleMode());
 
@@ -41,6 +41,7 @@ public abstract class AbstractManyToManyRoutingAlgorithm implements ManyToManyRo
 	protected EdgeExplorer _inEdgeExplorer;
 	protected EdgeExplorer _outEdgeExplorer;
 	protected int _maxVisitedNodes = Integer.MAX_VALUE;
+	protected SearchBudget _searchBudget = SearchBudget.UNLIMITED;
 	private EdgeFilter _additionalEdgeFilter;
 
 	/**
@@ -66,6 +67,11 @@ public abstract class AbstractManyToManyRoutingAlgorithm implements ManyToManyRo
 		_maxVisitedNodes = numberOfNodes;
 	}
 
+	@Override
+	public void setSearchBudget(SearchBudget budget) {
+		_searchBudget = budget;
+	}
+
 	public AbstractManyToManyRoutingAlgorithm setEdgeFilter(EdgeFilter additionalEdgeFilter) {
 		_additionalEdgeFilter = additionalEdgeFilter;
 		return this;
@@ -40,6 +40,7 @@ public abstract class AbstractOneToManyRoutingAlgorithm implements OneToManyRout
     protected EdgeExplorer inEdgeExplorer;
     protected EdgeExplorer outEdgeExplorer;
     protected int maxVisitedNodes = Integer.MAX_VALUE;
+    protected SearchBudget searchBudget = SearchBudget.UNLIMITED;
     private EdgeFilter additionalEdgeFilter;
 
     /**
@@ -62,6 +63,11 @@ public abstract class AbstractOneToManyRoutingAlgorithm implements OneToManyRout
         this.maxVisitedNodes = numberOfNodes;
     }
 
+    @Override
+    public void setSearchBudget(SearchBudget budget) {
+        this.searchBudget = budget;
+    }
+
     public AbstractOneToManyRoutingAlgorithm setEdgeFilter(EdgeFilter additionalEdgeFilter) {
         this.additionalEdgeFilter = additionalEdgeFilter;
         return this;
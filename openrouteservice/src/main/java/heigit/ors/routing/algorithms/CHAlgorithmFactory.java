@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.util.PMap;
+
+import heigit.ors.routing.graphhopper.extensions.edgefilters.SearchBudgetEdgeFilter;
+
+/**
+ * Creates the algorithms for a prepared contraction hierarchy, adds the alternative routes, the checks of turn
+ * restrictions and of the {@link SearchBudget} of the request. GraphHopper
+ * only routes on a hierarchy with a {@link PrepareContractionHierarchies} as algorithm factory, so that the factory
+ * cannot simply wrap the prepared one. It is never prepared itself and leaves the default algorithms to the prepared
+ * hierarchy.
+ * <p>
+ * One factory is created per hierarchy when it is first used. The constructor of the preparation allocates the
+ * storage of the original edges of the shortcuts in a directory of its own, a segment of 1 MB, which is released
+ * right away since the factory never contracts the graph.
+ */
+public class CHAlgorithmFactory extends PrepareContractionHierarchies {
+	private final PrepareContractionHierarchies _prepareCH;
+	private final TurnCostExtension _turnCostExt;
+	private final int _nodesCount;
+
+	public CHAlgorithmFactory(PrepareContractionHierarchies prepareCH, GraphHopperStorage ghStorage, TurnCostExtension turnCostExt) {
+		this(new GHDirectory("", DAType.RAM_INT), prepareCH, ghStorage, turnCostExt);
+	}
+
+	private CHAlgorithmFactory(GHDirectory dir, PrepareContractionHierarchies prepareCH, GraphHopperStorage ghStorage, TurnCostExtension turnCostExt) {
+		super(dir, ghStorage, ghStorage.getGraph(CHGraph.class, prepareCH.getWeighting()), prepareCH.getWeighting(), TraversalMode.NODE_BASED);
+		// the original edges are only used while the graph is contracted
+		dir.clear();
+
+		_prepareCH = prepareCH;
+		_turnCostExt = turnCostExt;
+		_nodesCount = ghStorage.getNodes();
+	}
+
+	@Override
+	public RoutingAlgorithm createAlgo(Graph graph, AlgorithmOptions opts) {
+		SearchBudget budget = SearchBudget.fromHints(opts.getHints());
+		RoutingAlgorithm algo;
+		if (CHAlternativeRoute.NAME.equalsIgnoreCase(opts.getAlgorithm())) {
+			PMap hints = opts.getHints();
+			CHAlternativeRoute altRoute = new CHAlternativeRoute(graph, _prepareCH.getPrepareWeighting(), opts.getWeighting());
+			altRoute.setMaxPaths(hints.getInt(CHAlternativeRoute.MAX_PATHS, 2));
+			altRoute.setMaxWeightFactor(hints.getDouble(CHAlternativeRoute.MAX_WEIGHT_FACTOR, 1.4));
+			altRoute.setMaxShareFactor(hints.getDouble(CHAlternativeRoute.MAX_SHARE_FACTOR, 0.6));
+			altRoute.setMinPlateauFactor(hints.getDouble(CHAlternativeRoute.MIN_PLATEAU_FACTOR, 0.2));
+			altRoute.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+			altRoute.setSearchBudget(budget);
+			algo = altRoute;
+		} else {
+			algo = _prepareCH.createAlgo(graph, opts);
+			// the time is checked by a filter of its own, as GraphHopper does not necessarily pass the filter of the
+			// request to the algorithms of the hierarchy
+			if (budget.hasMaxSearchTime() && algo instanceof AbstractRoutingAlgorithm)
+				((AbstractRoutingAlgorithm) algo).setEdgeFilter(new SearchBudgetEdgeFilter(EdgeFilter.ALL_EDGES, budget));
+		}
+
+		if (budget.hasMaxVisitedNodes())
+			algo = new SearchBudgetAlgorithm(algo, budget);
+
+		// requests which consider turn restrictions only accept routes of the hierarchy without restricted turns
+		if (_turnCostExt != null && opts.getHints().getBool(TurnRestrictionsCheckAlgorithm.KEY, false))
+			algo = new TurnRestrictionsCheckAlgorithm(algo, opts.getWeighting().getFlagEncoder(), _turnCostExt, _nodesCount);
+
+		return algo;
+	}
+}
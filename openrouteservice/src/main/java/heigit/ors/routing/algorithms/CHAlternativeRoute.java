@@ -0,0 +1,376 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ch.Path4CH;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.LevelEdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Computes alternative routes on a contraction hierarchy with the via node approach. The upward searches from the
+ * start and the target continue as long as they can find routes within the allowed stretch, and every node reached
+ * by both of them is the via node of a candidate route. The candidates are accepted in the order of their weights if
+ * they
+ * <ul>
+ * <li>are simple paths,</li>
+ * <li>share at most the given part of the weight of the best route with the routes accepted before and</li>
+ * <li>are locally optimal, i.e. the part of the given length around the via node is a shortest path (T-test).</li>
+ * </ul>
+ * The parameters are read from the same hints as those of GraphHopper's AlternativeRoute, which is used without the
+ * hierarchy.
+ */
+public class CHAlternativeRoute implements RoutingAlgorithm {
+	public static final String NAME = "alternative_route";
+	public static final String MAX_PATHS = "alternative_route.max_paths";
+	public static final String MAX_WEIGHT_FACTOR = "alternative_route.max_weight_factor";
+	public static final String MAX_SHARE_FACTOR = "alternative_route.max_share_factor";
+	public static final String MIN_PLATEAU_FACTOR = "alternative_route.min_plateau_factor";
+
+	// many via nodes lie on the same routes, only those with the lowest weights are tested
+	private static final int MAX_CANDIDATES = 64;
+
+	private final Graph _graph;
+	private final Weighting _chWeighting;
+	private final Weighting _weighting;
+	private final LevelEdgeFilter _levelFilter;
+	private final EdgeExplorer _outExplorer;
+	private final EdgeExplorer _inExplorer;
+	private int _maxPaths = 2;
+	private double _maxWeightFactor = 1.4;
+	private double _maxShareFactor = 0.6;
+	private double _minPlateauFactor = 0.2;
+	private int _maxVisitedNodes = Integer.MAX_VALUE;
+	private int _visitedNodes;
+	private SearchBudget _searchBudget = SearchBudget.UNLIMITED;
+
+	/**
+	 * @param graph the query graph of the hierarchy
+	 * @param chWeighting the weighting of the shortcuts, see PrepareContractionHierarchies.getPrepareWeighting
+	 * @param weighting the weighting of the original edges
+	 */
+	public CHAlternativeRoute(Graph graph, Weighting chWeighting, Weighting weighting) {
+		_graph = graph;
+		_chWeighting = chWeighting;
+		_weighting = weighting;
+
+		CHGraph chGraph = graph instanceof QueryGraph ? (CHGraph) ((QueryGraph) graph).getMainGraph() : (CHGraph) graph;
+		_levelFilter = new LevelEdgeFilter(chGraph);
+		_outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), false, true));
+		_inExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(weighting.getFlagEncoder(), true, false));
+	}
+
+	public void setMaxPaths(int maxPaths) {
+		_maxPaths = maxPaths;
+	}
+
+	public void setMaxWeightFactor(double maxWeightFactor) {
+		_maxWeightFactor = maxWeightFactor;
+	}
+
+	public void setMaxShareFactor(double maxShareFactor) {
+		_maxShareFactor = maxShareFactor;
+	}
+
+	public void setMinPlateauFactor(double minPlateauFactor) {
+		_minPlateauFactor = minPlateauFactor;
+	}
+
+	/**
+	 * Stops the search with an exception once the time of the budget is used up.
+	 */
+	public void setSearchBudget(SearchBudget budget) {
+		_searchBudget = budget;
+	}
+
+	@Override
+	public Path calcPath(int from, int to) {
+		return calcPaths(from, to).get(0);
+	}
+
+	@Override
+	public List<Path> calcPaths(int from, int to) {
+		UpwardSearch fwd = new UpwardSearch(from, _outExplorer, false);
+		UpwardSearch bwd = new UpwardSearch(to, _inExplorer, true);
+		double bestWeight = search(fwd, bwd, _maxWeightFactor);
+
+		List<Path> paths = new ArrayList<Path>(_maxPaths);
+		if (Double.isInfinite(bestWeight)) {
+			paths.add(new Path4CH(_graph, _graph.getBaseGraph(), _weighting));
+			return paths;
+		}
+
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (IntObjectCursor<SPTEntry> c : fwd._entries) {
+			SPTEntry bwdEntry = bwd._entries.get(c.key);
+			if (bwdEntry != null && c.value.weight + bwdEntry.weight <= _maxWeightFactor * bestWeight)
+				candidates.add(new Candidate(c.value, bwdEntry));
+		}
+		Collections.sort(candidates);
+
+		// the first candidate is the best route
+		IntHashSet acceptedEdges = new IntHashSet();
+		for (int i = 0; i < candidates.size() && i < MAX_CANDIDATES && paths.size() < _maxPaths; i++) {
+			Candidate candidate = candidates.get(i);
+			ViaPath path = new ViaPath(from, to, candidate);
+			if (paths.isEmpty() || isAlternative(path, candidate.node, bestWeight, acceptedEdges)) {
+				for (EdgeIteratorState edge : path.calcEdges())
+					acceptedEdges.add(edge.getEdge());
+				paths.add(path);
+			}
+		}
+
+		return paths;
+	}
+
+	private boolean isAlternative(ViaPath path, int viaNode, double bestWeight, IntHashSet acceptedEdges) {
+		List<EdgeIteratorState> edges = path.calcEdges();
+		if (edges.isEmpty())
+			return false;
+
+		int[] nodes = new int[edges.size() + 1];
+		double[] weights = new double[edges.size() + 1];
+		IntHashSet visitedNodes = new IntHashSet(nodes.length);
+		double sharedWeight = 0;
+		int viaIndex = -1;
+
+		nodes[0] = edges.get(0).getBaseNode();
+		visitedNodes.add(nodes[0]);
+		for (int i = 0; i < edges.size(); i++) {
+			EdgeIteratorState edge = edges.get(i);
+			double weight = _weighting.calcWeight(edge, false, EdgeIterator.NO_EDGE);
+			if (acceptedEdges.contains(edge.getEdge()))
+				sharedWeight += weight;
+
+			nodes[i + 1] = edge.getAdjNode();
+			weights[i + 1] = weights[i] + weight;
+
+			// a route which visits a node twice is not simple
+			if (!visitedNodes.add(nodes[i + 1]))
+				return false;
+		}
+
+		if (sharedWeight > _maxShareFactor * bestWeight)
+			return false;
+
+		for (int i = 0; i < nodes.length && viaIndex < 0; i++) {
+			if (nodes[i] == viaNode)
+				viaIndex = i;
+		}
+
+		// the nodes closest to the via node which are at least the plateau length away from it
+		double plateau = _minPlateauFactor * bestWeight;
+		int start = viaIndex;
+		while (start > 0 && weights[viaIndex] - weights[start] < plateau)
+			start--;
+		int end = viaIndex;
+		while (end < nodes.length - 1 && weights[end] - weights[viaIndex] < plateau)
+			end++;
+
+		if (start == end)
+			return true;
+
+		UpwardSearch fwd = new UpwardSearch(nodes[start], _outExplorer, false);
+		UpwardSearch bwd = new UpwardSearch(nodes[end], _inExplorer, true);
+		double shortestWeight = search(fwd, bwd, 1);
+
+		return weights[end] - weights[start] <= shortestWeight + 1e-6 * Math.max(1, shortestWeight);
+	}
+
+	/**
+	 * Runs the upward searches until neither of them can reach a node with a weight below the given factor of the
+	 * best weight and returns the best weight.
+	 */
+	private double search(UpwardSearch fwd, UpwardSearch bwd, double maxWeightFactor) {
+		double bestWeight = Double.POSITIVE_INFINITY;
+
+		while (_visitedNodes < _maxVisitedNodes) {
+			double maxWeight = maxWeightFactor * bestWeight;
+			boolean fwdFinished = fwd.isFinished(maxWeight);
+			boolean bwdFinished = bwd.isFinished(maxWeight);
+			if (fwdFinished && bwdFinished)
+				break;
+
+			UpwardSearch search = fwdFinished ? bwd : (bwdFinished ? fwd : (fwd.getMinWeight() <= bwd.getMinWeight() ? fwd : bwd));
+			SPTEntry entry = search.settleNext();
+			SPTEntry other = (search == fwd ? bwd : fwd)._entries.get(entry.adj);
+			if (other != null)
+				bestWeight = Math.min(bestWeight, entry.weight + other.weight);
+		}
+
+		return bestWeight;
+	}
+
+	@Override
+	public void setMaxVisitedNodes(int numberOfNodes) {
+		_maxVisitedNodes = numberOfNodes;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public int getVisitedNodes() {
+		return _visitedNodes;
+	}
+
+	private class UpwardSearch {
+		private final IntObjectMap<SPTEntry> _entries = new GHIntObjectHashMap<SPTEntry>();
+		private final PriorityQueue<SPTEntry> _queue = new PriorityQueue<SPTEntry>();
+		private final EdgeExplorer _explorer;
+		private final boolean _reverse;
+
+		public UpwardSearch(int node, EdgeExplorer explorer, boolean reverse) {
+			_explorer = explorer;
+			_reverse = reverse;
+
+			SPTEntry entry = new SPTEntry(EdgeIterator.NO_EDGE, node, 0);
+			_entries.put(node, entry);
+			_queue.add(entry);
+		}
+
+		public boolean isFinished(double maxWeight) {
+			SPTEntry entry = peek();
+			return entry == null || entry.weight > maxWeight;
+		}
+
+		public double getMinWeight() {
+			return peek().weight;
+		}
+
+		/**
+		 * Returns the entry with the lowest weight. An entry which has been replaced by one with a lower weight is
+		 * left in the queue, as removing it from a PriorityQueue takes linear time, and is dropped here.
+		 */
+		private SPTEntry peek() {
+			SPTEntry entry = _queue.peek();
+			while (entry != null && _entries.get(entry.adj) != entry) {
+				_queue.poll();
+				entry = _queue.peek();
+			}
+
+			return entry;
+		}
+
+		public SPTEntry settleNext() {
+			peek();
+			SPTEntry curr = _queue.poll();
+			_visitedNodes++;
+			_searchBudget.checkTime(_visitedNodes);
+
+			EdgeIterator iter = _explorer.setBaseNode(curr.adj);
+			while (iter.next()) {
+				if (!_levelFilter.accept(iter))
+					continue;
+
+				double weight = curr.weight + _chWeighting.calcWeight(iter, _reverse, curr.edge);
+				if (Double.isInfinite(weight))
+					continue;
+
+				// a node is only improved before it is settled, so that no other entry refers to the replaced one
+				SPTEntry entry = _entries.get(iter.getAdjNode());
+				if (entry == null || entry.weight > weight) {
+					entry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight);
+					entry.parent = curr;
+					_entries.put(iter.getAdjNode(), entry);
+					_queue.add(entry);
+				}
+			}
+
+			return curr;
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+		private final int node;
+		private final double weight;
+		private final SPTEntry fwdEntry;
+		private final SPTEntry bwdEntry;
+
+		public Candidate(SPTEntry fwdEntry, SPTEntry bwdEntry) {
+			this.node = fwdEntry.adj;
+			this.weight = fwdEntry.weight + bwdEntry.weight;
+			this.fwdEntry = fwdEntry;
+			this.bwdEntry = bwdEntry;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			return Double.compare(weight, other.weight);
+		}
+	}
+
+	/**
+	 * The route from the start to the via node in the forward tree and from there to the target in the backward tree,
+	 * with the shortcuts unpacked.
+	 */
+	private class ViaPath extends Path4CH {
+		public ViaPath(int from, int to, Candidate candidate) {
+			super(_graph, _graph.getBaseGraph(), _weighting);
+
+			// the forward tree leads from the via node back to the start
+			IntArrayList edges = new IntArrayList();
+			IntArrayList nodes = new IntArrayList();
+			for (SPTEntry entry = candidate.fwdEntry; EdgeIterator.Edge.isValid(entry.edge); entry = entry.parent) {
+				edges.add(entry.edge);
+				nodes.add(entry.adj);
+			}
+
+			setFromNode(from);
+			int prevEdge = EdgeIterator.NO_EDGE;
+			for (int i = edges.size() - 1; i >= 0; i--) {
+				processEdge(edges.get(i), nodes.get(i), prevEdge);
+				prevEdge = edges.get(i);
+			}
+
+			// the backward tree leads from the via node to the target
+			for (SPTEntry entry = candidate.bwdEntry; EdgeIterator.Edge.isValid(entry.edge); entry = entry.parent) {
+				processEdge(entry.edge, entry.parent.adj, prevEdge);
+				prevEdge = entry.edge;
+			}
+
+			setEndNode(to);
+			setWeight(candidate.weight);
+			setFound(true);
+		}
+	}
+}
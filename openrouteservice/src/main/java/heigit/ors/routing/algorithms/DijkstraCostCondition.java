@@ -30,6 +30,7 @@ import com.graphhopper.storage.Graph;
 public class DijkstraCostCondition extends Dijkstra
 {
 	private double weightLimit = -1;
+	private SearchBudget searchBudget = SearchBudget.UNLIMITED;
     public DijkstraCostCondition(Graph g, Weighting weighting, double maxCost, boolean reverseDirection, TraversalMode tMode)
     {
         super(g, weighting, tMode, -1);
@@ -39,8 +40,44 @@ public class DijkstraCostCondition extends Dijkstra
         setReverseDirection(reverseDirection);
     }
 
+    /**
+     * Runs a single search from all given nodes, each of them starting with zero cost. Every node of the
+     * resulting tree is therefore reached from the nearest of the start nodes.
+     */
+    public void calcPaths(int[] from)
+    {
+        checkAlreadyRun();
+
+        for (int node : from)
+        {
+            if (fromMap.containsKey(node))
+                continue;
+
+            SPTEntry entry = createSPTEntry(node, 0);
+            fromMap.put(node, entry);
+            fromHeap.add(entry);
+        }
+
+        currEdge = fromHeap.poll();
+        runAlgo();
+    }
+
+    /**
+     * Stops the search with an exception if it visits more nodes than the budget allows or takes too long.
+     */
+    public void setSearchBudget(SearchBudget budget)
+    {
+        this.searchBudget = budget;
+    }
+
     @Override
     protected boolean finished() {
+        searchBudget.check(getVisitedNodes());
+
+        return isLimitReached();
+    }
+
+    private boolean isLimitReached() {
         return  super.finished() || currEdge.weight > weightLimit;
     }
     
@@ -51,7 +88,7 @@ public class DijkstraCostCondition extends Dijkstra
     
     public SPTEntry getCurrentEdge()
     {
-    	if (currEdge == null || !finished())
+    	if (currEdge == null || !isLimitReached())
     		return  null;
     	else
     		return currEdge;
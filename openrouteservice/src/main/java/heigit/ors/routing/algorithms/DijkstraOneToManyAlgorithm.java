@@ -116,6 +116,8 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
             if (isMaxVisitedNodesExceeded() || finished())
                 break;
 
+            searchBudget.checkTime(_visitedNodes);
+
             int startNode = _currEdge.adjNode;
             EdgeIterator iter = explorer.setBaseNode(startNode);
             while (iter.next()) {
@@ -35,6 +35,11 @@ public interface OneToManyRoutingAlgorithm {
      */
     void setMaxVisitedNodes(int numberOfNodes);
 
+    /**
+     * Stops the search with an exception once the time of the budget is used up.
+     */
+    void setSearchBudget(SearchBudget budget);
+
     /**
      * @return name of this algorithm
      */
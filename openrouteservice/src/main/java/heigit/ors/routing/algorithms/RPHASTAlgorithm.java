@@ -158,6 +158,8 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		if (_prioQueue.isEmpty())
 			return false;
 
+		_searchBudget.checkTime(_visitedCountFrom);
+
 		_currFrom = _prioQueue.poll();
 		fillEdgesUpward(_currFrom, _prioQueue, _bestWeightMapFrom, _outEdgeExplorer);
 		_visitedCountFrom++;
@@ -169,6 +171,8 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		if (_prioQueue.isEmpty())
 			return false;
 
+		_searchBudget.checkTime(_visitedCountTo);
+
 		_currTo = _prioQueue.poll();
 		fillEdgesDownward(_currTo, _prioQueue, _bestWeightMapFrom, _outEdgeExplorer);
 		_visitedCountTo++;
@@ -0,0 +1,150 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.List;
+
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.util.PMap;
+
+/**
+ * Limits the work of the searches of a single request to a number of visited nodes and a wall time. The budget is
+ * enforced cooperatively by the searches themselves: GraphHopper's algorithms get the budget as request hints, see
+ * {@link #putHints(PMap)}, are wrapped in a {@link SearchBudgetAlgorithm} and check the time through
+ * {@link heigit.ors.routing.graphhopper.extensions.edgefilters.SearchBudgetEdgeFilter}, while the algorithms of this
+ * package call {@link #checkTime(int)} in their loops. A search which exceeds the budget is stopped with an
+ * {@link ExceededException}.
+ * <p>
+ * A budget holds no state of the searches, so it can be shared by the searches of a request which run in parallel.
+ */
+public class SearchBudget {
+	public static final SearchBudget UNLIMITED = new SearchBudget(Integer.MAX_VALUE, 0);
+
+	// the clock is only read on every n-th check of a search, which are made for every visited node or edge
+	private static final int CLOCK_INTERVAL = 256;
+	// the node limit is read by GraphHopper, the time limit by the algorithm factories
+	private static final String MAX_VISITED_NODES = "routing.max_visited_nodes";
+	private static final String MAX_SEARCH_TIME = "search_budget.max_search_time";
+	private static final String DEADLINE = "search_budget.deadline";
+
+	private final int _maxVisitedNodes;
+	private final long _maxSearchTime;
+	private final long _deadline;
+
+	/**
+	 * @param maxVisitedNodes the maximum number of nodes a search of the request may visit
+	 * @param maxSearchTime the time in milliseconds after which the searches of the request are stopped, 0 for no limit
+	 */
+	public SearchBudget(int maxVisitedNodes, long maxSearchTime) {
+		this(maxVisitedNodes, maxSearchTime, maxSearchTime > 0 ? System.nanoTime() + maxSearchTime * 1000000L : 0);
+	}
+
+	private SearchBudget(int maxVisitedNodes, long maxSearchTime, long deadline) {
+		_maxVisitedNodes = maxVisitedNodes;
+		_maxSearchTime = maxSearchTime;
+		_deadline = deadline;
+	}
+
+	/**
+	 * Returns a budget with the limits and the deadline which have been put into the given hints of a request, or
+	 * {@link #UNLIMITED} if there are none.
+	 */
+	public static SearchBudget fromHints(PMap hints) {
+		int maxVisitedNodes = hints.getInt(MAX_VISITED_NODES, Integer.MAX_VALUE);
+		long deadline = hints.getLong(DEADLINE, 0);
+		if (maxVisitedNodes == Integer.MAX_VALUE && deadline == 0)
+			return UNLIMITED;
+
+		return new SearchBudget(maxVisitedNodes, hints.getLong(MAX_SEARCH_TIME, 0), deadline);
+	}
+
+	/**
+	 * Passes the limits to the searches of a request which are created by GraphHopper. The deadline is not moved, so
+	 * that all searches of the request share it.
+	 */
+	public void putHints(PMap hints) {
+		if (hasMaxVisitedNodes())
+			hints.put(MAX_VISITED_NODES, _maxVisitedNodes);
+		if (hasMaxSearchTime()) {
+			hints.put(MAX_SEARCH_TIME, _maxSearchTime);
+			hints.put(DEADLINE, _deadline);
+		}
+	}
+
+	public int getMaxVisitedNodes() {
+		return _maxVisitedNodes;
+	}
+
+	public boolean hasMaxVisitedNodes() {
+		return _maxVisitedNodes < Integer.MAX_VALUE;
+	}
+
+	public boolean hasMaxSearchTime() {
+		return _deadline != 0;
+	}
+
+	/**
+	 * Stops the search if the time of the budget is used up. The clock is only read if the given number of checks,
+	 * which the search counts itself, e.g. by its visited nodes, is a multiple of the clock interval.
+	 */
+	public void checkTime(int checks) {
+		if (_deadline != 0 && checks % CLOCK_INTERVAL == 0 && System.nanoTime() - _deadline > 0)
+			throw new ExceededException("The search has been stopped after " + _maxSearchTime + " ms.");
+	}
+
+	/**
+	 * Stops the search if it has visited more nodes than allowed or if the time of the budget is used up.
+	 */
+	public void check(int visitedNodes) {
+		if (visitedNodes > _maxVisitedNodes)
+			throw new ExceededException("The search has been stopped after visiting " + _maxVisitedNodes + " nodes.");
+
+		checkTime(visitedNodes);
+	}
+
+	/**
+	 * Stops the request if the given search of GraphHopper has been cut off by the node limit. GraphHopper's algorithms
+	 * stop once they have visited more nodes than allowed, and GraphHopper rejects the route if they have reached the
+	 * limit.
+	 */
+	public void checkVisitedNodes(RoutingAlgorithm algo) {
+		if (algo.getVisitedNodes() >= _maxVisitedNodes)
+			throw new ExceededException("The search has been stopped after visiting " + _maxVisitedNodes + " nodes.");
+	}
+
+	/**
+	 * Returns true if the first of the given errors of a response has been caused by an exhausted budget.
+	 */
+	public static boolean isExceeded(List<Throwable> errors) {
+		return !errors.isEmpty() && errors.get(0) instanceof ExceededException;
+	}
+
+	/**
+	 * Derives from IllegalArgumentException, so that GraphHopper adds it to the errors of the response.
+	 */
+	public static class ExceededException extends IllegalArgumentException {
+		private static final long serialVersionUID = -2771409427373508312L;
+
+		public ExceededException(String message) {
+			super(message);
+		}
+	}
+}
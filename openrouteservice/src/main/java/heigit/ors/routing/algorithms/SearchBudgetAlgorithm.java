@@ -0,0 +1,71 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.List;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+
+/**
+ * Fails a search of GraphHopper with an {@link SearchBudget.ExceededException} if it has been cut off by the node
+ * limit of the budget, before GraphHopper rejects the route with an error which could not be told apart from others.
+ */
+public class SearchBudgetAlgorithm implements RoutingAlgorithm {
+	private final RoutingAlgorithm _algo;
+	private final SearchBudget _budget;
+
+	public SearchBudgetAlgorithm(RoutingAlgorithm algo, SearchBudget budget) {
+		_algo = algo;
+		_budget = budget;
+	}
+
+	@Override
+	public Path calcPath(int from, int to) {
+		Path path = _algo.calcPath(from, to);
+		_budget.checkVisitedNodes(_algo);
+
+		return path;
+	}
+
+	@Override
+	public List<Path> calcPaths(int from, int to) {
+		List<Path> paths = _algo.calcPaths(from, to);
+		_budget.checkVisitedNodes(_algo);
+
+		return paths;
+	}
+
+	@Override
+	public void setMaxVisitedNodes(int numberOfNodes) {
+		_algo.setMaxVisitedNodes(numberOfNodes);
+	}
+
+	@Override
+	public String getName() {
+		return _algo.getName();
+	}
+
+	@Override
+	public int getVisitedNodes() {
+		return _algo.getVisitedNodes();
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.PriorityQueue;
+
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BeelineWeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+
+import heigit.ors.routing.graphhopper.extensions.weighting.TimeDependentWeighting;
+
+/**
+ * Forward A* search in which every edge is weighted at the time it is entered. As the speed profiles only slow down
+ * the traffic and travel times are computed FIFO-consistent, the beeline estimate with the free flow speed stays a
+ * lower bound and the first settling of the target is optimal for the departure time.
+ */
+public class TimeDependentAStar extends AbstractRoutingAlgorithm {
+	private final TimeDependentWeighting _tdWeighting;
+	private final BeelineWeightApproximator _approximator;
+	private IntObjectMap<TimeDependentEntry> _fromMap;
+	private PriorityQueue<TimeDependentEntry> _fromHeap;
+	private TimeDependentEntry _currEdge;
+	private int _visitedNodes;
+	private int _to = -1;
+
+	public TimeDependentAStar(Graph graph, TimeDependentWeighting weighting, TraversalMode tMode) {
+		super(graph, weighting, tMode);
+
+		_tdWeighting = weighting;
+		_approximator = new BeelineWeightApproximator(nodeAccess, weighting);
+		_approximator.setDistanceCalc(Helper.DIST_PLANE);
+
+		int size = Math.min(Math.max(200, graph.getNodes() / 10), 2000);
+		_fromMap = new IntObjectHashMap<TimeDependentEntry>(size);
+		_fromHeap = new PriorityQueue<TimeDependentEntry>(size);
+	}
+
+	@Override
+	public Path calcPath(int from, int to) {
+		checkAlreadyRun();
+
+		_to = to;
+		_approximator.setTo(to);
+		_currEdge = new TimeDependentEntry(EdgeIterator.NO_EDGE, from, _approximator.approximate(from), 0, _tdWeighting.getDeparture());
+		if (!traversalMode.isEdgeBased())
+			_fromMap.put(from, _currEdge);
+
+		runAlgo();
+		return extractPath();
+	}
+
+	private void runAlgo() {
+		EdgeExplorer explorer = outEdgeExplorer;
+
+		while (true) {
+			_visitedNodes++;
+			if (isMaxVisitedNodesExceeded() || finished())
+				return;
+
+			EdgeIterator iter = explorer.setBaseNode(_currEdge.adjNode);
+			while (iter.next()) {
+				if (!accept(iter, _currEdge.edge))
+					continue;
+
+				double weight = _tdWeighting.calcWeight(iter, false, _currEdge.edge, _currEdge.time);
+				if (Double.isInfinite(weight))
+					continue;
+
+				double visitedWeight = _currEdge.weightOfVisitedPath + weight;
+				int traversalId = traversalMode.createTraversalId(iter, false);
+				TimeDependentEntry entry = _fromMap.get(traversalId);
+
+				if (entry == null || entry.weightOfVisitedPath > visitedWeight) {
+					int neighborNode = iter.getAdjNode();
+					double estimation = visitedWeight + _approximator.approximate(neighborNode);
+					long time = _currEdge.time + _tdWeighting.calcMillis(iter, false, _currEdge.edge, _currEdge.time);
+
+					if (entry == null) {
+						entry = new TimeDependentEntry(iter.getEdge(), neighborNode, estimation, visitedWeight, time);
+						_fromMap.put(traversalId, entry);
+					} else {
+						_fromHeap.remove(entry);
+						entry.edge = iter.getEdge();
+						entry.weight = estimation;
+						entry.weightOfVisitedPath = visitedWeight;
+						entry.time = time;
+					}
+
+					entry.parent = _currEdge;
+					_fromHeap.add(entry);
+				}
+			}
+
+			if (_fromHeap.isEmpty())
+				return;
+
+			_currEdge = _fromHeap.poll();
+		}
+	}
+
+	@Override
+	protected boolean finished() {
+		return _currEdge.adjNode == _to;
+	}
+
+	@Override
+	protected Path extractPath() {
+		if (_currEdge == null || isMaxVisitedNodesExceeded() || !finished())
+			return createEmptyPath();
+
+		return new TimeDependentPath(graph, weighting, _currEdge.time - _tdWeighting.getDeparture())
+				.setWeight(_currEdge.weightOfVisitedPath).setSPTEntry(_currEdge).extract();
+	}
+
+	@Override
+	public int getVisitedNodes() {
+		return _visitedNodes;
+	}
+
+	@Override
+	public String getName() {
+		return "tdastar";
+	}
+
+	private static class TimeDependentEntry extends SPTEntry {
+		double weightOfVisitedPath;
+		// arrival time at the node in milliseconds since Monday 00:00
+		long time;
+
+		public TimeDependentEntry(int edgeId, int adjNode, double weightForHeap, double weightOfVisitedPath, long time) {
+			super(edgeId, adjNode, weightForHeap);
+
+			this.weightOfVisitedPath = weightOfVisitedPath;
+			this.time = time;
+		}
+
+		@Override
+		public double getWeightOfVisitedPath() {
+			return weightOfVisitedPath;
+		}
+	}
+
+	/**
+	 * Path with the travel time of the search instead of the sum of the edge times at the departure time.
+	 */
+	private static class TimeDependentPath extends Path {
+		private final long _travelTime;
+
+		public TimeDependentPath(Graph graph, Weighting weighting, long travelTime) {
+			super(graph, weighting);
+
+			_travelTime = travelTime;
+		}
+
+		@Override
+		public Path extract() {
+			super.extract();
+			time = _travelTime;
+			return this;
+		}
+	}
+}
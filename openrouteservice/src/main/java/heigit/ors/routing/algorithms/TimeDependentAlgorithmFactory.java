@@ -0,0 +1,50 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.storage.Graph;
+
+import heigit.ors.routing.graphhopper.extensions.weighting.TimeDependentWeighting;
+
+/**
+ * Creates a {@link TimeDependentAStar} for time dependent weightings and leaves all other requests to the given
+ * factory.
+ */
+public class TimeDependentAlgorithmFactory implements RoutingAlgorithmFactory {
+	private final RoutingAlgorithmFactory _defaultFactory;
+
+	public TimeDependentAlgorithmFactory(RoutingAlgorithmFactory defaultFactory) {
+		_defaultFactory = defaultFactory;
+	}
+
+	@Override
+	public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
+		if (!(opts.getWeighting() instanceof TimeDependentWeighting))
+			return _defaultFactory.createAlgo(g, opts);
+
+		TimeDependentAStar algo = new TimeDependentAStar(g, (TimeDependentWeighting) opts.getWeighting(), opts.getTraversalMode());
+		algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+		return algo;
+	}
+}
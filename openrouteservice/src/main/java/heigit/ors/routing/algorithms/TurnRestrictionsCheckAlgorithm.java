@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Checks the routes of a node based contraction hierarchy for turns which are restricted or have costs. A route
+ * without such turns is also the best route with turn costs, otherwise the search fails with a
+ * {@link RestrictedTurnException} before the route is processed, so that it can be repeated on the graph with turn
+ * costs. Alternative routes which pass such a turn are left out, only the best route has to be free of them.
+ */
+public class TurnRestrictionsCheckAlgorithm implements RoutingAlgorithm {
+	public static final String KEY = "turn_restrictions_check";
+
+	private final RoutingAlgorithm _algo;
+	private final FlagEncoder _encoder;
+	private final TurnCostExtension _turnCostExt;
+	private final int _nodesCount;
+
+	public TurnRestrictionsCheckAlgorithm(RoutingAlgorithm algo, FlagEncoder encoder, TurnCostExtension turnCostExt, int nodesCount) {
+		_algo = algo;
+		_encoder = encoder;
+		_turnCostExt = turnCostExt;
+		_nodesCount = nodesCount;
+	}
+
+	public static boolean hasRestrictedTurn(GHResponse resp) {
+		for (Throwable error : resp.getErrors()) {
+			if (error instanceof RestrictedTurnException)
+				return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public Path calcPath(int from, int to) {
+		return checkTurns(_algo.calcPath(from, to));
+	}
+
+	@Override
+	public List<Path> calcPaths(int from, int to) {
+		List<Path> paths = _algo.calcPaths(from, to);
+		if (paths.isEmpty())
+			return paths;
+
+		List<Path> result = new ArrayList<Path>(paths.size());
+		result.add(checkTurns(paths.get(0)));
+		for (int i = 1; i < paths.size(); i++) {
+			if (!hasRestrictedTurn(paths.get(i)))
+				result.add(paths.get(i));
+		}
+
+		return result;
+	}
+
+	private Path checkTurns(Path path) {
+		if (hasRestrictedTurn(path))
+			throw new RestrictedTurnException();
+
+		return path;
+	}
+
+	private boolean hasRestrictedTurn(Path path) {
+		if (!path.isFound())
+			return false;
+
+		int prevEdgeId = EdgeIterator.NO_EDGE;
+		for (EdgeIteratorState edge : path.calcEdges()) {
+			int edgeId = edge.getOriginalEdge();
+			int node = edge.getBaseNode();
+
+			// virtual nodes split an edge and do not have turn costs
+			if (prevEdgeId != EdgeIterator.NO_EDGE && node < _nodesCount) {
+				long flags = _turnCostExt.getTurnCostFlags(prevEdgeId, node, edgeId);
+				if (_encoder.isTurnRestricted(flags) || _encoder.getTurnCost(flags) > 0)
+					return true;
+			}
+
+			prevEdgeId = edgeId;
+		}
+
+		return false;
+	}
+
+	@Override
+	public void setMaxVisitedNodes(int numberOfNodes) {
+		_algo.setMaxVisitedNodes(numberOfNodes);
+	}
+
+	@Override
+	public String getName() {
+		return _algo.getName();
+	}
+
+	@Override
+	public int getVisitedNodes() {
+		return _algo.getVisitedNodes();
+	}
+
+	public static class RestrictedTurnException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		public RestrictedTurnException() {
+			super("The route passes a restricted turn.");
+		}
+	}
+}
@@ -216,6 +216,9 @@ public class RoutingManagerConfiguration
 			tic.MessagesDatasource = RoutingServiceSettings.getParameter("traffic.source");
 			tic.OutputDirectory = RoutingServiceSettings.getParameter("traffic.output_directory");
 			tic.UpdateInterval = Integer.parseInt(RoutingServiceSettings.getParameter("traffic.update_interval"));
+			String matchingThreads = RoutingServiceSettings.getParameter("traffic.matching_threads");
+			if (!Helper.isEmpty(matchingThreads))
+				tic.MatchingThreads = Integer.parseInt(matchingThreads);
 		}
 		gc.TrafficInfoConfig = tic;
 
@@ -30,6 +30,8 @@ public class TrafficInformationConfiguration {
 	public String OutputDirectory;
 	public Boolean Enabled = true;
 	public Integer UpdateInterval;
+	// number of threads used to match the TMC segments to the graph
+	public int MatchingThreads = Runtime.getRuntime().availableProcessors();
 	
 	public Properties getDataSourceProperties()
 	{
@@ -0,0 +1,138 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.AllEdgesIterator;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A regular grid over the bounds of a graph in which every cell lists the edges whose geometry envelope overlaps the
+ * cell. The edge ids of all cells are kept in a single array, so that the index needs about four bytes per edge and
+ * cell it touches.
+ */
+public class EdgeGridIndex {
+	// the grid is sized so that a cell contains this number of edges on average
+	private static final int EDGES_PER_CELL = 8;
+
+	private final Graph _graph;
+	private final double _minX, _minY, _cellWidth, _cellHeight;
+	private final int _columns, _rows;
+	private final int[] _cellStarts;
+	private final int[] _edgeIds;
+
+	public EdgeGridIndex(Graph graph) {
+		_graph = graph;
+
+		BBox bounds = graph.getBounds();
+		AllEdgesIterator iter = graph.getAllEdges();
+		int edgesCount = iter.getMaxId();
+
+		double width = Math.max(bounds.maxLon - bounds.minLon, 1e-6);
+		double height = Math.max(bounds.maxLat - bounds.minLat, 1e-6);
+		double cellSize = Math.sqrt(width * height * EDGES_PER_CELL / Math.max(edgesCount, 1));
+		_columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		_rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		_minX = bounds.minLon;
+		_minY = bounds.minLat;
+		_cellWidth = width / _columns;
+		_cellHeight = height / _rows;
+
+		// the cell range of every edge is kept until the cells have been filled, so that the geometries are only read
+		// once. The ends are exclusive, so that removed edges which are not iterated have an empty range.
+		int[] ranges = new int[4 * edgesCount];
+		int[] counts = new int[_columns * _rows + 1];
+		while (iter.next()) {
+			PointList pl = iter.fetchWayGeometry(3);
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int i = 0; i < pl.getSize(); i++) {
+				minX = Math.min(minX, pl.getLon(i));
+				minY = Math.min(minY, pl.getLat(i));
+				maxX = Math.max(maxX, pl.getLon(i));
+				maxY = Math.max(maxY, pl.getLat(i));
+			}
+
+			int p = 4 * iter.getEdge();
+			ranges[p] = getColumn(minX);
+			ranges[p + 1] = getRow(minY);
+			ranges[p + 2] = getColumn(maxX) + 1;
+			ranges[p + 3] = getRow(maxY) + 1;
+
+			for (int row = ranges[p + 1]; row < ranges[p + 3]; row++)
+				for (int col = ranges[p]; col < ranges[p + 2]; col++)
+					counts[row * _columns + col + 1]++;
+		}
+
+		for (int i = 1; i < counts.length; i++)
+			counts[i] += counts[i - 1];
+
+		_cellStarts = counts;
+		_edgeIds = new int[counts[counts.length - 1]];
+		int[] next = new int[_columns * _rows];
+		System.arraycopy(counts, 0, next, 0, next.length);
+
+		for (int edgeId = 0; edgeId < edgesCount; edgeId++) {
+			int p = 4 * edgeId;
+			for (int row = ranges[p + 1]; row < ranges[p + 3]; row++)
+				for (int col = ranges[p]; col < ranges[p + 2]; col++)
+					_edgeIds[next[row * _columns + col]++] = edgeId;
+		}
+	}
+
+	public Graph getGraph() {
+		return _graph;
+	}
+
+	/**
+	 * Passes every edge whose envelope may overlap the given envelope exactly once to the consumer.
+	 */
+	public void query(Envelope env, IntConsumer consumer) {
+		int minCol = getColumn(env.getMinX()), maxCol = getColumn(env.getMaxX());
+		int minRow = getRow(env.getMinY()), maxRow = getRow(env.getMaxY());
+		BitSet visited = new BitSet();
+
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int col = minCol; col <= maxCol; col++) {
+				int cell = row * _columns + col;
+				for (int i = _cellStarts[cell]; i < _cellStarts[cell + 1]; i++) {
+					int edgeId = _edgeIds[i];
+					if (!visited.get(edgeId)) {
+						visited.set(edgeId);
+						consumer.accept(edgeId);
+					}
+				}
+			}
+		}
+	}
+
+	private int getColumn(double x) {
+		return Math.max(0, Math.min(_columns - 1, (int) ((x - _minX) / _cellWidth)));
+	}
+
+	private int getRow(double y) {
+		return Math.max(0, Math.min(_rows - 1, (int) ((y - _minY) / _cellHeight)));
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import heigit.ors.routing.parameters.VehicleParameters;
+
+/**
+ * A class of heavy vehicles, e.g. trucks up to 7.5 t or hazmat trucks up to 40 t, for which a separate contraction
+ * hierarchy is prepared with the restrictions of the class applied. A request whose vehicle fits into a class can be
+ * answered with the hierarchy of the class instead of the flexible mode.
+ * <p>
+ * A class is configured as a list of attributes, e.g. "type=hgv;weight=7.5;height=3.5" or
+ * "type=hgv;weight=40;hazmat=true". A dimension which is not given is not restricted by the class.
+ */
+public class HeavyVehicleClass implements Comparable<HeavyVehicleClass> {
+	public static final String WEIGHTING_PREFIX = "vehicle_class_";
+
+	private final String _name;
+	private final int _vehicleType;
+	private final VehicleParameters _parameters;
+
+	public HeavyVehicleClass(String name, int vehicleType, VehicleParameters parameters) {
+		_name = name.toLowerCase();
+		_vehicleType = vehicleType;
+		_parameters = parameters;
+	}
+
+	public static HeavyVehicleClass parse(String name, String value) {
+		int vehicleType = HeavyVehicleAttributes.HGV;
+		VehicleParameters params = new VehicleParameters();
+
+		for (String kv : value.split(";")) {
+			String[] values = kv.split("=");
+			if (values.length != 2)
+				throw new IllegalArgumentException("Vehicle class '" + name + "' has an invalid attribute '" + kv + "'.");
+
+			String key = values[0].trim();
+			String val = values[1].trim();
+
+			switch (key) {
+			case "type":
+				vehicleType = HeavyVehicleAttributes.getFromString(val);
+				if (vehicleType == HeavyVehicleAttributes.UNKNOWN)
+					throw new IllegalArgumentException("Vehicle class '" + name + "' has an unknown vehicle type '" + val + "'.");
+				break;
+			case "length":
+				params.setLength(Double.parseDouble(val));
+				break;
+			case "width":
+				params.setWidth(Double.parseDouble(val));
+				break;
+			case "height":
+				params.setHeight(Double.parseDouble(val));
+				break;
+			case "weight":
+				params.setWeight(Double.parseDouble(val));
+				break;
+			case "axleload":
+				params.setAxleload(Double.parseDouble(val));
+				break;
+			case "hazmat":
+				if (Boolean.parseBoolean(val))
+					params.setLoadCharacteristics(VehicleLoadCharacteristicsFlags.HAZMAT);
+				break;
+			default:
+				throw new IllegalArgumentException("Vehicle class '" + name + "' has an unknown attribute '" + key + "'.");
+			}
+		}
+
+		return new HeavyVehicleClass(name, vehicleType, params);
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * Returns the name of the weighting whose contraction hierarchy is prepared for this class.
+	 */
+	public String getWeightingName() {
+		return WEIGHTING_PREFIX + _name;
+	}
+
+	public int getVehicleType() {
+		return _vehicleType;
+	}
+
+	public VehicleParameters getParameters() {
+		return _parameters;
+	}
+
+	public boolean hasHazmat() {
+		return VehicleLoadCharacteristicsFlags.isSet(_parameters.getLoadCharacteristics(), VehicleLoadCharacteristicsFlags.HAZMAT);
+	}
+
+	/**
+	 * Returns true if every road open to this class is open to the given vehicle as well, that is if the vehicle is
+	 * of the same type, none of its dimensions exceeds those of the class and it only carries hazardous goods if the
+	 * class does.
+	 */
+	public boolean covers(int vehicleType, VehicleParameters params) {
+		if (vehicleType != _vehicleType)
+			return false;
+
+		if (VehicleLoadCharacteristicsFlags.isSet(params.getLoadCharacteristics(), VehicleLoadCharacteristicsFlags.HAZMAT) && !hasHazmat())
+			return false;
+
+		return covers(_parameters.getLength(), params.getLength())
+				&& covers(_parameters.getWidth(), params.getWidth())
+				&& covers(_parameters.getHeight(), params.getHeight())
+				&& covers(_parameters.getWeight(), params.getWeight())
+				&& covers(_parameters.getAxleload(), params.getAxleload());
+	}
+
+	private static boolean covers(double classValue, double value) {
+		return value <= 0 || (classValue > 0 && value <= classValue);
+	}
+
+	/**
+	 * Orders the classes from the tightest to the widest by weight, axle load, height, width, length and hazmat, so
+	 * that the first class which covers a vehicle is the one with the fewest roads closed for it.
+	 */
+	@Override
+	public int compareTo(HeavyVehicleClass other) {
+		VehicleParameters p1 = _parameters, p2 = other._parameters;
+
+		int res = compare(p1.getWeight(), p2.getWeight());
+		if (res == 0)
+			res = compare(p1.getAxleload(), p2.getAxleload());
+		if (res == 0)
+			res = compare(p1.getHeight(), p2.getHeight());
+		if (res == 0)
+			res = compare(p1.getWidth(), p2.getWidth());
+		if (res == 0)
+			res = compare(p1.getLength(), p2.getLength());
+		if (res == 0)
+			res = Boolean.compare(hasHazmat(), other.hasHazmat());
+
+		return res;
+	}
+
+	private static int compare(double value1, double value2) {
+		// an unrestricted dimension is wider than any limit
+		return Double.compare(value1 > 0 ? value1 : Double.MAX_VALUE, value2 > 0 ? value2 : Double.MAX_VALUE);
+	}
+}
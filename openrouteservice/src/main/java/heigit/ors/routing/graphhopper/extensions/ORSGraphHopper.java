@@ -21,26 +21,31 @@
 package heigit.ors.routing.graphhopper.extensions;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
 
 import heigit.ors.mapmatching.RouteSegmentInfo;
 import heigit.ors.routing.RoutingProfile;
+import heigit.ors.routing.algorithms.TimeDependentAlgorithmFactory;
+import heigit.ors.routing.algorithms.CHAlgorithmFactory;
+import heigit.ors.routing.algorithms.SearchBudgetAlgorithmFactory;
 
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.HintsMap;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.TurnCostExtension;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.GHPoint;
@@ -48,10 +53,16 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 
 public class ORSGraphHopper extends GraphHopper {
+	private static Logger LOGGER = Logger.getLogger(ORSGraphHopper.class.getName());
 
 	private GraphProcessContext _procCntx;
-	private HashMap<Long, ArrayList<Integer>> osmId2EdgeIds; // one osm id can correspond to multiple edges 
-	private HashMap<Integer, Long> tmcEdges;
+	private boolean _useTmc;
+	private OsmIdEdgeIndex.Builder _osmIdIndexBuilder; // only used during the import
+	private OsmIdEdgeIndex _osmIdIndex = OsmIdEdgeIndex.EMPTY;
+	private EdgeGridIndex _edgeGridIndex;
+	private ORSWeightingFactory _weightingFactory;
+	private TurnCostExtension _turnCostExtension;
+	private final Map<PrepareContractionHierarchies, CHAlgorithmFactory> _chAlgoFactories = new ConcurrentHashMap<PrepareContractionHierarchies, CHAlgorithmFactory>();
 	
 	// A route profile for referencing which is used to extract names of adjacent streets and other objects.
 	private RoutingProfile refRouteProfile;
@@ -61,16 +72,15 @@ public class ORSGraphHopper extends GraphHopper {
 		this.refRouteProfile= refProfile;
 		this.forDesktop();
 		
-		if (useTmc){
-			tmcEdges = new HashMap<Integer, Long>(); 
-			osmId2EdgeIds = new HashMap<Long, ArrayList<Integer>>();
-		}
+		_useTmc = useTmc;
+		if (useTmc)
+			_osmIdIndexBuilder = new OsmIdEdgeIndex.Builder();
 		_procCntx.init(this);
 	}
 	
     protected DataReader createReader(GraphHopperStorage tmpGraph) {
 
-		return initDataReader(new ORSOSMReader(tmpGraph, _procCntx, tmcEdges, osmId2EdgeIds, refRouteProfile));
+		return initDataReader(new ORSOSMReader(tmpGraph, _procCntx, _osmIdIndexBuilder, refRouteProfile));
 	}
 	
 	public boolean load( String graphHopperFolder )
@@ -86,57 +96,89 @@ public class ORSGraphHopper extends GraphHopper {
         super.flush();
 	}
 
-	@SuppressWarnings("unchecked")
 	public GraphHopper importOrLoad() {
 		GraphHopper gh = super.importOrLoad();
-		
 
-		if ((tmcEdges != null) && (osmId2EdgeIds !=null)) {
-			java.nio.file.Path path = Paths.get(gh.getGraphHopperLocation(), "edges_ors_traffic");
+		if (_useTmc) {
+			String location = gh.getGraphHopperLocation();
 
-			if ((tmcEdges.size() == 0) || (osmId2EdgeIds.size()==0)) {
-				// try to load TMC edges from file.
-				
-				try {
-					File file = path.toFile();
-
-					if (file.exists())
-					{
-						FileInputStream fis = new FileInputStream(path.toString());
-						ObjectInputStream ois = new ObjectInputStream(fis);
-						tmcEdges = (HashMap<Integer, Long>)ois.readObject();
-						osmId2EdgeIds = (HashMap<Long, ArrayList<Integer>>)ois.readObject();	
-						ois.close();
-						fis.close();
-						System.out.printf("Serialized HashMap data is saved in trafficEdges");
-					}
-				} catch (IOException ioe) {
-					ioe.printStackTrace();
-				}
-				catch(ClassNotFoundException c)
-			      {
-			         System.out.println("Class not found");
-			         c.printStackTrace();
-			      }
-			} else {
-				// save TMC edges if needed.
-				try {
-					FileOutputStream fos = new FileOutputStream(path.toString());
-					ObjectOutputStream oos = new ObjectOutputStream(fos);
-					oos.writeObject(tmcEdges);
-					oos.writeObject(osmId2EdgeIds);
-					oos.close();
-					fos.close();
-					System.out.printf("Serialized HashMap data is saved in trafficEdges");
-				} catch (IOException ioe) {
-					ioe.printStackTrace();
-				}
-			}
+			if (_osmIdIndexBuilder.size() == 0)
+				convertLegacyTrafficEdges(location);
+			if (_osmIdIndexBuilder.size() > 0)
+				_osmIdIndexBuilder.write(location);
+			_osmIdIndexBuilder = null;
+
+			OsmIdEdgeIndex index = OsmIdEdgeIndex.load(location);
+			if (index != null)
+				_osmIdIndex = index;
+			else
+				LOGGER.warn("No index of OSM ids found in " + location + ", the graph has to be rebuilt in order to use traffic data.");
 		}
 
 		return gh;
 	}
-	
+
+	/**
+	 * Reads the edges of graphs built before {@link OsmIdEdgeIndex} was introduced, so that the index can be written
+	 * without rebuilding the graph.
+	 */
+	private void convertLegacyTrafficEdges(String location) {
+		File file = new File(location, OsmIdEdgeIndex.LEGACY_FILE_NAME);
+		if (!file.exists() || new File(location, OsmIdEdgeIndex.FILE_NAME).exists())
+			return;
+
+		try {
+			_osmIdIndexBuilder.addLegacyEdges(file);
+		} catch (IOException ex) {
+			LOGGER.warn("Unable to read " + file.getPath() + ": " + ex.getMessage());
+		}
+	}
+
+	@Override
+	public void close() {
+		super.close();
+
+		_osmIdIndex.close();
+	}
+
+	@Override
+	public RoutingAlgorithmFactory getAlgorithmFactory(HintsMap map) {
+		RoutingAlgorithmFactory factory = super.getAlgorithmFactory(map);
+
+		if (factory instanceof PrepareContractionHierarchies)
+			return _chAlgoFactories.computeIfAbsent((PrepareContractionHierarchies) factory, prepareCH -> new CHAlgorithmFactory(prepareCH, getGraphHopperStorage(), _turnCostExtension));
+
+		// requests with a departure time are answered by a time dependent search on the base graph
+		if (map.has("departure"))
+			factory = new TimeDependentAlgorithmFactory(factory);
+
+		return new SearchBudgetAlgorithmFactory(factory);
+	}
+
+	/**
+	 * Sets the factory of the weightings, which is kept so that matrix requests share its weightings and know its
+	 * vehicle classes and wheelchair presets.
+	 */
+	public void setWeightingFactory(ORSWeightingFactory weightingFactory) {
+		super.setWeightingFactory(weightingFactory);
+		_weightingFactory = weightingFactory;
+	}
+
+	public ORSWeightingFactory getWeightingFactory() {
+		return _weightingFactory;
+	}
+
+	/**
+	 * Returns the turn costs of the graph or null if it has been built without them.
+	 */
+	public TurnCostExtension getTurnCostExtension() {
+		return _turnCostExtension;
+	}
+
+	public void setTurnCostExtension(TurnCostExtension turnCostExtension) {
+		_turnCostExtension = turnCostExtension;
+	}
+
 	public RouteSegmentInfo getRouteSegment(double[] latitudes, double[] longitudes, String vehicle,
 			EdgeFilter edgeFilter) {
 		RouteSegmentInfo result = null;
@@ -201,11 +243,22 @@ public class ORSGraphHopper extends GraphHopper {
 		return result;
 	}
 
-	public HashMap<Integer, Long> getTmcGraphEdges() {
-		return tmcEdges;
+	/**
+	 * Returns the spatial index of the edges of the graph, which is built when the graph has been loaded.
+	 */
+	public EdgeGridIndex getEdgeGridIndex() {
+		return _edgeGridIndex;
 	}
-	
-	public HashMap<Long, ArrayList<Integer>> getOsmId2EdgeIds() {		
-		return osmId2EdgeIds;
+
+	public void setEdgeGridIndex(EdgeGridIndex edgeGridIndex) {
+		_edgeGridIndex = edgeGridIndex;
+	}
+
+	/**
+	 * Returns the index of the OSM ids of the edges which are relevant for traffic data, it is empty if TMC is not
+	 * used.
+	 */
+	public OsmIdEdgeIndex getOsmIdEdgeIndex() {
+		return _osmIdIndex;
 	}
 }
\ No newline at end of file
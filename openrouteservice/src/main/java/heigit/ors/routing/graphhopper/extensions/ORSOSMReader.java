@@ -45,8 +45,7 @@ public class ORSOSMReader extends OSMReader {
 	private static Logger LOGGER = Logger.getLogger(ORSOSMReader.class.getName());
 
 	private GraphProcessContext _procCntx;
-	private HashMap<Integer, Long> tmcEdges;
-	private HashMap<Long, ArrayList<Integer>> osmId2EdgeIds;
+	private OsmIdEdgeIndex.Builder osmIdIndex;
 	private RoutingProfile refProfile;
 	private boolean enrichInstructions;
 	private OSMDataReaderContext _readerCntx;
@@ -59,14 +58,13 @@ public class ORSOSMReader extends OSMReader {
 
 
 
-	public ORSOSMReader(GraphHopperStorage storage, GraphProcessContext procCntx, HashMap<Integer, Long> tmcEdges,  HashMap<Long, ArrayList<Integer>> osmId2EdgeIds, RoutingProfile refProfile) {
+	public ORSOSMReader(GraphHopperStorage storage, GraphProcessContext procCntx, OsmIdEdgeIndex.Builder osmIdIndex, RoutingProfile refProfile) {
 		super(storage);
 
 		setCalcDistance3D(false);
 		this._procCntx = procCntx;
 		this._readerCntx = new OSMDataReaderContext(this);
-		this.tmcEdges = tmcEdges;
-		this.osmId2EdgeIds = osmId2EdgeIds;
+		this.osmIdIndex = osmIdIndex;
 		this.refProfile = refProfile;
 
 		enrichInstructions = (refProfile != null) && (storage.getEncodingManager().supports("foot")
@@ -247,24 +245,14 @@ public class ORSOSMReader extends OSMReader {
 		}
 
 		try {
-			if ((tmcEdges != null) && (osmId2EdgeIds!=null)) {
+			if (osmIdIndex != null) {
 				String highwayValue = way.getTag("highway");
 
 				if (!Helper.isEmpty(highwayValue)) {
 
 					for (int i = 0; i < TMC_ROAD_TYPES.length; i++) {
 						if (TMC_ROAD_TYPES[i].equalsIgnoreCase(highwayValue)) {
-							tmcEdges.put(edge.getEdge(), way.getId());
-
-							if (osmId2EdgeIds.containsKey(way.getId())){
-								osmId2EdgeIds.get(way.getId()).add(edge.getEdge());
-
-							} else{								
-								ArrayList<Integer> edgeIds = new ArrayList<Integer>();
-								edgeIds.add(edge.getEdge()); 
-								osmId2EdgeIds.put(way.getId(), edgeIds);		
-							} 							
-
+							osmIdIndex.add(edge.getEdge(), way.getId());
 							break;
 						}
 					}
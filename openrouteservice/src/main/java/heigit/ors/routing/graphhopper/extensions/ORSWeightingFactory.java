@@ -27,8 +27,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import heigit.ors.routing.ProfileWeighting;
+import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
+import heigit.ors.routing.graphhopper.extensions.storages.SpeedProfilesGraphStorage;
 import heigit.ors.routing.graphhopper.extensions.weighting.*;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
 
@@ -50,17 +54,94 @@ import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
 
 public class ORSWeightingFactory extends DefaultWeightingFactory {
+	// the number of distinct hint combinations is small, the limit only protects against unexpected ones
+	private static final int MAX_CACHED_WEIGHTINGS = 1000;
+	// the hints read by the weightings, besides the options of the soft weightings
+	private static final String[] WEIGHTING_HINTS = { "weighting", "weighting_method", "custom_weightings", "max_speed", "heading_penalty" };
 
 	private RealTrafficDataProvider m_trafficDataProvider;
-	private Map<Object, TurnCostExtension> m_turnCostExtensions;
+	private ConcurrentHashMap<Object, TurnCostExtension> m_turnCostExtensions;
+	private ConcurrentHashMap<String, Weighting> m_weightings;
+	private Map<String, HeavyVehicleClass> m_vehicleClasses;
+	private Map<String, WheelchairPreset> m_wheelchairPresets;
 
 	public ORSWeightingFactory(RealTrafficDataProvider trafficProvider)
 	{
 		m_trafficDataProvider = trafficProvider;
-		m_turnCostExtensions = new HashMap<Object, TurnCostExtension>();
+		m_turnCostExtensions = new ConcurrentHashMap<Object, TurnCostExtension>();
+		m_weightings = new ConcurrentHashMap<String, Weighting>();
+		m_vehicleClasses = new HashMap<String, HeavyVehicleClass>();
+		m_wheelchairPresets = new HashMap<String, WheelchairPreset>();
 	}
 
+	/**
+	 * Registers a vehicle class, its weighting is created for the name returned by {@link HeavyVehicleClass#getWeightingName()}.
+	 */
+	public void addVehicleClass(HeavyVehicleClass vehicleClass)
+	{
+		m_vehicleClasses.put(vehicleClass.getWeightingName(), vehicleClass);
+	}
+
+	/**
+	 * Registers a wheelchair preset, its weighting is created for the name returned by {@link WheelchairPreset#getWeightingName()}.
+	 */
+	public void addWheelchairPreset(WheelchairPreset preset)
+	{
+		m_wheelchairPresets.put(preset.getWeightingName(), preset);
+	}
+
+	/**
+	 * Returns the weighting for the given hints. Weightings do not change once they have been created, so that the
+	 * same instance is shared by all requests with the same weighting related hints. Only the weightings which hold
+	 * the traffic or the departure time of a request are created anew.
+	 */
 	public Weighting createWeighting(HintsMap hintsMap, TraversalMode tMode, FlagEncoder encoder, Graph graph, LocationIndex locationIndex, GraphHopperStorage graphStorage) {
+		if (graphStorage == null || hintsMap.has("departure") || hintsMap.getBool("weighting_traffic_block", false) || TrafficCHWeighting.NAME.equalsIgnoreCase(hintsMap.getWeighting()))
+			return createWeightingInternal(hintsMap, tMode, encoder, graphStorage);
+
+		String key = getCacheKey(hintsMap, tMode, encoder);
+		Weighting result = m_weightings.get(key);
+		if (result == null) {
+			result = createWeightingInternal(hintsMap, tMode, encoder, graphStorage);
+			if (m_weightings.size() < MAX_CACHED_WEIGHTINGS) {
+				Weighting existing = m_weightings.putIfAbsent(key, result);
+				if (existing != null)
+					result = existing;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns a canonical signature of the hints which affect the weighting, ordered by their names. Hints which only
+	 * affect the search, e.g. whether the speed-up techniques are disabled or the limit of visited nodes, are left
+	 * out, so that they neither split the cache nor let it grow with every distinct value.
+	 */
+	static String getCacheKey(HintsMap hintsMap, TraversalMode tMode, FlagEncoder encoder) {
+		Map<String, String> hints = hintsMap.getMap();
+		TreeMap<String, String> weightingHints = new TreeMap<String, String>();
+		for (String name : WEIGHTING_HINTS) {
+			String value = hints.get(name);
+			if (value != null)
+				weightingHints.put(name, value);
+		}
+		if (hintsMap.getBool("custom_weightings", false)) {
+			for (Map.Entry<String, String> kv : hints.entrySet()) {
+				if (ProfileWeighting.decodeName(kv.getKey()) != null)
+					weightingHints.put(kv.getKey(), kv.getValue());
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(encoder.toString()).append('|').append(tMode.toString());
+		for (Map.Entry<String, String> kv : weightingHints.entrySet())
+			sb.append('|').append(kv.getKey()).append('=').append(kv.getValue());
+
+		return sb.toString();
+	}
+
+	private Weighting createWeightingInternal(HintsMap hintsMap, TraversalMode tMode, FlagEncoder encoder, GraphHopperStorage graphStorage) {
 		String strWeighting = hintsMap.get("weighting_method", "").toLowerCase();
 		if (Helper.isEmpty(strWeighting))
 			strWeighting = hintsMap.getWeighting();
@@ -73,10 +154,21 @@ public class ORSWeightingFactory extends DefaultWeightingFactory {
 		}
 		else if ("fastest".equalsIgnoreCase(strWeighting)) 
 		{
-			if (encoder.supports(PriorityWeighting.class))
-				result = new PriorityWeighting(encoder, hintsMap);
-	         else
-	        	 result = new FastestWeighting(encoder, hintsMap);
+			result = createFastestWeighting(encoder, hintsMap);
+		}
+		else if (TrafficCHWeighting.NAME.equalsIgnoreCase(strWeighting))
+		{
+			// the traffic is considered by the weighting itself, its snapshot is set when the hierarchy is customized
+			return new TrafficCHWeighting(encoder, hintsMap);
+		}
+		else if (m_vehicleClasses.containsKey(strWeighting))
+		{
+			// the roads closed for the class are removed from the fastest weighting, its hierarchy is only used for plain requests
+			return new HeavyVehicleClassWeighting(createFastestWeighting(encoder, hintsMap), encoder, m_vehicleClasses.get(strWeighting), graphStorage);
+		}
+		else if (m_wheelchairPresets.containsKey(strWeighting))
+		{
+			return new WheelchairPresetWeighting(createFastestWeighting(encoder, hintsMap), encoder, m_wheelchairPresets.get(strWeighting), graphStorage);
 		}
 		else  if ("priority".equalsIgnoreCase(strWeighting))
 		{
@@ -102,25 +194,13 @@ public class ORSWeightingFactory extends DefaultWeightingFactory {
 		if (hintsMap.getBool("weighting_traffic_block", false))
 		{
 			//String strPref = weighting.substring(weighting.indexOf("-") + 1);
-			result = new TrafficAvoidWeighting(result, encoder, m_trafficDataProvider.getAvoidEdges(graphStorage));
+			result = new TrafficAvoidWeighting(result, encoder, m_trafficDataProvider.getSnapshot(graphStorage));
 		}
 
 		if (encoder.supports(TurnWeighting.class) && !(encoder instanceof FootFlagEncoder) && graphStorage != null && !tMode.equals(TraversalMode.NODE_BASED)) {
-			Path path = Paths.get(graphStorage.getDirectory().getLocation(), "turn_costs");
-			File file = path.toFile();
-			if (file.exists()) {
-				TurnCostExtension turnCostExt = null;
-				synchronized (m_turnCostExtensions) {
-					turnCostExt = m_turnCostExtensions.get(graphStorage);
-					if (turnCostExt == null) {
-						turnCostExt = new TurnCostExtension();
-						turnCostExt.init(graphStorage, graphStorage.getDirectory());
-						m_turnCostExtensions.put(graphStorage, turnCostExt);
-					}
-				}
-
+			TurnCostExtension turnCostExt = getTurnCostExtension(graphStorage);
+			if (turnCostExt != null)
 				result = new TurnWeighting(result, turnCostExt);
-			}
 		}
 
 		// Apply soft weightings
@@ -170,9 +250,41 @@ public class ORSWeightingFactory extends DefaultWeightingFactory {
 			}
 		}
 
+		// historical speeds at the given departure time, the outermost weighting to be visible to the time dependent search
+		if (hintsMap.has("departure"))
+		{
+			SpeedProfilesGraphStorage speedProfiles = GraphStorageUtils.getGraphExtension(graphStorage, SpeedProfilesGraphStorage.class);
+			if (speedProfiles != null)
+				result = new TimeDependentWeighting(result, encoder, speedProfiles, hintsMap.getLong("departure", 0));
+		}
+
 		return result;
 	}
 
+	/**
+	 * Returns the turn costs of the given graph or null if it has been built without them.
+	 */
+	public TurnCostExtension getTurnCostExtension(GraphHopperStorage graphStorage) {
+		Path path = Paths.get(graphStorage.getDirectory().getLocation(), "turn_costs");
+		File file = path.toFile();
+		if (!file.exists())
+			return null;
+
+		return m_turnCostExtensions.computeIfAbsent(graphStorage, key -> {
+			TurnCostExtension ext = new TurnCostExtension();
+			ext.init(graphStorage, graphStorage.getDirectory());
+			return ext;
+		});
+	}
+
+	private static Weighting createFastestWeighting(FlagEncoder encoder, HintsMap hintsMap)
+	{
+		if (encoder.supports(PriorityWeighting.class))
+			return new PriorityWeighting(encoder, hintsMap);
+		else
+			return new FastestWeighting(encoder, hintsMap);
+	}
+
 	private PMap getWeightingProps(String weightingName, Map<String, String> map)
 	{
 		PMap res = new PMap();
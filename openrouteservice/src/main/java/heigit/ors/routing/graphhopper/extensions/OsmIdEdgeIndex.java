@@ -0,0 +1,254 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.GHDirectory;
+
+/**
+ * Maps the edges of a graph to the ids of the OSM ways they have been created from and vice versa. The index is
+ * written once at the end of the import into a file next to the graph and read through a memory mapping, so that it
+ * does not take up any heap.
+ * <p>
+ * The file holds three sorted tables: (edge id, osm id) pairs ordered by edge id, the distinct osm ids each with the
+ * position of its first edge in the third table, and the edge ids ordered by osm id. Both directions are looked up
+ * by binary search.
+ */
+public class OsmIdEdgeIndex {
+	public static final String FILE_NAME = "osm_edge_index";
+	// edge ids and osm ids of graphs built before this index existed, serialized as HashMap<Integer, Long>
+	public static final String LEGACY_FILE_NAME = "edges_ors_traffic";
+	public static final OsmIdEdgeIndex EMPTY = new OsmIdEdgeIndex(null, 0, 0);
+
+	private static final int VERSION = 1;
+	private static final int EDGE_ENTRY_BYTES = 12; // edge id, osm id
+	private static final int OSM_ENTRY_BYTES = 12; // osm id, position of the first edge
+	private static final int[] NO_EDGES = new int[0];
+
+	private final DataAccess _data;
+	private final int _edgesCount;
+	private final int _osmIdsCount;
+	private final long _osmIdsPointer;
+	private final long _edgeIdsPointer;
+
+	private OsmIdEdgeIndex(DataAccess data, int edgesCount, int osmIdsCount) {
+		_data = data;
+		_edgesCount = edgesCount;
+		_osmIdsCount = osmIdsCount;
+		_osmIdsPointer = (long) edgesCount * EDGE_ENTRY_BYTES;
+		_edgeIdsPointer = _osmIdsPointer + (long) osmIdsCount * OSM_ENTRY_BYTES;
+	}
+
+	/**
+	 * Opens the index stored in the given graph directory. Returns null if there is none or if it has been written
+	 * in a different format.
+	 */
+	public static OsmIdEdgeIndex load(String location) {
+		DataAccess data = new GHDirectory(location, DAType.MMAP_RO).find(FILE_NAME);
+		if (!data.loadExisting() || data.getHeader(0) != VERSION) {
+			data.close();
+			return null;
+		}
+
+		return new OsmIdEdgeIndex(data, data.getHeader(4), data.getHeader(8));
+	}
+
+	public int getEdgesCount() {
+		return _edgesCount;
+	}
+
+	/**
+	 * Returns the id of the OSM way of the given edge or -1 if the edge is not contained in the index.
+	 */
+	public long getOsmId(int edgeId) {
+		int low = 0, high = _edgesCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long pointer = (long) mid * EDGE_ENTRY_BYTES;
+			int value = _data.getInt(pointer);
+			if (value < edgeId)
+				low = mid + 1;
+			else if (value > edgeId)
+				high = mid - 1;
+			else
+				return getLong(pointer + 4);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the edges that have been created from the given OSM way, in the order of their ids.
+	 */
+	public int[] getEdgeIds(long osmId) {
+		int index = findOsmId(osmId);
+		if (index < 0)
+			return NO_EDGES;
+
+		long pointer = _osmIdsPointer + (long) index * OSM_ENTRY_BYTES;
+		int start = _data.getInt(pointer + 8);
+		int end = index + 1 < _osmIdsCount ? _data.getInt(pointer + OSM_ENTRY_BYTES + 8) : _edgesCount;
+
+		int[] edgeIds = new int[end - start];
+		for (int i = 0; i < edgeIds.length; i++)
+			edgeIds[i] = _data.getInt(_edgeIdsPointer + 4L * (start + i));
+
+		return edgeIds;
+	}
+
+	public boolean containsOsmId(long osmId) {
+		return findOsmId(osmId) >= 0;
+	}
+
+	private int findOsmId(long osmId) {
+		int low = 0, high = _osmIdsCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long value = getLong(_osmIdsPointer + (long) mid * OSM_ENTRY_BYTES);
+			if (value < osmId)
+				low = mid + 1;
+			else if (value > osmId)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+	private long getLong(long pointer) {
+		return ((long) _data.getInt(pointer) << 32) | (_data.getInt(pointer + 4) & 0xFFFFFFFFL);
+	}
+
+	public void close() {
+		if (_data != null)
+			_data.close();
+	}
+
+	/**
+	 * Collects the pairs of edge and OSM ids during the import in primitive arrays.
+	 */
+	public static class Builder {
+		private int[] _edgeIds = new int[1024];
+		private long[] _osmIds = new long[1024];
+		private int _size;
+
+		public void add(int edgeId, long osmId) {
+			if (_size == _edgeIds.length) {
+				_edgeIds = Arrays.copyOf(_edgeIds, _size * 2);
+				_osmIds = Arrays.copyOf(_osmIds, _size * 2);
+			}
+
+			_edgeIds[_size] = edgeId;
+			_osmIds[_size] = osmId;
+			_size++;
+		}
+
+		public int size() {
+			return _size;
+		}
+
+		/**
+		 * Adds the pairs of a graph built before this index was introduced, so that the index can be written without
+		 * rebuilding the graph.
+		 */
+		@SuppressWarnings("unchecked")
+		public void addLegacyEdges(File file) throws IOException {
+			try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+				HashMap<Integer, Long> tmcEdges = (HashMap<Integer, Long>) ois.readObject();
+				for (Map.Entry<Integer, Long> entry : tmcEdges.entrySet())
+					add(entry.getKey(), entry.getValue());
+			} catch (ClassNotFoundException ex) {
+				throw new IOException(ex);
+			}
+		}
+
+		/**
+		 * Writes the index into the given graph directory.
+		 */
+		public void write(String location) {
+			// order by edge id, the position of the pair is kept in the lower bits
+			long[] byEdge = new long[_size];
+			for (int i = 0; i < _size; i++)
+				byEdge[i] = ((long) _edgeIds[i] << 32) | i;
+			Arrays.sort(byEdge);
+
+			long[] osmIds = Arrays.copyOf(_osmIds, _size);
+			Arrays.sort(osmIds);
+			int osmIdsCount = 0;
+			for (int i = 0; i < _size; i++) {
+				if (i == 0 || osmIds[i] != osmIds[i - 1])
+					osmIds[osmIdsCount++] = osmIds[i];
+			}
+
+			// the edges of each osm id are counted first in order to place them in the order of their ids
+			int[] starts = new int[osmIdsCount + 1];
+			for (int i = 0; i < _size; i++)
+				starts[Arrays.binarySearch(osmIds, 0, osmIdsCount, _osmIds[i]) + 1]++;
+			for (int i = 0; i < osmIdsCount; i++)
+				starts[i + 1] += starts[i];
+
+			long osmIdsPointer = (long) _size * EDGE_ENTRY_BYTES;
+			long edgeIdsPointer = osmIdsPointer + (long) osmIdsCount * OSM_ENTRY_BYTES;
+
+			DataAccess data = new GHDirectory(location, DAType.MMAP).find(FILE_NAME);
+			data.create(1000);
+			data.ensureCapacity(edgeIdsPointer + 4L * _size);
+
+			int[] next = Arrays.copyOf(starts, osmIdsCount);
+			for (int i = 0; i < _size; i++) {
+				int pair = (int) byEdge[i];
+				long pointer = (long) i * EDGE_ENTRY_BYTES;
+				data.setInt(pointer, _edgeIds[pair]);
+				setLong(data, pointer + 4, _osmIds[pair]);
+
+				int osmIndex = Arrays.binarySearch(osmIds, 0, osmIdsCount, _osmIds[pair]);
+				data.setInt(edgeIdsPointer + 4L * next[osmIndex]++, _edgeIds[pair]);
+			}
+
+			for (int i = 0; i < osmIdsCount; i++) {
+				long pointer = osmIdsPointer + (long) i * OSM_ENTRY_BYTES;
+				setLong(data, pointer, osmIds[i]);
+				data.setInt(pointer + 8, starts[i]);
+			}
+
+			data.setHeader(0, VERSION);
+			data.setHeader(4, _size);
+			data.setHeader(8, osmIdsCount);
+			data.flush();
+			data.close();
+		}
+
+		private static void setLong(DataAccess data, long pointer, long value) {
+			data.setInt(pointer, (int) (value >>> 32));
+			data.setInt(pointer + 4, (int) value);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import heigit.ors.routing.parameters.WheelchairParameters;
+
+/**
+ * A named set of wheelchair restrictions for which the speed-up structures are prepared ahead of time. A preset is
+ * configured with the names of the request parameters, e.g.
+ * "maximum_incline=6;maximum_sloped_curb=0.06;surface_type=paved;smoothness_type=good". Requests with exactly these
+ * restrictions are answered with the prepared structures, all others in the flexible mode.
+ */
+public class WheelchairPreset {
+	public static final String WEIGHTING_PREFIX = "wheelchair_preset_";
+	// the incline is stored in whole percent and the curb height in centimetres, smaller differences do not matter
+	private static final float VALUE_TOLERANCE = 1e-3f;
+
+	private final String _name;
+	private final WheelchairParameters _parameters;
+
+	public WheelchairPreset(String name, WheelchairParameters parameters) {
+		_name = name.toLowerCase();
+		_parameters = parameters;
+	}
+
+	public static WheelchairPreset parse(String name, String value) {
+		WheelchairParameters params = new WheelchairParameters();
+
+		for (String kv : value.split(";")) {
+			String[] values = kv.split("=");
+			if (values.length != 2)
+				throw new IllegalArgumentException("Wheelchair preset '" + name + "' has an invalid attribute '" + kv + "'.");
+
+			String key = values[0].trim();
+			String val = values[1].trim();
+
+			switch (key) {
+			case "maximum_incline":
+				params.setMaximumIncline(Float.parseFloat(val));
+				break;
+			case "maximum_sloped_curb":
+				params.setMaximumSlopedCurb(Float.parseFloat(val));
+				break;
+			case "surface_type":
+				params.setSurfaceType(checkType(name, key, val, WheelchairTypesEncoder.getSurfaceType(val)));
+				break;
+			case "smoothness_type":
+				params.setSmoothnessType(checkType(name, key, val, WheelchairTypesEncoder.getSmoothnessType(val)));
+				break;
+			case "track_type":
+				params.setTrackType(checkType(name, key, val, WheelchairTypesEncoder.getTrackType(val)));
+				break;
+			default:
+				throw new IllegalArgumentException("Wheelchair preset '" + name + "' has an unknown attribute '" + key + "'.");
+			}
+		}
+
+		return new WheelchairPreset(name, params);
+	}
+
+	private static int checkType(String name, String key, String value, int type) {
+		if (type < 0)
+			throw new IllegalArgumentException("Wheelchair preset '" + name + "' has an unknown " + key + " '" + value + "'.");
+
+		return type;
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * Returns the name of the weighting whose speed-up structures are prepared for this preset.
+	 */
+	public String getWeightingName() {
+		return WEIGHTING_PREFIX + _name;
+	}
+
+	public WheelchairParameters getParameters() {
+		return _parameters;
+	}
+
+	/**
+	 * Returns true if the given parameters restrict exactly the same edges as the preset.
+	 */
+	public boolean matches(WheelchairParameters params) {
+		return equals(params.getMaximumIncline(), _parameters.getMaximumIncline())
+				&& equals(params.getMaximumSlopedCurb(), _parameters.getMaximumSlopedCurb())
+				&& params.getSurfaceType() == _parameters.getSurfaceType()
+				&& params.getSmoothnessType() == _parameters.getSmoothnessType()
+				&& params.getTrackType() == _parameters.getTrackType();
+	}
+
+	private static boolean equals(float value1, float value2) {
+		return Math.abs(value1 - value2) < VALUE_TOLERANCE;
+	}
+}
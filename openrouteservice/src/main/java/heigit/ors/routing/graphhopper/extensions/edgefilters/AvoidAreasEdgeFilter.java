@@ -21,9 +21,11 @@
 package heigit.ors.routing.graphhopper.extensions.edgefilters;
 
 import java.io.Serializable;
+import java.util.BitSet;
 
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PointList;
 
@@ -33,6 +35,10 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import heigit.ors.routing.graphhopper.extensions.EdgeGridIndex;
 
 public class AvoidAreasEdgeFilter implements EdgeFilter {
 
@@ -43,6 +49,9 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 	private Polygon[] polys;
 	private DefaultCoordinateSequence coordSequence;
 	private GeometryFactory geomFactory = new GeometryFactory();
+	// edges of the graph which lie in the areas, edges with larger ids (virtual edges) are tested one by one
+	private BitSet blockedEdges;
+	private int baseEdgesCount;
 	
 	private double eMinX = Double.MAX_VALUE;
 	private double eMinY = Double.MAX_VALUE;
@@ -57,6 +66,18 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 		this(encoder, true, true, polys);
 	}
 
+	/**
+	 * Creates an edges filter which looks up the edges in the areas before the search starts, so that the search
+	 * only has to test a bit for every edge of the graph.
+	 */
+	public AvoidAreasEdgeFilter(FlagEncoder encoder, Polygon[] polys, EdgeGridIndex edgeIndex)
+	{
+		this(encoder, true, true, polys);
+
+		if (env != null)
+			findBlockedEdges(edgeIndex);
+	}
+
 	public AvoidAreasEdgeFilter(FlagEncoder encoder, boolean in, boolean out, Polygon[] polys)
 	{
 		this.encoder = encoder;
@@ -91,6 +112,23 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 		}
 	}
 
+	private void findBlockedEdges(EdgeGridIndex edgeIndex)
+	{
+		Graph graph = edgeIndex.getGraph();
+		baseEdgesCount = graph.getAllEdges().getMaxId();
+		blockedEdges = new BitSet();
+
+		PreparedGeometry[] preparedPolys = new PreparedGeometry[polys.length];
+		for (int i = 0; i < polys.length; i++)
+			preparedPolys[i] = PreparedGeometryFactory.prepare(polys[i]);
+
+		edgeIndex.query(env, edgeId -> {
+			PointList pl = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE).fetchWayGeometry(3);
+			if (isInAreas(pl, preparedPolys))
+				blockedEdges.set(edgeId);
+		});
+	}
+
 	@Override
 	public final boolean accept(EdgeIteratorState iter )
 	{
@@ -99,87 +137,100 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 			if (env == null)
 				return true;
 
-			boolean inEnv = false;
+			int edgeId = iter.getEdge();
+			if (blockedEdges != null && edgeId < baseEdgesCount)
+				return !blockedEdges.get(edgeId);
+
 			//   PointList pl = iter.fetchWayGeometry(2); // does not work
-			PointList pl = iter.fetchWayGeometry(3);
-			int size = pl.getSize();
-			
-			eMinX = Double.MAX_VALUE;
-			eMinY = Double.MAX_VALUE;
-			eMaxX = Double.MIN_VALUE;
-			eMaxY = Double.MIN_VALUE;
+			return !isInAreas(iter.fetchWayGeometry(3), null);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns true if the edge geometry lies in or crosses one of the areas.
+	 *
+	 * @param preparedPolys the prepared areas or null in order to test against the areas themselves
+	 */
+	private boolean isInAreas(PointList pl, PreparedGeometry[] preparedPolys)
+	{
+		boolean inEnv = false;
+		int size = pl.getSize();
+		
+		eMinX = Double.MAX_VALUE;
+		eMinY = Double.MAX_VALUE;
+		eMaxX = Double.MIN_VALUE;
+		eMaxY = Double.MIN_VALUE;
 
-			for (int j = 0; j < pl.getSize(); j++)
+		for (int j = 0; j < pl.getSize(); j++)
+		{
+			double x = pl.getLon(j);
+			double y = pl.getLat(j);
+			if (env.contains(x, y))
 			{
-				double x = pl.getLon(j);
-				double y = pl.getLat(j);
-				if (env.contains(x, y))
-				{
-					inEnv = true;
-					break;
-				}
-				
-				if (x < eMinX)
-					eMinX = x;
-				if (y < eMinY)
-					 eMinY = y;
-				if (x > eMaxX)
-					eMaxX = x;
-				if (y > eMaxY)
-					eMaxY = y;
+				inEnv = true;
+				break;
 			}
+			
+			if (x < eMinX)
+				eMinX = x;
+			if (y < eMinY)
+				 eMinY = y;
+			if (x > eMaxX)
+				eMaxX = x;
+			if (y > eMaxY)
+				eMaxY = y;
+		}
 
-			if (inEnv || !(eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY()))
+		if (inEnv || !(eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY()))
+		{
+			if (size >= 2)
 			{
-				if (size >= 2)
+				// resize sequence if needed
+				coordSequence.resize(size);
+
+				for (int j = 0; j < size; j++)
 				{
-					// resize sequence if needed
-					coordSequence.resize(size);
+					double x = pl.getLon(j);
+					double y = pl.getLat(j);
+					Coordinate c =  coordSequence.getCoordinate(j);
 
-					for (int j = 0; j < size; j++)
+					if (c == null)
 					{
-						double x = pl.getLon(j);
-						double y = pl.getLat(j);
-						Coordinate c =  coordSequence.getCoordinate(j);
-
-						if (c == null)
-						{
-							c = new Coordinate(x, y);
-							coordSequence.setCoordinate(j, c);
-						}
-						else
-						{
-							c.x = x;
-							c.y = y;
-						}
+						c = new Coordinate(x, y);
+						coordSequence.setCoordinate(j, c);
 					}
-
-					LineString ls = geomFactory.createLineString(coordSequence);
-
-					for (int i = 0; i < polys.length; i++)
+					else
 					{
-						Polygon poly = polys[i];
-						if (poly.contains(ls) || ls.crosses(poly))
-						{
-							return false;
-						}
+						c.x = x;
+						c.y = y;
 					}
 				}
-				else
+
+				LineString ls = geomFactory.createLineString(coordSequence);
+
+				for (int i = 0; i < polys.length; i++)
 				{
-					return false;
+					Polygon poly = polys[i];
+					if (preparedPolys != null)
+					{
+						// the prepared geometry quickly rejects edges that do not touch the area at all
+						if (!preparedPolys[i].intersects(ls))
+							continue;
+						if (preparedPolys[i].contains(ls) || ls.crosses(poly))
+							return true;
+					}
+					else if (poly.contains(ls) || ls.crosses(poly))
+					{
+						return true;
+					}
 				}
 			}
-			/*else
+			else
 			{
-				// Check if edge geomery intersects env.
-				if (!(eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY()))
-				{
-					
-				}
-			}	*/			
-
-			return true;
+				return true;
+			}
 		}
 
 		return false;
@@ -20,58 +20,51 @@
  */
 package heigit.ors.routing.graphhopper.extensions.edgefilters;
 
-import java.util.List;
-
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.util.EdgeIteratorState;
 
 import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEncoder;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 
 public class BlockedEdgesEdgeFilter implements EdgeFilter {
 
 	private final boolean in;
 	private final boolean out;
 	private FlagEncoder encoder;
-	private List<Integer> blockedEdges;
-	private List<Integer> blockedEdges_hv;
+	private TrafficSnapshot trafficSnapshot;
+	private boolean heavyVehicle;
 
 	/**
-	 * edges (blockedEdges) for cars and heavy vehicles
-	 * edges_hv only for heavy vehicles 
+	 * Blocked edges of the snapshot apply to cars and heavy vehicles,
+	 * edges blocked for heavy vehicles only to heavy vehicles.
 	 **/
-	public BlockedEdgesEdgeFilter(FlagEncoder encoder, List<Integer> edges, List<Integer> edges_hv) {
+	public BlockedEdgesEdgeFilter(FlagEncoder encoder, TrafficSnapshot trafficSnapshot) {
 		
-		this(encoder, true, true, edges, edges_hv);
+		this(encoder, true, true, trafficSnapshot);
 	}
 	/**
 	 * Creates an edges filter which accepts both direction of the specified
 	 * vehicle.
 	 */
-	public BlockedEdgesEdgeFilter(FlagEncoder encoder, boolean in, boolean out, List<Integer> edges, List<Integer> edges_hv) {
+	public BlockedEdgesEdgeFilter(FlagEncoder encoder, boolean in, boolean out, TrafficSnapshot trafficSnapshot) {
 		
 		this.encoder = encoder;
 		this.in = in;
 		this.out = out;
-		this.blockedEdges = edges;
-		this.blockedEdges_hv = edges_hv;
+		this.trafficSnapshot = trafficSnapshot == null ? TrafficSnapshot.EMPTY : trafficSnapshot;
+		this.heavyVehicle = encoder instanceof HeavyVehicleFlagEncoder;
 	}
 
 	@Override
 	public boolean accept(EdgeIteratorState iter) {
 		if (out && iter.isForward(encoder) || in && iter.isBackward(encoder)) {
-            if (blockedEdges != null)
-            {
-            	if (blockedEdges.contains(iter.getOriginalEdge()))
-            		return false;
-            }
+            int edgeId = iter.getOriginalEdge();
+            if (trafficSnapshot.isBlocked(edgeId))
+            	return false;
             
-            if ((blockedEdges_hv.size()!=0) && ( encoder instanceof HeavyVehicleFlagEncoder))
-            {
-         
-            	if (blockedEdges_hv.contains(iter.getOriginalEdge()))
-            		return false;
-            }
+            if (heavyVehicle && trafficSnapshot.isBlockedForHeavyVehicles(edgeId))
+            	return false;
             
             return true;
 		}
@@ -0,0 +1,282 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.util.EdgeIteratorState;
+
+import heigit.ors.routing.AvoidFeatureFlags;
+import heigit.ors.routing.RouteSearchParameters;
+import heigit.ors.routing.RoutingProfileCategory;
+import heigit.ors.routing.RoutingProfileType;
+import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEncoder;
+import heigit.ors.routing.graphhopper.extensions.storages.BordersEdgeIndex;
+import heigit.ors.routing.graphhopper.extensions.storages.BordersGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
+import heigit.ors.routing.graphhopper.extensions.storages.HillIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.TollwaysGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.TrailDifficultyScaleGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.WayCategoryGraphStorage;
+import heigit.ors.routing.pathprocessors.BordersExtractor;
+import heigit.ors.routing.pathprocessors.TollwayExtractor;
+import heigit.ors.routing.traffic.TrafficSnapshot;
+
+/**
+ * Checks all attribute based restrictions of a request in a single filter, so that the search makes one call per edge
+ * instead of one call per restriction. It accepts the same edges as the combination of {@link AvoidFeaturesEdgeFilter},
+ * {@link AvoidBordersEdgeFilter}, {@link AvoidSteepnessEdgeFilter}, {@link TrailDifficultyEdgeFilter} and
+ * {@link BlockedEdgesEdgeFilter}: the avoided way categories are reduced to one mask for the profile category when the
+ * filter is built, the way category and the hill index of an edge are read only once and borders as well as avoided
+ * countries are looked up in the {@link BordersEdgeIndex}. Restrictions which are not compiled, e.g. avoid areas or
+ * vehicle dimensions, are passed on to their own filters.
+ */
+public final class CompiledEdgeFilter implements EdgeFilter {
+	private final FlagEncoder _encoder;
+	private final byte[] _buffer = new byte[10];
+
+	private final WayCategoryGraphStorage _wayCategories;
+	private final int _avoidCategories;
+	private final TollwayExtractor _tollways; // null if tollways are not avoided
+
+	private final BordersEdgeIndex _borders; // null if neither borders nor countries are avoided
+	private final BordersExtractor.Avoid _avoidBorders;
+	private final int[] _avoidedCountryEdges; // sorted, null if no countries are avoided
+
+	private final HillIndexGraphStorage _hillIndex; // null if neither steepness nor mtb difficulty are restricted
+	private final double _maximumSteepness;
+
+	private final TrailDifficultyScaleGraphStorage _trailDifficulty;
+	private final int _maximumTrailDifficulty;
+	private final boolean _hiking;
+
+	private final TrafficSnapshot _traffic;
+	private final boolean _heavyVehicle;
+
+	private final EdgeFilter _otherFilter;
+
+	private CompiledEdgeFilter(Builder builder, EdgeFilter otherFilter) {
+		_encoder = builder._encoder;
+		_wayCategories = builder._avoidCategories != 0 || builder._tollways != null ? builder._wayCategories : null;
+		_avoidCategories = builder._avoidCategories;
+		_tollways = builder._tollways;
+		_borders = builder._borders;
+		_avoidBorders = builder._avoidBorders;
+		_avoidedCountryEdges = builder._avoidedCountryEdges;
+		_hillIndex = builder._maximumSteepness >= 0 || (builder._trailDifficulty != null && !builder._hiking) ? builder._hillIndex : null;
+		_maximumSteepness = builder._maximumSteepness >= 0 ? builder._maximumSteepness : Double.MAX_VALUE;
+		_trailDifficulty = builder._trailDifficulty;
+		_maximumTrailDifficulty = builder._maximumTrailDifficulty;
+		_hiking = builder._hiking;
+		_traffic = builder._traffic;
+		_heavyVehicle = _encoder instanceof HeavyVehicleFlagEncoder;
+		_otherFilter = otherFilter;
+	}
+
+	@Override
+	public final boolean accept(EdgeIteratorState iter) {
+		if (!iter.isForward(_encoder) && !iter.isBackward(_encoder))
+			return false;
+
+		int edgeId = iter.getEdge();
+		int originalEdgeId = iter.getOriginalEdge();
+
+		if (_traffic != null && (_traffic.isBlocked(originalEdgeId) || (_heavyVehicle && _traffic.isBlockedForHeavyVehicles(originalEdgeId))))
+			return false;
+
+		if (_wayCategories != null) {
+			int categories = _wayCategories.getEdgeValue(edgeId, _buffer);
+			if ((categories & _avoidCategories) != 0)
+				return false;
+			if (_tollways != null && (categories & AvoidFeatureFlags.Tollways) != 0 && _tollways.getValue(edgeId) != 0)
+				return false;
+		}
+
+		int hillIndex = 0;
+		if (_hillIndex != null) {
+			boolean revert = iter.getBaseNode() < iter.getAdjNode();
+			hillIndex = _hillIndex.getEdgeValue(originalEdgeId, revert, _buffer);
+			if (hillIndex > _maximumSteepness)
+				return false;
+		}
+
+		if (_trailDifficulty != null) {
+			int value = _hiking ? _trailDifficulty.getHikingScale(originalEdgeId, _buffer) : _trailDifficulty.getMtbScale(originalEdgeId, _buffer, hillIndex > 0);
+			if (value > _maximumTrailDifficulty)
+				return false;
+		}
+
+		// only border crossing edges have countries assigned
+		if (_borders != null && _borders.isBorder(edgeId)) {
+			if (_avoidBorders == BordersExtractor.Avoid.ALL || (_avoidBorders == BordersExtractor.Avoid.CONTROLLED && _borders.isControlledBorder(edgeId)))
+				return false;
+			if (_avoidedCountryEdges != null && Arrays.binarySearch(_avoidedCountryEdges, edgeId) >= 0)
+				return false;
+		}
+
+		return _otherFilter == null || _otherFilter.accept(iter);
+	}
+
+	@Override
+	public String toString() {
+		return "COMPILED|" + _encoder;
+	}
+
+	/**
+	 * Returns the way categories which are avoided by {@link AvoidFeaturesEdgeFilter} for the given profile
+	 * category, except for tollways which also depend on the vehicle.
+	 */
+	static int getAvoidCategories(int avoidFeatureType, int profileCategory) {
+		int supported;
+		if (profileCategory == RoutingProfileCategory.DRIVING)
+			supported = AvoidFeatureFlags.Highways | AvoidFeatureFlags.Ferries | AvoidFeatureFlags.UnpavedRoads | AvoidFeatureFlags.Tracks
+					| AvoidFeatureFlags.Tunnels | AvoidFeatureFlags.Bridges | AvoidFeatureFlags.Borders | AvoidFeatureFlags.Fords;
+		else if (profileCategory == RoutingProfileCategory.CYCLING)
+			supported = AvoidFeatureFlags.Ferries | AvoidFeatureFlags.UnpavedRoads | AvoidFeatureFlags.PavedRoads | AvoidFeatureFlags.Steps
+					| AvoidFeatureFlags.Fords;
+		else if (profileCategory == RoutingProfileCategory.WALKING)
+			supported = AvoidFeatureFlags.Ferries | AvoidFeatureFlags.Steps | AvoidFeatureFlags.Fords;
+		else if (profileCategory == RoutingProfileCategory.WHEELCHAIR)
+			supported = AvoidFeatureFlags.Ferries;
+		else
+			supported = 0;
+
+		return avoidFeatureType & supported;
+	}
+
+	/**
+	 * Collects the restrictions of a request. Filters which cannot be compiled are added as they are and checked
+	 * after the compiled restrictions.
+	 */
+	public static class Builder {
+		private final FlagEncoder _encoder;
+		private final GraphStorage _graphStorage;
+		private final ArrayList<EdgeFilter> _otherFilters = new ArrayList<EdgeFilter>();
+		private boolean _empty = true;
+
+		private WayCategoryGraphStorage _wayCategories;
+		private int _avoidCategories;
+		private TollwayExtractor _tollways;
+		private BordersEdgeIndex _borders;
+		private BordersExtractor.Avoid _avoidBorders = BordersExtractor.Avoid.NONE;
+		private int[] _avoidedCountryEdges;
+		private HillIndexGraphStorage _hillIndex;
+		private double _maximumSteepness = -1;
+		private TrailDifficultyScaleGraphStorage _trailDifficulty;
+		private int _maximumTrailDifficulty;
+		private boolean _hiking;
+		private TrafficSnapshot _traffic;
+
+		public Builder(FlagEncoder encoder, GraphStorage graphStorage) {
+			_encoder = encoder;
+			_graphStorage = graphStorage;
+		}
+
+		public Builder avoidFeatures(RouteSearchParameters searchParams) {
+			_wayCategories = GraphStorageUtils.getGraphExtension(_graphStorage, WayCategoryGraphStorage.class);
+			if (_wayCategories == null)
+				return this;
+
+			int profileCategory = RoutingProfileCategory.getFromRouteProfile(RoutingProfileType.getFromEncoderName(_encoder.toString()));
+			_avoidCategories = getAvoidCategories(searchParams.getAvoidFeatureTypes(), profileCategory);
+
+			if (profileCategory == RoutingProfileCategory.DRIVING && (searchParams.getAvoidFeatureTypes() & AvoidFeatureFlags.Tollways) != 0) {
+				TollwaysGraphStorage extTollways = GraphStorageUtils.getGraphExtension(_graphStorage, TollwaysGraphStorage.class);
+				if (extTollways != null)
+					_tollways = new TollwayExtractor(extTollways, searchParams.getVehicleType(), searchParams.getProfileParameters());
+			}
+
+			_empty = false;
+			return this;
+		}
+
+		public Builder avoidBorders(RouteSearchParameters searchParams) {
+			BordersGraphStorage extBorders = GraphStorageUtils.getGraphExtension(_graphStorage, BordersGraphStorage.class);
+			if (extBorders == null)
+				return this;
+
+			_borders = extBorders.getEdgeIndex();
+			if (searchParams.hasAvoidBorders())
+				_avoidBorders = searchParams.getAvoidBorders();
+			if (searchParams.hasAvoidCountries())
+				_avoidedCountryEdges = _borders.getCountryEdges(searchParams.getAvoidCountries());
+
+			_empty = false;
+			return this;
+		}
+
+		public Builder maximumSteepness(double maximumSteepness) {
+			_hillIndex = GraphStorageUtils.getGraphExtension(_graphStorage, HillIndexGraphStorage.class);
+			if (_hillIndex != null) {
+				_maximumSteepness = maximumSteepness;
+				_empty = false;
+			}
+			return this;
+		}
+
+		public Builder maximumTrailDifficulty(int maximumScale) {
+			_trailDifficulty = GraphStorageUtils.getGraphExtension(_graphStorage, TrailDifficultyScaleGraphStorage.class);
+			if (_trailDifficulty != null) {
+				_maximumTrailDifficulty = maximumScale;
+				_hiking = RoutingProfileType.isWalking(RoutingProfileType.getFromEncoderName(_encoder.toString()));
+				if (_hillIndex == null)
+					_hillIndex = GraphStorageUtils.getGraphExtension(_graphStorage, HillIndexGraphStorage.class);
+				_empty = false;
+			}
+			return this;
+		}
+
+		public Builder blockedEdges(TrafficSnapshot snapshot) {
+			_traffic = snapshot == null ? TrafficSnapshot.EMPTY : snapshot;
+			_empty = false;
+			return this;
+		}
+
+		/**
+		 * Adds a filter which is not compiled.
+		 */
+		public Builder addFilter(EdgeFilter edgeFilter) {
+			if (edgeFilter != null)
+				_otherFilters.add(edgeFilter);
+			return this;
+		}
+
+		/**
+		 * Returns the filter for all restrictions or null if there are none.
+		 */
+		public EdgeFilter build() {
+			EdgeFilter otherFilter = null;
+			if (_otherFilters.size() == 1)
+				otherFilter = _otherFilters.get(0);
+			else if (_otherFilters.size() > 1)
+				otherFilter = new EdgeFilterSequence(_otherFilters);
+
+			if (_empty)
+				return otherFilter;
+
+			return new CompiledEdgeFilter(this, otherFilter);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.util.EdgeIteratorState;
+
+import heigit.ors.routing.algorithms.SearchBudget;
+
+/**
+ * Checks the time of a {@link SearchBudget} for every edge which is explored, so that the budget is also enforced
+ * inside the algorithms of GraphHopper. The filter counts the explored edges, so each search needs a filter of its own.
+ */
+public class SearchBudgetEdgeFilter implements EdgeFilter {
+	private final EdgeFilter _edgeFilter;
+	private final SearchBudget _budget;
+	private int _checks;
+
+	public SearchBudgetEdgeFilter(EdgeFilter edgeFilter, SearchBudget budget) {
+		_edgeFilter = edgeFilter;
+		_budget = budget;
+	}
+
+	@Override
+	public boolean accept(EdgeIteratorState iter) {
+		_budget.checkTime(++_checks);
+
+		return _edgeFilter.accept(iter);
+	}
+
+	@Override
+	public String toString() {
+		return "search budget, " + _edgeFilter;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.storages;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+
+/**
+ * The border crossing edges of a {@link BordersGraphStorage} as bit sets and, for every country, the sorted ids of
+ * the edges that cross one of its borders. Only border crossing edges have countries assigned, so that the lists of
+ * the countries are short and a request that avoids countries can merge them into one list once.
+ */
+public class BordersEdgeIndex {
+	private static final int[] NO_EDGES = new int[0];
+
+	private final BitSet _borderEdges = new BitSet();
+	private final BitSet _controlledBorderEdges = new BitSet();
+	private final IntObjectHashMap<int[]> _countryEdges = new IntObjectHashMap<int[]>();
+
+	public BordersEdgeIndex(BordersGraphStorage storage) {
+		IntObjectHashMap<IntArrayList> countryEdges = new IntObjectHashMap<IntArrayList>();
+
+		int edgesCount = storage.getEdgesCapacity();
+		for (int edgeId = 0; edgeId < edgesCount; edgeId++) {
+			int type = storage.getEdgeValue(edgeId, BordersGraphStorage.Property.TYPE);
+			if (type != BordersGraphStorage.OPEN_BORDER && type != BordersGraphStorage.CONTROLLED_BORDER)
+				continue;
+
+			_borderEdges.set(edgeId);
+			if (type == BordersGraphStorage.CONTROLLED_BORDER)
+				_controlledBorderEdges.set(edgeId);
+
+			int start = storage.getEdgeValue(edgeId, BordersGraphStorage.Property.START);
+			int end = storage.getEdgeValue(edgeId, BordersGraphStorage.Property.END);
+			addCountryEdge(countryEdges, start, edgeId);
+			if (end != start)
+				addCountryEdge(countryEdges, end, edgeId);
+		}
+
+		// the edges are added in the order of their ids
+		for (IntObjectCursor<IntArrayList> c : countryEdges)
+			_countryEdges.put(c.key, c.value.toArray());
+	}
+
+	private static void addCountryEdge(IntObjectHashMap<IntArrayList> countryEdges, int country, int edgeId) {
+		IntArrayList edges = countryEdges.get(country);
+		if (edges == null) {
+			edges = new IntArrayList();
+			countryEdges.put(country, edges);
+		}
+		edges.add(edgeId);
+	}
+
+	public boolean isBorder(int edgeId) {
+		return edgeId >= 0 && _borderEdges.get(edgeId);
+	}
+
+	public boolean isControlledBorder(int edgeId) {
+		return edgeId >= 0 && _controlledBorderEdges.get(edgeId);
+	}
+
+	/**
+	 * Returns the sorted ids of the edges which cross a border of any of the given countries.
+	 */
+	public int[] getCountryEdges(int[] countries) {
+		if (countries.length == 1)
+			return _countryEdges.getOrDefault(countries[0], NO_EDGES);
+
+		IntArrayList edges = new IntArrayList();
+		for (int country : countries) {
+			int[] countryEdges = _countryEdges.get(country);
+			if (countryEdges != null)
+				edges.add(countryEdges, 0, countryEdges.length);
+		}
+
+		int[] result = edges.toArray();
+		Arrays.sort(result);
+		return result;
+	}
+}
@@ -45,6 +45,7 @@ public class BordersGraphStorage implements GraphExtension {
 	private DataAccess orsEdges;
 	private int edgeEntryBytes;
 	private int edgesCount; // number of edges with custom values
+	private volatile BordersEdgeIndex edgeIndex; // built on first use
 
 	public BordersGraphStorage() {
 		//EF_BORDER = 0;
@@ -110,6 +111,30 @@ public class BordersGraphStorage implements GraphExtension {
 
 	}
 
+	/**
+	 * Returns the number of edges the storage has room for, edges with larger ids have no border values.
+	 */
+	public int getEdgesCapacity() {
+		return (int) (orsEdges.getCapacity() / edgeEntryBytes);
+	}
+
+	/**
+	 * Returns the index of the border crossing edges. It is built when it is requested for the first time, which
+	 * must not happen before the values of all edges have been set.
+	 */
+	public BordersEdgeIndex getEdgeIndex() {
+		BordersEdgeIndex index = edgeIndex;
+		if (index == null) {
+			synchronized (this) {
+				if (edgeIndex == null)
+					edgeIndex = new BordersEdgeIndex(this);
+				index = edgeIndex;
+			}
+		}
+
+		return index;
+	}
+
 	/**
 	 * @return true, if and only if, if an additional field at the graphs node storage is required
 	 */
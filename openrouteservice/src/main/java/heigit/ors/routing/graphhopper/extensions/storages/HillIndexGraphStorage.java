@@ -39,6 +39,7 @@ public class HillIndexGraphStorage implements GraphExtension {
 	protected int _maxHillIndex = 15;
 
 	private byte[] byteValues;
+	private volatile byte[][] edgeLevels;
 
 	public HillIndexGraphStorage(Map<String, String> parameters) {
 		EF_HILLINDEX = 0;
@@ -149,6 +150,32 @@ public class HillIndexGraphStorage implements GraphExtension {
 		}
 	}
 
+	/**
+	 * Returns the hill index of every edge in the given direction in an array indexed by the edge id, so that
+	 * weightings do not need to read the storage. The arrays are built when they are requested for the first time,
+	 * which must not happen before the values of all edges have been set.
+	 */
+	public byte[] getEdgeLevels(boolean reverse) {
+		byte[][] levels = edgeLevels;
+		if (levels == null) {
+			synchronized (this) {
+				if (edgeLevels == null) {
+					byte[] buffer = new byte[2];
+					int count = (int) (orsEdges.getCapacity() / edgeEntryBytes);
+					byte[][] values = new byte[2][count];
+					for (int edgeId = 0; edgeId < count; edgeId++) {
+						values[0][edgeId] = (byte) getEdgeValue(edgeId, false, buffer);
+						values[1][edgeId] = (byte) getEdgeValue(edgeId, true, buffer);
+					}
+					edgeLevels = values;
+				}
+				levels = edgeLevels;
+			}
+		}
+
+		return levels[reverse ? 1 : 0];
+	}
+
 	public boolean isRequireNodeField() {
 		return true;
 	}
@@ -38,6 +38,7 @@ public class NoiseIndexGraphStorage implements GraphExtension {
     private int edgesCount; // number of edges with custom values
 
     private byte[] byteValues;
+    private volatile byte[] edgeLevels;
 
     public NoiseIndexGraphStorage() {
         EF_noiseIndex = 0;
@@ -70,6 +71,29 @@ public class NoiseIndexGraphStorage implements GraphExtension {
         return buffer[0];
     }
 
+    /**
+     * Returns the noise level of every edge in an array indexed by the edge id, so that weightings do not need to read the
+     * storage. It is built when it is requested for the first time, which must not happen before the values of all
+     * edges have been set.
+     */
+    public byte[] getEdgeLevels() {
+        byte[] levels = edgeLevels;
+        if (levels == null) {
+            synchronized (this) {
+                if (edgeLevels == null) {
+                    byte[] buffer = new byte[1];
+                    byte[] values = new byte[(int) (orsEdges.getCapacity() / edgeEntryBytes)];
+                    for (int edgeId = 0; edgeId < values.length; edgeId++)
+                        values[edgeId] = (byte) getEdgeValue(edgeId, buffer);
+                    edgeLevels = values;
+                }
+                levels = edgeLevels;
+            }
+        }
+
+        return levels;
+    }
+
     /**
      * @return true, if and only if, if an additional field at the graphs node storage is required
      */
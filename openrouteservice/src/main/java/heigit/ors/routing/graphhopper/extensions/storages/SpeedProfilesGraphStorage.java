@@ -0,0 +1,291 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.storages;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphExtension;
+
+/**
+ * Historical speeds of the edges as shared weekly patterns. Every edge only stores the ids of the patterns of both of
+ * its directions, a pattern holds the speed in percent of the free flow speed for each interval of a week, starting
+ * on Monday 00:00 local time. Pattern id 0 means that the speed of the edge does not depend on the time.
+ */
+public class SpeedProfilesGraphStorage implements GraphExtension {
+	public static final int INTERVALS_PER_DAY = 96;
+	public static final int INTERVALS_PER_WEEK = 7 * INTERVALS_PER_DAY;
+	public static final long INTERVAL_MILLIS = 24 * 3600 * 1000L / INTERVALS_PER_DAY;
+	public static final long WEEK_MILLIS = INTERVALS_PER_WEEK * INTERVAL_MILLIS;
+	public static final int MAX_PATTERNS = 0xFFFF;
+
+	/* pointer for no entry */
+	protected final int NO_ENTRY = -1;
+	// pattern of the direction from the node with the smaller id to the one with the larger id and vice versa
+	private final int EF_ASC_PATTERN = 0;
+	private final int EF_DESC_PATTERN = 2;
+
+	private DataAccess orsEdges;
+	private DataAccess orsPatterns;
+	private int edgeEntryBytes;
+	private int edgesCount; // number of edges with custom values
+	private int patternsCount;
+
+	// the patterns are small compared to the edges and are kept in memory, the first one is unused
+	private byte[] _patterns;
+
+	public SpeedProfilesGraphStorage() {
+		edgeEntryBytes = EF_DESC_PATTERN + 2;
+		edgesCount = 0;
+		patternsCount = 0;
+		_patterns = new byte[INTERVALS_PER_WEEK];
+	}
+
+	/**
+	 * Adds a pattern and returns its id.
+	 *
+	 * @param speeds the speeds in percent of the free flow speed, either for every interval of a week or for the
+	 *               intervals of a day which are then used for every day of the week
+	 */
+	public int addPattern(byte[] speeds) {
+		if (speeds.length != INTERVALS_PER_WEEK && speeds.length != INTERVALS_PER_DAY)
+			throw new IllegalArgumentException("A speed pattern must have " + INTERVALS_PER_DAY + " or " + INTERVALS_PER_WEEK + " values.");
+		if (patternsCount >= MAX_PATTERNS)
+			throw new IllegalStateException("The number of speed patterns must not be greater than " + MAX_PATTERNS + ".");
+
+		patternsCount++;
+		int offset = patternsCount * INTERVALS_PER_WEEK;
+		if (_patterns.length < offset + INTERVALS_PER_WEEK) {
+			byte[] patterns = new byte[Math.max(offset + INTERVALS_PER_WEEK, _patterns.length * 2)];
+			System.arraycopy(_patterns, 0, patterns, 0, _patterns.length);
+			_patterns = patterns;
+		}
+
+		for (int i = 0; i < INTERVALS_PER_WEEK; i++) {
+			int speed = speeds[i % speeds.length];
+			// profiles only slow down the traffic, this keeps the free flow speed a lower bound for goal directed searches
+			_patterns[offset + i] = (byte) Math.max(1, Math.min(100, speed));
+		}
+
+		return patternsCount;
+	}
+
+	public int getPatternsCount() {
+		return patternsCount;
+	}
+
+	public void setEdgeValue(int edgeId, int ascPattern, int descPattern) {
+		edgesCount++;
+		ensureEdgesIndex(edgeId);
+
+		long edgePointer = (long) edgeId * edgeEntryBytes;
+		orsEdges.setShort(edgePointer + EF_ASC_PATTERN, (short) ascPattern);
+		orsEdges.setShort(edgePointer + EF_DESC_PATTERN, (short) descPattern);
+	}
+
+	/**
+	 * Returns the pattern of the edge in the given direction or 0 if the edge has none.
+	 *
+	 * @param ascending true for the direction from the node with the smaller id to the node with the larger id
+	 */
+	public int getEdgePattern(int edgeId, boolean ascending) {
+		long edgePointer = (long) edgeId * edgeEntryBytes;
+		if (edgePointer + edgeEntryBytes > orsEdges.getCapacity())
+			return 0;
+
+		return orsEdges.getShort(edgePointer + (ascending ? EF_ASC_PATTERN : EF_DESC_PATTERN)) & 0xFFFF;
+	}
+
+	/**
+	 * Returns the speed in percent of the free flow speed.
+	 *
+	 * @param time milliseconds since Monday 00:00, values beyond one week are wrapped around
+	 */
+	public int getSpeed(int pattern, long time) {
+		int interval = (int) (Math.floorMod(time, WEEK_MILLIS) / INTERVAL_MILLIS);
+		return _patterns[pattern * INTERVALS_PER_WEEK + interval];
+	}
+
+	private void ensureEdgesIndex(int edgeId) {
+		orsEdges.ensureCapacity(((long) edgeId + 1) * edgeEntryBytes);
+	}
+
+	/**
+	 * @return true, if and only if, if an additional field at the graphs node storage is required
+	 */
+	@Override
+	public boolean isRequireNodeField() {
+		return true;
+	}
+
+	/**
+	 * @return true, if and only if, if an additional field at the graphs edge storage is required
+	 */
+	@Override
+	public boolean isRequireEdgeField() {
+		return true;
+	}
+
+	/**
+	 * @return the default field value which will be set for default when creating nodes
+	 */
+	@Override
+	public int getDefaultNodeFieldValue() {
+		return -1;
+	}
+
+	/**
+	 * @return the default field value which will be set for default when creating edges
+	 */
+	@Override
+	public int getDefaultEdgeFieldValue() {
+		return -1;
+	}
+
+	/**
+	 * initializes the extended storage by giving the base graph
+	 *
+	 * @param graph
+	 * @param dir
+	 */
+	@Override
+	public void init(Graph graph, Directory dir) {
+		if (edgesCount > 0)
+			throw new AssertionError("The ORS storage must be initialized only once.");
+
+		this.orsEdges = dir.find("ext_speedprofiles");
+		this.orsPatterns = dir.find("ext_speedpatterns");
+	}
+
+	/**
+	 * sets the segment size in all additional data storages
+	 *
+	 * @param bytes
+	 */
+	@Override
+	public void setSegmentSize(int bytes) {
+		orsEdges.setSegmentSize(bytes);
+		orsPatterns.setSegmentSize(bytes);
+	}
+
+	/**
+	 * creates a copy of this extended storage
+	 *
+	 * @param clonedStorage
+	 */
+	@Override
+	public GraphExtension copyTo(GraphExtension clonedStorage) {
+		if (!(clonedStorage instanceof SpeedProfilesGraphStorage)) {
+			throw new IllegalStateException("the extended storage to clone must be the same");
+		}
+
+		SpeedProfilesGraphStorage clonedTC = (SpeedProfilesGraphStorage) clonedStorage;
+
+		orsEdges.copyTo(clonedTC.orsEdges);
+		orsPatterns.copyTo(clonedTC.orsPatterns);
+		clonedTC.edgesCount = edgesCount;
+		clonedTC.patternsCount = patternsCount;
+		clonedTC._patterns = _patterns.clone();
+
+		return clonedStorage;
+	}
+
+	/**
+	 * @return true if successfully loaded from persistent storage.
+	 */
+	@Override
+	public boolean loadExisting() {
+		if (!orsEdges.loadExisting())
+			throw new IllegalStateException("Unable to load storage 'ext_speedprofiles'. corrupt file or directory?");
+		if (!orsPatterns.loadExisting())
+			throw new IllegalStateException("Unable to load storage 'ext_speedpatterns'. corrupt file or directory?");
+
+		edgeEntryBytes = orsEdges.getHeader(0);
+		edgesCount = orsEdges.getHeader(4);
+		patternsCount = orsPatterns.getHeader(0);
+
+		_patterns = new byte[(patternsCount + 1) * INTERVALS_PER_WEEK];
+		byte[] buffer = new byte[INTERVALS_PER_WEEK];
+		// copied pattern by pattern, a single pattern never spans more than two segments
+		for (int i = 1; i <= patternsCount; i++) {
+			orsPatterns.getBytes((long) i * INTERVALS_PER_WEEK, buffer, INTERVALS_PER_WEEK);
+			System.arraycopy(buffer, 0, _patterns, i * INTERVALS_PER_WEEK, INTERVALS_PER_WEEK);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates the underlying storage. First operation if it cannot be loaded.
+	 *
+	 * @param initBytes
+	 */
+	@Override
+	public GraphExtension create(long initBytes) {
+		orsEdges.create((long) initBytes * edgeEntryBytes);
+		orsPatterns.create(_patterns.length);
+		return this;
+	}
+
+	/**
+	 * This method makes sure that the underlying data is written to the storage. Keep in mind that
+	 * a disc normally has an IO cache so that flush() is (less) probably not save against power
+	 * loses.
+	 */
+	@Override
+	public void flush() {
+		orsEdges.setHeader(0, edgeEntryBytes);
+		orsEdges.setHeader(1 * 4, edgesCount);
+		orsEdges.flush();
+
+		orsPatterns.ensureCapacity((long) (patternsCount + 1) * INTERVALS_PER_WEEK);
+		byte[] buffer = new byte[INTERVALS_PER_WEEK];
+		for (int i = 1; i <= patternsCount; i++) {
+			System.arraycopy(_patterns, i * INTERVALS_PER_WEEK, buffer, 0, INTERVALS_PER_WEEK);
+			orsPatterns.setBytes((long) i * INTERVALS_PER_WEEK, buffer, INTERVALS_PER_WEEK);
+		}
+		orsPatterns.setHeader(0, patternsCount);
+		orsPatterns.flush();
+	}
+
+	/**
+	 * This method makes sure that the underlying used resources are released. WARNING: it does NOT
+	 * flush on close!
+	 */
+	@Override
+	public void close() {
+		orsEdges.close();
+		orsPatterns.close();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return false;
+	}
+
+	/**
+	 * @return the allocated storage size in bytes
+	 */
+	@Override
+	public long getCapacity() {
+		return orsEdges.getCapacity() + orsPatterns.getCapacity();
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.storages.builders;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.MissingResourceException;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+
+import heigit.ors.routing.graphhopper.extensions.storages.SpeedProfilesGraphStorage;
+
+/**
+ * Builds the historical speed profiles of the edges from two files:
+ * <ul>
+ * <li>"patterns": a CSV file with a header line and one pattern per row, the pattern id followed by the speeds in
+ * percent of the free flow speed for each 15 minutes interval of a day (96 values) or of a week starting on Monday
+ * (672 values).</li>
+ * <li>"filepath": the patterns of the OSM ways, either a CSV file with a header line and the rows
+ * "osm_id,forward_pattern_id,backward_pattern_id" or, if the file name ends with ".bin", a binary file with the same
+ * values as big endian long, int and int records.</li>
+ * </ul>
+ * Ways that share a pattern id share the stored pattern, so only 4 bytes are needed per edge.
+ */
+public class SpeedProfilesGraphStorageBuilder extends AbstractGraphStorageBuilder {
+	private SpeedProfilesGraphStorage _storage;
+	// pattern ids of the files mapped to the ids of the storage
+	private Map<Integer, Integer> _patternIds = new HashMap<>();
+	// forward and backward pattern of a way packed into one long
+	private Map<Long, Long> _wayPatterns = new HashMap<>();
+
+	public SpeedProfilesGraphStorageBuilder() {
+
+	}
+
+	@Override
+	public GraphExtension init(GraphHopper graphhopper) throws Exception {
+		if (_storage != null)
+			throw new Exception("GraphStorageBuilder has been already initialized.");
+
+		String patternsFile = _parameters.get("patterns");
+		if (Helper.isEmpty(patternsFile))
+			throw new MissingResourceException("A speed patterns file is needed to use the speed profiles extended storage!", SpeedProfilesGraphStorage.class.getName(), "patterns");
+
+		String waysFile = _parameters.get("filepath");
+		if (Helper.isEmpty(waysFile))
+			throw new MissingResourceException("A way profiles file is needed to use the speed profiles extended storage!", SpeedProfilesGraphStorage.class.getName(), "filepath");
+
+		_storage = new SpeedProfilesGraphStorage();
+
+		readPatternsFromCSV(patternsFile);
+		if (waysFile.endsWith(".bin"))
+			readWayPatternsFromBinary(waysFile);
+		else
+			readWayPatternsFromCSV(waysFile);
+
+		return _storage;
+	}
+
+	private void readPatternsFromCSV(String csvFile) throws IOException {
+		BufferedReader csvBuffer = new BufferedReader(new FileReader(csvFile));
+		try {
+			String row;
+			// Jump the header line
+			csvBuffer.readLine();
+			while ((row = csvBuffer.readLine()) != null) {
+				if (Helper.isEmpty(row))
+					continue;
+
+				String[] values = row.split(",");
+				byte[] speeds = new byte[values.length - 1];
+				for (int i = 1; i < values.length; i++)
+					speeds[i - 1] = (byte) Math.min(100, Integer.parseInt(values[i].trim()));
+
+				_patternIds.put(Integer.parseInt(values[0].trim()), _storage.addPattern(speeds));
+			}
+		} finally {
+			csvBuffer.close();
+		}
+	}
+
+	private void readWayPatternsFromCSV(String csvFile) throws IOException {
+		BufferedReader csvBuffer = new BufferedReader(new FileReader(csvFile));
+		try {
+			String row;
+			// Jump the header line
+			csvBuffer.readLine();
+			while ((row = csvBuffer.readLine()) != null) {
+				if (Helper.isEmpty(row))
+					continue;
+
+				String[] values = row.split(",");
+				if (values.length < 3)
+					continue;
+
+				addWayPatterns(Long.parseLong(values[0].trim()), Integer.parseInt(values[1].trim()), Integer.parseInt(values[2].trim()));
+			}
+		} finally {
+			csvBuffer.close();
+		}
+	}
+
+	private void readWayPatternsFromBinary(String binFile) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(binFile), 1 << 16));
+		try {
+			while (true) {
+				long osmId;
+				try {
+					osmId = input.readLong();
+				} catch (EOFException ex) {
+					break;
+				}
+
+				addWayPatterns(osmId, input.readInt(), input.readInt());
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private void addWayPatterns(long osmId, int forwardPattern, int backwardPattern) {
+		int forward = getPatternId(forwardPattern);
+		int backward = getPatternId(backwardPattern);
+
+		if (forward != 0 || backward != 0)
+			_wayPatterns.put(osmId, ((long) forward << 32) | backward);
+	}
+
+	private int getPatternId(int filePatternId) {
+		Integer id = _patternIds.get(filePatternId);
+		// unknown patterns are treated like no pattern
+		return id == null ? 0 : id;
+	}
+
+	@Override
+	public void processWay(ReaderWay way) {
+
+	}
+
+	@Override
+	public void processEdge(ReaderWay way, EdgeIteratorState edge) {
+		Long patterns = _wayPatterns.get(way.getId());
+		if (patterns == null)
+			return;
+
+		int forward = (int) (patterns >>> 32);
+		int backward = (int) (patterns & 0xFFFFFFFFL);
+
+		// the storage keeps the patterns by the order of the node ids
+		if (edge.getBaseNode() < edge.getAdjNode())
+			_storage.setEdgeValue(edge.getEdge(), forward, backward);
+		else
+			_storage.setEdgeValue(edge.getEdge(), backward, forward);
+	}
+
+	@Override
+	public String getName() {
+		return "SpeedProfiles";
+	}
+}
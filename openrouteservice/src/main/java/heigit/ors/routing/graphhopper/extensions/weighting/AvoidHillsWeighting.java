@@ -36,8 +36,8 @@ import com.graphhopper.util.PMap;
  */
 public class AvoidHillsWeighting extends FastestWeighting
 {
-	private HillIndexGraphStorage gsHillIndex;
-	private byte[] buffer;
+	private byte[] forwardHillIndices;
+	private byte[] backwardHillIndices;
 	private double maxSteepness = -1;
 	                                         //0     1   2    3    4    5    6    7    8    9   10    11   12   13    14    15
 	private static double[] PENALTY_FACTOR = {1.0, 1.0, 1.1, 1.5, 1.7, 1.8, 2.0, 2.2, 2.4, 2.6, 2.8, 3.2, 3.5, 3.7, 3.9, 4.2};
@@ -47,19 +47,24 @@ public class AvoidHillsWeighting extends FastestWeighting
     {
         super(encoder, map);
         
-        buffer = new byte[1];
         this.maxSteepness = map.getDouble("steepness_maximum", -1);
         
-        gsHillIndex = GraphStorageUtils.getGraphExtension(graphStorage, HillIndexGraphStorage.class);
+        HillIndexGraphStorage gsHillIndex = GraphStorageUtils.getGraphExtension(graphStorage, HillIndexGraphStorage.class);
+        if (gsHillIndex != null)
+        {
+        	forwardHillIndices = gsHillIndex.getEdgeLevels(false);
+        	backwardHillIndices = gsHillIndex.getEdgeLevels(true);
+        }
     }
     
     @Override
     public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId )
     {
-    	if (gsHillIndex != null)
+    	int edgeId = edgeState.getOriginalEdge();
+    	if (forwardHillIndices != null && edgeId < forwardHillIndices.length)
     	{
     		boolean revert = edgeState.getBaseNode() < edgeState.getAdjNode();
-    		int hillIndex = gsHillIndex.getEdgeValue(edgeState.getEdge(), revert, buffer);
+    		int hillIndex = revert ? backwardHillIndices[edgeId] : forwardHillIndices[edgeId];
     		
     		if (maxSteepness > 0 && hillIndex > maxSteepness)
     			return 100;
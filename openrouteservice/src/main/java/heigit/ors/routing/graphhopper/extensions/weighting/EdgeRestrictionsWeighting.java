@@ -0,0 +1,103 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import java.util.BitSet;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.AbstractWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.AllEdgesIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Closes the edges rejected by an edge filter in another weighting, so that a contraction hierarchy or landmarks
+ * prepared with it only contain the edges open to a fixed set of restrictions. The filter is applied to all edges
+ * once when the weighting is first used, routing only tests a bit per edge.
+ */
+public abstract class EdgeRestrictionsWeighting extends AbstractWeighting {
+	private final Weighting _superWeighting;
+	protected final GraphHopperStorage _graphStorage;
+	private volatile BitSet _blockedEdges;
+
+	protected EdgeRestrictionsWeighting(Weighting superWeighting, FlagEncoder encoder, GraphHopperStorage graphStorage) {
+		super(encoder);
+
+		_superWeighting = superWeighting;
+		_graphStorage = graphStorage;
+	}
+
+	/**
+	 * Returns the filter which rejects the closed edges or null if the graph has no restrictions stored.
+	 */
+	protected abstract EdgeFilter createEdgeFilter();
+
+	@Override
+	public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+		if (getBlockedEdges().get(edgeState.getOriginalEdge()))
+			return Double.POSITIVE_INFINITY;
+
+		return _superWeighting.calcWeight(edgeState, reverse, prevOrNextEdgeId);
+	}
+
+	@Override
+	public long calcMillis(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+		return _superWeighting.calcMillis(edgeState, reverse, prevOrNextEdgeId);
+	}
+
+	@Override
+	public double getMinWeight(double distance) {
+		return _superWeighting.getMinWeight(distance);
+	}
+
+	private BitSet getBlockedEdges() {
+		BitSet blockedEdges = _blockedEdges;
+		if (blockedEdges == null) {
+			synchronized (this) {
+				blockedEdges = _blockedEdges;
+				if (blockedEdges == null) {
+					blockedEdges = findBlockedEdges();
+					_blockedEdges = blockedEdges;
+				}
+			}
+		}
+
+		return blockedEdges;
+	}
+
+	private BitSet findBlockedEdges() {
+		BitSet blockedEdges = new BitSet();
+
+		EdgeFilter filter = createEdgeFilter();
+		if (filter == null)
+			return blockedEdges;
+
+		AllEdgesIterator iter = _graphStorage.getAllEdges();
+		while (iter.next()) {
+			if (!filter.accept(iter))
+				blockedEdges.set(iter.getEdge());
+		}
+
+		return blockedEdges;
+	}
+}
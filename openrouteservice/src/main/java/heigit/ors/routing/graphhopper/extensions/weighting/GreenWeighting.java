@@ -33,16 +33,16 @@ import heigit.ors.routing.graphhopper.extensions.storages.GreenIndexGraphStorage
  * Created by lliu on 15/03/2017.
  */
 public class GreenWeighting extends FastestWeighting {
-    private GreenIndexGraphStorage _gsGreenIndex;
-    private byte[] _buffer = new byte[1];
-    private double[] _factors = new double[totalLevel]; 
+    private final byte[] _greenLevels;
+    private final double[] _factors = new double[totalLevel];
 
     private static final int totalLevel = 64;
 
     public GreenWeighting(FlagEncoder encoder, PMap map, GraphStorage graphStorage) {
         super(encoder, map);
         
-        _gsGreenIndex = GraphStorageUtils.getGraphExtension(graphStorage, GreenIndexGraphStorage.class);
+        GreenIndexGraphStorage gsGreenIndex = GraphStorageUtils.getGraphExtension(graphStorage, GreenIndexGraphStorage.class);
+        _greenLevels = gsGreenIndex != null ? gsGreenIndex.getEdgeLevels() : null;
         double factor = map.getDouble("factor", 1);
         
         for (int i = 0; i < totalLevel; i++)
@@ -64,10 +64,9 @@ public class GreenWeighting extends FastestWeighting {
 
     @Override
     public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
-        if (_gsGreenIndex != null) {
-            int greenLevel = _gsGreenIndex.getEdgeValue(edgeState.getOriginalEdge(), _buffer);
-            return _factors[greenLevel];
-        }
+        int edgeId = edgeState.getOriginalEdge();
+        if (_greenLevels != null && edgeId < _greenLevels.length)
+            return _factors[_greenLevels[edgeId]];
 
         return 1.0;
     }
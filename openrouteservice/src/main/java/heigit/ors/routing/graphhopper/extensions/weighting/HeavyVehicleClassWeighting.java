@@ -0,0 +1,80 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphHopperStorage;
+
+import heigit.ors.routing.graphhopper.extensions.HeavyVehicleClass;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.HeavyVehicleEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
+import heigit.ors.routing.graphhopper.extensions.storages.HeavyVehicleAttributesGraphStorage;
+
+/**
+ * Closes the edges which are restricted for a {@link HeavyVehicleClass}. Edges reserved for the destination traffic
+ * of the vehicle type are closed as well, since the hierarchy cannot depend on the destination of a request. A
+ * request which starts or ends on such an edge is answered in the flexible mode, see {@link #isDestinationEdge(int)}.
+ */
+public class HeavyVehicleClassWeighting extends EdgeRestrictionsWeighting {
+	private final HeavyVehicleClass _vehicleClass;
+
+	public HeavyVehicleClassWeighting(Weighting superWeighting, FlagEncoder encoder, HeavyVehicleClass vehicleClass, GraphHopperStorage graphStorage) {
+		super(superWeighting, encoder, graphStorage);
+
+		_vehicleClass = vehicleClass;
+	}
+
+	public HeavyVehicleClass getVehicleClass() {
+		return _vehicleClass;
+	}
+
+	@Override
+	protected EdgeFilter createEdgeFilter() {
+		if (GraphStorageUtils.getGraphExtension(_graphStorage, HeavyVehicleAttributesGraphStorage.class) == null)
+			return null;
+
+		// a filter which has not been given a destination rejects restricted and destination only edges alike
+		return new HeavyVehicleEdgeFilter(flagEncoder, _vehicleClass.getVehicleType(), _vehicleClass.getParameters(), _graphStorage);
+	}
+
+	/**
+	 * Returns true if the edge is reserved for the destination traffic of the vehicle type of the class. The edge is
+	 * closed in the preparation although a vehicle of the class may use it to reach a location on it.
+	 */
+	public boolean isDestinationEdge(int edgeId) {
+		HeavyVehicleAttributesGraphStorage storage = GraphStorageUtils.getGraphExtension(_graphStorage, HeavyVehicleAttributesGraphStorage.class);
+		if (storage == null)
+			return false;
+
+		byte[] buffer = new byte[2];
+		int vehicleType = _vehicleClass.getVehicleType();
+		int vt = storage.getEdgeVehicleType(edgeId, buffer);
+
+		return buffer[1] != 0 && (vt & vehicleType) == vehicleType;
+	}
+
+	@Override
+	public String getName() {
+		return _vehicleClass.getWeightingName();
+	}
+}
@@ -30,15 +30,20 @@ import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
 import heigit.ors.routing.graphhopper.extensions.storages.NoiseIndexGraphStorage;
 
 public class QuietWeighting extends FastestWeighting {
-    private NoiseIndexGraphStorage _gsNoiseIndex;
-    private byte[] _buffer;
-    private double _weightingFactor = 1;
+    private static final int MAX_NOISE_LEVEL = 3;
+
+    private final byte[] _noiseLevels;
+    private final double[] _factors = new double[MAX_NOISE_LEVEL + 1];
+    private final double _weightingFactor;
 
     public QuietWeighting(FlagEncoder encoder, PMap map, GraphStorage graphStorage) {
         super(encoder, map);
-        _buffer = new byte[1];
-        _gsNoiseIndex = GraphStorageUtils.getGraphExtension(graphStorage, NoiseIndexGraphStorage.class);
+        NoiseIndexGraphStorage gsNoiseIndex = GraphStorageUtils.getGraphExtension(graphStorage, NoiseIndexGraphStorage.class);
+        _noiseLevels = gsNoiseIndex != null ? gsNoiseIndex.getEdgeLevels() : null;
         _weightingFactor = map.getDouble("factor", 1);
+
+        for (int i = 0; i <= MAX_NOISE_LEVEL; i++)
+            _factors[i] = calcNoiseWeightFactor(i);
     }
 
     private double calcNoiseWeightFactor(int level) {
@@ -56,9 +61,13 @@ public class QuietWeighting extends FastestWeighting {
 
     @Override
     public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
-        if (_gsNoiseIndex != null) {
-            int noiseLevel = _gsNoiseIndex.getEdgeValue(edgeState.getOriginalEdge(), _buffer);
-            return calcNoiseWeightFactor(noiseLevel);
+        int edgeId = edgeState.getOriginalEdge();
+        if (_noiseLevels != null && edgeId < _noiseLevels.length) {
+            int noiseLevel = _noiseLevels[edgeId];
+            if (noiseLevel > MAX_NOISE_LEVEL)
+                throw new AssertionError("The noise level "+  noiseLevel + " is not supported!");
+
+            return _factors[noiseLevel];
         }
 
         return 1.0;
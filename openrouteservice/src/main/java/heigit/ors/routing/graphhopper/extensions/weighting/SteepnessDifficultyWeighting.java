@@ -36,8 +36,8 @@ public class SteepnessDifficultyWeighting extends FastestWeighting
      */
     public static final int KEY = 101;
     
-	private HillIndexGraphStorage gsHillIndex;
-	private byte[] buffer;
+	private byte[] forwardHillIndices;
+	private byte[] backwardHillIndices;
 	private double[] difficultyWeights;
 	
 	private static double BIKE_DIFFICULTY_MATRIX[][];
@@ -199,14 +199,15 @@ public class SteepnessDifficultyWeighting extends FastestWeighting
     {
         super(encoder, map);
         
-        buffer = new byte[1];
-
 	    int difficultyLevel = map.getInt("level", -1);
 
-        gsHillIndex = GraphStorageUtils.getGraphExtension(graphStorage, HillIndexGraphStorage.class);
+        HillIndexGraphStorage gsHillIndex = GraphStorageUtils.getGraphExtension(graphStorage, HillIndexGraphStorage.class);
         
         if (gsHillIndex != null)
         {
+        	forwardHillIndices = gsHillIndex.getEdgeLevels(false);
+        	backwardHillIndices = gsHillIndex.getEdgeLevels(true);
+
         	if (difficultyLevel >= 0)
         	{
         		//String name = encoder.toString();
@@ -221,13 +222,11 @@ public class SteepnessDifficultyWeighting extends FastestWeighting
     @Override
     public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId )
     {
-    	if (gsHillIndex != null)
+    	int edgeId = edgeState.getOriginalEdge();
+    	if (difficultyWeights != null && edgeId < forwardHillIndices.length)
     	{
     		boolean revert = edgeState.getBaseNode() < edgeState.getAdjNode();
-    		int hillIndex = gsHillIndex.getEdgeValue(edgeState.getOriginalEdge(), revert, buffer);
-
-    		if (difficultyWeights != null)
-    			return difficultyWeights[hillIndex];
+    		return difficultyWeights[revert ? backwardHillIndices[edgeId] : forwardHillIndices[edgeId]];
     	}
 
    		return 1.0;
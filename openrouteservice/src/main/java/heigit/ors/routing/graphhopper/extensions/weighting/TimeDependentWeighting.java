@@ -0,0 +1,139 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.VirtualEdgeIteratorState;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.AbstractWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.util.EdgeIteratorState;
+
+import heigit.ors.routing.graphhopper.extensions.storages.SpeedProfilesGraphStorage;
+
+/**
+ * Slows down the edges of another weighting by their historical speed profiles at the time the edge is entered. The
+ * time dependent methods are used by {@link heigit.ors.routing.algorithms.TimeDependentAStar}, all other algorithms
+ * see the speeds at the departure time.
+ */
+public class TimeDependentWeighting extends AbstractWeighting {
+	private final Weighting _superWeighting;
+	private final SpeedProfilesGraphStorage _storage;
+	private final long _departure;
+
+	/**
+	 * @param departure the departure time in milliseconds since Monday 00:00 local time
+	 */
+	public TimeDependentWeighting(Weighting superWeighting, FlagEncoder encoder, SpeedProfilesGraphStorage storage, long departure) {
+		super(encoder);
+
+		_superWeighting = superWeighting;
+		_storage = storage;
+		_departure = departure;
+	}
+
+	public long getDeparture() {
+		return _departure;
+	}
+
+	@Override
+	public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+		return calcWeight(edgeState, reverse, prevOrNextEdgeId, _departure);
+	}
+
+	/**
+	 * @param time the time the edge is entered in milliseconds since Monday 00:00
+	 */
+	public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId, long time) {
+		double weight = _superWeighting.calcWeight(edgeState, reverse, prevOrNextEdgeId);
+		if (Double.isInfinite(weight))
+			return weight;
+
+		int pattern = getPattern(edgeState, reverse);
+		if (pattern == 0)
+			return weight;
+
+		long millis = _superWeighting.calcMillis(edgeState, reverse, prevOrNextEdgeId);
+		if (millis <= 0)
+			return weight;
+
+		return weight * calcTravelMillis(pattern, millis, time) / millis;
+	}
+
+	@Override
+	public long calcMillis(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+		return calcMillis(edgeState, reverse, prevOrNextEdgeId, _departure);
+	}
+
+	public long calcMillis(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId, long time) {
+		long millis = _superWeighting.calcMillis(edgeState, reverse, prevOrNextEdgeId);
+
+		int pattern = getPattern(edgeState, reverse);
+		if (pattern == 0 || millis <= 0)
+			return millis;
+
+		return calcTravelMillis(pattern, millis, time);
+	}
+
+	/**
+	 * Travels the given free flow time through the intervals of the pattern. The speed changes when an interval
+	 * ends while the edge is traversed, so that leaving later never means arriving earlier.
+	 */
+	private long calcTravelMillis(int pattern, long freeFlowMillis, long time) {
+		double remaining = freeFlowMillis;
+		long current = time;
+
+		while (true) {
+			double speed = _storage.getSpeed(pattern, current) / 100.0;
+			long intervalEnd = (Math.floorDiv(current, SpeedProfilesGraphStorage.INTERVAL_MILLIS) + 1) * SpeedProfilesGraphStorage.INTERVAL_MILLIS;
+			double needed = remaining / speed;
+
+			if (current + needed <= intervalEnd)
+				return Math.round(current + needed - time);
+
+			remaining -= (intervalEnd - current) * speed;
+			current = intervalEnd;
+		}
+	}
+
+	private int getPattern(EdgeIteratorState edgeState, boolean reverse) {
+		boolean ascending;
+		if (edgeState instanceof VirtualEdgeIteratorState) {
+			// at least one node of a virtual edge is a virtual one, the traversal key tells the direction of the
+			// original edge instead: it is even if the edge runs from the smaller to the larger node id
+			ascending = (((VirtualEdgeIteratorState) edgeState).getOriginalTraversalKey() & 1) == 0;
+		} else {
+			ascending = edgeState.getBaseNode() < edgeState.getAdjNode();
+		}
+
+		return _storage.getEdgePattern(edgeState.getOriginalEdge(), ascending != reverse);
+	}
+
+	@Override
+	public double getMinWeight(double distance) {
+		// the profiles never exceed the free flow speed
+		return _superWeighting.getMinWeight(distance);
+	}
+
+	@Override
+	public String getName() {
+		return "time_dependent";
+	}
+}
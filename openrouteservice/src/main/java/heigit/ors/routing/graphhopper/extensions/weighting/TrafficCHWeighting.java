@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PMap;
+
+import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEncoder;
+import heigit.ors.routing.traffic.TrafficSnapshot;
+
+/**
+ * Fastest weighting with the penalties and blocked edges of a traffic snapshot. Contraction hierarchies prepared with
+ * this weighting (weightings: "fastest|traffic") keep their node order when the traffic changes, their shortcuts are
+ * customized for every new snapshot, see {@link heigit.ors.routing.traffic.TrafficCHCustomizer}.
+ */
+public class TrafficCHWeighting extends FastestWeighting {
+	public static final String NAME = "traffic";
+
+	private volatile TrafficSnapshot _snapshot = TrafficSnapshot.EMPTY;
+	private volatile boolean _customized = false;
+	private final boolean _heavyVehicle;
+	private final boolean _heavyVehicleEvents;
+
+	public TrafficCHWeighting(FlagEncoder encoder, PMap map) {
+		super(encoder, map);
+
+		_heavyVehicle = encoder instanceof HeavyVehicleFlagEncoder;
+		// same as in TrafficAvoidWeighting
+		_heavyVehicleEvents = !(encoder instanceof CarFlagEncoder);
+	}
+
+	public TrafficCHWeighting(FlagEncoder encoder, TrafficSnapshot snapshot) {
+		this(encoder, new PMap(0));
+
+		_snapshot = snapshot;
+	}
+
+	public TrafficSnapshot getSnapshot() {
+		return _snapshot;
+	}
+
+	/**
+	 * Replaces the snapshot after the shortcut weights have been customized for it.
+	 */
+	public void setSnapshot(TrafficSnapshot snapshot) {
+		_snapshot = snapshot;
+		_customized = true;
+	}
+
+	/**
+	 * Returns true if the shortcut weights reflect the current traffic, before the first traffic update the
+	 * hierarchy only holds the weights computed during its preparation.
+	 */
+	public boolean isCustomized() {
+		return _customized;
+	}
+
+	@Override
+	public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+		if (edgeState instanceof CHEdgeIteratorState && ((CHEdgeIteratorState) edgeState).isShortcut())
+			return ((CHEdgeIteratorState) edgeState).getWeight();
+
+		TrafficSnapshot snapshot = _snapshot;
+		int edgeId = edgeState.getOriginalEdge();
+
+		if (snapshot.isBlocked(edgeId) || (_heavyVehicle && snapshot.isBlockedForHeavyVehicles(edgeId)))
+			return Double.POSITIVE_INFINITY;
+
+		int penalty = snapshot.getPenaltyIndex(edgeId, _heavyVehicleEvents);
+		if (penalty < 0)
+			return super.calcWeight(edgeState, reverse, prevOrNextEdgeId);
+
+		double speed = reverse ? flagEncoder.getReverseSpeed(edgeState.getFlags()) : flagEncoder.getSpeed(edgeState.getFlags());
+		if (speed == 0)
+			return Double.POSITIVE_INFINITY;
+
+		return snapshot.calcTravelTime(penalty, edgeState.getDistance(), speed);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphHopperStorage;
+
+import heigit.ors.routing.graphhopper.extensions.WheelchairPreset;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.WheelchairEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
+import heigit.ors.routing.graphhopper.extensions.storages.WheelchairAttributesGraphStorage;
+
+/**
+ * Closes the edges which do not meet the restrictions of a {@link WheelchairPreset}.
+ */
+public class WheelchairPresetWeighting extends EdgeRestrictionsWeighting {
+	private final WheelchairPreset _preset;
+
+	public WheelchairPresetWeighting(Weighting superWeighting, FlagEncoder encoder, WheelchairPreset preset, GraphHopperStorage graphStorage) {
+		super(superWeighting, encoder, graphStorage);
+
+		_preset = preset;
+	}
+
+	public WheelchairPreset getPreset() {
+		return _preset;
+	}
+
+	@Override
+	protected EdgeFilter createEdgeFilter() {
+		if (GraphStorageUtils.getGraphExtension(_graphStorage, WheelchairAttributesGraphStorage.class) == null)
+			return null;
+
+		try {
+			return new WheelchairEdgeFilter(_preset.getParameters(), flagEncoder, _graphStorage);
+		} catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return _preset.getWeightingName();
+	}
+}
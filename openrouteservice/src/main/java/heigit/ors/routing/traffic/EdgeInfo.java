@@ -1,60 +0,0 @@
-/*
- *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
- *
- *   http://www.giscience.uni-hd.de
- *   http://www.heigit.org
- *
- *  under one or more contributor license agreements. See the NOTICE file 
- *  distributed with this work for additional information regarding copyright 
- *  ownership. The GIScience licenses this file to you under the Apache License, 
- *  Version 2.0 (the "License"); you may not use this file except in compliance 
- *  with the License. You may obtain a copy of the License at
- * 
- *       http://www.apache.org/licenses/LICENSE-2.0
- * 
- *  Unless required by applicable law or agreed to in writing, software
- *  distributed under the License is distributed on an "AS IS" BASIS,
- *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *  See the License for the specific language governing permissions and
- *  limitations under the License.
- */
-package heigit.ors.routing.traffic;
-
-public class EdgeInfo {
-	private Integer mEdgeId;
-	private short[] mCodes;
-	private String mMessage;
-
-	public EdgeInfo(Integer edgeId, short[] codes) {
-		mEdgeId = edgeId;
-		mCodes = codes;
-	}
-
-	public EdgeInfo(Integer edgeId, short[] codes, String message) {
-		mEdgeId = edgeId;
-		mCodes = codes;
-		mMessage = message;
-	}
-
-	public String getMessage() {
-		return mMessage;
-	}
-
-	public short[] getCodes() {
-		return mCodes;
-	}
-
-	public Integer getEdgeId() {
-		return mEdgeId;
-	}
-
-	public String getCodesAsString() {
-		String result = "";
-		int nSize = mCodes.length;
-		for (int i = 0; i < nSize; i++) {
-			result += mCodes[i] + (i < nSize - 1 ? "," : "");
-		}
-
-		return result;
-	}
-}
@@ -21,13 +21,9 @@
 package heigit.ors.routing.traffic;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.io.StringWriter;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -35,14 +31,16 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
+import heigit.ors.isochrones.AccessibilityMapCache;
 import heigit.ors.routing.RoutingProfile;
 import heigit.ors.routing.RoutingProfileLoadContext;
 import heigit.ors.routing.RoutingProfilesCollection;
@@ -55,7 +53,6 @@ import heigit.ors.services.routing.RoutingServiceSettings;
 
 import org.json.JSONException;
 import org.json.JSONWriter;
-import org.xml.sax.SAXException;
 
 import com.graphhopper.storage.GraphStorage;
 import com.graphhopper.util.EdgeIterator;
@@ -85,22 +82,16 @@ public class RealTrafficDataProvider {
 	}
 
 	private class RouteProfileTmcData {
-		private HashMap<Integer, EdgeInfo> m_edges;
-		private HashMap<Integer, AvoidEdgeInfo> m_avoidEdges;
-		private List<Integer> m_blockedEdges;
-		private HashMap<Integer, Integer> m_edgeIdsMap;
 		private RoutingProfile m_routeProfile;
-		private List<Integer> m_blockedEdges_hv; // for heavy vehicles
 		private HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature;  // one edge corresponds to one TrafficFeatureInfo
+		private IdentityHashMap<TrafficFeatureInfo, int[]> m_matchedEdges; // edges of this profile matched to the features of the last update
+		// replaced as a whole on every update, so that readers never see a partially updated state
+		private volatile TrafficSnapshot m_snapshot = TrafficSnapshot.EMPTY;
 
 		public RouteProfileTmcData(RoutingProfile rp) {
 			m_routeProfile = rp;
-			m_edges = new HashMap<Integer, EdgeInfo>();
-			m_avoidEdges = new HashMap<Integer, AvoidEdgeInfo>();
-			m_blockedEdges = new ArrayList<Integer>();
-			m_edgeIdsMap = new HashMap<Integer, Integer>();
-			m_blockedEdges_hv =  new ArrayList<Integer>();			
 			m_edgeId2trafficFeature = new HashMap<Integer, TrafficFeatureInfo>();
+			m_matchedEdges = new IdentityHashMap<TrafficFeatureInfo, int[]>();
 		}
 
 		public RoutingProfile getRouteProfile() {
@@ -111,29 +102,21 @@ public class RealTrafficDataProvider {
 		public HashMap<Integer, TrafficFeatureInfo> getMapEdgeId2trafficFeature() {
 			return m_edgeId2trafficFeature;
 		}
-		
-		public List<Integer> getBlockedEdges() {
-			return m_blockedEdges;
-		}
-		
-		public List<Integer> getHeavyVehicleBlockedEdges() {
-			return m_blockedEdges_hv;
+
+		public IdentityHashMap<TrafficFeatureInfo, int[]> getMatchedEdges() {
+			return m_matchedEdges;
 		}
 
-		public HashMap<Integer, AvoidEdgeInfo> getAvoidEdges() {
-			return m_avoidEdges;
+		public void setMatchedEdges(IdentityHashMap<TrafficFeatureInfo, int[]> matchedEdges) {
+			m_matchedEdges = matchedEdges;
 		}
 
-		public HashMap<Integer, EdgeInfo> getEdges() {
-			return m_edges;
+		public TrafficSnapshot getSnapshot() {
+			return m_snapshot;
 		}
 
-		public void update(HashMap<Integer, EdgeInfo> edges, HashMap<Integer, AvoidEdgeInfo> avoidEdges,
-				List<Integer> blockedEdges, List<Integer> blockedEdges_hv) {
-			m_avoidEdges = avoidEdges;
-			m_blockedEdges = blockedEdges;
-			m_edges = edges;
-			m_blockedEdges_hv = blockedEdges_hv;
+		public void setSnapshot(TrafficSnapshot snapshot) {
+			m_snapshot = snapshot;
 		}
 		
 		public void setMapEddgeId2trafficFeature(HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature){
@@ -144,7 +127,8 @@ public class RealTrafficDataProvider {
 	private class TmcUpdateInfo {
 		private Date time;
 		private List<TrafficFeatureInfo> features;
-		private Quadtree quadTree;
+		private volatile Quadtree quadTree;
+		private TrafficTileCache tiles = new TrafficTileCache();
 
 		private TmcUpdateInfo(Date time, List<TrafficFeatureInfo> features) {
 			this.time = time;
@@ -161,10 +145,7 @@ public class RealTrafficDataProvider {
 			if (env == null)
 				return features;
 			
-			if (quadTree == null)
-				buildQuadTree();
-			
-			List<TrafficFeatureInfo> list = quadTree.query(env);
+			List<TrafficFeatureInfo> list = getQuadTree().query(env);
 			List<TrafficFeatureInfo> result = new ArrayList<TrafficFeatureInfo>(list.size());
 			
 			for(TrafficFeatureInfo tfi : list)
@@ -177,13 +158,25 @@ public class RealTrafficDataProvider {
 			return result;
 		}
 		
-		private void buildQuadTree()
+		public TrafficTileCache getTiles()
 		{
-			quadTree = new Quadtree();
-			for (TrafficFeatureInfo tfi : features) {
-				if (tfi.getGeometry() instanceof LineString || tfi.getGeometry() instanceof MultiLineString) // TODO remove
-					quadTree.insert(tfi.getGeometry().getEnvelopeInternal(), tfi);
+			return tiles;
+		}
+		
+		private synchronized Quadtree getQuadTree()
+		{
+			// built once per update when the features are queried for the first time
+			if (quadTree == null)
+			{
+				Quadtree tree = new Quadtree();
+				for (TrafficFeatureInfo tfi : features) {
+					if (tfi.getGeometry() instanceof LineString || tfi.getGeometry() instanceof MultiLineString) // TODO remove
+						tree.insert(tfi.getGeometry().getEnvelopeInternal(), tfi);
+				}
+				quadTree = tree;
 			}
+			
+			return quadTree;
 		}
 	}
 
@@ -193,14 +186,16 @@ public class RealTrafficDataProvider {
 
 	private RoutingProfile m_tmcRouteProfile;
 	private TmcSegmentsCollection m_tmcSegments;
+	private TrafficMessageCache m_messageCache = new TrafficMessageCache();
 	private HashMap<Integer, RouteProfileTmcData> m_routeProfilesMap;
 	private Timer m_timer;
-	private boolean m_updateIsRunning = false;
+	private volatile boolean m_updateIsRunning = false;
 	private boolean m_initialized;
 	private TrafficInformationConfiguration m_config;
-	private TmcUpdateInfo m_lastUpdateInfo;
+	private volatile TmcUpdateInfo m_lastUpdateInfo;
 	private TrafficLocationGraph m_locationGraph;
 	private TrafficInfoDataSource m_tmcDatasource;
+	private volatile long m_lastUpdateDuration = -1;
 	private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 	
 	public static synchronized RealTrafficDataProvider getInstance() {
@@ -296,46 +291,35 @@ public class RealTrafficDataProvider {
 		m_initialized = true;
 	}
 
-	@SuppressWarnings("unchecked")
 	private List<TmcSegment> loadTmcSegments(String path, RoutingProfile routeProfile, String outputDir, boolean loadExisting) {
 		File segments = Paths.get(path, "SEGMENTS.DAT").toFile();
 		File roads = Paths.get(path, "ROADS.DAT").toFile();
 		File points = Paths.get(path, "POINTS.DAT").toFile();
 		File poffsets = Paths.get(path, "POFFSETS.DAT").toFile();
 
-		Path filePath = Paths.get(outputDir, "location_segments_traffic");
+		File file = Paths.get(outputDir, "location_segments_traffic.bin").toFile();
+		// segments are matched to a particular build of the graph
+		String graphDate = routeProfile.getGraphProperties().get("osmreader.import.date");
 		List<TmcSegment> tmcGraphData = null;
 		
 		if (m_locationGraph == null)
 			m_locationGraph = TrafficLocationGraph.createFromFile(poffsets);
 
 		if (loadExisting) {
-			if (filePath.toFile().exists()) {
-				try {
-					FileInputStream fis = new FileInputStream(filePath.toString());
-					ObjectInputStream ois = new ObjectInputStream(fis);
-					tmcGraphData = (List<TmcSegment>) ois.readObject();
-					ois.close();	
-					fis.close();
-				} catch (IOException ioe) {
-					ioe.printStackTrace();
-				} catch (ClassNotFoundException c) {
-					System.out.println("Class not found");
-					c.printStackTrace();
-				}
+			try {
+				tmcGraphData = TmcSegmentsFile.load(file, graphDate);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
 			}
 		}
 
 		if (tmcGraphData == null || tmcGraphData.size() == 0) {
-			tmcGraphData = TrafficUtility.detectSegments(segments, roads, points, poffsets, routeProfile);
+			long startTime = System.currentTimeMillis();
+			tmcGraphData = TrafficUtility.detectSegments(segments, roads, points, poffsets, routeProfile, m_config.MatchingThreads);
+			logger.info("TMC: matched " + tmcGraphData.size() + " segments in " + (System.currentTimeMillis() - startTime) / 1000 + " s.");
 
-			// serialize TMC segments if needed.
 			try {
-				FileOutputStream fos = new FileOutputStream(filePath.toString());
-				ObjectOutputStream oos = new ObjectOutputStream(fos);
-				oos.writeObject(tmcGraphData);
-				oos.close();
-				fos.close();
+				TmcSegmentsFile.save(file, graphDate, tmcGraphData);
 			} catch (IOException ioe) {
 				ioe.printStackTrace();
 			}
@@ -348,54 +332,83 @@ public class RealTrafficDataProvider {
 		return tmcGraphData;
 	}
 
-	public void updateGraphMatching(RoutingProfile rp, String outputDir) {
+	public synchronized void updateGraphMatching(RoutingProfile rp, String outputDir) {
 		if (rp == m_tmcRouteProfile)
 		{
 			m_tmcSegments = new TmcSegmentsCollection(loadTmcSegments(m_config.LocationCodesPath, m_tmcRouteProfile, outputDir, false));
+			// all messages have to be matched to the new segments
+			m_messageCache.clear();
+			for (RouteProfileTmcData rptd : m_routeProfilesMap.values())
+				rptd.setMatchedEdges(new IdentityHashMap<TrafficFeatureInfo, int[]>());
 
 			updateGraphMatchingInternal(false);
 		}
+		else
+		{
+			// the edge ids of the profile have changed
+			for (RouteProfileTmcData rptd : m_routeProfilesMap.values()) {
+				if (rptd.getRouteProfile() == rp) {
+					rptd.setMatchedEdges(new IdentityHashMap<TrafficFeatureInfo, int[]>());
+					if (m_lastUpdateInfo != null)
+						updateRouteProfile(rptd, m_lastUpdateInfo, false);
+				}
+			}
+		}
 	}
 
 	private void updateRouteProfile(RouteProfileTmcData rptd, TmcUpdateInfo updateInfo, boolean loadExisting) {
 		
         HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature = new HashMap<Integer, TrafficFeatureInfo>();
-        List<Integer> edgeIds = new ArrayList<Integer>();
+        IdentityHashMap<TrafficFeatureInfo, int[]> prevMatchedEdges = rptd.getMatchedEdges();
+        IdentityHashMap<TrafficFeatureInfo, int[]> matchedEdges = new IdentityHashMap<TrafficFeatureInfo, int[]>();
         
 		for (TrafficFeatureInfo tmcFeature:updateInfo.features) {
-			for (int i=0; i < tmcFeature.getEdgeIds().size(); i++){
-			    
-				int edgeId  = tmcFeature.getEdgeIds().get(i);
-				long osmId  = m_tmcRouteProfile.getTmcEdges().get(edgeId); // todo: use graphhopperstorage to obtain osmid
-				
-				if (rptd.getRouteProfile().getOsmId2edgeIds().containsKey(osmId)) { 
-				    	
-				    	ArrayList<Integer> newEdgeIds = rptd.getRouteProfile().getOsmId2edgeIds().get(osmId);
-					    boolean foundMatched = false;
-						for (Integer newEdgeId : newEdgeIds) {
-							// one edge of an osm way has trafficInfo doesnt mean that all edges of the same osm way have the same trafficInfo
-							// so check if there is a newEdgeId corresponding to (match) edgeid in tmc graph
-							boolean isMatched = isEdgesMatched(edgeId, m_tmcRouteProfile, newEdgeId, rptd.getRouteProfile());
-							
-							if (isMatched) {
-							    edgeIds.add(newEdgeId);
-							    m_edgeId2trafficFeature.put(newEdgeId, tmcFeature);
-							    foundMatched = true;
-							}
-						} // end for all new edge ids						
-						 // if (!foundMatched){System.err.println("tmc edge " + edgeId+ " doesnt have matched newEdgeId " 
-						 //		+ rptd.getRouteProfile().getGraphLocation());}
-						
-				} // end if contains osm id 
-
-		     } // end for tmc edgeIds
+			// features of unchanged messages are reused by TrafficMessageCache, so only new ones need to be matched
+			int[] newEdgeIds = prevMatchedEdges.get(tmcFeature);
+			if (newEdgeIds == null)
+				newEdgeIds = matchEdges(tmcFeature, rptd.getRouteProfile());
+
+			matchedEdges.put(tmcFeature, newEdgeIds);
+			for (int newEdgeId : newEdgeIds)
+				m_edgeId2trafficFeature.put(newEdgeId, tmcFeature);
 		} // end for tmc features 	
 	
-	
+		rptd.setMatchedEdges(matchedEdges);
 		rptd.setMapEddgeId2trafficFeature(m_edgeId2trafficFeature);
 		updateRouteProfileEdges(rptd, updateInfo);
 
 	}
+
+	private int[] matchEdges(TrafficFeatureInfo tmcFeature, RoutingProfile rp) {
+		if (tmcFeature.getEdgeIds() == null)
+			return new int[0];
+
+		List<Integer> edgeIds = new ArrayList<Integer>();
+
+		for (int i=0; i < tmcFeature.getEdgeIds().size(); i++){
+		    
+			int edgeId  = tmcFeature.getEdgeIds().get(i);
+			long osmId  = m_tmcRouteProfile.getOsmIdEdgeIndex().getOsmId(edgeId);
+			
+			if (osmId >= 0) { 
+			    	
+					for (int newEdgeId : rp.getOsmIdEdgeIndex().getEdgeIds(osmId)) {
+						// one edge of an osm way has trafficInfo doesnt mean that all edges of the same osm way have the same trafficInfo
+						// so check if there is a newEdgeId corresponding to (match) edgeid in tmc graph
+						if (isEdgesMatched(edgeId, m_tmcRouteProfile, newEdgeId, rp))
+						    edgeIds.add(newEdgeId);
+					} // end for all new edge ids						
+					
+			} // end if contains osm id 
+
+	     } // end for tmc edgeIds
+
+		int[] result = new int[edgeIds.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = edgeIds.get(i);
+
+		return result;
+	}
 	
 	
 	
@@ -429,6 +442,8 @@ public class RealTrafficDataProvider {
 			for (Entry<Integer, RouteProfileTmcData> entry0 : m_routeProfilesMap.entrySet()) {
 				updateRouteProfile(entry0.getValue(), updateInfo, loadExisting);
 			}
+
+			AccessibilityMapCache.getInstance().invalidateTrafficEntries();
 		} catch (Exception ex) {
 			logger.warning(ex.getMessage());
 		}
@@ -437,7 +452,11 @@ public class RealTrafficDataProvider {
 		logger.info("TMC: graph matching performed in " + seconds + " s.");
 	}
 
-	private void runUpdateEdges() {
+	/**
+	 * Reads the next message of the data source and applies it to all route profiles. Called by the update timer
+	 * and by benchmarks replaying recorded messages.
+	 */
+	synchronized void runUpdateEdges() {
 		if (m_updateIsRunning)
 			return;
 
@@ -451,11 +470,16 @@ public class RealTrafficDataProvider {
 				updateRouteProfile(entry.getValue(), updateInfo, true);
 			}
 
+			AccessibilityMapCache.getInstance().invalidateTrafficEntries();
+
+			m_lastUpdateDuration = System.currentTimeMillis() - startTime;
+
 			saveTmcData(updateInfo);
 			
 			long seconds = (System.currentTimeMillis() - startTime) / 1000;
 			logger.info("TMC: data is updated. Took " + seconds + " s.");
 	   } catch (Exception ex) {
+			m_lastUpdateDuration = -1;
 			logger.warning(ex.getMessage());
 		}
 
@@ -487,13 +511,7 @@ public class RealTrafficDataProvider {
 	private void updateRouteProfileEdges(RouteProfileTmcData rptd, TmcUpdateInfo updateInfo) {
 		
 		HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature = rptd.getMapEdgeId2trafficFeature();
-		if (m_edgeId2trafficFeature.size() == 0)
-			return;
-
-		HashMap<Integer, AvoidEdgeInfo> avoidEdges = new HashMap<Integer, AvoidEdgeInfo>();
-		List<Integer> blockedEdges = new ArrayList<Integer>();
-		List<Integer> blockedEdges_hv = new ArrayList<Integer>();
-		HashMap<Integer, EdgeInfo> edges = new HashMap<Integer, EdgeInfo>();
+		TrafficSnapshot.Builder snapshot = new TrafficSnapshot.Builder(updateInfo.time);
 
 		try {
 			long diff = new Date().getTime() - updateInfo.time.getTime();
@@ -515,15 +533,14 @@ public class RealTrafficDataProvider {
 						codes[i] = (short)Math.min(Math.max(tfi.getEventCodes().get(i), Short.MIN_VALUE), Short.MAX_VALUE);
 					}
 					
-					String message = tfi.getMessage();
 					if (tfi.getEdgeIds() == null)
 						continue;
 				    
-					edges.put(newEdgeId, new EdgeInfo(newEdgeId, codes, message));
+					snapshot.addEdge(newEdgeId, tfi, codes);
 					
 					
 					if (tfi.getEndTime() != null) {
-						Date now = new Date();
+						Date now = getCurrentTime(updateInfo.time);
 						if (now.compareTo(tfi.getEndTime()) > 0)
 							continue;
 					}
@@ -535,22 +552,15 @@ public class RealTrafficDataProvider {
 							int codeType = tec.type;
 							int mode = tec.mode;
 							if (codeType == TrafficEventType.AVOID) {
-								if (!avoidEdges.containsKey(newEdgeId)){				
-								
-										AvoidEdgeInfo edgeInfo = new AvoidEdgeInfo(newEdgeId, codes);
-										avoidEdges.put(newEdgeId, edgeInfo);
-								
-								} 
+								snapshot.addAvoidEdge(newEdgeId, codes);
 								
 							 } else if (codeType == TrafficEventType.BLOCKED && mode == TmcMode.CAR) {
 								 
-									    if (!blockedEdges.contains(newEdgeId))
-									        blockedEdges.add(newEdgeId);
+									    snapshot.addBlockedEdge(newEdgeId);
 							
 							 } else if (codeType == TrafficEventType.BLOCKED && mode == TmcMode.HEAVY_VEHICLE) {
 								 
-								        if (!blockedEdges_hv.contains(newEdgeId))
-								        	blockedEdges_hv.add(newEdgeId);
+								        snapshot.addHeavyVehicleBlockedEdge(newEdgeId);
 						
 						     }  else if (codeType != TrafficEventType.ANY) {
 								
@@ -569,23 +579,33 @@ public class RealTrafficDataProvider {
 			logger.info(ex.toString());
 		}
 
-		// TODO make it thread safe.
-	    // System.out.println("edges size " +  edges.size() + " ; avoid edges size = "+ avoidEdges.size() + " ; blocked edges size = " + blockedEdges.size());
-		rptd.update(edges, avoidEdges, blockedEdges, blockedEdges_hv);
+		TrafficSnapshot newSnapshot = snapshot.build();
+		rptd.setSnapshot(newSnapshot);
+
+		RoutingProfile rp = rptd.getRouteProfile();
+		if (rp.hasTrafficCH())
+			rp.customizeTrafficCH(newSnapshot);
 		
 		// System.out.println("traffic edges size " + edges.keySet().toString());
 	    // System.out.println("TmcUpdateInfo size " + updateInfo.getTmcEdgeIds().size() +" info are "+ Arrays.deepToString(updateInfo.getTmcEdgeIds().toArray()));
 	}
 
-	private TmcUpdateInfo getUpdateInfo() throws ParserConfigurationException, SAXException, IOException,
-			ParseException {
-		String message = m_tmcDatasource.getMessage();
+	private TmcUpdateInfo getUpdateInfo() throws XMLStreamException, IOException, ParseException {
+		InputStream stream = m_tmcDatasource.getMessageStream();
 
-		if (Helper.isEmpty(message))
-			logger.warning("TMC message is null or empty. Check data source configuration. Datasource type: " + m_tmcDatasource.toString());
-		
-		Date msgTime = TrafficUtility.getMessageDateTime(message);
-		List<TrafficFeatureInfo> tmcFeatures = TrafficUtility.extractTmcFeatures(message, m_tmcSegments, 6*60*60*1000, m_locationGraph, logger);
+		if (stream == null)
+			throw new IOException("TMC message is null or empty. Check data source configuration. Datasource type: " + m_tmcDatasource.toString());
+
+		TmcMessageReader reader = new TmcMessageReader(m_tmcSegments, m_locationGraph);
+		try {
+			reader.read(stream);
+		} finally {
+			stream.close();
+		}
+
+		Date msgTime = reader.getTime();
+		List<TrafficFeatureInfo> tmcFeatures = m_messageCache.update(reader.getMessages(), m_tmcSegments, 6*60*60*1000, getCurrentTime(msgTime), logger);
+		logger.info("TMC: " + m_messageCache.getAddedCount() + " messages added or changed, " + m_messageCache.getUnchangedCount() + " unchanged, " + m_messageCache.getRemovedCount() + " removed.");
 
 		m_lastUpdateInfo = new TmcUpdateInfo(msgTime, tmcFeatures);
 		
@@ -593,6 +613,23 @@ public class RealTrafficDataProvider {
 		
 	}
 
+	/**
+	 * Returns the time the expiration of the messages is checked against, which is the time of the message when
+	 * recorded messages are replayed.
+	 */
+	private Date getCurrentTime(Date messageTime) {
+		return m_tmcDatasource.isReplay() ? messageTime : new Date();
+	}
+
+	/**
+	 * Returns the time in milliseconds the last traffic update took, including matching the messages. The contraction
+	 * hierarchies are customized afterwards in the background. Returns -1 before the first update and if the last
+	 * update failed.
+	 */
+	public long getLastUpdateDuration() {
+		return m_lastUpdateDuration;
+	}
+
 	public boolean isInitialized() {
 		return m_initialized;
 	}
@@ -618,12 +655,45 @@ public class RealTrafficDataProvider {
 	
 	public String getTmcInfoAsJson(Envelope env)
 	{
-        List<TrafficFeatureInfo> tmcFeatures = m_lastUpdateInfo.getFeatures(env);
+		TmcUpdateInfo updateInfo = m_lastUpdateInfo;
+		if (updateInfo == null)
+			return null;
+
+        List<TrafficFeatureInfo> tmcFeatures = updateInfo.getFeatures(env);
         
         if (tmcFeatures.size() == 0)
         	return null;
 
+        return getTmcInfoAsJson(updateInfo, tmcFeatures);
+	}
+
+	/**
+	 * Returns the gzip compressed GeoJSON of the traffic features within the given map tile. Tiles are serialized
+	 * once per traffic update, later requests for the same tile are served from memory. Returns null if there is no
+	 * traffic data or the features could not be serialized.
+	 */
+	public byte[] getTmcTile(int zoom, int x, int y) throws IOException
+	{
+		TmcUpdateInfo updateInfo = m_lastUpdateInfo;
+		if (updateInfo == null)
+			return null;
+
+		TrafficTileCache tiles = updateInfo.getTiles();
+		byte[] tile = tiles.get(zoom, x, y);
+		if (tile == null)
+		{
+			List<TrafficFeatureInfo> tmcFeatures = updateInfo.getFeatures(TrafficTileCache.getTileEnvelope(zoom, x, y));
+			tile = tiles.put(zoom, x, y, getTmcInfoAsJson(updateInfo, tmcFeatures));
+		}
+
+		return tile;
+	}
+
+	private String getTmcInfoAsJson(TmcUpdateInfo updateInfo, List<TrafficFeatureInfo> tmcFeatures)
+	{
         String result = null;
+        // formatters are not thread safe and tiles are serialized concurrently
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 		
 	    try {
 	    	StringBuffer buffer = null;
@@ -637,7 +707,7 @@ public class RealTrafficDataProvider {
 	        jw.key("properties"); 
 	        jw.object();
 	        jw.key("update_time");
-	        jw.value(getTimeStamp());
+	        jw.value(dateFormat.format(updateInfo.getTime()));
 	        jw.endObject();
 
 	        // Start features
@@ -764,57 +834,25 @@ public class RealTrafficDataProvider {
 
 		if (rptd == null)
 			return "";
-		else {
-			EdgeInfo ei = rptd.getEdges().get(edgeId);
-
-			if (ei != null)
-				return ei.getCodesAsString() + " | " + ei.getMessage();
-			else
-				return null;
-		}
-	}
-
-	public List<Integer> getBlockedEdges(GraphStorage graphStorage) {
-		RouteProfileTmcData rptd = getRouteProfileTmcData(graphStorage);
-
-		if (rptd == null)
-			return null;
 		else
-			return rptd.getBlockedEdges();
-		 //Test AAS 
-		 /*{
-			List<Integer> list = new ArrayList();
-			for(Entry<Integer, AvoidEdgeInfo> entry: rptd.getAvoidEdges().entrySet())
-			{
-				list.add(entry.getValue().getEdgeId());
-			}
-			
-			return list;
-		}*/
+			return rptd.getSnapshot().getEdgeMessage(edgeId);
 	}
 
-	public HashMap<Integer, AvoidEdgeInfo> getAvoidEdges(GraphStorage graphStorage) {
+	/**
+	 * Returns the current traffic state of the given graph. The returned snapshot does not change, callers should
+	 * obtain it once per request in order to work on a consistent state.
+	 */
+	public TrafficSnapshot getSnapshot(GraphStorage graphStorage) {
 		RouteProfileTmcData rptd = getRouteProfileTmcData(graphStorage);
 
 		if (rptd == null)
-			return null;
+			return TrafficSnapshot.EMPTY;
 		else
-			return rptd.getAvoidEdges();
+			return rptd.getSnapshot();
 	}
 	
 	private RouteProfileTmcData getRouteProfileTmcData(GraphStorage graphStorage)
 	{
 		return m_routeProfilesMap.get(graphStorage.getDirectory().getLocation().hashCode());
 	}
-	
-	
-	public List<Integer> getHeavyVehicleBlockedEdges(GraphStorage graphStorage) {
-		RouteProfileTmcData rptd = getRouteProfileTmcData(graphStorage);
-
-		if (rptd == null)
-			return null;
-	
-		else
-			return rptd.getHeavyVehicleBlockedEdges();
-	}
 }
@@ -0,0 +1,246 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Reads the time and the messages of a TMC feed in a single pass over the XML stream, without building a document
+ * in memory. Each IFN element is turned into messages as soon as it has been read.
+ */
+public class TmcMessageReader {
+	private final TmcSegmentsCollection _tmcSegments;
+	private final TrafficLocationGraph _graph;
+	private String _timeStamp;
+	private List<TrafficMessageData> _messages = new ArrayList<TrafficMessageData>();
+
+	// state of the IFN element that is currently read
+	private TrafficMessageData _entry;
+	private List<Coordinate> _locations = new ArrayList<Coordinate>();
+	private List<String> _coordinateValues = new ArrayList<String>();
+	private boolean _hasDirection;
+	private boolean _hasBothDirections;
+	private boolean _hasMessageText;
+	private int _traMesDepth = -1;
+
+	public TmcMessageReader(TmcSegmentsCollection tmcSegments, TrafficLocationGraph graph) {
+		_tmcSegments = tmcSegments;
+		_graph = graph;
+	}
+
+	/**
+	 * Reads the message from the given stream, the stream is not closed.
+	 */
+	public void read(InputStream stream) throws XMLStreamException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		XMLStreamReader reader = factory.createXMLStreamReader(stream);
+		// names of the open elements, the innermost one first
+		ArrayDeque<String> path = new ArrayDeque<String>();
+
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					String parent = path.peek();
+
+					if (parent == null) {
+						_timeStamp = reader.getAttributeValue(null, "FGT");
+						path.push(name);
+						continue;
+					}
+
+					if (_entry == null) {
+						if ("IFN".equals(name))
+							beginEntry();
+						path.push(name);
+						continue;
+					}
+
+					if ("MES".equals(name)) {
+						if ("TRA".equals(parent) && _traMesDepth < 0)
+							_traMesDepth = path.size() + 1;
+					} else if ("MDA".equals(name)) {
+						_hasMessageText = false;
+					} else if (isTextElement(name, parent)) {
+						// reads up to the end tag of the element
+						readText(name, reader.getElementText());
+						continue;
+					}
+
+					path.push(name);
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = path.pop();
+
+					if (_entry != null) {
+						if ("IFN".equals(name)) {
+							endEntry();
+						} else if ("LCO".equals(name)) {
+							if (_coordinateValues.size() >= 2)
+								_locations.add(new Coordinate(Float.parseFloat(_coordinateValues.get(0)) / 100000.0, Float.parseFloat(_coordinateValues.get(1)) / 100000.0));
+							_coordinateValues.clear();
+						} else if (path.size() + 1 == _traMesDepth) {
+							_traMesDepth = -1;
+						}
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the time of the message given by the FGT attribute of its root element.
+	 */
+	public Date getTime() throws ParseException {
+		// FGT="2014-05-01T15:06:00"
+		SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		return formatter.parse(_timeStamp == null ? "" : _timeStamp);
+	}
+
+	public List<TrafficMessageData> getMessages() {
+		return _messages;
+	}
+
+	private boolean isTextElement(String name, String parent) {
+		switch (name) {
+		case "UPT":
+		case "EXP":
+			return "MNG".equals(parent);
+		case "TSA":
+		case "TSO":
+			return "TTI".equals(parent);
+		case "MDT":
+			return "MDA".equals(parent) && _traMesDepth > 0;
+		case "LCD":
+		case "ECO":
+		case "LDR":
+		case "EBF":
+			return true;
+		default:
+			return "LCO".equals(parent);
+		}
+	}
+
+	private void readText(String name, String text) {
+		switch (name) {
+		case "UPT":
+			// <UPT>2015-08-17T06:00:01</UPT>
+			_entry.uptTime = text;
+			break;
+		case "EXP":
+			// not provided in TIC3
+			_entry.expTime = text;
+			break;
+		case "TSA":
+			// <TTI><TSA>2015-10-23T13:30:00</TSA><TSO>2015-11-13T14:30:00</TSO></TTI>
+			_entry.startTime = text;
+			break;
+		case "TSO":
+			_entry.endTime = text;
+			break;
+		case "MDT":
+			// <MDA> <MDC>3</MDC> <MDT>Zwischen Auffahrt B43, ...</MDT> </MDA>, only the first text of an MDA is used
+			if (!_hasMessageText && !Helper.isEmpty(text)) {
+				_entry.messageDataText.add(text);
+				_hasMessageText = true;
+			}
+			break;
+		case "LCD":
+			// ignore the lcd if it is bigger than IntegerMax
+			Integer lcd = parseInteger(text);
+			if (lcd != null)
+				_entry.locationCodes.add(lcd);
+			break;
+		case "ECO":
+			Integer eco = parseInteger(text);
+			if (eco != null)
+				_entry.eventDataCodes.add(eco);
+			break;
+		case "LDR":
+			if (!_hasDirection) {
+				Integer direction = parseInteger(text);
+				_entry.direction = direction == null ? 0 : direction;
+				_hasDirection = true;
+			}
+			break;
+		case "EBF":
+			if (!_hasBothDirections) {
+				_entry.bothDirections = text.trim().equals("1");
+				_hasBothDirections = true;
+			}
+			break;
+		default:
+			// coordinates of a location given by LCO
+			_coordinateValues.add(text.trim());
+			break;
+		}
+	}
+
+	private void beginEntry() {
+		_entry = new TrafficMessageData();
+		_locations.clear();
+		_coordinateValues.clear();
+		_hasDirection = false;
+		_hasBothDirections = false;
+		_hasMessageText = false;
+		_traMesDepth = -1;
+	}
+
+	private void endEntry() {
+		// coordinates are only used for messages without a location code
+		if (!(_entry.locationCodes.size() == 1 && _entry.locationCodes.get(0) == 0))
+			_locations.clear();
+
+		TrafficMessageData.split(_entry, _locations, _messages, _tmcSegments, _graph);
+		_entry = null;
+	}
+
+	private static Integer parseInteger(String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
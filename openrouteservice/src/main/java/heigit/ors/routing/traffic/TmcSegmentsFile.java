@@ -0,0 +1,180 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Binary file with the TMC segments matched to a graph. The header holds a version and the import date of the graph,
+ * so that segments matched to another build of the graph or written in an older format are never used.
+ */
+public class TmcSegmentsFile {
+	// "ORSTMCSG"
+	private static final long MAGIC = 0x4F5253544D435347L;
+	private static final int VERSION = 1;
+
+	/**
+	 * Returns the segments stored in the given file or null if the file does not exist or does not belong to the
+	 * given graph.
+	 *
+	 * @param graphDate the import date of the graph, see "osmreader.import.date"
+	 */
+	public static List<TmcSegment> load(File file, String graphDate) throws IOException {
+		if (!file.exists())
+			return null;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			FileChannel channel = raf.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// the mapping stays valid after the channel has been closed
+			raf.close();
+		}
+
+		// DataOutputStream writes big endian values
+		buffer.order(ByteOrder.BIG_ENDIAN);
+
+		try {
+			if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION)
+				return null;
+
+			String date = readString(buffer);
+			if (graphDate == null || !graphDate.equals(date))
+				return null;
+
+			return readSegments(buffer);
+		} catch (BufferUnderflowException ex) {
+			// the file has not been written completely
+			return null;
+		}
+	}
+
+	private static List<TmcSegment> readSegments(MappedByteBuffer buffer) {
+		GeometryFactory geomFactory = new GeometryFactory();
+		int count = buffer.getInt();
+		List<TmcSegment> segments = new ArrayList<TmcSegment>(count);
+
+		for (int i = 0; i < count; i++) {
+			long id = buffer.getLong();
+			String roadnumber = readString(buffer);
+			int from = buffer.getInt();
+			int to = buffer.getInt();
+			int direction = buffer.getInt();
+			double distance = buffer.getDouble();
+
+			int nEdges = buffer.getInt();
+			List<Integer> edgeIds = new ArrayList<Integer>(nEdges);
+			for (int j = 0; j < nEdges; j++)
+				edgeIds.add(buffer.getInt());
+
+			int nCoords = buffer.getInt();
+			Geometry geom = null;
+			if (nCoords > 0) {
+				Coordinate[] coords = new Coordinate[nCoords];
+				for (int j = 0; j < nCoords; j++)
+					coords[j] = new Coordinate(buffer.getDouble(), buffer.getDouble());
+				geom = geomFactory.createLineString(coords);
+			}
+
+			segments.add(new TmcSegment(id, roadnumber, from, to, direction, distance, geom, edgeIds));
+		}
+
+		return segments;
+	}
+
+	public static void save(File file, String graphDate, List<TmcSegment> segments) throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 20));
+
+		try {
+			output.writeLong(MAGIC);
+			output.writeInt(VERSION);
+			writeString(output, graphDate);
+			output.writeInt(segments.size());
+
+			for (TmcSegment seg : segments) {
+				output.writeLong(seg.getId());
+				writeString(output, seg.getRoadnumber());
+				output.writeInt(seg.getFrom());
+				output.writeInt(seg.getTo());
+				output.writeInt(seg.getDirection());
+				output.writeDouble(seg.getDistance());
+
+				List<Integer> edgeIds = seg.getEdgeIDs();
+				output.writeInt(edgeIds.size());
+				for (Integer edgeId : edgeIds)
+					output.writeInt(edgeId);
+
+				Coordinate[] coords = seg.getGeometry() == null ? new Coordinate[0] : seg.getGeometry().getCoordinates();
+				output.writeInt(coords.length);
+				for (Coordinate c : coords) {
+					output.writeDouble(c.x);
+					output.writeDouble(c.y);
+				}
+			}
+		} finally {
+			output.close();
+		}
+
+		if (file.exists() && !file.delete())
+			throw new IOException("Unable to replace '" + file.getPath() + "'.");
+		if (!tmpFile.renameTo(file))
+			throw new IOException("Unable to create '" + file.getPath() + "'.");
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static String readString(MappedByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
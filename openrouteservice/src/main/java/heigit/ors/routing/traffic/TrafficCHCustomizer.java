@@ -0,0 +1,533 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.ch.PrepareEncoder;
+import com.graphhopper.routing.util.AllCHEdgesIterator;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.util.CHEdgeExplorer;
+import com.graphhopper.util.CHEdgeIterator;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Recomputes the weights of all shortcuts of a contraction hierarchy for a new metric without changing its node order.
+ * The weight of a shortcut is the sum of the weights of the two edges it skips, so the weights are computed
+ * recursively down to the base edges and every shortcut is visited at most once per direction.
+ * <p>
+ * The hierarchy was contracted with witness searches under the metric of its preparation, so shortcuts whose witness
+ * paths became slower under the new metric are missing. Therefore the nodes are contracted once more in the order of
+ * their levels with witness searches under the new metric and the missing shortcuts are added. Shortcuts that can be
+ * used in both directions only store a single weight, so they are split into two one-way shortcuts once the weights of
+ * their directions differ. Shortcuts are never removed, a shortcut that is not needed for a metric does not change
+ * the results of queries. The hierarchy therefore grows with every customization, its owner has to watch
+ * {@link #countShortcuts(CHGraph)} and reload the prepared hierarchy once it has grown too much.
+ * <p>
+ * The new weights and shortcuts are computed first and written to the graph in a second step by {@link #apply()}, so
+ * that queries only have to be blocked while the graph is changed.
+ */
+public class TrafficCHCustomizer {
+	private static final float NOT_COMPUTED = -1;
+	// a shortcut is added if no witness has been found after settling this number of nodes
+	private static final int MAX_WITNESS_SETTLED_NODES = 100;
+
+	private final CHGraph _chGraph;
+	private final FlagEncoder _encoder;
+	private final Weighting _weighting;
+	private final int _baseEdges;
+	private int _edges;
+	// weights of the shortcuts from the node with the smaller id to the one with the larger id and vice versa
+	private float[] _ascWeights;
+	private float[] _descWeights;
+	// shortcuts that are missing for the new metric, their edge ids will be _edges + index
+	private final IntArrayList _newFrom = new IntArrayList();
+	private final IntArrayList _newTo = new IntArrayList();
+	private final IntArrayList _newSkipped1 = new IntArrayList();
+	private final IntArrayList _newSkipped2 = new IntArrayList();
+	// indices of the new shortcuts starting and ending at a node
+	private final IntObjectMap<IntArrayList> _newOutEdges = new GHIntObjectHashMap<IntArrayList>();
+	private final IntObjectMap<IntArrayList> _newInEdges = new GHIntObjectHashMap<IntArrayList>();
+	private int _splitCount;
+
+	/**
+	 * @param weighting the weighting of the new metric, it is only called for base edges
+	 */
+	public TrafficCHCustomizer(CHGraph chGraph, FlagEncoder encoder, Weighting weighting)
+	{
+		_chGraph = chGraph;
+		_encoder = encoder;
+		_weighting = weighting;
+		_baseEdges = chGraph.getBaseGraph().getAllEdges().getMaxId();
+	}
+
+	/**
+	 * Computes the weights of all shortcuts and the shortcuts that are missing for the new metric.
+	 */
+	public void customize()
+	{
+		AllCHEdgesIterator iter = _chGraph.getAllEdges();
+		_edges = iter.getMaxId();
+		int shortcuts = Math.max(0, _edges - _baseEdges);
+
+		_ascWeights = new float[shortcuts];
+		_descWeights = new float[shortcuts];
+		Arrays.fill(_ascWeights, NOT_COMPUTED);
+		Arrays.fill(_descWeights, NOT_COMPUTED);
+
+		while (iter.next())
+		{
+			if (!iter.isShortcut())
+				continue;
+
+			int edge = iter.getEdge();
+			if (iter.isForward(_encoder))
+				calcWeight(edge, iter.getBaseNode(), iter.getAdjNode());
+			if (iter.isBackward(_encoder))
+				calcWeight(edge, iter.getAdjNode(), iter.getBaseNode());
+		}
+
+		addMissingShortcuts();
+	}
+
+	/**
+	 * Writes the shortcuts and weights computed by {@link #customize()} to the graph. Callers have to make sure that
+	 * the graph is not queried at the same time.
+	 */
+	public void apply()
+	{
+		for (int i = 0; i < _newFrom.size(); i++)
+		{
+			int from = _newFrom.get(i);
+			int to = _newTo.get(i);
+			int skipped1 = _newSkipped1.get(i);
+			int skipped2 = _newSkipped2.get(i);
+
+			CHEdgeIteratorState shortcut = _chGraph.shortcut(from, to);
+			if (shortcut.getEdge() != _edges + i)
+				throw new IllegalStateException("The contraction hierarchy has been changed during its customization.");
+
+			shortcut.setFlags(PrepareEncoder.getScFwdDir());
+			shortcut.setWeight(getWeight(shortcut.getEdge(), from, to));
+			shortcut.setDistance(getDistance(skipped1, from) + getDistance(skipped2, to));
+			shortcut.setSkippedEdges(skipped1, skipped2);
+		}
+
+		List<CHEdgeIteratorState> splitShortcuts = new ArrayList<CHEdgeIteratorState>();
+		AllCHEdgesIterator iter = _chGraph.getAllEdges();
+		while (iter.next())
+		{
+			if (!iter.isShortcut() || iter.getEdge() >= _edges)
+				continue;
+
+			int edge = iter.getEdge();
+			boolean forward = iter.isForward(_encoder);
+			boolean backward = iter.isBackward(_encoder);
+			if (!forward && !backward)
+				continue;
+
+			double forwardWeight = forward ? getWeight(edge, iter.getBaseNode(), iter.getAdjNode()) : 0;
+			double backwardWeight = backward ? getWeight(edge, iter.getAdjNode(), iter.getBaseNode()) : 0;
+
+			if (forward && backward && forwardWeight != backwardWeight)
+			{
+				// the flags hold the weight, so it has to be set after them
+				iter.setFlags(PrepareEncoder.getScFwdDir());
+				iter.setWeight(forwardWeight);
+				splitShortcuts.add((CHEdgeIteratorState) _chGraph.getEdgeIteratorState(edge, iter.getAdjNode()));
+			}
+			else
+			{
+				iter.setWeight(forward ? forwardWeight : backwardWeight);
+			}
+		}
+
+		for (CHEdgeIteratorState state : splitShortcuts)
+		{
+			int base = state.getBaseNode();
+			int adj = state.getAdjNode();
+
+			CHEdgeIteratorState reverse = _chGraph.shortcut(adj, base);
+			reverse.setFlags(PrepareEncoder.getScFwdDir());
+			reverse.setWeight(getWeight(state.getEdge(), adj, base));
+			reverse.setDistance(state.getDistance());
+			reverse.setSkippedEdges(state.getSkippedEdge1(), state.getSkippedEdge2());
+		}
+
+		_splitCount = splitShortcuts.size();
+	}
+
+	/**
+	 * Returns the number of shortcuts the hierarchy had before its customization.
+	 */
+	public int getShortcutsCount()
+	{
+		return _ascWeights == null ? 0 : Math.max(0, _edges - _baseEdges);
+	}
+
+	/**
+	 * Returns the number of shortcuts of the given hierarchy.
+	 */
+	public static int countShortcuts(CHGraph chGraph)
+	{
+		return Math.max(0, chGraph.getAllEdges().getMaxId() - chGraph.getBaseGraph().getAllEdges().getMaxId());
+	}
+
+	/**
+	 * Returns the number of shortcuts {@link #apply()} has added for missing shortcuts and for splitting shortcuts
+	 * with different weights in both directions.
+	 */
+	public int getAddedShortcutsCount()
+	{
+		return _newFrom.size() + _splitCount;
+	}
+
+	private double getDistance(int edge, int adjNode)
+	{
+		return _chGraph.getEdgeIteratorState(edge, adjNode).getDistance();
+	}
+
+	private double getWeight(int edge, int from, int to)
+	{
+		float weight = (from < to ? _ascWeights : _descWeights)[edge - _baseEdges];
+		return weight == Float.POSITIVE_INFINITY ? Double.POSITIVE_INFINITY : weight;
+	}
+
+	private double calcWeight(int edge, int from, int to)
+	{
+		if (edge < _baseEdges)
+		{
+			EdgeIteratorState state = _chGraph.getEdgeIteratorState(edge, to);
+			if (state == null)
+				return Double.POSITIVE_INFINITY;
+
+			return _weighting.calcWeight(state, false, EdgeIterator.NO_EDGE);
+		}
+
+		float[] weights = from < to ? _ascWeights : _descWeights;
+		int index = edge - _baseEdges;
+		if (weights[index] != NOT_COMPUTED)
+			return weights[index];
+
+		double weight = Double.POSITIVE_INFINITY;
+		CHEdgeIteratorState shortcut = (CHEdgeIteratorState) _chGraph.getEdgeIteratorState(edge, to);
+		if (shortcut != null)
+		{
+			int first = shortcut.getSkippedEdge1();
+			int second = shortcut.getSkippedEdge2();
+			// the skipped edge that ends at the start node of the shortcut starts at the contracted node
+			EdgeIteratorState firstState = _chGraph.getEdgeIteratorState(first, from);
+			if (firstState == null)
+			{
+				first = shortcut.getSkippedEdge2();
+				second = shortcut.getSkippedEdge1();
+				firstState = _chGraph.getEdgeIteratorState(first, from);
+			}
+
+			if (firstState != null)
+			{
+				int via = firstState.getBaseNode();
+				weight = calcWeight(first, from, via) + calcWeight(second, via, to);
+			}
+		}
+
+		weights[index] = (float) weight;
+		return weight;
+	}
+
+	/**
+	 * Returns the weight of the edge the iterator points to in the direction from its base node to its adjacent node
+	 * or the other way round.
+	 */
+	private double calcWeight(CHEdgeIteratorState iter, boolean reverse)
+	{
+		if (iter.isShortcut())
+			return reverse ? calcWeight(iter.getEdge(), iter.getAdjNode(), iter.getBaseNode()) : calcWeight(iter.getEdge(), iter.getBaseNode(), iter.getAdjNode());
+
+		return _weighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE);
+	}
+
+	/**
+	 * Contracts the nodes in the order of their levels, every pair of higher neighbors whose shortest path runs via the
+	 * contracted node needs a shortcut. Shortcuts found to be missing are added to the graph of the higher nodes before
+	 * these are contracted.
+	 */
+	private void addMissingShortcuts()
+	{
+		int nodes = _chGraph.getNodes();
+		long[] order = new long[nodes];
+		for (int node = 0; node < nodes; node++)
+			order[node] = ((long) _chGraph.getLevel(node) << 32) | node;
+		Arrays.sort(order);
+
+		CHEdgeExplorer explorer = _chGraph.createEdgeExplorer();
+		WitnessSearch witnessSearch = new WitnessSearch();
+		Neighbors inNeighbors = new Neighbors();
+		Neighbors outNeighbors = new Neighbors();
+
+		for (int i = 0; i < nodes; i++)
+		{
+			int node = (int) order[i];
+			int level = _chGraph.getLevel(node);
+
+			inNeighbors.clear();
+			outNeighbors.clear();
+			CHEdgeIterator iter = explorer.setBaseNode(node);
+			while (iter.next())
+			{
+				int adjNode = iter.getAdjNode();
+				if (_chGraph.getLevel(adjNode) <= level)
+					continue;
+
+				if (iter.isForward(_encoder))
+					outNeighbors.add(adjNode, iter.getEdge(), calcWeight(iter, false));
+				if (iter.isBackward(_encoder))
+					inNeighbors.add(adjNode, iter.getEdge(), calcWeight(iter, true));
+			}
+			addNewShortcuts(_newOutEdges.get(node), true, level, outNeighbors);
+			addNewShortcuts(_newInEdges.get(node), false, level, inNeighbors);
+
+			if (inNeighbors.size() == 0 || outNeighbors.size() == 0)
+				continue;
+
+			double maxOutWeight = 0;
+			for (int j = 0; j < outNeighbors.size(); j++)
+				maxOutWeight = Math.max(maxOutWeight, outNeighbors.weights.get(j));
+
+			for (int j = 0; j < inNeighbors.size(); j++)
+			{
+				int from = inNeighbors.nodes.get(j);
+				double inWeight = inNeighbors.weights.get(j);
+				witnessSearch.run(explorer, from, node, level, inWeight + maxOutWeight);
+
+				for (int k = 0; k < outNeighbors.size(); k++)
+				{
+					int to = outNeighbors.nodes.get(k);
+					double weight = inWeight + outNeighbors.weights.get(k);
+					if (to != from && witnessSearch.getWeight(to) > weight)
+						addShortcut(from, to, inNeighbors.edges.get(j), outNeighbors.edges.get(k), weight);
+				}
+			}
+		}
+	}
+
+	private void addNewShortcuts(IntArrayList indices, boolean out, int level, Neighbors neighbors)
+	{
+		if (indices == null)
+			return;
+
+		for (int i = 0; i < indices.size(); i++)
+		{
+			int index = indices.get(i);
+			int adjNode = out ? _newTo.get(index) : _newFrom.get(index);
+			if (_chGraph.getLevel(adjNode) > level)
+				neighbors.add(adjNode, _edges + index, getWeight(_edges + index, _newFrom.get(index), _newTo.get(index)));
+		}
+	}
+
+	private void addShortcut(int from, int to, int skipped1, int skipped2, double weight)
+	{
+		IntArrayList outEdges = _newOutEdges.get(from);
+		if (outEdges != null)
+		{
+			for (int i = 0; i < outEdges.size(); i++)
+			{
+				int index = outEdges.get(i);
+				if (_newTo.get(index) == to)
+				{
+					// the shortcut has not been used by others yet, since both of its nodes are higher than the current one
+					if (getWeight(_edges + index, from, to) > weight)
+					{
+						_newSkipped1.set(index, skipped1);
+						_newSkipped2.set(index, skipped2);
+						setWeight(_edges + index, from, to, weight);
+					}
+					return;
+				}
+			}
+		}
+
+		int index = _newFrom.size();
+		_newFrom.add(from);
+		_newTo.add(to);
+		_newSkipped1.add(skipped1);
+		_newSkipped2.add(skipped2);
+		getNewEdges(_newOutEdges, from).add(index);
+		getNewEdges(_newInEdges, to).add(index);
+
+		int shortcuts = _edges + index + 1 - _baseEdges;
+		if (shortcuts > _ascWeights.length)
+		{
+			int capacity = Math.max(shortcuts, _ascWeights.length + (_ascWeights.length >> 1) + 16);
+			_ascWeights = Arrays.copyOf(_ascWeights, capacity);
+			_descWeights = Arrays.copyOf(_descWeights, capacity);
+		}
+		// new shortcuts are one-way
+		setWeight(_edges + index, to, from, Double.POSITIVE_INFINITY);
+		setWeight(_edges + index, from, to, weight);
+	}
+
+	private void setWeight(int edge, int from, int to, double weight)
+	{
+		(from < to ? _ascWeights : _descWeights)[edge - _baseEdges] = (float) weight;
+	}
+
+	private static IntArrayList getNewEdges(IntObjectMap<IntArrayList> newEdges, int node)
+	{
+		IntArrayList edges = newEdges.get(node);
+		if (edges == null)
+		{
+			edges = new IntArrayList(4);
+			newEdges.put(node, edges);
+		}
+		return edges;
+	}
+
+	private static class Neighbors {
+		private final IntArrayList nodes = new IntArrayList();
+		private final IntArrayList edges = new IntArrayList();
+		private final DoubleArrayList weights = new DoubleArrayList();
+
+		private void add(int node, int edge, double weight)
+		{
+			if (Double.isInfinite(weight))
+				return;
+
+			nodes.add(node);
+			edges.add(edge);
+			weights.add(weight);
+		}
+
+		private int size()
+		{
+			return nodes.size();
+		}
+
+		private void clear()
+		{
+			nodes.clear();
+			edges.clear();
+			weights.clear();
+		}
+	}
+
+	private static class WitnessEntry implements Comparable<WitnessEntry> {
+		private final int node;
+		private final double weight;
+
+		private WitnessEntry(int node, double weight)
+		{
+			this.node = node;
+			this.weight = weight;
+		}
+
+		@Override
+		public int compareTo(WitnessEntry other)
+		{
+			return Double.compare(weight, other.weight);
+		}
+	}
+
+	/**
+	 * Searches the shortest paths from a node to the other nodes above a given level without passing the contracted
+	 * node. Queue entries are not updated but skipped when their node has already been settled.
+	 */
+	private class WitnessSearch {
+		private final IntDoubleHashMap _weights = new IntDoubleHashMap();
+		private final IntHashSet _settled = new IntHashSet();
+		private final PriorityQueue<WitnessEntry> _queue = new PriorityQueue<WitnessEntry>();
+
+		private void run(CHEdgeExplorer explorer, int from, int ignoreNode, int level, double maxWeight)
+		{
+			_weights.clear();
+			_settled.clear();
+			_queue.clear();
+
+			_weights.put(from, 0);
+			_queue.add(new WitnessEntry(from, 0));
+
+			while (!_queue.isEmpty())
+			{
+				WitnessEntry entry = _queue.poll();
+				if (entry.weight > maxWeight || _settled.size() >= MAX_WITNESS_SETTLED_NODES)
+					break;
+				if (!_settled.add(entry.node))
+					continue;
+
+				CHEdgeIterator iter = explorer.setBaseNode(entry.node);
+				while (iter.next())
+				{
+					int adjNode = iter.getAdjNode();
+					if (adjNode == ignoreNode || !iter.isForward(_encoder) || _chGraph.getLevel(adjNode) <= level)
+						continue;
+
+					relax(adjNode, entry.weight + calcWeight(iter, false));
+				}
+
+				IntArrayList newEdges = _newOutEdges.get(entry.node);
+				if (newEdges != null)
+				{
+					for (int i = 0; i < newEdges.size(); i++)
+					{
+						int index = newEdges.get(i);
+						int adjNode = _newTo.get(index);
+						if (adjNode != ignoreNode && _chGraph.getLevel(adjNode) > level)
+							relax(adjNode, entry.weight + getWeight(_edges + index, entry.node, adjNode));
+					}
+				}
+			}
+		}
+
+		private void relax(int node, double weight)
+		{
+			if (Double.isInfinite(weight) || _settled.contains(node))
+				return;
+
+			if (weight < _weights.getOrDefault(node, Double.POSITIVE_INFINITY))
+			{
+				_weights.put(node, weight);
+				_queue.add(new WitnessEntry(node, weight));
+			}
+		}
+
+		/**
+		 * Returns the weight of the shortest path found to the given node, paths to nodes that have not been settled
+		 * may not be the shortest ones, but are still valid witnesses.
+		 */
+		private double getWeight(int node)
+		{
+			return _weights.getOrDefault(node, Double.POSITIVE_INFINITY);
+		}
+	}
+}
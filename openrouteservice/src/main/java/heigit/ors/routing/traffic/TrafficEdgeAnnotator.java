@@ -21,18 +21,21 @@
 package heigit.ors.routing.traffic;
 
 import com.graphhopper.routing.util.EdgeAnnotator;
-import com.graphhopper.storage.GraphStorage;
 
+/**
+ * Annotates the edges of a route with the traffic messages of one {@link TrafficSnapshot}. It holds no per-request
+ * state, so that one instance per snapshot is shared by all requests.
+ */
 public class TrafficEdgeAnnotator implements EdgeAnnotator {
-	private GraphStorage storage;
-	
-	public TrafficEdgeAnnotator(GraphStorage gs)
+	private final TrafficSnapshot _snapshot;
+
+	TrafficEdgeAnnotator(TrafficSnapshot snapshot)
 	{
-		storage = gs;
+		_snapshot = snapshot;
 	}
-	
+
 	public String getAnnotation(int edgeId)
 	{
-		return RealTrafficDataProvider.getInstance().getEdgeMessage(storage, edgeId);
+		return _snapshot.getEdgeMessage(edgeId);
 	}
 }
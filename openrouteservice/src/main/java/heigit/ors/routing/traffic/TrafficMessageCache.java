@@ -0,0 +1,127 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Keeps the traffic features of the messages received with the last update, so that only messages which have been
+ * added or changed since then need to be matched to the TMC segments again. Messages that are no longer part of the
+ * feed are dropped.
+ */
+public class TrafficMessageCache {
+	private class CachedMessage {
+		private List<TrafficFeatureInfo> features;
+		private Date expirationTime;
+
+		private CachedMessage(List<TrafficFeatureInfo> features, Date expirationTime) {
+			this.features = features;
+			this.expirationTime = expirationTime;
+		}
+	}
+
+	private HashMap<String, CachedMessage> _messages = new HashMap<String, CachedMessage>();
+	private GeometryFactory _geomFactory = new GeometryFactory();
+	private DateFormat _dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+	private int _addedCount;
+	private int _unchangedCount;
+	private int _removedCount;
+
+	/**
+	 * Returns the features of the given messages in the order of the messages. Features of messages known from the
+	 * previous update are reused unless the messages have expired in the meantime.
+	 *
+	 * @param now the time expired messages are checked against
+	 */
+	public List<TrafficFeatureInfo> update(List<TrafficMessageData> messages, TmcSegmentsCollection segments, long timeThreshold, Date now, Logger logger) {
+		HashMap<String, CachedMessage> newMessages = new HashMap<String, CachedMessage>(Math.max(16, 2 * messages.size()));
+		List<TrafficFeatureInfo> result = new ArrayList<TrafficFeatureInfo>();
+
+		_addedCount = 0;
+		_unchangedCount = 0;
+
+		for (TrafficMessageData m : messages) {
+			String key = m.getKey();
+			// the same message may occur more than once in the feed
+			if (newMessages.containsKey(key))
+				continue;
+
+			CachedMessage cm = _messages.get(key);
+			if (cm != null) {
+				_unchangedCount++;
+			} else {
+				_addedCount++;
+				try {
+					cm = new CachedMessage(TrafficUtility.extractTmcFeatures(m, segments, timeThreshold, _geomFactory, now), getExpirationTime(m));
+				} catch (Exception ex) {
+					logger.warning(ex.getMessage());
+					cm = new CachedMessage(Collections.<TrafficFeatureInfo>emptyList(), null);
+				}
+			}
+
+			newMessages.put(key, cm);
+
+			if (cm.expirationTime != null && now.compareTo(cm.expirationTime) > 0)
+				continue;
+
+			result.addAll(cm.features);
+		}
+
+		_removedCount = _messages.size() - _unchangedCount;
+		_messages = newMessages;
+
+		return result;
+	}
+
+	public void clear() {
+		_messages.clear();
+	}
+
+	public int getAddedCount() {
+		return _addedCount;
+	}
+
+	public int getUnchangedCount() {
+		return _unchangedCount;
+	}
+
+	public int getRemovedCount() {
+		return _removedCount;
+	}
+
+	private Date getExpirationTime(TrafficMessageData m) throws Exception {
+		// see TrafficUtility.createTrafficFeatureInfo, messages with an expiration but without an end time are dropped after they expired
+		if (!Helper.isEmpty(m.expTime) && Helper.isEmpty(m.endTime))
+			return _dateFormat.parse(m.expTime);
+
+		return null;
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.IdentityHashMap;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * The traffic state of one graph at the time of a TMC update. A snapshot is never modified after it has been built,
+ * so that it can be shared by any number of routing threads while the next update is being prepared.
+ * <p>
+ * Blocked edges are kept in bit sets indexed by edge id. The penalties of edges that should be avoided are derived
+ * from their event codes once, when the snapshot is built, and stored in primitive arrays. The messages shown for the
+ * edges of a route are built once per traffic feature and referenced from the edges by their index.
+ */
+public class TrafficSnapshot {
+	public static final TrafficSnapshot EMPTY = new Builder(null).build();
+
+	private static final double NO_SPEED = Double.MAX_VALUE;
+
+	private final Date _time;
+	private final BitSet _blockedEdges;
+	private final BitSet _heavyVehicleBlockedEdges;
+	private final IntIntHashMap _penaltyIndices;
+	// two entries per penalty, the first one ignores events for heavy vehicles, the second one considers all events
+	private final double[] _delays;
+	private final double[] _speeds;
+	private final double[] _speedFactors;
+	private final IntIntHashMap _messageIndices;
+	private final String[] _messages;
+	private final TrafficEdgeAnnotator _edgeAnnotator;
+
+	private TrafficSnapshot(Builder builder)
+	{
+		_time = builder._time;
+		_blockedEdges = builder._blockedEdges;
+		_heavyVehicleBlockedEdges = builder._heavyVehicleBlockedEdges;
+		_penaltyIndices = builder._penaltyIndices;
+		_delays = Arrays.copyOf(builder._delays, 2 * builder._penaltyIndices.size());
+		_speeds = Arrays.copyOf(builder._speeds, _delays.length);
+		_speedFactors = Arrays.copyOf(builder._speedFactors, _delays.length);
+		_messageIndices = builder._messageIndices;
+		_messages = builder._messages.toArray(new String[builder._messages.size()]);
+		_edgeAnnotator = new TrafficEdgeAnnotator(this);
+	}
+
+	public Date getTime()
+	{
+		return _time;
+	}
+
+	public boolean isBlocked(int edgeId)
+	{
+		return edgeId >= 0 && _blockedEdges.get(edgeId);
+	}
+
+	public boolean isBlockedForHeavyVehicles(int edgeId)
+	{
+		return edgeId >= 0 && _heavyVehicleBlockedEdges.get(edgeId);
+	}
+
+	public boolean hasBlockedEdges()
+	{
+		return !_blockedEdges.isEmpty() || !_heavyVehicleBlockedEdges.isEmpty();
+	}
+
+	/**
+	 * Returns the index of the penalty of the given edge or -1 if the edge does not need to be avoided.
+	 *
+	 * @param heavyVehicleEvents whether events which only concern heavy vehicles should be considered
+	 */
+	public int getPenaltyIndex(int edgeId, boolean heavyVehicleEvents)
+	{
+		int index = _penaltyIndices.getOrDefault(edgeId, -1);
+		return index < 0 ? -1 : 2 * index + (heavyVehicleEvents ? 1 : 0);
+	}
+
+	/**
+	 * Returns the delay in minutes or a negative value if there is no delay.
+	 */
+	public double getDelay(int penaltyIndex)
+	{
+		return _delays[penaltyIndex];
+	}
+
+	/**
+	 * Returns the speed given by the events or {@link Double#MAX_VALUE} if there is none.
+	 */
+	public double getSpeed(int penaltyIndex)
+	{
+		return _speeds[penaltyIndex];
+	}
+
+	public double getSpeedFactor(int penaltyIndex)
+	{
+		return _speedFactors[penaltyIndex];
+	}
+
+	/**
+	 * Returns the travel time in seconds on an edge with the given penalty.
+	 *
+	 * @param distance the length of the edge in meters
+	 * @param speed the usual speed on the edge in km/h
+	 */
+	public double calcTravelTime(int penaltyIndex, double distance, double speed)
+	{
+		double delay = _delays[penaltyIndex];
+		if (delay > 0)
+			return delay * 60 + distance * 3.6 / speed;
+
+		double givenSpeed = _speeds[penaltyIndex];
+		if (givenSpeed < NO_SPEED)
+			return distance * 3.6 / givenSpeed;
+
+		return distance * 3.6 / (_speedFactors[penaltyIndex] * speed);
+	}
+
+	/**
+	 * Returns the event codes and the text of the message for the given edge ("codes | text") or null if there is
+	 * none.
+	 */
+	public String getEdgeMessage(int edgeId)
+	{
+		int index = _messageIndices.getOrDefault(edgeId, -1);
+		return index < 0 ? null : _messages[index];
+	}
+
+	public int getEdgesCount()
+	{
+		return _messageIndices.size();
+	}
+
+	/**
+	 * Returns the annotator for the messages of this snapshot, it is shared by all requests.
+	 */
+	public TrafficEdgeAnnotator getEdgeAnnotator()
+	{
+		return _edgeAnnotator;
+	}
+
+	public static class Builder
+	{
+		private Date _time;
+		private BitSet _blockedEdges = new BitSet();
+		private BitSet _heavyVehicleBlockedEdges = new BitSet();
+		private IntIntHashMap _penaltyIndices = new IntIntHashMap();
+		private double[] _delays = new double[64];
+		private double[] _speeds = new double[64];
+		private double[] _speedFactors = new double[64];
+		private IntIntHashMap _messageIndices = new IntIntHashMap();
+		private ArrayList<String> _messages = new ArrayList<String>();
+		private IdentityHashMap<TrafficFeatureInfo, Integer> _featureIndices = new IdentityHashMap<TrafficFeatureInfo, Integer>();
+
+		public Builder(Date time)
+		{
+			_time = time;
+		}
+
+		/**
+		 * Adds the message of a feature to one of its edges. The message is built only for the first edge of a feature.
+		 */
+		public void addEdge(int edgeId, TrafficFeatureInfo feature, short[] codes)
+		{
+			Integer index = _featureIndices.get(feature);
+			if (index == null)
+			{
+				index = _messages.size();
+				_featureIndices.put(feature, index);
+				_messages.add(getMessage(codes, feature.getMessage()));
+			}
+
+			_messageIndices.put(edgeId, index);
+		}
+
+		private static String getMessage(short[] codes, String text)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < codes.length; i++)
+			{
+				if (i > 0)
+					sb.append(',');
+				sb.append(codes[i]);
+			}
+
+			return sb.append(" | ").append(text).toString();
+		}
+
+		public void addBlockedEdge(int edgeId)
+		{
+			_blockedEdges.set(edgeId);
+		}
+
+		public void addHeavyVehicleBlockedEdge(int edgeId)
+		{
+			_heavyVehicleBlockedEdges.set(edgeId);
+		}
+
+		/**
+		 * Adds an edge that should be avoided, the first codes added for an edge win.
+		 */
+		public void addAvoidEdge(int edgeId, short[] codes)
+		{
+			if (_penaltyIndices.containsKey(edgeId))
+				return;
+
+			int index = _penaltyIndices.size();
+			_penaltyIndices.put(edgeId, index);
+
+			if (2 * index + 2 > _delays.length)
+			{
+				int capacity = _delays.length * 2;
+				_delays = Arrays.copyOf(_delays, capacity);
+				_speeds = Arrays.copyOf(_speeds, capacity);
+				_speedFactors = Arrays.copyOf(_speedFactors, capacity);
+			}
+
+			setPenalty(2 * index, codes, false);
+			setPenalty(2 * index + 1, codes, true);
+		}
+
+		private void setPenalty(int index, short[] codes, boolean heavyVehicleEvents)
+		{
+			double delay = -1;
+			double speed = NO_SPEED;
+			double speedFactor = 1;
+
+			for (int i = 0; i < codes.length; i++)
+			{
+				TrafficEventInfo tec = TmcEventCodesTable.getEventInfo(codes[i]);
+				if (tec == null || (!heavyVehicleEvents && tec.getTmcMode() == TmcMode.HEAVY_VEHICLE))
+					continue;
+
+				// use the max delay in the routing
+				if (tec.isDelay())
+					delay = Math.max(delay, tec.getDelay());
+
+				if (tec.getSpeedFactor() > 1)
+					speed = Math.min(speed, tec.getSpeedFactor());
+				else
+					speedFactor = Math.min(speedFactor, tec.getSpeedFactor());
+			}
+
+			_delays[index] = delay;
+			_speeds[index] = speed;
+			_speedFactors[index] = speedFactor;
+		}
+
+		public TrafficSnapshot build()
+		{
+			TrafficSnapshot snapshot = new TrafficSnapshot(this);
+			// the collections are owned by the snapshot from now on
+			_blockedEdges = null;
+			_heavyVehicleBlockedEdges = null;
+			_penaltyIndices = null;
+			_messageIndices = null;
+			_messages = null;
+			_featureIndices = null;
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Gzip compressed GeoJSON of the traffic features of one update, addressed like map tiles (zoom/x/y). A tile is
+ * serialized when it is requested for the first time and then served from memory until the next traffic update
+ * replaces the whole cache.
+ */
+public class TrafficTileCache {
+	public static final int MAX_ZOOM = 20;
+	// tiles requested beyond this number are still served, but not kept
+	private static final int MAX_TILES = 20000;
+
+	private final ConcurrentHashMap<Long, byte[]> _tiles = new ConcurrentHashMap<Long, byte[]>();
+
+	public static boolean isValidTile(int zoom, int x, int y) {
+		return zoom >= 0 && zoom <= MAX_ZOOM && x >= 0 && y >= 0 && x < (1 << zoom) && y < (1 << zoom);
+	}
+
+	/**
+	 * Returns the extent of a tile of the web mercator tiling scheme in degrees.
+	 */
+	public static Envelope getTileEnvelope(int zoom, int x, int y) {
+		double n = 1 << zoom;
+		double minLon = x / n * 360.0 - 180.0;
+		double maxLon = (x + 1) / n * 360.0 - 180.0;
+		double maxLat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / n))));
+		double minLat = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * (y + 1) / n))));
+
+		return new Envelope(minLon, maxLon, minLat, maxLat);
+	}
+
+	/**
+	 * Returns the compressed tile or null if it has not been serialized yet.
+	 */
+	public byte[] get(int zoom, int x, int y) {
+		return _tiles.get(getKey(zoom, x, y));
+	}
+
+	/**
+	 * Compresses the given GeoJSON and keeps it for the tile. Returns the compressed tile, which is the one added
+	 * by another thread if the tile has been serialized concurrently. Returns null without keeping anything if no
+	 * GeoJSON is given, i.e. the features could not be serialized, so that the tile is tried again next time.
+	 */
+	public byte[] put(int zoom, int x, int y, String json) throws IOException {
+		if (json == null)
+			return null;
+
+		byte[] tile = compress(json);
+
+		if (_tiles.size() >= MAX_TILES)
+			return tile;
+
+		byte[] existing = _tiles.putIfAbsent(getKey(zoom, x, y), tile);
+		return existing != null ? existing : tile;
+	}
+
+	public int size() {
+		return _tiles.size();
+	}
+
+	static long getKey(int zoom, int x, int y) {
+		return ((long) zoom << 58) | ((long) x << 29) | y;
+	}
+
+	private static byte[] compress(String json) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, json.length() / 4));
+		GZIPOutputStream stream = new GZIPOutputStream(bytes);
+		try {
+			stream.write(json.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			stream.close();
+		}
+
+		return bytes.toByteArray();
+	}
+}
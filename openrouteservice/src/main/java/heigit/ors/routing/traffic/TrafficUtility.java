@@ -21,15 +21,12 @@
 package heigit.ors.routing.traffic;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
-import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -39,17 +36,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 import heigit.ors.mapmatching.RouteSegmentInfo;
 import heigit.ors.routing.RoutingProfile;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalcEarth;
@@ -67,6 +62,7 @@ import java.util.Base64;
 
 @SuppressWarnings("restriction")
 public class TrafficUtility {
+	private static final Logger LOGGER = Logger.getLogger(TrafficUtility.class.getName());
 	
 	private static DistanceCalc distCalc = new DistanceCalcEarth();
 	// 2015-11-13T14:30:00
@@ -74,15 +70,26 @@ public class TrafficUtility {
 
 	public static List<TmcSegment> detectSegments(File segments, File roads, File points, File poffsets,
 			RoutingProfile routeProfile) {
+		return detectSegments(segments, roads, points, poffsets, routeProfile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Matches all TMC segments to the graph of the given profile. The location tables are read sequentially, the
+	 * routes between the points of the segments are computed by the given number of threads.
+	 */
+	public static List<TmcSegment> detectSegments(File segments, File roads, File points, File poffsets,
+			RoutingProfile routeProfile, int threads) {
 		List<TmcSegment> result = new ArrayList<TmcSegment>();
 		String line = null;
 		int readLines = 0;
 		int notSavedSegments = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		List<SegmentTask> tasks = new ArrayList<SegmentTask>();
 
 		try {
-			System.out.println("Start ...");
+			LOGGER.info("Start detecting TMC segments ...");
 
-			System.out.println(" Parse TMC Points (Offsets)");
+			LOGGER.info("Parse TMC Points (Offsets)");
 			HashMap<Integer, TmcPoint> getPoffsets = new HashMap<Integer, TmcPoint>();
 			BufferedReader brPoffsets = new BufferedReader(new FileReader(poffsets));
 			readLines = 0;
@@ -106,11 +113,11 @@ public class TrafficUtility {
 			}
 			brPoffsets.close();
 
-			System.out.println("  ReadLines: " + readLines + " Saved Points: " + getPoffsets.size());
+			LOGGER.info("ReadLines: " + readLines + " Saved Points: " + getPoffsets.size());
 
 			int internalID = 1;
 
-			System.out.println(" Parse TMC Points");
+			LOGGER.info("Parse TMC Points");
 			HashMap<Integer, ArrayList<Integer>> getSegmentPoints = new HashMap<Integer, ArrayList<Integer>>();
 			BufferedReader brPoints = new BufferedReader(new FileReader(points));
 			readLines = 0;
@@ -148,7 +155,7 @@ public class TrafficUtility {
 							pointsOfSegment.add(Integer.valueOf(lcd));
 							getSegmentPoints.put(Integer.valueOf(seg_lcd), pointsOfSegment);
 						} else {
-							System.out.println("No Poffsets for > " + line);
+							LOGGER.warning("No Poffsets for > " + line);
 						}
 					}
 				}
@@ -157,9 +164,9 @@ public class TrafficUtility {
 			}
 			brPoints.close();
 
-			System.out.println("  ReadLines: " + readLines + " Saved Segments: " + getSegmentPoints.size());
+			LOGGER.info("ReadLines: " + readLines + " Saved Segments: " + getSegmentPoints.size());
 
-			System.out.println(" Parse TMC Segments & Roads and than start processing ...");
+			LOGGER.info("Parse TMC Segments & Roads and than start processing ...");
 
 			File[] files = { segments, roads };
 			int d1 = files.length;// (y = files).length;
@@ -207,29 +214,9 @@ public class TrafficUtility {
 										done = true;
 									}
 
-									TmcSegment[] segs = detectSegments(routeProfile, seg_lcd, roadnumber,
-											tmcpPrior.getLcd(), tmcpNext.getLcd(), +1, tmcpPrior.getCoordinate(),
-											tmcpNext.getCoordinate());
-
-									if (segs != null) {
-										if (segs[0] != null) {
-											result.add(segs[0]);
-											internalID++;
-										} else {
-											System.out.println("  > Problem @ Segment: " + seg_lcd + " Locations: "
-													+ tmcpPrior.getLcd() + "+" + tmcpNext.getLcd());
-											notSavedSegments++;
-										}
-
-										if (segs[1] != null) {
-											result.add(segs[1]);
-											internalID++;
-										} else {
-											System.out.println("  > Problem @ Segment: " + seg_lcd + " Locations: "
-													+ tmcpNext.getLcd() + "-" + tmcpPrior.getLcd());
-											notSavedSegments++;
-										}
-									}
+									SegmentTask task = new SegmentTask(routeProfile, seg_lcd, roadnumber, tmcpPrior, tmcpNext);
+									task.future = executor.submit(task);
+									tasks.add(task);
 
 									tmcpPrior = tmcpNext;
 								}
@@ -237,8 +224,8 @@ public class TrafficUtility {
 						}
 
 						if (readLines % 100 == 0) {
-							System.out.println("  ... " + readLines + " Segments done, calculated Routes: "
-									+ internalID);
+							LOGGER.info("... " + readLines + " Segments done, queued Routes: "
+									+ tasks.size());
 						}
 					}
 					readLines++;
@@ -246,19 +233,70 @@ public class TrafficUtility {
 				reader.close();
 			}
 
-			System.out.println("  ReadLines: " + readLines);
-			System.out.println("  Number of Segments which are *not* saved (LCL Problems): " + getSegmentPoints.size());
-			System.out.println("  Number of Segments which are *not* saved (No Routing): " + notSavedSegments);
+			LOGGER.info("ReadLines: " + readLines);
+
+			// collect the results in the order of the segments, so that the result does not depend on the threads
+			for (SegmentTask task : tasks) {
+				TmcSegment[] segs = task.future.get();
+
+				if (segs != null) {
+					if (segs[0] != null) {
+						result.add(segs[0]);
+						internalID++;
+					} else {
+						LOGGER.warning("Problem @ Segment: " + task.segmentId + " Locations: "
+								+ task.start.getLcd() + "+" + task.end.getLcd());
+						notSavedSegments++;
+					}
+
+					if (segs[1] != null) {
+						result.add(segs[1]);
+						internalID++;
+					} else {
+						LOGGER.warning("Problem @ Segment: " + task.segmentId + " Locations: "
+								+ task.end.getLcd() + "-" + task.start.getLcd());
+						notSavedSegments++;
+					}
+				}
+			}
+
+			LOGGER.info("Calculated Routes: " + internalID);
+			LOGGER.info("Number of Segments which are *not* saved (LCL Problems): " + getSegmentPoints.size());
+			LOGGER.info("Number of Segments which are *not* saved (No Routing): " + notSavedSegments);
 
-			System.out.println("... End!");
+			LOGGER.info("TMC segments have been detected.");
 		} catch (Exception ex) {
-			System.out.println("Line: " + readLines + " >> " + line);
-			ex.printStackTrace();
+			LOGGER.log(Level.SEVERE, "Unable to detect TMC segments at line " + readLines + ": " + line, ex);
+		} finally {
+			executor.shutdownNow();
 		}
 
 		return result;
 	}
 
+	private static class SegmentTask implements Callable<TmcSegment[]> {
+		private RoutingProfile routeProfile;
+		private int segmentId;
+		private String roadnumber;
+		private TmcPoint start;
+		private TmcPoint end;
+		private Future<TmcSegment[]> future;
+
+		public SegmentTask(RoutingProfile routeProfile, int segmentId, String roadnumber, TmcPoint start, TmcPoint end) {
+			this.routeProfile = routeProfile;
+			this.segmentId = segmentId;
+			this.roadnumber = roadnumber;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public TmcSegment[] call() {
+			return detectSegments(routeProfile, segmentId, roadnumber, start.getLcd(), end.getLcd(), +1,
+					start.getCoordinate(), end.getCoordinate());
+		}
+	}
+
 	public static TmcSegment[] detectSegments(RoutingProfile rp, long id, String roadnumber, Integer startID, Integer endID,
 			Integer direction, Coordinate startCoordinate, Coordinate endCoordinate) {
 		TmcSegment[] result = new TmcSegment[2];
@@ -457,102 +495,120 @@ public class TrafficUtility {
 
 		for (int i = 0; i < messages.size(); i++) {
 			try {
-				TrafficMessageData m = (TrafficMessageData) messages.get(i);
-
-				// event codes see
-				// http://wiki.openstreetmap.org/wiki/TMC/Event_Code_List
-
-				if (m.locationCodes.size() > 1) {
-					boolean bAdd = false;
-					List<Geometry> geoms = new ArrayList<Geometry>();
-					List<Geometry> geoms_reverse = new ArrayList<Geometry>();
-					List<Integer> edgeIds = new ArrayList<Integer>();
-					List<Integer> edgeIds_reverse = new ArrayList<Integer>();
-
-					for (int j = 0; j < m.locationCodes.size() - 1; j++) {
-						Integer lcl_fr = m.locationCodes.get(j);
-						Integer lcl_to = m.locationCodes.get(j + 1);
-						
-						for (int si = 0; si < segments.size(); si++) {
-							TmcSegment seg = segments.get(si);
-
-							int osm_fr = seg.getFrom();
-							int osm_to = seg.getTo();
-
-							if ((lcl_fr == osm_fr && lcl_to == osm_to) || (lcl_fr == osm_to && lcl_to == osm_fr)) {
-								if (m.bothDirections || m.direction != seg.getDirection()) {
-									/*
-									 * in unserem XML kodiert das Element LDR
-									 * die Richtungsangabe. Dabei ist 0 =
-									 * positive Richtung und 1 = negative
-									 * Richtung. Dies bezieht sich auf die
-									 * Verknüpfungsrichtung in der TMC Tabelle.
-									 * Beispiel: In der TMC Tabelle ist A
-									 * positiv verknüpft ist mit B. Auf der
-									 * Strecke von A nach B ist bei B ein Unfall
-									 * passiert und es Staut sich zurück bis
-									 * nach A.
-									 * 
-									 * Dann ist die Meldung wie folgt kodiert:
-									 * PrimaryLocation = B (hier ist der Unfall)
-									 * SecondaryLocation = A (bis hier reicht
-									 * der Stau) LocationDirection = 1 (negativ)
-									 * 
-									 * Die LocationDirection (LDR) ist negative,
-									 * weil man vom PrimaryLocation zum
-									 * SecondaryLocation nur kommt, indem man
-									 * sich rückwärts (negativ) durch die TMC
-									 * Verknüpfung hangelt.
-									 */
-									if ((lcl_fr == osm_to && lcl_to == osm_fr))
-									{
-										geoms_reverse.add(seg.getGeometry());
-										edgeIds_reverse.addAll(seg.getEdgeIDs());
-									}
-									else
-									{
-										geoms.add(seg.getGeometry());
-										edgeIds.addAll(seg.getEdgeIDs());
-									}
-									bAdd = true;
-								}
+				result.addAll(extractTmcFeatures(messages.get(i), segments, timeThreshold, geomFactory));
+			} catch (Exception e) {
+				logger.warning(e.getMessage());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Matches a single message to the TMC segments and returns its features, the list is empty if the message
+	 * could not be matched or has already expired.
+	 */
+	public static List<TrafficFeatureInfo> extractTmcFeatures(TrafficMessageData m, TmcSegmentsCollection segments,
+			long timeThreshold, GeometryFactory geomFactory) throws ParseException {
+		return extractTmcFeatures(m, segments, timeThreshold, geomFactory, new Date());
+	}
+
+	/**
+	 * @param now the time expired messages are checked against
+	 */
+	public static List<TrafficFeatureInfo> extractTmcFeatures(TrafficMessageData m, TmcSegmentsCollection segments,
+			long timeThreshold, GeometryFactory geomFactory, Date now) throws ParseException {
+		List<TrafficFeatureInfo> result = new ArrayList<TrafficFeatureInfo>();
+
+		// event codes see
+		// http://wiki.openstreetmap.org/wiki/TMC/Event_Code_List
+
+		if (m.locationCodes.size() > 1) {
+			boolean bAdd = false;
+			List<Geometry> geoms = new ArrayList<Geometry>();
+			List<Geometry> geoms_reverse = new ArrayList<Geometry>();
+			List<Integer> edgeIds = new ArrayList<Integer>();
+			List<Integer> edgeIds_reverse = new ArrayList<Integer>();
+
+			for (int j = 0; j < m.locationCodes.size() - 1; j++) {
+				Integer lcl_fr = m.locationCodes.get(j);
+				Integer lcl_to = m.locationCodes.get(j + 1);
+				
+				for (int si = 0; si < segments.size(); si++) {
+					TmcSegment seg = segments.get(si);
+
+					int osm_fr = seg.getFrom();
+					int osm_to = seg.getTo();
+
+					if ((lcl_fr == osm_fr && lcl_to == osm_to) || (lcl_fr == osm_to && lcl_to == osm_fr)) {
+						if (m.bothDirections || m.direction != seg.getDirection()) {
+							/*
+							 * in unserem XML kodiert das Element LDR
+							 * die Richtungsangabe. Dabei ist 0 =
+							 * positive Richtung und 1 = negative
+							 * Richtung. Dies bezieht sich auf die
+							 * Verknüpfungsrichtung in der TMC Tabelle.
+							 * Beispiel: In der TMC Tabelle ist A
+							 * positiv verknüpft ist mit B. Auf der
+							 * Strecke von A nach B ist bei B ein Unfall
+							 * passiert und es Staut sich zurück bis
+							 * nach A.
+							 * 
+							 * Dann ist die Meldung wie folgt kodiert:
+							 * PrimaryLocation = B (hier ist der Unfall)
+							 * SecondaryLocation = A (bis hier reicht
+							 * der Stau) LocationDirection = 1 (negativ)
+							 * 
+							 * Die LocationDirection (LDR) ist negative,
+							 * weil man vom PrimaryLocation zum
+							 * SecondaryLocation nur kommt, indem man
+							 * sich rückwärts (negativ) durch die TMC
+							 * Verknüpfung hangelt.
+							 */
+							if ((lcl_fr == osm_to && lcl_to == osm_fr))
+							{
+								geoms_reverse.add(seg.getGeometry());
+								edgeIds_reverse.addAll(seg.getEdgeIDs());
 							}
+							else
+							{
+								geoms.add(seg.getGeometry());
+								edgeIds.addAll(seg.getEdgeIDs());
+							}
+							bAdd = true;
 						}
 					}
-					
-					if (bAdd)
-					{
-						List<TrafficFeatureInfo> tei = createTrafficFeatureInfo(m, edgeIds, geoms, geomFactory, timeThreshold);
-						if (tei != null)
-							result.addAll(tei);
-						
-						List<TrafficFeatureInfo> tei_reverse = createTrafficFeatureInfo(m, edgeIds_reverse, geoms_reverse, geomFactory, timeThreshold);
-						if (tei_reverse != null)
-							result.addAll(tei_reverse);
-					}
-				} else {
-					if (m.location != null)
-					{
-						TrafficFeatureInfo tei = new TrafficFeatureInfo(m.eventDataCodes, m.messageDataText, null);
-						tei.setGeometry(geomFactory.createPoint(m.location));
-						result.add(tei);
-					}
 				}
-			} catch (Exception e) {
-				logger.warning(e.getMessage());
+			}
+			
+			if (bAdd)
+			{
+				List<TrafficFeatureInfo> tei = createTrafficFeatureInfo(m, edgeIds, geoms, geomFactory, timeThreshold, now);
+				if (tei != null)
+					result.addAll(tei);
+				
+				List<TrafficFeatureInfo> tei_reverse = createTrafficFeatureInfo(m, edgeIds_reverse, geoms_reverse, geomFactory, timeThreshold, now);
+				if (tei_reverse != null)
+					result.addAll(tei_reverse);
+			}
+		} else {
+			if (m.location != null)
+			{
+				TrafficFeatureInfo tei = new TrafficFeatureInfo(m.eventDataCodes, m.messageDataText, null);
+				tei.setGeometry(geomFactory.createPoint(m.location));
+				result.add(tei);
 			}
 		}
 
 		return result;
 	}
 	
-	private static List<TrafficFeatureInfo> createTrafficFeatureInfo(TrafficMessageData m, List<Integer> edgeIds, List<Geometry> geoms, GeometryFactory geomFactory, long timeThreshold) throws ParseException
+	private static List<TrafficFeatureInfo> createTrafficFeatureInfo(TrafficMessageData m, List<Integer> edgeIds, List<Geometry> geoms, GeometryFactory geomFactory, long timeThreshold, Date now) throws ParseException
 	{
 		if (geoms.size() == 0)
 			return null;
 		
 		List<TrafficFeatureInfo> result = new ArrayList<TrafficFeatureInfo>();
-		Date now = new Date();
 		
 		for(Geometry geom : processGeometries(geoms, geomFactory))
 		{
@@ -711,23 +767,6 @@ public class TrafficUtility {
 		return ls;
 	}
 
-	public static Date getMessageDateTime(String tmcMessage) throws ParserConfigurationException, SAXException,
-			IOException, ParseException {
-		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-		InputStream stream = new ByteArrayInputStream(tmcMessage.getBytes(StandardCharsets.UTF_8));
-		Document doc = docBuilder.parse(stream);
-
-		doc.getDocumentElement().normalize();
-		String timeStamp = doc.getDocumentElement().getAttribute("FGT");
-
-		// FGT="2014-05-01T15:06:00"
-		SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-		formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-		
-		return formatter.parse(timeStamp);
-	}
-
 /*
 	public static void saveMatchedTmcDataToFile(List<TrafficFeatureInfo> tmcFeatures, String fileName) {
 		if (tmcFeatures != null) {
@@ -20,15 +20,43 @@
  */
 package heigit.ors.routing.traffic.providers;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.TimeZone;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import heigit.ors.routing.traffic.providers.TrafficInfoDataSource;
 
 import heigit.ors.util.FileUtility;
 
+/**
+ * Reads the TMC message from a file. If the path is a directory, the recorded messages (*.xml) in it are replayed in
+ * the order of their names:
+ * <ul>
+ * <li>replay_speed: how much faster than recorded the messages are played back, the recording time of a message is
+ * taken from its FGT attribute. With 0 every request returns the next message, independent of the time.</li>
+ * <li>replay_loop: start again with the first message after the last one has been played.</li>
+ * </ul>
+ */
 public class FileDataSource implements TrafficInfoDataSource {
 	private String m_path;
+	// replay mode
+	private File[] m_snapshots;
+	private long[] m_offsets; // recording time of the snapshots relative to the first one
+	private double m_replaySpeed = 1;
+	private boolean m_replayLoop = false;
+	private long m_replayStart = -1;
+	private int m_replayIndex = -1;
 	
 	public FileDataSource()
 	{}
@@ -36,10 +64,111 @@ public class FileDataSource implements TrafficInfoDataSource {
 	public void Initialize(Properties props)
 	{
 		m_path = props.getProperty("path");	
+
+		File dir = new File(m_path);
+		if (dir.isDirectory())
+		{
+			m_snapshots = dir.listFiles((File f) -> f.isFile() && f.getName().toLowerCase().endsWith(".xml"));
+			if (m_snapshots == null)
+				m_snapshots = new File[0];
+			Arrays.sort(m_snapshots);
+
+			if (props.getProperty("replay_speed") != null)
+				m_replaySpeed = Double.parseDouble(props.getProperty("replay_speed"));
+			m_replayLoop = Boolean.parseBoolean(props.getProperty("replay_loop"));
+
+			m_offsets = new long[m_snapshots.length];
+			long first = 0;
+			for (int i = 0; i < m_snapshots.length; i++)
+			{
+				long time = getRecordingTime(m_snapshots[i]);
+				if (i == 0)
+					first = time;
+				// snapshots recorded out of order are played immediately after their predecessor
+				m_offsets[i] = i == 0 ? 0 : Math.max(m_offsets[i - 1], time - first);
+			}
+		}
+	}
+
+	@Override
+	public boolean isReplay() {
+		return m_snapshots != null;
 	}
 
 	@Override
 	public String getMessage() throws IOException {
-		return FileUtility.readFile(m_path, "ISO-8859-1");
+		return FileUtility.readFile(getCurrentFile().getPath(), "ISO-8859-1");
+	}
+
+	@Override
+	public InputStream getMessageStream() throws IOException {
+		return new BufferedInputStream(new FileInputStream(getCurrentFile()));
+	}
+
+	private synchronized File getCurrentFile() throws IOException {
+		if (m_snapshots == null)
+			return new File(m_path);
+
+		if (m_snapshots.length == 0)
+			throw new IOException("No recorded TMC messages found in '" + m_path + "'.");
+
+		int last = m_snapshots.length - 1;
+
+		if (m_replaySpeed <= 0)
+		{
+			// step mode
+			m_replayIndex = m_replayIndex < last ? m_replayIndex + 1 : (m_replayLoop ? 0 : last);
+		}
+		else
+		{
+			long now = System.currentTimeMillis();
+			if (m_replayStart < 0)
+				m_replayStart = now;
+
+			long elapsed = (long)((now - m_replayStart) * m_replaySpeed);
+			if (m_replayLoop)
+			{
+				// the last snapshot is shown for the mean interval between the snapshots before the replay starts again
+				long period = m_offsets[last] + (last > 0 ? m_offsets[last] / last : 1);
+				elapsed = elapsed % Math.max(1, period);
+			}
+
+			int index = 0;
+			while (index < last && m_offsets[index + 1] <= elapsed)
+				index++;
+
+			m_replayIndex = index;
+		}
+
+		return m_snapshots[m_replayIndex];
+	}
+
+	private static long getRecordingTime(File file) {
+		try (InputStream stream = new BufferedInputStream(new FileInputStream(file)))
+		{
+			XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(stream);
+			try
+			{
+				// FGT="2014-05-01T15:06:00" of the root element
+				reader.nextTag();
+				String value = reader.getAttributeValue(null, "FGT");
+				if (value != null)
+				{
+					SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+					formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+					return formatter.parse(value).getTime();
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException | XMLStreamException | ParseException ex)
+		{
+			// fall back to the time of the file
+		}
+
+		return file.lastModified();
 	}
 }
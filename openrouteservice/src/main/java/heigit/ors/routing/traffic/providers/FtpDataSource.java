@@ -20,6 +20,8 @@
  */
 package heigit.ors.routing.traffic.providers;
 
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
@@ -51,11 +53,7 @@ public class FtpDataSource implements TrafficInfoDataSource {
 		String message = null;
 		try 
 		{
-			FTPClient ftpClient = new FTPClient();
-			ftpClient.connect(server, port);
-			ftpClient.login(user, password);
-			ftpClient.enterLocalPassiveMode();
-			ftpClient.setFileType(2);
+			FTPClient ftpClient = connect();
 
 			String remoteFile1 = "/"+file;
 			InputStream inputStream = ftpClient.retrieveFileStream(remoteFile1);
@@ -93,4 +91,38 @@ public class FtpDataSource implements TrafficInfoDataSource {
 
 		return message;
 	}
+
+	@Override
+	public InputStream getMessageStream() throws IOException {
+		final FTPClient ftpClient = connect();
+
+		InputStream inputStream = ftpClient.retrieveFileStream("/" + file);
+		if (inputStream == null) {
+			ftpClient.disconnect();
+			throw new IOException("Unable to download " + file + " from " + server + ": " + ftpClient.getReplyString());
+		}
+
+		// the transfer has to be completed once the message has been read
+		return new FilterInputStream(new BufferedInputStream(inputStream)) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+					ftpClient.completePendingCommand();
+				} finally {
+					ftpClient.disconnect();
+				}
+			}
+		};
+	}
+
+	private FTPClient connect() throws IOException {
+		FTPClient ftpClient = new FTPClient();
+		ftpClient.connect(server, port);
+		ftpClient.login(user, password);
+		ftpClient.enterLocalPassiveMode();
+		ftpClient.setFileType(2);
+
+		return ftpClient;
+	}
 }
@@ -20,10 +20,29 @@
  */
 package heigit.ors.routing.traffic.providers;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
 
 public interface TrafficInfoDataSource {
    void Initialize(Properties props);
    String getMessage() throws IOException;
+
+   /**
+    * Returns the raw bytes of the message, so that it can be parsed while it is being read. The caller has to close
+    * the stream. Returns null if no message is available.
+    */
+   default InputStream getMessageStream() throws IOException {
+      String message = getMessage();
+      return message == null ? null : new ByteArrayInputStream(message.getBytes("ISO-8859-1"));
+   }
+
+   /**
+    * Returns true if the messages have been recorded, their expiration is then checked against the time of the
+    * message instead of the current time.
+    */
+   default boolean isReplay() {
+      return false;
+   }
 }
@@ -117,6 +117,9 @@ public class ORSServicesUtils {
 					if (jProfileLimits.length() > 0)
 						jProfileProps.put("limits", jProfileLimits);
 
+					if (rp.hasTrafficCH())
+						jProfileProps.put("traffic_ch_added_shortcuts", rp.getAddedTrafficCHShortcutsCount());
+
 					jProfiles.put("profile " + Integer.toString(i), jProfileProps);
 
 					i++;
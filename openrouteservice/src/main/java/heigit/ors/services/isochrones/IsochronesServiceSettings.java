@@ -36,12 +36,21 @@ import heigit.ors.common.TravelRangeType;
 public class IsochronesServiceSettings {
 	private static boolean enabled = true;
 	private static int maximumLocations = 1;
+	private static int maximumUnionLocations = 100;
 	private static int maximumRangeDistance = 100000; //  in meters
 	private static Map<Integer, Integer> profileMaxRangeDistances;
 	private static int maximumRangeTime = 3600; // in seconds
 	private static Map<Integer, Integer> profileMaxRangeTimes;
 	private static int maximumIntervals = 1;
+	private static int maximumVisitedNodes = Integer.MAX_VALUE;
+	private static long maximumSearchTime = 0; // in milliseconds, 0 for no limit
 	private static boolean allowComputeArea = true;
+	private static String calcMethod = null;
+	private static Map<Integer, String> profileCalcMethods;
+	private static boolean resultCacheEnabled = false;
+	private static long resultCacheMemoryLimit = 256L * 1024 * 1024; // in bytes
+	private static double resultCacheTimeQuantum = 300; // in seconds
+	private static double resultCacheDistanceQuantum = 1000; // in meters
 	private static Map<String, StatisticsProviderConfiguration> statsProviders;
 	private static String attribution = "";
 
@@ -53,6 +62,9 @@ public class IsochronesServiceSettings {
 		value = AppConfig.Global().getServiceParameter("isochrones", "maximum_locations");
 		if (value != null)
 			maximumLocations = Integer.parseInt(value);
+		value = AppConfig.Global().getServiceParameter("isochrones", "maximum_union_locations");
+		if (value != null)
+			maximumUnionLocations = Integer.parseInt(value);
 		value = AppConfig.Global().getServiceParameter("isochrones", "maximum_range_distance");
 		if (value != null)
 			maximumRangeDistance = Integer.parseInt(value);
@@ -84,10 +96,43 @@ public class IsochronesServiceSettings {
 		value = AppConfig.Global().getServiceParameter("isochrones", "maximum_intervals");
 		if (value != null)
 			maximumIntervals = Integer.parseInt(value);
+		value = AppConfig.Global().getServiceParameter("isochrones", "maximum_visited_nodes");
+		if (value != null)
+			maximumVisitedNodes = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("isochrones", "maximum_search_time");
+		if (value != null)
+			maximumSearchTime = Math.max(0, Long.parseLong(value));
 		value = AppConfig.Global().getServiceParameter("isochrones", "allow_compute_area");
 		if (value != null)
 			allowComputeArea = Boolean.parseBoolean(value);
 
+		value = AppConfig.Global().getServiceParameter("isochrones", "calc_method");
+		if (value != null)
+			calcMethod = value;
+		else
+		{
+			List<? extends ConfigObject> params = AppConfig.Global().getObjectList("isochrones", "calc_method");
+			if (params != null)
+			{
+				profileCalcMethods = getStringParameters(params);
+				if (profileCalcMethods.containsKey(-1))
+					calcMethod = profileCalcMethods.get(-1);
+			}
+		}
+
+		value = AppConfig.Global().getServiceParameter("isochrones", "result_cache.enabled");
+		if (value != null)
+			resultCacheEnabled = Boolean.parseBoolean(value);
+		value = AppConfig.Global().getServiceParameter("isochrones", "result_cache.memory_limit");
+		if (value != null)
+			resultCacheMemoryLimit = Long.parseLong(value) * 1024 * 1024;
+		value = AppConfig.Global().getServiceParameter("isochrones", "result_cache.time_quantum");
+		if (value != null)
+			resultCacheTimeQuantum = Double.parseDouble(value);
+		value = AppConfig.Global().getServiceParameter("isochrones", "result_cache.distance_quantum");
+		if (value != null)
+			resultCacheDistanceQuantum = Double.parseDouble(value);
+
 		statsProviders = new HashMap<String, StatisticsProviderConfiguration>();
 
 		Map<String, Object> providers = AppConfig.Global().getServiceParametersMap("isochrones", "statistics_providers", false);
@@ -151,6 +196,28 @@ public class IsochronesServiceSettings {
 		return result;
 	}
 
+	private static Map<Integer, String> getStringParameters(List<? extends ConfigObject> params)
+	{
+		Map<Integer, String> result = new HashMap<Integer, String>();
+
+		for(ConfigObject cfgObj : params)
+		{
+			if (cfgObj.containsKey("profiles") && cfgObj.containsKey("value"))
+			{
+				String[] profiles = cfgObj.toConfig().getString("profiles").split(",");
+				for (String profileStr : profiles)
+				{
+					profileStr = profileStr.trim();
+					Integer profile = ("any".equalsIgnoreCase(profileStr)) ? -1 : RoutingProfileType.getFromString(profileStr);
+					if (profile != RoutingProfileType.UNKNOWN)
+						result.put(profile, cfgObj.toConfig().getString("value"));
+				}
+			}
+		}
+
+		return result;
+	}
+
 	public static boolean getEnabled() {
 		return enabled;
 	}
@@ -163,6 +230,10 @@ public class IsochronesServiceSettings {
 		return maximumLocations;
 	}
 
+	public static int getMaximumUnionLocations() {
+		return maximumUnionLocations;
+	}
+
 	public static int getMaximumRange(int profileType, TravelRangeType range) {
 		Integer res = 0;
 
@@ -189,10 +260,37 @@ public class IsochronesServiceSettings {
 		return res;
 	}
 
+	public static String getCalcMethod(int profileType) {
+		if (profileCalcMethods != null && profileCalcMethods.containsKey(profileType))
+			return profileCalcMethods.get(profileType);
+
+		return calcMethod;
+	}
+
+	public static boolean getResultCacheEnabled() {
+		return resultCacheEnabled;
+	}
+
+	public static long getResultCacheMemoryLimit() {
+		return resultCacheMemoryLimit;
+	}
+
+	public static double getResultCacheRangeQuantum(TravelRangeType rangeType) {
+		return rangeType == TravelRangeType.Time ? resultCacheTimeQuantum : resultCacheDistanceQuantum;
+	}
+
 	public static int getMaximumIntervals()	{
 		return maximumIntervals;
 	}
 
+	public static int getMaximumVisitedNodes() {
+		return maximumVisitedNodes;
+	}
+
+	public static long getMaximumSearchTime() {
+		return maximumSearchTime;
+	}
+
 	public static Map<String, StatisticsProviderConfiguration> getStatsProviders() {
 		return statsProviders;
 	}
@@ -214,6 +214,33 @@ public class JsonIsochroneRequestParser {
 			}
 		}
 		
+		value = json.optString("union");
+		if (!Helper.isEmpty(value))
+		{
+			if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value))
+				throw new ParameterValueException(IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "union", value);
+
+			req.setUnion(Boolean.parseBoolean(value));
+		}
+
+		value = json.optString("label_origins");
+		if (!Helper.isEmpty(value))
+		{
+			if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value))
+				throw new ParameterValueException(IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "label_origins", value);
+
+			req.setLabelOrigins(Boolean.parseBoolean(value));
+		}
+
+		value = json.optString("output");
+		if (!Helper.isEmpty(value))
+		{
+			if (!"polygons".equalsIgnoreCase(value) && !"network".equalsIgnoreCase(value))
+				throw new UnknownParameterValueException(IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "output", value);
+
+			req.setOutput(value.toLowerCase());
+		}
+
 		value = json.optString("id");
 		if (!Helper.isEmpty(value))
 			req.setId(value);
@@ -422,6 +449,33 @@ public class JsonIsochroneRequestParser {
 			}
 		}
 
+		value = request.getParameter("union");
+		if (!Helper.isEmpty(value))
+		{
+			if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value))
+				throw new ParameterValueException(IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "union", value);
+
+			req.setUnion(Boolean.parseBoolean(value));
+		}
+
+		value = request.getParameter("label_origins");
+		if (!Helper.isEmpty(value))
+		{
+			if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value))
+				throw new ParameterValueException(IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "label_origins", value);
+
+			req.setLabelOrigins(Boolean.parseBoolean(value));
+		}
+
+		value = request.getParameter("output");
+		if (!Helper.isEmpty(value))
+		{
+			if (!"polygons".equalsIgnoreCase(value) && !"network".equalsIgnoreCase(value))
+				throw new UnknownParameterValueException(IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "output", value);
+
+			req.setOutput(value.toLowerCase());
+		}
+
 		value = request.getParameter("id");
 		if (!Helper.isEmpty(value))
 			req.setId(value);
@@ -20,7 +20,11 @@
  */
 package heigit.ors.services.isochrones.requestprocessors.json;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
@@ -32,7 +36,6 @@ import org.json.JSONObject;
 import com.graphhopper.util.Helper;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Polygon;
 
 import heigit.ors.common.AttributeValue;
@@ -55,11 +58,13 @@ import heigit.ors.isochrones.Isochrone;
 import heigit.ors.isochrones.IsochroneMap;
 import heigit.ors.isochrones.IsochroneMapCollection;
 import heigit.ors.isochrones.IsochroneRequest;
+import heigit.ors.isochrones.ReachableNetwork;
 import heigit.ors.routing.RoutingProfileManager;
 import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import heigit.ors.servlet.util.ServletUtility;
 import heigit.ors.util.FormatUtility;
 import heigit.ors.util.AppInfo;
+import heigit.ors.util.DoubleFormatUtil;
 import heigit.ors.util.StringUtility;
 
 public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor 
@@ -98,8 +103,12 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 		if (IsochronesServiceSettings.getAllowComputeArea() == false && req.hasAttribute("area"))
 			throw new StatusCodeException(StatusCode.BAD_REQUEST, IsochronesErrorCodes.FEATURE_NOT_SUPPORTED, "Area computation is not enabled.");
 
-		if (travellers.size() > IsochronesServiceSettings.getMaximumLocations())
-			throw new ParameterOutOfRangeException(IsochronesErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "locations", Integer.toString(travellers.size()), Integer.toString(IsochronesServiceSettings.getMaximumLocations()));
+		int maxLocations = req.getUnion() ? IsochronesServiceSettings.getMaximumUnionLocations() : IsochronesServiceSettings.getMaximumLocations();
+		if (travellers.size() > maxLocations)
+			throw new ParameterOutOfRangeException(IsochronesErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "locations", Integer.toString(travellers.size()), Integer.toString(maxLocations));
+
+		if (req.getUnion())
+			checkUnionTravellers(travellers);
 
 		for (int i = 0;i < travellers.size(); ++i){
 			TravellerInfo traveller = travellers.get(i);
@@ -115,22 +124,62 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 			}
 		}
 
-		if (travellers.size() > 0)
+		if (req.isNetworkOutput() && (req.getAttributes() != null || req.getIncludeIntersections()))
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "Attributes and intersections are not supported for network output.");
+
+		if (travellers.size() > 0 && req.isNetworkOutput())
+		{
+			List<ReachableNetwork> networks = new ArrayList<ReachableNetwork>();
+			int nSearches = req.getUnion() ? 1 : travellers.size();
+
+			for (int i = 0; i < nSearches; ++i)
+				networks.add(RoutingProfileManager.getInstance().computeReachableNetwork(req.getSearchParameters(i)));
+
+			writeNetworkResponse(response, req, networks);
+		}
+		else if (travellers.size() > 0)
 		{
 			String[] nonDefaultAttrs = req.getNonDefaultAttributes();
 			
 			IsochroneMapCollection isoMaps = new IsochroneMapCollection();
 
-			for (int i = 0;i < travellers.size(); ++i){
-				IsochroneSearchParameters searchParams = req.getSearchParameters(i);
-				IsochroneMap isochroneMap = RoutingProfileManager.getInstance().buildIsochrone(searchParams, nonDefaultAttrs);
-				isoMaps.add(isochroneMap);
+			if (req.getUnion())
+			{
+				// all locations are handled by a single search
+				isoMaps.add(RoutingProfileManager.getInstance().buildIsochrone(req.getSearchParameters(0), nonDefaultAttrs));
+			}
+			else
+			{
+				for (int i = 0;i < travellers.size(); ++i){
+					IsochroneSearchParameters searchParams = req.getSearchParameters(i);
+					IsochroneMap isochroneMap = RoutingProfileManager.getInstance().buildIsochrone(searchParams, nonDefaultAttrs);
+					isoMaps.add(isochroneMap);
+				}
 			}
 
 			writeResponse(response, req, isoMaps);
 		}
 	}
 
+	private void checkUnionTravellers(List<TravellerInfo> travellers) throws Exception
+	{
+		TravellerInfo first = travellers.get(0);
+		String options = first.getRouteSearchParameters().getOptions();
+
+		for (int i = 1; i < travellers.size(); ++i)
+		{
+			TravellerInfo traveller = travellers.get(i);
+			String travellerOptions = traveller.getRouteSearchParameters().getOptions();
+
+			if (traveller.getRouteSearchParameters().getProfileType() != first.getRouteSearchParameters().getProfileType()
+					|| traveller.getRangeType() != first.getRangeType()
+					|| !Arrays.equals(traveller.getRanges(), first.getRanges())
+					|| !(options == null ? travellerOptions == null : options.equals(travellerOptions))
+					|| !(first.getLocationType() == null ? traveller.getLocationType() == null : first.getLocationType().equalsIgnoreCase(traveller.getLocationType())))
+				throw new StatusCodeException(StatusCode.BAD_REQUEST, IsochronesErrorCodes.INVALID_PARAMETER_VALUE, "All travellers of a union request must have the same profile, ranges, location type and options.");
+		}
+	}
+
 	private void writeResponse(HttpServletResponse response, IsochroneRequest request, IsochroneMapCollection isochroneMaps) throws Exception
 	{
 		JSONObject jResp = new JSONObject(true);
@@ -160,24 +209,39 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 			
 			for (Isochrone isoLine : isoMap.getIsochrones()) 
 			{
-				Polygon isoPoly = (Polygon)isoLine.getGeometry();
-				LineString shell = isoPoly.getExteriorRing();
+				Geometry isoGeom = isoLine.getGeometry();
 				JSONObject jFeature = new JSONObject(true);
 				jFeature.put("type", "Feature");
 
 				JSONObject jPolygon = new JSONObject(true);
-				jPolygon.put("type", "Polygon");
-
-				jPolygon.put("coordinates", GeometryJSON.toJSON(isoPoly));
+				if (isoGeom instanceof Polygon)
+				{
+					jPolygon.put("type", "Polygon");
+					jPolygon.put("coordinates", GeometryJSON.toJSON((Polygon)isoGeom));
+				}
+				else
+				{
+					// merged isochrones of several locations can consist of several polygons
+					jPolygon.put("type", isoGeom.getGeometryType());
+					jPolygon.put("coordinates", GeometryJSON.toJSON(isoGeom, null));
+				}
 
 				jFeature.put("geometry", jPolygon);
 
 				JSONObject jProperties = new JSONObject(true);
 
-				jProperties.put("group_index", groupIndex);
-				jProperties.put("value", isoLine.getValue());
-
-				jProperties.put("center", GeometryJSON.toJSON(isoMap.getCenter()));
+				if (isoLine.getOriginIndex() >= 0)
+				{
+					jProperties.put("group_index", isoLine.getOriginIndex());
+					jProperties.put("value", isoLine.getValue());
+					jProperties.put("center", GeometryJSON.toJSON(request.getTravellers().get(isoLine.getOriginIndex()).getLocation()));
+				}
+				else
+				{
+					jProperties.put("group_index", groupIndex);
+					jProperties.put("value", isoLine.getValue());
+					jProperties.put("center", GeometryJSON.toJSON(isoMap.getCenter()));
+				}
 
 				if (includeArea || includeReachFactor)
 				{
@@ -217,7 +281,7 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 
 				jFeatures.put(jFeature);
 
-				Envelope env = shell.getEnvelopeInternal();
+				Envelope env = isoGeom.getEnvelopeInternal();
 				if (minX > env.getMinX())
 					minX = env.getMinX();
 				if (minY > env.getMinY())
@@ -273,8 +337,78 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 
 		jResp.put("bbox", GeometryJSON.toJSON(minX, minY, maxX, maxY));
 
-		traveller = request.getTravellers().get(0);
-		
+		jResp.put("info", createInfo(request, sourceAttribution));
+
+		ServletUtility.write(response, jResp);
+	}
+
+	/**
+	 * Writes the reachable road segments as GeoJSON line features directly to the response stream.
+	 */
+	private void writeNetworkResponse(HttpServletResponse response, IsochroneRequest request, List<ReachableNetwork> networks) throws Exception
+	{
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.addHeader("Vary", "Accept-Encoding");
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"), 65536);
+		StringBuffer buffer = new StringBuffer(1024);
+		Envelope env = new Envelope();
+		boolean first = true;
+
+		writer.write("{\"type\":\"FeatureCollection\",\"features\":[");
+
+		for (ReachableNetwork network : networks)
+		{
+			env.expandToInclude(network.getEnvelope());
+
+			for (int i = 0; i < network.size(); i++)
+			{
+				buffer.setLength(0);
+				if (!first)
+					buffer.append(',');
+				first = false;
+
+				buffer.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+				int nPoints = network.getPointCount(i);
+				for (int j = 0; j < nPoints; j++)
+				{
+					if (j > 0)
+						buffer.append(',');
+					buffer.append('[');
+					DoubleFormatUtil.formatDouble(network.getLon(i, j), 6, 6, buffer);
+					buffer.append(',');
+					DoubleFormatUtil.formatDouble(network.getLat(i, j), 6, 6, buffer);
+					buffer.append(']');
+				}
+				buffer.append("]},\"properties\":{\"group_index\":");
+				buffer.append(network.getTravellerId());
+				buffer.append(",\"from_value\":");
+				DoubleFormatUtil.formatDouble(network.getFromCost(i), 2, 2, buffer);
+				buffer.append(",\"to_value\":");
+				DoubleFormatUtil.formatDouble(network.getToCost(i), 2, 2, buffer);
+				buffer.append("}}");
+
+				writer.append(buffer);
+			}
+		}
+
+		writer.write("]");
+		if (!env.isNull())
+		{
+			writer.write(",\"bbox\":");
+			writer.write(GeometryJSON.toJSON(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY()).toString());
+		}
+		writer.write(",\"info\":");
+		writer.write(createInfo(request, IsochronesServiceSettings.getAttribution()).toString());
+		writer.write("}");
+		writer.close();
+	}
+
+	private JSONObject createInfo(IsochroneRequest request, String sourceAttribution)
+	{
+		TravellerInfo traveller = request.getTravellers().get(0);
+
 		JSONObject jInfo = new JSONObject();
 		jInfo.put("service", "isochrones");
 		jInfo.put("engine", AppInfo.getEngineInfo());
@@ -311,13 +445,21 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 		if (!Helper.isEmpty(traveller.getRouteSearchParameters().getOptions()))
 			jQuery.put("options", new JSONObject(traveller.getRouteSearchParameters().getOptions()));
 
+		if (request.isNetworkOutput())
+			jQuery.put("output", request.getOutput());
+
+		if (request.getUnion())
+		{
+			jQuery.put("union", true);
+			if (request.getLabelOrigins())
+				jQuery.put("label_origins", true);
+		}
+
 		if (request.getId() != null)
 			jQuery.put("id", request.getId());
 
 		jInfo.put("query", jQuery);
 
-		jResp.put("info", jInfo);
-
-		ServletUtility.write(response, jResp);
+		return jInfo;
 	}
 }
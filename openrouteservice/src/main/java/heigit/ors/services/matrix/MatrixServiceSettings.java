@@ -27,6 +27,7 @@ public class MatrixServiceSettings
 	private static int maximumLocations = 100;
 	private static int maximumLocationsFlexible = 25;
 	private static int maximumVisitedNodes = 100000;
+	private static long maximumSearchTime = 0; // in milliseconds, 0 for no limit
 	private static double maximumSearchRadius = 2000;
 	private static boolean allowResolveLocations = true;
 	private static String attribution = "";
@@ -49,6 +50,9 @@ public class MatrixServiceSettings
 		value = AppConfig.Global().getServiceParameter("matrix", "maximum_visited_nodes");
 		if (value != null)
 			maximumVisitedNodes = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "maximum_search_time");
+		if (value != null)
+			maximumSearchTime = Math.max(0, Long.parseLong(value));
 		value = AppConfig.Global().getServiceParameter("matrix", " allow_resolve_locations");
 		if (value != null)
 			allowResolveLocations = Boolean.parseBoolean(value);
@@ -68,6 +72,10 @@ public class MatrixServiceSettings
 	public static int getMaximumVisitedNodes() {
 		return maximumVisitedNodes;
 	}
+
+	public static long getMaximumSearchTime() {
+		return maximumSearchTime;
+	}
 	
 	public static int getMaximumLocations(boolean flexible) {
 		return (flexible? maximumLocationsFlexible : maximumLocations);
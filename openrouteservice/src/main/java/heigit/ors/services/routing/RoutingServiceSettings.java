@@ -35,6 +35,8 @@ public class RoutingServiceSettings {
 	private static boolean distanceApproximation = false;
 	private static String storageFormat = "Native";
 	private static String attribution = "";
+	private static int maximumVisitedNodes = Integer.MAX_VALUE;
+	private static long maximumSearchTime = 0; // in milliseconds, 0 for no limit
 	private static AppConfig _config;
 	
 	static 
@@ -77,6 +79,14 @@ public class RoutingServiceSettings {
 		value = config.getServiceParameter("routing", "attribution");
 		if (value != null)
 			attribution = value;
+
+		value = config.getServiceParameter("routing", "maximum_visited_nodes");
+		if (value != null)
+			maximumVisitedNodes = Math.max(1, Integer.parseInt(value));
+
+		value = config.getServiceParameter("routing", "maximum_search_time");
+		if (value != null)
+			maximumSearchTime = Math.max(0, Long.parseLong(value));
 	}
 	
 	public static Boolean getEnabled()
@@ -104,6 +114,14 @@ public class RoutingServiceSettings {
 		return storageFormat;
 	}
 
+	public static int getMaximumVisitedNodes() {
+		return maximumVisitedNodes;
+	}
+
+	public static long getMaximumSearchTime() {
+		return maximumSearchTime;
+	}
+
 	public static String getParameter(String paramName) 
 	{
 	   return _config.getServiceParameter("routing", paramName);	
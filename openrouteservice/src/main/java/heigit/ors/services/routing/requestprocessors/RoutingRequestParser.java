@@ -41,11 +41,18 @@ import heigit.ors.util.ArraysUtility;
 import heigit.ors.util.CoordTools;
 import heigit.ors.util.DistanceUnitUtil;
 
+import org.json.JSONObject;
+
 import javax.servlet.http.HttpServletRequest;
 import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 
 public class RoutingRequestParser
 {
+	// the best route and up to three alternatives
+	private static final int MAX_ALTERNATIVE_ROUTES = 4;
+
 	public static RoutingRequest parseFromRequestParams(HttpServletRequest request) throws Exception
 	{
 		RoutingRequest req = new RoutingRequest();
@@ -257,10 +264,79 @@ public class RoutingRequestParser
 		   }
 		}
 
+		value = request.getParameter("departure");
+		if (!Helper.isEmpty(value))
+		{
+			// local time of the graph, e.g. 2018-05-14T08:30
+			try
+			{
+				searchParams.setDeparture(LocalDateTime.parse(value));
+			}
+			catch(DateTimeParseException ex)
+			{
+				throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_FORMAT, "departure");
+			}
+		}
+
+		value = request.getParameter("alternative_routes");
+		if (!Helper.isEmpty(value))
+		{
+			// e.g. {"target_count":3,"weight_factor":1.4,"share_factor":0.6,"local_optimality":0.2}
+			JSONObject json = null;
+			try
+			{
+				json = new JSONObject(value);
+			}
+			catch(Exception ex)
+			{
+				throw new ParameterValueException(RoutingErrorCodes.INVALID_JSON_FORMAT, "Unable to parse 'alternative_routes' value." + ex.getMessage());
+			}
+
+			double count = parseAlternativeRoutesValue(json, "target_count", 1, 1, MAX_ALTERNATIVE_ROUTES);
+			if (count != Math.floor(count))
+				throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_FORMAT, "alternative_routes", "target_count");
+
+			searchParams.setAlternativeRoutesCount((int) count);
+			searchParams.setAlternativeRoutesWeightFactor(parseAlternativeRoutesValue(json, "weight_factor", searchParams.getAlternativeRoutesWeightFactor(), 1, Double.MAX_VALUE));
+			searchParams.setAlternativeRoutesShareFactor(parseAlternativeRoutesValue(json, "share_factor", searchParams.getAlternativeRoutesShareFactor(), 0, 1));
+			searchParams.setAlternativeRoutesLocalOptimality(parseAlternativeRoutesValue(json, "local_optimality", searchParams.getAlternativeRoutesLocalOptimality(), 0, 1));
+
+			if (searchParams.hasAlternativeRoutes())
+			{
+				if (req.getCoordinates().length > 2)
+					throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "alternative_routes can only be computed between two locations");
+
+				// the extra info of all routes would be collected by the same processor
+				if (req.getExtraInfo() > 0)
+					throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "alternative_routes can not be combined with extra_info");
+			}
+		}
+
 		value = request.getParameter("id");
 		if (!Helper.isEmpty(value))
 			req.setId(value);
 
 		return req;		
 	}
+
+	private static double parseAlternativeRoutesValue(JSONObject json, String key, double defaultValue, double minValue, double maxValue) throws Exception
+	{
+		if (!json.has(key))
+			return defaultValue;
+
+		double value;
+		try
+		{
+			value = json.getDouble(key);
+		}
+		catch(Exception ex)
+		{
+			throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_FORMAT, "alternative_routes", key);
+		}
+
+		if (value < minValue || value > maxValue)
+			throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "alternative_routes", key + "=" + json.get(key));
+
+		return value;
+	}
 }
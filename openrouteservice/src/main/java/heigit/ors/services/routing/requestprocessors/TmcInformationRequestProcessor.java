@@ -20,7 +20,8 @@
  */
 package heigit.ors.services.routing.requestprocessors;
 
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -28,8 +29,13 @@ import javax.servlet.http.HttpServletResponse;
 import com.graphhopper.util.Helper;
 import com.vividsolutions.jts.geom.Envelope;
 
+import heigit.ors.exceptions.ParameterValueException;
+import heigit.ors.routing.RoutingErrorCodes;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
+import heigit.ors.routing.traffic.TrafficTileCache;
+import heigit.ors.servlet.filters.ContentEncodingType;
 import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
+import heigit.ors.util.StreamUtility;
 
 public class TmcInformationRequestProcessor extends AbstractHttpRequestProcessor 
 {
@@ -39,10 +45,17 @@ public class TmcInformationRequestProcessor extends AbstractHttpRequestProcessor
 	}
 
 	@Override
-	public void process(HttpServletResponse response) throws IOException  
+	public void process(HttpServletResponse response) throws Exception  
 	{
 		if (RealTrafficDataProvider.getInstance().isInitialized())
 		{
+			String tile = _request.getParameter("tile");
+			if (!Helper.isEmpty(tile))
+			{
+				writeTile(response, tile);
+				return;
+			}
+
 			String bbox =	_request.getParameter("bbox");
 			Envelope env = null;
 			if (!Helper.isEmpty(bbox))
@@ -67,4 +80,60 @@ public class TmcInformationRequestProcessor extends AbstractHttpRequestProcessor
 
 		}
 	}
+
+	/**
+	 * Writes the traffic features of a map tile given as zoom/x/y. Tiles are kept gzip compressed and are sent as
+	 * they are to clients that accept this encoding.
+	 */
+	private void writeTile(HttpServletResponse response, String tile) throws Exception
+	{
+		String[] values = tile.split("/");
+		int zoom, x, y;
+		try
+		{
+			if (values.length != 3)
+				throw new NumberFormatException();
+			zoom = Integer.parseInt(values[0]);
+			x = Integer.parseInt(values[1]);
+			y = Integer.parseInt(values[2]);
+		}
+		catch (NumberFormatException ex)
+		{
+			throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_FORMAT, "tile", tile);
+		}
+
+		if (!TrafficTileCache.isValidTile(zoom, x, y))
+			throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "tile", tile);
+
+		byte[] bytes = RealTrafficDataProvider.getInstance().getTmcTile(zoom, x, y);
+		if (bytes == null)
+		{
+			response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+			return;
+		}
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType("application/json");
+		response.setStatus(HttpServletResponse.SC_OK);
+
+		String acceptEncoding = _request.getHeader("accept-encoding");
+		if (acceptEncoding != null && acceptEncoding.indexOf(ContentEncodingType.GZIP) != -1)
+		{
+			response.setHeader("Content-Encoding", ContentEncodingType.GZIP);
+			response.setContentLength(bytes.length);
+			response.getOutputStream().write(bytes);
+		}
+		else
+		{
+			GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(bytes));
+			try
+			{
+				response.getOutputStream().write(StreamUtility.toByteArray(input, 8192));
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+	}
 }
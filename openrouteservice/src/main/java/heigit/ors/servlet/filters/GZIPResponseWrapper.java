@@ -32,6 +32,8 @@ class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	protected HttpServletResponse _origResponse = null;
 	protected GZIPResponseStream _stream = null;
 	protected PrintWriter _writer = null;
+	// set if the content has already been encoded by the request processor
+	protected boolean _encoded = false;
 
 	public GZIPResponseWrapper(HttpServletResponse response) {
 		super(response);
@@ -62,6 +64,9 @@ class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	}
 
 	public ServletOutputStream getOutputStream() throws IOException {
+		if (_encoded)
+			return _origResponse.getOutputStream();
+
 		if (_writer != null) 
 			throw new IllegalStateException("getWriter() has already been called!");
 
@@ -83,5 +88,15 @@ class GZIPResponseWrapper extends HttpServletResponseWrapper {
 		return (_writer);
 	}
 
-	public void setContentLength(int length) {}
+	public void setContentLength(int length) {
+		if (_encoded)
+			_origResponse.setContentLength(length);
+	}
+
+	public void setHeader(String name, String value) {
+		if ("Content-Encoding".equalsIgnoreCase(name) && _stream == null && _writer == null)
+			_encoded = true;
+
+		super.setHeader(name, value);
+	}
 }
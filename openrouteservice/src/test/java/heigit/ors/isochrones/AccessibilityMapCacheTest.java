@@ -0,0 +1,163 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.storage.SPTEntry;
+import heigit.ors.common.TravelRangeType;
+import heigit.ors.routing.RouteSearchParameters;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AccessibilityMapCacheTest {
+    private static AccessibilityMap createMap(int size) {
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>(size);
+        SPTEntry root = new SPTEntry(-1, 0, 0);
+        map.put(0, root);
+        for (int i = 1; i < size; i++) {
+            SPTEntry entry = new SPTEntry(i, i, i);
+            entry.parent = root;
+            map.put(i, entry);
+        }
+
+        return new AccessibilityMap(map, null);
+    }
+
+    private static AccessibilityMapCache.Key createKey(String graphLocation, int nodeId) {
+        return new AccessibilityMapCache.Key(graphLocation, "car", TravelRangeType.Time, null, nodeId, false);
+    }
+
+    @Test
+    public void TestHitWithinCachedRange() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(Long.MAX_VALUE);
+        AccessibilityMap map = createMap(10);
+        cache.put(createKey("graph", 1), map, 600, false, cache.getTrafficGeneration());
+
+        assertSame(map, cache.get(createKey("graph", 1), 600));
+        assertSame(map, cache.get(createKey("graph", 1), 300));
+        assertNull(cache.get(createKey("graph", 1), 900));
+        assertNull(cache.get(createKey("graph", 2), 300));
+    }
+
+    @Test
+    public void TestTrafficInvalidation() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(Long.MAX_VALUE);
+        cache.put(createKey("graph", 1), createMap(10), 600, true, cache.getTrafficGeneration());
+        cache.put(createKey("graph", 2), createMap(10), 600, false, cache.getTrafficGeneration());
+
+        cache.invalidateTrafficEntries();
+
+        assertNull(cache.get(createKey("graph", 1), 600));
+        assertNotNull(cache.get(createKey("graph", 2), 600));
+        assertEquals(AccessibilityMapCache.getMemoryUsage(createMap(10)), cache.getMemoryUsage());
+    }
+
+    @Test
+    public void TestResultOfEarlierTrafficGenerationIsDropped() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(Long.MAX_VALUE);
+        // both searches start before a traffic update and finish after it
+        long trafficGeneration = cache.getTrafficGeneration();
+        cache.invalidateTrafficEntries();
+        cache.put(createKey("graph", 1), createMap(10), 600, true, trafficGeneration);
+        cache.put(createKey("graph", 2), createMap(10), 600, false, trafficGeneration);
+
+        assertNull(cache.get(createKey("graph", 1), 600));
+        assertNotNull(cache.get(createKey("graph", 2), 600));
+
+        cache.put(createKey("graph", 1), createMap(10), 600, true, cache.getTrafficGeneration());
+        assertNotNull(cache.get(createKey("graph", 1), 600));
+    }
+
+    @Test
+    public void TestGraphInvalidation() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(Long.MAX_VALUE);
+        cache.put(createKey("graph1", 1), createMap(10), 600, false, cache.getTrafficGeneration());
+        cache.put(createKey("graph2", 1), createMap(10), 600, false, cache.getTrafficGeneration());
+
+        cache.invalidate("graph1");
+
+        assertNull(cache.get(createKey("graph1", 1), 600));
+        assertNotNull(cache.get(createKey("graph2", 1), 600));
+    }
+
+    @Test
+    public void TestEvictionOfLeastRecentlyUsed() {
+        long size = AccessibilityMapCache.getMemoryUsage(createMap(100));
+        AccessibilityMapCache cache = new AccessibilityMapCache(2 * size + size / 2);
+        cache.put(createKey("graph", 1), createMap(100), 600, false, cache.getTrafficGeneration());
+        cache.put(createKey("graph", 2), createMap(100), 600, false, cache.getTrafficGeneration());
+
+        // makes the second entry the least recently used one
+        assertNotNull(cache.get(createKey("graph", 1), 600));
+        cache.put(createKey("graph", 3), createMap(100), 600, false, cache.getTrafficGeneration());
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(createKey("graph", 2), 600));
+        assertNotNull(cache.get(createKey("graph", 1), 600));
+        assertNotNull(cache.get(createKey("graph", 3), 600));
+        assertEquals(2 * size, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void TestTooLargeMapIsNotCached() {
+        AccessibilityMapCache cache = new AccessibilityMapCache(AccessibilityMapCache.getMemoryUsage(createMap(10)));
+        cache.put(createKey("graph", 1), createMap(1000), 600, false, cache.getTrafficGeneration());
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void TestEquivalentOptionsShareKey() throws Exception {
+        RouteSearchParameters params1 = new RouteSearchParameters();
+        params1.setOptions("{\"avoid_countries\":\"1|2\",\"avoid_borders\":\"all\",\"maximum_speed\":80}");
+        RouteSearchParameters params2 = new RouteSearchParameters();
+        params2.setOptions("{ \"maximum_speed\": 80.0, \"avoid_borders\": \"all\", \"avoid_countries\": \"2|1\" }");
+        RouteSearchParameters params3 = new RouteSearchParameters();
+        params3.setOptions("{\"avoid_countries\":\"1|2\",\"avoid_borders\":\"controlled\",\"maximum_speed\":80}");
+
+        AccessibilityMapCache.Key key1 = new AccessibilityMapCache.Key("graph", "car", TravelRangeType.Time, params1, 1, false);
+        AccessibilityMapCache.Key key2 = new AccessibilityMapCache.Key("graph", "car", TravelRangeType.Time, params2, 1, false);
+        AccessibilityMapCache.Key key3 = new AccessibilityMapCache.Key("graph", "car", TravelRangeType.Time, params3, 1, false);
+
+        assertEquals(key1, key2);
+        assertEquals(key1.hashCode(), key2.hashCode());
+        assertFalse(key1.equals(key3));
+    }
+
+    @Test
+    public void TestTrafficChangesKey() {
+        RouteSearchParameters params1 = new RouteSearchParameters();
+        RouteSearchParameters params2 = new RouteSearchParameters();
+        params2.setConsiderTraffic(true);
+
+        AccessibilityMapCache.Key key1 = new AccessibilityMapCache.Key("graph", "car", TravelRangeType.Time, params1, 1, false);
+        AccessibilityMapCache.Key key2 = new AccessibilityMapCache.Key("graph", "car", TravelRangeType.Time, params2, 1, false);
+
+        assertFalse(key1.equals(key2));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.storage.SPTEntry;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GraphEdgeMapFinderTest {
+    private static SPTEntry addEntry(IntObjectMap<SPTEntry> map, int edge, int node, double weight, SPTEntry parent) {
+        SPTEntry entry = new SPTEntry(edge, node, weight);
+        entry.parent = parent;
+        map.put(node, entry);
+        return entry;
+    }
+
+    @Test
+    public void TestSplitByOrigin() {
+        // two trees, 0 -> 1 -> 2 and 1 -> 3 reached from node 0 and 5 -> 6 -> 7 reached from node 5
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>();
+        SPTEntry root0 = addEntry(map, -1, 0, 0, null);
+        SPTEntry root5 = addEntry(map, -1, 5, 0, null);
+        SPTEntry e1 = addEntry(map, 1, 1, 10, root0);
+        SPTEntry e6 = addEntry(map, 6, 6, 15, root5);
+        SPTEntry e2 = addEntry(map, 2, 2, 30, e1);
+        SPTEntry e3 = addEntry(map, 3, 3, 20, e1);
+        SPTEntry e7 = addEntry(map, 7, 7, 40, e6);
+
+        IntObjectMap<AccessibilityMap> trees = GraphEdgeMapFinder.splitByOrigin(new AccessibilityMap(map, e7));
+
+        assertEquals(2, trees.size());
+
+        AccessibilityMap tree0 = trees.get(0);
+        assertNotNull(tree0);
+        assertEquals(4, tree0.getMap().size());
+        assertSame(root0, tree0.getMap().get(0));
+        assertSame(e1, tree0.getMap().get(1));
+        assertSame(e2, tree0.getMap().get(2));
+        assertSame(e3, tree0.getMap().get(3));
+
+        AccessibilityMap tree5 = trees.get(5);
+        assertNotNull(tree5);
+        assertEquals(3, tree5.getMap().size());
+        assertSame(root5, tree5.getMap().get(5));
+        assertSame(e6, tree5.getMap().get(6));
+        assertSame(e7, tree5.getMap().get(7));
+    }
+
+    @Test
+    public void TestEveryTreeGetsItsOwnEdgeEntry() {
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>();
+        SPTEntry root0 = addEntry(map, -1, 0, 0, null);
+        SPTEntry root5 = addEntry(map, -1, 5, 0, null);
+        SPTEntry e1 = addEntry(map, 1, 1, 25, root0);
+        SPTEntry e6 = addEntry(map, 6, 6, 10, root5);
+        SPTEntry e7 = addEntry(map, 7, 7, 40, e6);
+
+        IntObjectMap<AccessibilityMap> trees = GraphEdgeMapFinder.splitByOrigin(new AccessibilityMap(map, e7));
+
+        assertSame(e1, trees.get(0).getEdgeEntry());
+        assertSame(e7, trees.get(5).getEdgeEntry());
+    }
+
+    @Test
+    public void TestSingleOrigin() {
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>();
+        SPTEntry root = addEntry(map, -1, 3, 0, null);
+        SPTEntry e4 = addEntry(map, 4, 4, 10, root);
+
+        IntObjectMap<AccessibilityMap> trees = GraphEdgeMapFinder.splitByOrigin(new AccessibilityMap(map, e4));
+
+        assertEquals(1, trees.size());
+        assertTrue(trees.containsKey(3));
+        assertEquals(2, trees.get(3).getMap().size());
+        assertSame(e4, trees.get(3).getEdgeEntry());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeIteratorState;
+import heigit.ors.routing.graphhopper.extensions.AccessibilityMap;
+import heigit.ors.routing.graphhopper.extensions.weighting.DistanceWeighting;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReachableNetworkTest {
+    private final EncodingManager encodingManager = new EncodingManager("car");
+    private final FlagEncoder encoder = encodingManager.getEncoder("car");
+
+    private static int indexOf(ReachableNetwork network, int edgeId) {
+        int index = -1;
+        for (int i = 0; i < network.size(); i++) {
+            if (network.getEdgeId(i) == edgeId) {
+                // every edge must be contained once only
+                assertEquals(-1, index);
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static SPTEntry addEntry(IntObjectMap<SPTEntry> map, int edge, int node, double weight, SPTEntry parent) {
+        SPTEntry entry = new SPTEntry(edge, node, weight);
+        entry.parent = parent;
+        map.put(node, entry);
+        return entry;
+    }
+
+    private ReachableNetwork create(GraphHopperStorage graph, IntObjectMap<SPTEntry> map, SPTEntry last, boolean reverseDirection, double maxCost) {
+        return ReachableNetwork.create(0, graph, new DistanceWeighting(encoder), new DefaultEdgeFilter(encoder), reverseDirection,
+                new AccessibilityMap(map, last), maxCost);
+    }
+
+    /**
+     * Creates the tree 0 -> 1 and 0 -> 2 with edges of 9 m and an edge of 4 m between 1 and 2, which is not part
+     * of the tree.
+     */
+    private GraphHopperStorage createTriangle(IntObjectMap<SPTEntry> map, boolean bothDirections) {
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        nodeAccess.setNode(0, 49.01, 8.005);
+        nodeAccess.setNode(1, 49.00, 8.00);
+        nodeAccess.setNode(2, 49.00, 8.01);
+
+        EdgeIteratorState e01 = graph.edge(0, 1, 9, true);
+        EdgeIteratorState e02 = graph.edge(0, 2, 9, true);
+        graph.edge(1, 2, 4, bothDirections);
+
+        SPTEntry root = addEntry(map, -1, 0, 0, null);
+        addEntry(map, e01.getEdge(), 1, 9, root);
+        addEntry(map, e02.getEdge(), 2, 9, root);
+        return graph;
+    }
+
+    private static void assertPart(ReachableNetwork network, int index, double fromLon, boolean towardsEast) {
+        assertEquals(9, network.getFromCost(index), 1e-6);
+        assertEquals(10, network.getToCost(index), 1e-6);
+        assertEquals(fromLon, network.getLon(index, 0), 1e-6);
+        double toLon = network.getLon(index, network.getPointCount(index) - 1);
+        assertTrue(towardsEast ? toLon > fromLon && toLon < 8.005 : toLon < fromLon && toLon > 8.005);
+    }
+
+    @Test
+    public void TestEdgesBetweenReachedNodesAreCut() {
+        // the middle of the edge between 1 and 2 costs 11, only a quarter of it is reached from each end
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>();
+        GraphHopperStorage graph = createTriangle(map, true);
+        ReachableNetwork network = create(graph, map, map.get(2), false, 10);
+
+        assertEquals(4, network.size());
+        assertPart(network, 2, 8.00, true);
+        assertPart(network, 3, 8.01, false);
+        assertEquals(2, network.getEdgeId(2));
+        assertEquals(2, network.getEdgeId(3));
+
+        // the parts meet if the range reaches the middle of the edge
+        network = create(graph, map, map.get(2), false, 11);
+        assertEquals(3, network.size());
+        assertEquals(9, network.getFromCost(indexOf(network, 2)), 1e-6);
+        assertEquals(9, network.getToCost(indexOf(network, 2)), 1e-6);
+    }
+
+    @Test
+    public void TestDirectionOfEdgesBetweenReachedNodes() {
+        // the one-way edge from 1 to 2 is left from 1 in a forward search and enters 2 in a reverse one
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>();
+        GraphHopperStorage graph = createTriangle(map, false);
+
+        ReachableNetwork network = create(graph, map, map.get(2), false, 10);
+        assertEquals(3, network.size());
+        assertPart(network, indexOf(network, 2), 8.00, true);
+
+        network = create(graph, map, map.get(2), true, 10);
+        assertEquals(3, network.size());
+        assertPart(network, indexOf(network, 2), 8.01, false);
+    }
+
+    @Test
+    public void TestOneWayEdgesBetweenReachedNodes() {
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        nodeAccess.setNode(0, 49.00, 8.00);
+        nodeAccess.setNode(1, 49.01, 8.00);
+        nodeAccess.setNode(2, 49.01, 8.01);
+        nodeAccess.setNode(3, 49.00, 8.01);
+
+        // the search tree 0 -> 1, 0 -> 2 and 0 -> 3
+        EdgeIteratorState e01 = graph.edge(0, 1, 1000, true);
+        EdgeIteratorState e02 = graph.edge(0, 2, 1400, true);
+        EdgeIteratorState e03 = graph.edge(0, 3, 1000, true);
+        // one-way edges from the lower to the higher node id and the other way round, and a two-way edge
+        EdgeIteratorState e12 = graph.edge(1, 2, 1000, false);
+        EdgeIteratorState e31 = graph.edge(3, 1, 1400, false);
+        EdgeIteratorState e23 = graph.edge(2, 3, 1000, true);
+
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>();
+        SPTEntry root = addEntry(map, -1, 0, 0, null);
+        addEntry(map, e01.getEdge(), 1, 10, root);
+        addEntry(map, e02.getEdge(), 2, 20, root);
+        SPTEntry last = addEntry(map, e03.getEdge(), 3, 30, root);
+
+        ReachableNetwork network = create(graph, map, last, false, 5000);
+
+        assertEquals(6, network.size());
+
+        int index = indexOf(network, e12.getEdge());
+        assertEquals(10, network.getFromCost(index), 1e-6);
+        assertEquals(20, network.getToCost(index), 1e-6);
+
+        index = indexOf(network, e31.getEdge());
+        assertEquals(30, network.getFromCost(index), 1e-6);
+        assertEquals(10, network.getToCost(index), 1e-6);
+        assertEquals(49.00, network.getLat(index, 0), 1e-6);
+        assertEquals(49.01, network.getLat(index, network.getPointCount(index) - 1), 1e-6);
+
+        assertEquals(true, indexOf(network, e23.getEdge()) >= 0);
+        assertEquals(true, indexOf(network, e01.getEdge()) >= 0);
+        assertEquals(true, indexOf(network, e02.getEdge()) >= 0);
+        assertEquals(true, indexOf(network, e03.getEdge()) >= 0);
+    }
+
+    @Test
+    public void TestEdgesToUnreachedNodesAreSkipped() {
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        nodeAccess.setNode(0, 49.00, 8.00);
+        nodeAccess.setNode(1, 49.01, 8.00);
+        nodeAccess.setNode(2, 49.01, 8.01);
+
+        EdgeIteratorState e01 = graph.edge(0, 1, 1000, true);
+        EdgeIteratorState e02 = graph.edge(0, 2, 1400, true);
+        graph.edge(2, 1, 1000, false);
+
+        IntObjectMap<SPTEntry> map = new GHIntObjectHashMap<SPTEntry>();
+        SPTEntry root = addEntry(map, -1, 0, 0, null);
+        addEntry(map, e01.getEdge(), 1, 10, root);
+        SPTEntry last = addEntry(map, e02.getEdge(), 2, 200, root);
+
+        ReachableNetwork network = create(graph, map, last, false, 100);
+
+        // the edge to node 2 is cut at the cost limit, the one-way edge from node 2 is not reached
+        assertEquals(2, network.size());
+        int index = indexOf(network, e02.getEdge());
+        assertEquals(100, network.getToCost(index), 1e-6);
+    }
+}
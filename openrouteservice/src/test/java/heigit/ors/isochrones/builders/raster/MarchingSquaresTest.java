@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MarchingSquaresTest {
+    /**
+     * Creates a 12x12 grid with a reached square block (2..9) that contains an unreached block (4..7)
+     * which in turn contains a single reached cell.
+     */
+    private CostGrid createGrid() {
+        CostGrid grid = new CostGrid(0, 0, 12, 12, 1, 1, 0);
+        for (int i = 2; i <= 9; i++)
+            for (int j = 2; j <= 9; j++)
+                grid.setValue(i, j, 1f);
+        for (int i = 4; i <= 7; i++)
+            for (int j = 4; j <= 7; j++)
+                grid.setValue(i, j, Float.POSITIVE_INFINITY);
+        grid.setValue(5, 5, 1f);
+        return grid;
+    }
+
+    @Test
+    public void TestShellAndHoleOrientation() {
+        List<double[]> rings = new MarchingSquares(createGrid()).traceContours(2);
+        assertEquals(3, rings.size());
+
+        int shells = 0;
+        int holes = 0;
+        for (double[] ring : rings) {
+            assertEquals(ring[0], ring[ring.length - 2], 0.0);
+            assertEquals(ring[1], ring[ring.length - 1], 0.0);
+            if (MarchingSquares.getSignedArea(ring) > 0)
+                shells++;
+            else
+                holes++;
+        }
+
+        assertEquals(2, shells);
+        assertEquals(1, holes);
+    }
+
+    @Test
+    public void TestRepeatedTracing() {
+        MarchingSquares ms = new MarchingSquares(createGrid());
+        List<double[]> first = ms.traceContours(2);
+        List<double[]> second = ms.traceContours(2);
+        assertEquals(first.size(), second.size());
+        assertTrue(ms.traceContours(0.5).isEmpty());
+    }
+
+    @Test
+    public void TestInterpolation() {
+        CostGrid grid = new CostGrid(0, 0, 3, 3, 1, 1, 0);
+        grid.setValue(1, 1, 0f);
+        grid.setValue(0, 1, 10f);
+        grid.setValue(2, 1, 10f);
+        grid.setValue(1, 0, 10f);
+        grid.setValue(1, 2, 10f);
+        List<double[]> rings = new MarchingSquares(grid).traceContours(5);
+        assertEquals(1, rings.size());
+        // the diamond around the center node has its corners half way to the neighbours
+        assertEquals(0.5, MarchingSquares.getSignedArea(rings.get(0)), 1e-9);
+    }
+
+    @Test
+    public void TestBufferStamp() {
+        CostGrid grid = new CostGrid(0, 0, 10, 10, 1, 1, 1);
+        grid.addSample(5, 5, 3f);
+        assertEquals(3f, grid.getValue(5, 5), 0f);
+        assertEquals(3f, grid.getValue(4, 5), 0f);
+        assertEquals(Float.POSITIVE_INFINITY, grid.getValue(4, 4), 0f);
+        grid.addSample(5, 5, 1f);
+        assertEquals(1f, grid.getValue(6, 5), 0f);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.builders.raster;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Polygon;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RasterIsochroneMapBuilderTest {
+    private final GeometryFactory _geomFactory = new GeometryFactory();
+
+    private static void fill(CostGrid grid, int min, int max, float value) {
+        for (int i = min; i <= max; i++)
+            for (int j = min; j <= max; j++)
+                grid.setValue(i, j, value);
+    }
+
+    @Test
+    public void TestSingleArea() {
+        CostGrid grid = new CostGrid(0, 0, 12, 12, 1, 1, 0);
+        fill(grid, 2, 9, 1f);
+
+        Geometry geom = RasterIsochroneMapBuilder.createGeometry(_geomFactory, new MarchingSquares(grid).traceContours(2), 0);
+        assertTrue(geom instanceof Polygon);
+    }
+
+    @Test
+    public void TestDisjointAreasAreKept() {
+        CostGrid grid = new CostGrid(0, 0, 20, 20, 1, 1, 0);
+        fill(grid, 2, 5, 1f);
+        fill(grid, 10, 17, 1f);
+
+        Geometry geom = RasterIsochroneMapBuilder.createGeometry(_geomFactory, new MarchingSquares(grid).traceContours(2), 0);
+        assertTrue(geom instanceof MultiPolygon);
+        assertEquals(2, geom.getNumGeometries());
+    }
+
+    @Test
+    public void TestHolesBelongToTheirShell() {
+        // a reached block with an unreached hole which contains a reached island
+        CostGrid grid = new CostGrid(0, 0, 12, 12, 1, 1, 0);
+        fill(grid, 2, 9, 1f);
+        fill(grid, 4, 7, Float.POSITIVE_INFINITY);
+        grid.setValue(5, 5, 1f);
+
+        Geometry geom = RasterIsochroneMapBuilder.createGeometry(_geomFactory, new MarchingSquares(grid).traceContours(2), 0);
+        assertEquals(2, geom.getNumGeometries());
+
+        int holes = 0;
+        for (int i = 0; i < geom.getNumGeometries(); i++)
+            holes += ((Polygon) geom.getGeometryN(i)).getNumInteriorRing();
+        assertEquals(1, holes);
+    }
+
+    @Test
+    public void TestNoArea() {
+        CostGrid grid = new CostGrid(0, 0, 12, 12, 1, 1, 0);
+        fill(grid, 2, 9, 5f);
+
+        assertNull(RasterIsochroneMapBuilder.createGeometry(_geomFactory, new MarchingSquares(grid).traceContours(2), 0));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.isochrones.statistics.raster;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScanLineRasterizerTest {
+    private static final double DELTA = 1e-6;
+
+    private final GeometryFactory _geomFactory = new GeometryFactory();
+
+    /**
+     * Writes a single band raster of 4x4 cells of one degree with the lower left corner at (0, 0), the values are
+     * given row by row starting with the northernmost one.
+     */
+    private static File writeRaster(float[] values, String noData) throws IOException {
+        File dataFile = File.createTempFile("population", ".flt");
+        String name = dataFile.getName();
+        File headerFile = new File(dataFile.getParentFile(), name.substring(0, name.length() - 4) + ".hdr");
+        dataFile.deleteOnExit();
+        headerFile.deleteOnExit();
+        getCacheFile(dataFile).deleteOnExit();
+
+        FileWriter writer = new FileWriter(headerFile);
+        writer.write("ncols 4\nnrows 4\nxllcorner 0\nyllcorner 0\ncellsize 1\n");
+        if (noData != null)
+            writer.write("NODATA_value " + noData + "\n");
+        writer.close();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : values)
+            buffer.putFloat(value);
+        FileOutputStream output = new FileOutputStream(dataFile);
+        output.write(buffer.array());
+        output.close();
+
+        return dataFile;
+    }
+
+    private static File getCacheFile(File dataFile) {
+        return new File(dataFile.getPath() + ".sum");
+    }
+
+    private static PopulationRaster createRaster(float[] values, String noData) throws IOException {
+        File dataFile = writeRaster(values, noData);
+        return new PopulationRaster(dataFile.getPath(), getCacheFile(dataFile).getPath());
+    }
+
+    /**
+     * Creates a raster holding the value row * 4 + column + 1 in every cell.
+     */
+    private static PopulationRaster createRaster() throws IOException {
+        float[] values = new float[16];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i + 1;
+
+        return createRaster(values, null);
+    }
+
+    private LinearRing createRing(double minX, double minY, double maxX, double maxY) {
+        return _geomFactory.createLinearRing(new Coordinate[] { new Coordinate(minX, minY), new Coordinate(maxX, minY),
+                new Coordinate(maxX, maxY), new Coordinate(minX, maxY), new Coordinate(minX, minY) });
+    }
+
+    private Polygon createBox(double minX, double minY, double maxX, double maxY) {
+        return _geomFactory.createPolygon(createRing(minX, minY, maxX, maxY), null);
+    }
+
+    @Test
+    public void TestRasterValues() throws IOException {
+        PopulationRaster raster = createRaster();
+
+        assertEquals(4, raster.getWidth());
+        assertEquals(4, raster.getHeight());
+        assertEquals(0.0, raster.getMinX(), DELTA);
+        assertEquals(4.0, raster.getMaxY(), DELTA);
+        assertEquals(1.0, raster.getValue(0, 0), DELTA);
+        assertEquals(7.0, raster.getValue(2, 1), DELTA);
+        assertEquals(16.0, raster.getValue(3, 3), DELTA);
+    }
+
+    @Test
+    public void TestRowSum() throws IOException {
+        PopulationRaster raster = createRaster();
+
+        // row 1 holds the values 5, 6, 7 and 8
+        assertEquals(26.0, raster.getRowSum(1, 0, 4), DELTA);
+        assertEquals(26.0, raster.getRowSum(1, -2, 10), DELTA);
+        assertEquals(13.0, raster.getRowSum(1, 1, 3), DELTA);
+        assertEquals(0.5 * 5 + 6 + 0.25 * 7, raster.getRowSum(1, 0.5, 2.25), DELTA);
+        assertEquals(0.5 * 6, raster.getRowSum(1, 1.25, 1.75), DELTA);
+        assertEquals(0.0, raster.getRowSum(1, 3, 2), DELTA);
+    }
+
+    @Test
+    public void TestNoDataAndNegativeValuesAreIgnored() throws IOException {
+        float[] values = new float[16];
+        for (int i = 0; i < values.length; i++)
+            values[i] = 1;
+        values[0] = -9999;
+        values[1] = -1;
+        values[2] = Float.NaN;
+
+        PopulationRaster raster = createRaster(values, "-9999");
+
+        assertEquals(1.0, raster.getRowSum(0, 0, 4), DELTA);
+        assertEquals(0.0, raster.getValue(0, 0), DELTA);
+    }
+
+    @Test
+    public void TestCacheIsReused() throws IOException {
+        float[] values = new float[16];
+        for (int i = 0; i < values.length; i++)
+            values[i] = 2;
+
+        File dataFile = writeRaster(values, null);
+        File cacheFile = getCacheFile(dataFile);
+        new PopulationRaster(dataFile.getPath(), cacheFile.getPath()).close();
+        long length = cacheFile.length();
+        // a valid cache must not be rebuilt, so a marker written past the header survives
+        RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw");
+        raf.seek(length - 8);
+        raf.writeDouble(100.0);
+        raf.close();
+
+        PopulationRaster raster = new PopulationRaster(dataFile.getPath(), cacheFile.getPath());
+
+        assertEquals(length, cacheFile.length());
+        assertEquals(100.0 - 6.0, raster.getValue(3, 3), DELTA);
+    }
+
+    @Test
+    public void TestSumOfWholeRaster() throws IOException {
+        ScanLineRasterizer rasterizer = new ScanLineRasterizer(createRaster());
+
+        assertEquals(136.0, rasterizer.getSum(createBox(0, 0, 4, 4)), DELTA);
+        assertEquals(136.0, rasterizer.getSum(createBox(-10, -10, 10, 10)), DELTA);
+    }
+
+    @Test
+    public void TestSumOfInnerCells() throws IOException {
+        ScanLineRasterizer rasterizer = new ScanLineRasterizer(createRaster());
+
+        // rows 1 and 2, columns 1 and 2
+        assertEquals(6 + 7 + 10 + 11, rasterizer.getSum(createBox(1, 1, 3, 3)), DELTA);
+        // the centers of rows 1 and 2 are covered, column 0 only half
+        assertEquals(0.5 * 5 + 6 + 0.5 * 9 + 10, rasterizer.getSum(createBox(0.5, 1.2, 2, 2.8)), DELTA);
+    }
+
+    @Test
+    public void TestHolesAreExcluded() throws IOException {
+        ScanLineRasterizer rasterizer = new ScanLineRasterizer(createRaster());
+        Polygon poly = _geomFactory.createPolygon(createRing(0, 0, 4, 4), new LinearRing[] { createRing(1, 1, 3, 3) });
+
+        assertEquals(136.0 - (6 + 7 + 10 + 11), rasterizer.getSum(poly), DELTA);
+    }
+
+    @Test
+    public void TestMultiPolygon() throws IOException {
+        ScanLineRasterizer rasterizer = new ScanLineRasterizer(createRaster());
+        Geometry geom = _geomFactory.createMultiPolygon(new Polygon[] { createBox(0, 3, 1, 4), createBox(3, 0, 4, 1) });
+
+        assertEquals(1 + 16, rasterizer.getSum(geom), DELTA);
+    }
+
+    @Test
+    public void TestOutsideOfRaster() throws IOException {
+        ScanLineRasterizer rasterizer = new ScanLineRasterizer(createRaster());
+
+        assertEquals(0.0, rasterizer.getSum(createBox(10, 10, 12, 12)), DELTA);
+        assertEquals(0.0, rasterizer.getSum(_geomFactory.createPoint(new Coordinate(1, 1))), DELTA);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoutingProfileTest {
+    @Test
+    public void TestIsConnectionNotFound() {
+        assertFalse(RoutingProfile.isConnectionNotFound(new GHResponse()));
+
+        GHResponse resp = new GHResponse();
+        resp.addError(new PointNotFoundException("Cannot find point 0", 0));
+        assertFalse(RoutingProfile.isConnectionNotFound(resp));
+
+        // the error of a landmark query between two regions of lm.regions
+        resp.addError(new ConnectionNotFoundException("Connection between locations not found. Different subnetworks 2 vs. 3", new HashMap<String, Object>()));
+        assertTrue(RoutingProfile.isConnectionNotFound(resp));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ch.PrepareEncoder;
+import com.graphhopper.routing.ch.PreparationWeighting;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.CHGraphImpl;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CHAlternativeRouteTest {
+    private static final double DELTA = 1e-6;
+
+    private final EncodingManager _encodingManager = new EncodingManager("car");
+    private final FlagEncoder _encoder = _encodingManager.getEncoder("car");
+    private final Weighting _weighting = new ShortestWeighting(_encoder);
+    private GraphHopperStorage _graph;
+    private CHGraph _chGraph;
+
+    private void createStorage() {
+        _graph = new GraphBuilder(_encodingManager).setCHGraph(_weighting).create();
+    }
+
+    private void freeze(int... levels) {
+        _graph.freeze();
+        _chGraph = _graph.getGraph(CHGraph.class, _weighting);
+        for (int node = 0; node < levels.length; node++)
+            _chGraph.setLevel(node, levels[node]);
+    }
+
+    /**
+     * Creates three routes from 0 to 1:
+     * <pre>
+     * A: 0 -30- 2 -20- 6 -20- 3 -30- 1        weight 100
+     * D: 0 -30- 2 -25- 7 -25- 3 -30- 1        weight 110, shares 60 with A
+     * E: 0 -40- 4 -20- 8 -20- 5 -40- 1        weight 120
+     * </pre>
+     * and a dead end from 6 to 9 with weight 2. The levels equal the node ids, so that the hierarchy needs no
+     * shortcuts and the via nodes of A, D, E and the dead end are 6, 7, 8 and 9.
+     */
+    private void createRoutes() {
+        createStorage();
+        _graph.edge(0, 2, 30, true);
+        _graph.edge(2, 6, 20, true);
+        _graph.edge(6, 3, 20, true);
+        _graph.edge(3, 1, 30, true);
+        _graph.edge(2, 7, 25, true);
+        _graph.edge(7, 3, 25, true);
+        _graph.edge(0, 4, 40, true);
+        _graph.edge(4, 8, 20, true);
+        _graph.edge(8, 5, 20, true);
+        _graph.edge(5, 1, 40, true);
+        _graph.edge(6, 9, 2, true);
+        freeze(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    }
+
+    private List<Path> calcPaths(double maxWeightFactor, double maxShareFactor, double minPlateauFactor) {
+        CHAlternativeRoute algo = new CHAlternativeRoute(_chGraph, new PreparationWeighting(_weighting), _weighting);
+        algo.setMaxPaths(5);
+        algo.setMaxWeightFactor(maxWeightFactor);
+        algo.setMaxShareFactor(maxShareFactor);
+        algo.setMinPlateauFactor(minPlateauFactor);
+        return algo.calcPaths(0, 1);
+    }
+
+    private void assertPath(Path path, double weight, int... nodes) {
+        assertTrue(path.isFound());
+        assertEquals(weight, path.getWeight(), DELTA);
+        assertEquals(weight, path.getDistance(), DELTA);
+        assertEquals(Arrays.toString(nodes), Arrays.toString(path.calcNodes().toArray()));
+    }
+
+    private void assertRoutes(List<Path> paths, String... routes) {
+        assertEquals(routes.length, paths.size());
+        for (int i = 0; i < routes.length; i++) {
+            Path path = paths.get(i);
+            if (routes[i].equals("A"))
+                assertPath(path, 100, 0, 2, 6, 3, 1);
+            else if (routes[i].equals("D"))
+                assertPath(path, 110, 0, 2, 7, 3, 1);
+            else
+                assertPath(path, 120, 0, 4, 8, 5, 1);
+        }
+    }
+
+    @Test
+    public void TestStretchLimit() {
+        createRoutes();
+        assertRoutes(calcPaths(1.05, 0.7, 0), "A");
+        assertRoutes(calcPaths(1.15, 0.7, 0), "A", "D");
+        assertRoutes(calcPaths(1.4, 0.7, 0), "A", "D", "E");
+    }
+
+    @Test
+    public void TestShareLimit() {
+        createRoutes();
+        assertRoutes(calcPaths(1.4, 0.7, 0), "A", "D", "E");
+        // D shares 60 of the weight 100 of A
+        assertRoutes(calcPaths(1.4, 0.5, 0), "A", "E");
+    }
+
+    @Test
+    public void TestLocalOptimality() {
+        // the plateau of 20 around the via node of D reaches from 2 to 3, which are connected by a shorter part of A
+        createRoutes();
+        assertRoutes(calcPaths(1.4, 0.7, 0.2), "A", "E");
+    }
+
+    @Test
+    public void TestSimplePaths() {
+        // the route over the via node 9 would be the best alternative if it did not pass 6 twice
+        createRoutes();
+        List<Path> paths = calcPaths(1.4, 2, 0);
+        assertRoutes(paths, "A", "D", "E");
+        for (Path path : paths)
+            assertTrue(!path.calcNodes().contains(9));
+    }
+
+    /**
+     * Creates the route 1 -10- 3 -10- 0 -10- 2 from 1 to 2 with levels equal to the node ids, where the contraction
+     * of 0 adds a shortcut from 3 to 2. As in a prepared hierarchy, the shortcut is only kept at its lower node, so
+     * that 3 is reached by the backward search over the shortcut and is the only via node.
+     */
+    @Test
+    public void TestUnpackBackwardTree() {
+        createStorage();
+        _graph.edge(1, 3, 10, true);
+        EdgeIteratorState edge30 = _graph.edge(3, 0, 10, true);
+        EdgeIteratorState edge02 = _graph.edge(0, 2, 10, true);
+        freeze(0, 1, 2, 3);
+
+        CHEdgeIteratorState shortcut = _chGraph.shortcut(3, 2);
+        shortcut.setFlags(PrepareEncoder.getScDirMask());
+        shortcut.setWeight(20);
+        shortcut.setDistance(20);
+        shortcut.setSkippedEdges(edge30.getEdge(), edge02.getEdge());
+        ((CHGraphImpl) _chGraph).disconnect(_chGraph.createEdgeExplorer(), _chGraph.getEdgeIteratorState(shortcut.getEdge(), 3));
+
+        CHAlternativeRoute algo = new CHAlternativeRoute(_chGraph, new PreparationWeighting(_weighting), _weighting);
+        List<Path> paths = algo.calcPaths(1, 2);
+        assertEquals(1, paths.size());
+        assertPath(paths.get(0), 30, 1, 3, 0, 2);
+        assertEquals(3, paths.get(0).calcEdges().size());
+    }
+}
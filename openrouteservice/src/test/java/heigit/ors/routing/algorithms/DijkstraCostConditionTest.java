@@ -0,0 +1,93 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import heigit.ors.routing.algorithms.SearchBudget.ExceededException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DijkstraCostConditionTest {
+    private static final int NODES = 1000;
+
+    private final EncodingManager _encodingManager = new EncodingManager("car");
+    private final FlagEncoder _encoder = _encodingManager.getEncoder("car");
+    private GraphHopperStorage _graph;
+
+    /**
+     * Creates a chain of nodes from 0 to NODES - 1 with edges of 100 m.
+     */
+    @Before
+    public void setUp() {
+        _graph = new GraphBuilder(_encodingManager).create();
+        for (int node = 0; node < NODES - 1; node++)
+            _graph.edge(node, node + 1, 100, true);
+    }
+
+    private DijkstraCostCondition createAlgo(double maxCost, SearchBudget budget) {
+        DijkstraCostCondition algo = new DijkstraCostCondition(_graph, new ShortestWeighting(_encoder), maxCost, false, TraversalMode.NODE_BASED);
+        algo.setSearchBudget(budget);
+        return algo;
+    }
+
+    @Test
+    public void TestWithinBudget() {
+        DijkstraCostCondition algo = createAlgo(Double.MAX_VALUE, new SearchBudget(NODES + 1, 0));
+        algo.calcPaths(new int[] { 0 });
+        assertEquals(NODES, algo.getMap().size());
+
+        // the cost limit is reached before the node limit
+        algo = createAlgo(1000, new SearchBudget(20, 0));
+        algo.calcPaths(new int[] { 0 });
+        assertEquals(12, algo.getMap().size());
+    }
+
+    @Test
+    public void TestVisitedNodesExceeded() {
+        DijkstraCostCondition algo = createAlgo(Double.MAX_VALUE, new SearchBudget(50, 0));
+        try {
+            algo.calcPaths(new int[] { 0 });
+            fail("the search visits more than 50 nodes");
+        } catch (ExceededException ex) {
+        }
+    }
+
+    @Test
+    public void TestTimeExceeded() throws InterruptedException {
+        SearchBudget budget = new SearchBudget(Integer.MAX_VALUE, 1);
+        Thread.sleep(5);
+
+        DijkstraCostCondition algo = createAlgo(Double.MAX_VALUE, budget);
+        try {
+            algo.calcPaths(new int[] { 0 });
+            fail("the search takes longer than 1 ms");
+        } catch (ExceededException ex) {
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.PMap;
+import heigit.ors.routing.algorithms.SearchBudget.ExceededException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchBudgetTest {
+    // the clock is read on every 256th check
+    private static final int CLOCK_INTERVAL = 256;
+
+    private static SearchBudget createExpiredBudget(int maxVisitedNodes) throws InterruptedException {
+        SearchBudget budget = new SearchBudget(maxVisitedNodes, 1);
+        Thread.sleep(5);
+        return budget;
+    }
+
+    private static void assertExpiresAtClockInterval(SearchBudget budget) {
+        for (int i = 1; i < CLOCK_INTERVAL; i++)
+            budget.checkTime(i);
+
+        try {
+            budget.checkTime(CLOCK_INTERVAL);
+            fail("the time of the budget is used up");
+        } catch (ExceededException ex) {
+        }
+    }
+
+    @Test
+    public void TestUnlimited() {
+        SearchBudget budget = SearchBudget.UNLIMITED;
+        assertTrue(!budget.hasMaxVisitedNodes());
+        assertTrue(!budget.hasMaxSearchTime());
+
+        for (int i = 0; i < 10 * CLOCK_INTERVAL; i++)
+            budget.check(Integer.MAX_VALUE);
+
+        PMap hints = new PMap();
+        budget.putHints(hints);
+        assertTrue(!hints.has("routing.max_visited_nodes"));
+        assertTrue(SearchBudget.fromHints(hints) == SearchBudget.UNLIMITED);
+    }
+
+    @Test
+    public void TestCheckVisitedNodes() {
+        SearchBudget budget = new SearchBudget(10, 0);
+        assertTrue(budget.hasMaxVisitedNodes());
+        assertTrue(!budget.hasMaxSearchTime());
+        budget.check(10);
+
+        try {
+            budget.check(11);
+            fail("the search has visited more nodes than allowed");
+        } catch (ExceededException ex) {
+        }
+    }
+
+    @Test
+    public void TestCheckTime() throws InterruptedException {
+        assertTrue(new SearchBudget(Integer.MAX_VALUE, 60000).hasMaxSearchTime());
+        assertExpiresAtClockInterval(createExpiredBudget(Integer.MAX_VALUE));
+
+        // the time is also checked together with the visited nodes
+        SearchBudget budget = createExpiredBudget(1000);
+        budget.check(CLOCK_INTERVAL - 1);
+
+        try {
+            budget.check(CLOCK_INTERVAL);
+            fail("the time of the budget is used up");
+        } catch (ExceededException ex) {
+        }
+    }
+
+    @Test
+    public void TestSearchesCountTheirOwnChecks() throws InterruptedException {
+        SearchBudget budget = createExpiredBudget(Integer.MAX_VALUE);
+
+        // two searches sharing the budget, together they have made more checks than the clock interval
+        int first = 0;
+        int second = 0;
+        for (int i = 1; i < CLOCK_INTERVAL; i++) {
+            budget.checkTime(++first);
+            budget.checkTime(++second);
+        }
+
+        try {
+            budget.checkTime(++first);
+            fail("the time of the budget is used up");
+        } catch (ExceededException ex) {
+        }
+    }
+
+    @Test
+    public void TestHints() throws InterruptedException {
+        PMap hints = new PMap();
+        new SearchBudget(100, 60000).putHints(hints);
+        assertEquals(100, hints.getInt("routing.max_visited_nodes", 0));
+
+        SearchBudget budget = SearchBudget.fromHints(hints);
+        assertEquals(100, budget.getMaxVisitedNodes());
+        assertTrue(budget.hasMaxSearchTime());
+        for (int i = 0; i < 10 * CLOCK_INTERVAL; i++)
+            budget.check(100);
+
+        // the searches of a request share the deadline
+        hints = new PMap();
+        createExpiredBudget(Integer.MAX_VALUE).putHints(hints);
+        budget = SearchBudget.fromHints(hints);
+        assertTrue(!budget.hasMaxVisitedNodes());
+        assertExpiresAtClockInterval(budget);
+    }
+
+    @Test
+    public void TestIsExceeded() {
+        List<Throwable> errors = new ArrayList<Throwable>();
+        assertTrue(!SearchBudget.isExceeded(errors));
+
+        assertTrue(SearchBudget.isExceeded(Collections.<Throwable>singletonList(new ExceededException("exceeded"))));
+        assertTrue(!SearchBudget.isExceeded(Collections.<Throwable>singletonList(new IllegalArgumentException("No path found due to maximum nodes exceeded 10"))));
+
+        // only the first error is answered
+        errors.add(new IllegalStateException("other"));
+        errors.add(new ExceededException("exceeded"));
+        assertTrue(!SearchBudget.isExceeded(errors));
+    }
+
+    @Test
+    public void TestSearchBudgetAlgorithm() {
+        EncodingManager encodingManager = new EncodingManager("car");
+        FlagEncoder encoder = encodingManager.getEncoder("car");
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+        for (int node = 0; node < 19; node++)
+            graph.edge(node, node + 1, 100, true);
+
+        RoutingAlgorithm algo = new SearchBudgetAlgorithm(new Dijkstra(graph, new ShortestWeighting(encoder), TraversalMode.NODE_BASED), new SearchBudget(100, 0));
+        assertTrue(algo.calcPath(0, 19).isFound());
+
+        // GraphHopper's algorithm stops after the limit, the route is rejected by the budget
+        algo = new SearchBudgetAlgorithm(new Dijkstra(graph, new ShortestWeighting(encoder), TraversalMode.NODE_BASED), new SearchBudget(5, 0));
+        algo.setMaxVisitedNodes(5);
+        try {
+            algo.calcPaths(0, 19);
+            fail("the search has been cut off by the node limit");
+        } catch (ExceededException ex) {
+        }
+    }
+}
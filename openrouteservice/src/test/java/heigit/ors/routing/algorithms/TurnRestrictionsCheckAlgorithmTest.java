@@ -0,0 +1,201 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import heigit.ors.routing.algorithms.TurnRestrictionsCheckAlgorithm.RestrictedTurnException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TurnRestrictionsCheckAlgorithmTest {
+    private final CarFlagEncoder _encoder = new CarFlagEncoder(5, 5, 1);
+    private final EncodingManager _encodingManager = new EncodingManager(_encoder);
+    private final Weighting _weighting = new FastestWeighting(_encoder);
+    private final TurnCostExtension _turnCostExt = new TurnCostExtension();
+    private GraphHopperStorage _graph;
+    private EdgeIteratorState _edge01;
+
+    /**
+     * Creates the graph
+     * <pre>
+     * 0 --- 1 --- 2
+     *       |
+     *       3
+     * </pre>
+     * in which it is not allowed to go straight on from 0 over 1 to 2.
+     */
+    @Before
+    public void setUp() {
+        _graph = new GraphHopperStorage(new RAMDirectory(), _encodingManager, false, _turnCostExt);
+        _graph.create(100);
+
+        NodeAccess na = _graph.getNodeAccess();
+        na.setNode(0, 49.0, 8.0);
+        na.setNode(1, 49.0, 8.01);
+        na.setNode(2, 49.0, 8.02);
+        na.setNode(3, 48.99, 8.01);
+
+        _edge01 = _graph.edge(0, 1, 730, true);
+        EdgeIteratorState edge12 = _graph.edge(1, 2, 730, true);
+        _graph.edge(1, 3, 1110, true);
+
+        _turnCostExt.addTurnInfo(_edge01.getEdge(), 1, edge12.getEdge(), _encoder.getTurnFlags(true, 0));
+    }
+
+    private Path calcPath(Graph graph, int from, int to) {
+        TurnRestrictionsCheckAlgorithm algo = new TurnRestrictionsCheckAlgorithm(new Dijkstra(graph, _weighting, TraversalMode.NODE_BASED), _encoder, _turnCostExt, _graph.getNodes());
+        return algo.calcPath(from, to);
+    }
+
+    private void assertRestricted(Graph graph, int from, int to) {
+        try {
+            calcPath(graph, from, to);
+            fail("the route from " + from + " to " + to + " passes the restricted turn");
+        } catch (RestrictedTurnException ex) {
+        }
+    }
+
+    private List<Path> calcPaths(final Path... paths) {
+        // returns the given routes as alternatives of the route from 0 to 3
+        RoutingAlgorithm alternatives = new RoutingAlgorithm() {
+            @Override
+            public Path calcPath(int from, int to) {
+                return paths[0];
+            }
+
+            @Override
+            public List<Path> calcPaths(int from, int to) {
+                return Arrays.asList(paths);
+            }
+
+            @Override
+            public void setMaxVisitedNodes(int numberOfNodes) {
+            }
+
+            @Override
+            public String getName() {
+                return "alternatives";
+            }
+
+            @Override
+            public int getVisitedNodes() {
+                return 0;
+            }
+        };
+
+        return new TurnRestrictionsCheckAlgorithm(alternatives, _encoder, _turnCostExt, _graph.getNodes()).calcPaths(0, 3);
+    }
+
+    private Path calcDijkstraPath(int from, int to) {
+        return new Dijkstra(_graph, _weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+    }
+
+    @Test
+    public void TestRouteWithoutRestrictedTurn() {
+        Path path = calcPath(_graph, 0, 3);
+        assertTrue(path.isFound());
+        assertEquals(3, path.calcNodes().size());
+
+        // the restriction only applies in one direction
+        assertTrue(calcPath(_graph, 2, 0).isFound());
+        assertTrue(calcPath(_graph, 3, 2).isFound());
+    }
+
+    @Test
+    public void TestRouteWithRestrictedTurn() {
+        assertRestricted(_graph, 0, 2);
+    }
+
+    @Test
+    public void TestAlternativeWithRestrictedTurn() {
+        Path best = calcDijkstraPath(0, 3);
+        Path restricted = calcDijkstraPath(0, 2);
+        Path alternative = calcDijkstraPath(2, 3);
+
+        // alternatives passing the restricted turn are left out
+        List<Path> paths = calcPaths(best, restricted, alternative);
+        assertEquals(2, paths.size());
+        assertTrue(paths.get(0) == best);
+        assertTrue(paths.get(1) == alternative);
+
+        // the best route must not pass it
+        try {
+            calcPaths(restricted, best);
+            fail("the best route passes the restricted turn");
+        } catch (RestrictedTurnException ex) {
+        }
+    }
+
+    @Test
+    public void TestRouteNotFound() {
+        _graph.getNodeAccess().setNode(4, 49.1, 8.1);
+        assertTrue(!calcPath(_graph, 0, 4).isFound());
+    }
+
+    @Test
+    public void TestVirtualNodes() {
+        // a query in the middle of the edge from 0 to 1 splits it at a virtual node
+        QueryResult qr = new QueryResult(49.0, 8.005);
+        qr.setClosestEdge(_edge01);
+        qr.setClosestNode(0);
+        qr.setWayIndex(0);
+        qr.setSnappedPosition(QueryResult.Position.EDGE);
+        qr.calcSnappedPoint(new DistanceCalcEarth());
+        QueryGraph queryGraph = new QueryGraph(_graph);
+        queryGraph.lookup(Collections.singletonList(qr));
+        int virtualNode = qr.getClosestNode();
+        assertTrue(virtualNode >= _graph.getNodes());
+
+        // the virtual node has no turn costs, both halves of the split edge are passed without a check between them
+        Path path = calcPath(queryGraph, 0, 3);
+        assertTrue(path.isFound());
+        assertTrue(path.calcNodes().contains(virtualNode));
+
+        // the virtual edges have the id of the split edge, so that the restriction at node 1 still applies
+        assertRestricted(queryGraph, virtualNode, 2);
+        assertRestricted(queryGraph, 0, 2);
+        assertTrue(calcPath(queryGraph, virtualNode, 3).isFound());
+    }
+}
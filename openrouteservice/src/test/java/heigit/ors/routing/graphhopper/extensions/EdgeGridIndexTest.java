@@ -0,0 +1,143 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.AllEdgesIterator;
+import com.graphhopper.util.PointList;
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EdgeGridIndexTest {
+    private static final int SIZE = 20;
+
+    /**
+     * Creates a grid of SIZE x SIZE nodes with a spacing of 0.01 degrees, starting at 8.0/49.0, connected to their
+     * right and upper neighbours, plus a few diagonal edges with a pillar node.
+     */
+    private static GraphHopperStorage createGraph() {
+        GraphHopperStorage graph = new GraphBuilder(new EncodingManager("car")).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int row = 0; row < SIZE; row++)
+            for (int col = 0; col < SIZE; col++)
+                na.setNode(row * SIZE + col, 49.0 + 0.01 * row, 8.0 + 0.01 * col);
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                int node = row * SIZE + col;
+                if (col + 1 < SIZE)
+                    graph.edge(node, node + 1, 700, true);
+                if (row + 1 < SIZE)
+                    graph.edge(node, node + SIZE, 1100, true);
+            }
+        }
+
+        for (int i = 0; i + 3 < SIZE; i += 4) {
+            PointList pillars = new PointList();
+            pillars.add(49.0 + 0.01 * i + 0.03, 8.0 + 0.01 * i);
+            graph.edge(i * SIZE + i, (i + 3) * SIZE + i + 3, 5000, true).setWayGeometry(pillars);
+        }
+
+        return graph;
+    }
+
+    private static Envelope getEnvelope(PointList pl) {
+        Envelope env = new Envelope();
+        for (int i = 0; i < pl.getSize(); i++)
+            env.expandToInclude(pl.getLon(i), pl.getLat(i));
+        return env;
+    }
+
+    private static void assertQuery(GraphHopperStorage graph, EdgeGridIndex index, Envelope env) {
+        BitSet found = new BitSet();
+        index.query(env, edgeId -> {
+            // every edge is reported once
+            assertFalse(found.get(edgeId));
+            found.set(edgeId);
+        });
+
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (getEnvelope(iter.fetchWayGeometry(3)).intersects(env))
+                assertTrue("edge " + iter.getEdge() + " is missing", found.get(iter.getEdge()));
+        }
+    }
+
+    @Test
+    public void TestQueries() {
+        GraphHopperStorage graph = createGraph();
+        EdgeGridIndex index = new EdgeGridIndex(graph);
+        assertSame(graph, index.getGraph());
+
+        assertQuery(graph, index, new Envelope(8.025, 8.055, 49.025, 49.055));
+        // a single node
+        assertQuery(graph, index, new Envelope(8.05, 8.05, 49.05, 49.05));
+        // the pillar node of a diagonal edge, which is far from its tower nodes
+        assertQuery(graph, index, new Envelope(8.0, 8.001, 49.029, 49.031));
+        // envelopes reaching beyond the graph
+        assertQuery(graph, index, new Envelope(7.0, 10.0, 48.0, 50.0));
+        assertQuery(graph, index, new Envelope(8.185, 9.0, 49.185, 50.0));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            double x = 7.99 + random.nextDouble() * 0.22;
+            double y = 48.99 + random.nextDouble() * 0.22;
+            assertQuery(graph, index, new Envelope(x, x + random.nextDouble() * 0.05, y, y + random.nextDouble() * 0.05));
+        }
+    }
+
+    @Test
+    public void TestSmallQuery() {
+        GraphHopperStorage graph = createGraph();
+        EdgeGridIndex index = new EdgeGridIndex(graph);
+
+        BitSet found = new BitSet();
+        index.query(new Envelope(8.0, 8.005, 49.0, 49.005), found::set);
+        int count = found.cardinality();
+
+        // edges near the corner are reported, but not much more than the ones of the corner cell
+        assertTrue(found.get(0));
+        assertTrue(count < graph.getAllEdges().getMaxId() / 4);
+    }
+
+    @Test
+    public void TestSingleEdge() {
+        GraphHopperStorage graph = new GraphBuilder(new EncodingManager("car")).create();
+        graph.getNodeAccess().setNode(0, 49.0, 8.0);
+        graph.getNodeAccess().setNode(1, 49.0, 8.0);
+        graph.edge(0, 1, 0, true);
+
+        BitSet found = new BitSet();
+        new EdgeGridIndex(graph).query(new Envelope(0, 10, 40, 50), found::set);
+        assertEquals(1, found.cardinality());
+    }
+}
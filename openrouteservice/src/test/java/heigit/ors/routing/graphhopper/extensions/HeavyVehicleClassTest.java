@@ -0,0 +1,139 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import heigit.ors.routing.parameters.VehicleParameters;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HeavyVehicleClassTest {
+    private static VehicleParameters createParameters(double weight, double height, boolean hazmat) {
+        VehicleParameters params = new VehicleParameters();
+        params.setWeight(weight);
+        params.setHeight(height);
+        if (hazmat)
+            params.setLoadCharacteristics(VehicleLoadCharacteristicsFlags.HAZMAT);
+        return params;
+    }
+
+    private static void assertInvalid(String value) {
+        try {
+            HeavyVehicleClass.parse("invalid", value);
+            fail("'" + value + "' should not be parsed");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void TestParse() {
+        HeavyVehicleClass vehicleClass = HeavyVehicleClass.parse("Small", "type=bus; weight=7.5;height=3.2;width=2.5;length=12;axleload=4");
+        assertEquals("small", vehicleClass.getName());
+        assertEquals("vehicle_class_small", vehicleClass.getWeightingName());
+        assertEquals(HeavyVehicleAttributes.BUS, vehicleClass.getVehicleType());
+        VehicleParameters params = vehicleClass.getParameters();
+        assertEquals(7.5, params.getWeight(), 0.0);
+        assertEquals(3.2, params.getHeight(), 0.0);
+        assertEquals(2.5, params.getWidth(), 0.0);
+        assertEquals(12, params.getLength(), 0.0);
+        assertEquals(4, params.getAxleload(), 0.0);
+        assertFalse(vehicleClass.hasHazmat());
+    }
+
+    @Test
+    public void TestParseDefaults() {
+        HeavyVehicleClass vehicleClass = HeavyVehicleClass.parse("hazmat", "weight=40;hazmat=true");
+        assertEquals(HeavyVehicleAttributes.HGV, vehicleClass.getVehicleType());
+        assertTrue(vehicleClass.hasHazmat());
+        // dimensions which are not given are not restricted
+        assertEquals(0, vehicleClass.getParameters().getHeight(), 0.0);
+
+        assertFalse(HeavyVehicleClass.parse("no_hazmat", "weight=40;hazmat=false").hasHazmat());
+    }
+
+    @Test
+    public void TestParseInvalid() {
+        assertInvalid("weight");
+        assertInvalid("weight=7.5=8");
+        assertInvalid("type=car");
+        assertInvalid("colour=red");
+        try {
+            HeavyVehicleClass.parse("invalid", "weight=heavy");
+            fail("a weight which is not a number should not be parsed");
+        } catch (NumberFormatException ex) {
+        }
+    }
+
+    @Test
+    public void TestCovers() {
+        HeavyVehicleClass vehicleClass = new HeavyVehicleClass("small", HeavyVehicleAttributes.HGV, createParameters(7.5, 3.5, false));
+
+        assertTrue(vehicleClass.covers(HeavyVehicleAttributes.HGV, createParameters(7.5, 3.5, false)));
+        assertTrue(vehicleClass.covers(HeavyVehicleAttributes.HGV, createParameters(5, 0, false)));
+        assertFalse(vehicleClass.covers(HeavyVehicleAttributes.BUS, createParameters(5, 3, false)));
+        assertFalse(vehicleClass.covers(HeavyVehicleAttributes.HGV, createParameters(7.6, 3, false)));
+        assertFalse(vehicleClass.covers(HeavyVehicleAttributes.HGV, createParameters(5, 3.6, false)));
+        assertFalse(vehicleClass.covers(HeavyVehicleAttributes.HGV, createParameters(5, 3, true)));
+
+        // the class does not restrict the length, so it cannot cover a vehicle with a length
+        VehicleParameters params = createParameters(5, 3, false);
+        params.setLength(10);
+        assertFalse(vehicleClass.covers(HeavyVehicleAttributes.HGV, params));
+
+        HeavyVehicleClass hazmatClass = new HeavyVehicleClass("hazmat", HeavyVehicleAttributes.HGV, createParameters(40, 0, true));
+        assertTrue(hazmatClass.covers(HeavyVehicleAttributes.HGV, createParameters(40, 0, true)));
+        assertTrue(hazmatClass.covers(HeavyVehicleAttributes.HGV, createParameters(20, 0, false)));
+        assertFalse(hazmatClass.covers(HeavyVehicleAttributes.HGV, createParameters(20, 4, false)));
+    }
+
+    @Test
+    public void TestCompareTo() {
+        HeavyVehicleClass light = new HeavyVehicleClass("light", HeavyVehicleAttributes.HGV, createParameters(7.5, 0, false));
+        HeavyVehicleClass lightLow = new HeavyVehicleClass("light_low", HeavyVehicleAttributes.HGV, createParameters(7.5, 3, false));
+        HeavyVehicleClass heavy = new HeavyVehicleClass("heavy", HeavyVehicleAttributes.HGV, createParameters(40, 0, false));
+        HeavyVehicleClass heavyHazmat = new HeavyVehicleClass("heavy_hazmat", HeavyVehicleAttributes.HGV, createParameters(40, 0, true));
+        HeavyVehicleClass unrestricted = new HeavyVehicleClass("unrestricted", HeavyVehicleAttributes.HGV, createParameters(0, 0, false));
+
+        assertEquals(0, light.compareTo(new HeavyVehicleClass("other", HeavyVehicleAttributes.HGV, createParameters(7.5, 0, false))));
+        assertTrue(light.compareTo(heavy) < 0);
+        assertTrue(heavy.compareTo(light) > 0);
+        // an unrestricted height is wider than any limit
+        assertTrue(lightLow.compareTo(light) < 0);
+        assertTrue(heavy.compareTo(heavyHazmat) < 0);
+        assertTrue(heavyHazmat.compareTo(unrestricted) < 0);
+
+        List<HeavyVehicleClass> classes = new ArrayList<HeavyVehicleClass>();
+        Collections.addAll(classes, unrestricted, heavyHazmat, light, heavy, lightLow);
+        Collections.sort(classes);
+        assertEquals(lightLow, classes.get(0));
+        assertEquals(light, classes.get(1));
+        assertEquals(heavy, classes.get(2));
+        assertEquals(heavyHazmat, classes.get(3));
+        assertEquals(unrestricted, classes.get(4));
+    }
+}
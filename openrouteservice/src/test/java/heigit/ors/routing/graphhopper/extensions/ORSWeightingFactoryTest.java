@@ -0,0 +1,195 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphExtension.ExtendedStorageSequence;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PMap;
+import heigit.ors.routing.graphhopper.extensions.storages.GreenIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.HillIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.NoiseIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.weighting.AvoidHillsWeighting;
+import heigit.ors.routing.graphhopper.extensions.weighting.GreenWeighting;
+import heigit.ors.routing.graphhopper.extensions.weighting.QuietWeighting;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ORSWeightingFactoryTest {
+    private static final int EDGES = 200;
+
+    private final EncodingManager _encodingManager = new EncodingManager("foot");
+    private final FlagEncoder _encoder = _encodingManager.getEncoder("foot");
+    private final GreenIndexGraphStorage _greenStorage = new GreenIndexGraphStorage();
+    private final NoiseIndexGraphStorage _noiseStorage = new NoiseIndexGraphStorage();
+    private final HillIndexGraphStorage _hillStorage = new HillIndexGraphStorage(new HashMap<String, String>());
+    private final List<EdgeIteratorState> _edges = new ArrayList<EdgeIteratorState>();
+    private GraphHopperStorage _graph;
+
+    @Before
+    public void setUp() {
+        ArrayList<GraphExtension> extensions = new ArrayList<GraphExtension>();
+        extensions.add(_greenStorage);
+        extensions.add(_noiseStorage);
+        extensions.add(_hillStorage);
+        _graph = new GraphHopperStorage(new RAMDirectory(), _encodingManager, false, new ExtendedStorageSequence(extensions));
+        _graph.create(1000);
+
+        Random random = new Random(42);
+        for (int i = 0; i < EDGES; i++) {
+            EdgeIteratorState edge = _graph.edge(i, i + 1, 10 + random.nextInt(100), true);
+            _edges.add(edge);
+            _greenStorage.setEdgeValue(edge.getEdge(), (byte) random.nextInt(64));
+            _noiseStorage.setEdgeValue(edge.getEdge(), (byte) random.nextInt(4));
+            _hillStorage.setEdgeValue(edge.getEdge(), random.nextInt(16), random.nextInt(16));
+        }
+    }
+
+    private static HintsMap createHints(String weightingMethod) {
+        HintsMap hints = new HintsMap();
+        hints.setWeighting("fastest");
+        hints.put("weighting_method", weightingMethod);
+        return hints;
+    }
+
+    private static HintsMap createGreenHints(double factor) {
+        HintsMap hints = createHints("recommended");
+        hints.put("custom_weightings", true);
+        hints.put("weighting_#green#factor", factor);
+        return hints;
+    }
+
+    private Weighting createWeighting(ORSWeightingFactory factory, HintsMap hints) {
+        return factory.createWeighting(hints, TraversalMode.NODE_BASED, _encoder, _graph, null, _graph);
+    }
+
+    @Test
+    public void TestEqualHintsShareWeighting() {
+        ORSWeightingFactory factory = new ORSWeightingFactory(null);
+
+        Weighting weighting = createWeighting(factory, createHints("fastest"));
+        assertSame(weighting, createWeighting(factory, createHints("fastest")));
+
+        // hints which only affect the search do not split the cache
+        HintsMap hints = createHints("fastest");
+        hints.put("ch.disable", true);
+        hints.put("lm.disable", false);
+        hints.put("routing.max_visited_nodes", 12345);
+        assertSame(weighting, createWeighting(factory, hints));
+
+        assertSame(createWeighting(factory, createGreenHints(0.5)), createWeighting(factory, createGreenHints(0.5)));
+    }
+
+    @Test
+    public void TestDifferentHintsDoNotShareWeighting() {
+        ORSWeightingFactory factory = new ORSWeightingFactory(null);
+
+        Weighting fastest = createWeighting(factory, createHints("fastest"));
+        assertNotSame(fastest, createWeighting(factory, createHints("shortest")));
+        assertNotSame(fastest, createWeighting(factory, createHints("recommended")));
+        assertNotSame(createWeighting(factory, createGreenHints(0.5)), createWeighting(factory, createGreenHints(1.0)));
+
+        HintsMap hints = createHints("fastest");
+        hints.put("max_speed", 80);
+        assertNotSame(fastest, createWeighting(factory, hints));
+
+        // a weighting at a departure time is created for every request
+        hints = createHints("fastest");
+        hints.put("departure", 1000);
+        assertNotSame(createWeighting(factory, hints), createWeighting(factory, hints));
+
+        assertTrue(!ORSWeightingFactory.getCacheKey(createHints("fastest"), TraversalMode.NODE_BASED, _encoder)
+                .equals(ORSWeightingFactory.getCacheKey(createHints("fastest"), TraversalMode.EDGE_BASED_2DIR, _encoder)));
+    }
+
+    @Test
+    public void TestSoftWeightingsMatchStorage() {
+        byte[] buffer = new byte[2];
+
+        PMap greenProps = new PMap();
+        greenProps.put("factor", 0.7);
+        GreenWeighting green = new GreenWeighting(_encoder, greenProps, _graph);
+
+        PMap quietProps = new PMap();
+        quietProps.put("factor", 0.5);
+        QuietWeighting quiet = new QuietWeighting(_encoder, quietProps, _graph);
+
+        PMap hillsProps = new PMap();
+        hillsProps.put("steepness_maximum", 8);
+        AvoidHillsWeighting hills = new AvoidHillsWeighting(_encoder, hillsProps, _graph);
+        double[] hillWeights = new double[16];
+
+        for (EdgeIteratorState edge : _edges) {
+            int edgeId = edge.getEdge();
+
+            int greenLevel = _greenStorage.getEdgeValue(edgeId, buffer);
+            double greenFactor = 1.0 - (1.0 - (greenLevel + 1) * 2.0 / 64) * 0.7;
+            assertEquals(greenFactor, green.calcWeight(edge, false, EdgeIterator.NO_EDGE), 1e-9);
+
+            int noiseLevel = _noiseStorage.getEdgeValue(edgeId, buffer);
+            double[] noiseFactors = { 1, 1 + 0.5 * 10, 1 + 0.5 * 0.5 * 200, 1 + 0.5 * 0.5 * 400 };
+            assertEquals(noiseFactors[noiseLevel], quiet.calcWeight(edge, false, EdgeIterator.NO_EDGE), 1e-9);
+
+            // the edges run from the lower to the higher node id, which the weighting reads as reverse direction
+            int hillIndex = _hillStorage.getEdgeValue(edgeId, true, buffer);
+            double weight = hills.calcWeight(edge, false, EdgeIterator.NO_EDGE);
+            if (hillIndex > 8) {
+                assertEquals(100, weight, 0);
+            } else {
+                assertTrue(weight < 100);
+                // the weight only depends on the hill index
+                if (hillWeights[hillIndex] == 0)
+                    hillWeights[hillIndex] = weight;
+                assertEquals(hillWeights[hillIndex], weight, 0);
+            }
+        }
+    }
+
+    @Test
+    public void TestEdgeLevelsMatchStorage() {
+        byte[] buffer = new byte[2];
+        for (EdgeIteratorState edge : _edges) {
+            int edgeId = edge.getEdge();
+            assertEquals(_greenStorage.getEdgeValue(edgeId, buffer), _greenStorage.getEdgeLevels()[edgeId]);
+            assertEquals(_noiseStorage.getEdgeValue(edgeId, buffer), _noiseStorage.getEdgeLevels()[edgeId]);
+            assertEquals(_hillStorage.getEdgeValue(edgeId, false, buffer), _hillStorage.getEdgeLevels(false)[edgeId]);
+            assertEquals(_hillStorage.getEdgeValue(edgeId, true, buffer), _hillStorage.getEdgeLevels(true)[edgeId]);
+        }
+    }
+}
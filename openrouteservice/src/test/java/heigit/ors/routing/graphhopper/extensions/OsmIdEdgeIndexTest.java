@@ -0,0 +1,166 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OsmIdEdgeIndexTest {
+    private File folder;
+    private OsmIdEdgeIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("osm_edge_index").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (index != null)
+            index.close();
+        for (File file : folder.listFiles())
+            file.delete();
+        folder.delete();
+    }
+
+    private void writeAndLoad(OsmIdEdgeIndex.Builder builder) {
+        builder.write(folder.getAbsolutePath());
+        index = OsmIdEdgeIndex.load(folder.getAbsolutePath());
+    }
+
+    @Test
+    public void TestLookups() {
+        OsmIdEdgeIndex.Builder builder = new OsmIdEdgeIndex.Builder();
+        // edges are added in the order the ways are read, not in the order of their ids
+        builder.add(5, 4000000000L);
+        builder.add(2, 17);
+        builder.add(9, 4000000000L);
+        builder.add(0, 17);
+        builder.add(3, 4000000000L);
+        builder.add(7, 3);
+
+        writeAndLoad(builder);
+        assertEquals(6, index.getEdgesCount());
+
+        assertEquals(17, index.getOsmId(0));
+        assertEquals(17, index.getOsmId(2));
+        assertEquals(4000000000L, index.getOsmId(3));
+        assertEquals(4000000000L, index.getOsmId(5));
+        assertEquals(3, index.getOsmId(7));
+        assertEquals(4000000000L, index.getOsmId(9));
+        assertEquals(-1, index.getOsmId(1));
+        assertEquals(-1, index.getOsmId(10));
+        assertEquals(-1, index.getOsmId(-1));
+
+        assertArrayEquals(new int[] { 0, 2 }, index.getEdgeIds(17));
+        assertArrayEquals(new int[] { 3, 5, 9 }, index.getEdgeIds(4000000000L));
+        assertArrayEquals(new int[] { 7 }, index.getEdgeIds(3));
+        assertEquals(0, index.getEdgeIds(4).length);
+        assertEquals(0, index.getEdgeIds(5000000000L).length);
+
+        assertTrue(index.containsOsmId(3));
+        assertTrue(index.containsOsmId(4000000000L));
+        assertFalse(index.containsOsmId(0));
+        assertFalse(index.containsOsmId(18));
+    }
+
+    @Test
+    public void TestManyEdges() {
+        OsmIdEdgeIndex.Builder builder = new OsmIdEdgeIndex.Builder();
+        int count = 5000;
+        // every way is split into three edges, added in descending order of the edge ids
+        for (int edgeId = count - 1; edgeId >= 0; edgeId--)
+            builder.add(edgeId, 1000L * (edgeId / 3));
+        assertEquals(count, builder.size());
+
+        writeAndLoad(builder);
+        assertEquals(count, index.getEdgesCount());
+
+        for (int edgeId = 0; edgeId < count; edgeId++)
+            assertEquals(1000L * (edgeId / 3), index.getOsmId(edgeId));
+
+        for (int way = 0; way < count / 3; way++)
+            assertArrayEquals(new int[] { 3 * way, 3 * way + 1, 3 * way + 2 }, index.getEdgeIds(1000L * way));
+        assertArrayEquals(new int[] { count - 2, count - 1 }, index.getEdgeIds(1000L * ((count - 1) / 3)));
+    }
+
+    @Test
+    public void TestLegacyConversion() throws IOException {
+        HashMap<Integer, Long> tmcEdges = new HashMap<Integer, Long>();
+        tmcEdges.put(1, 100L);
+        tmcEdges.put(4, 100L);
+        tmcEdges.put(2, 200L);
+
+        File legacyFile = new File(folder, OsmIdEdgeIndex.LEGACY_FILE_NAME);
+        ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(legacyFile));
+        try {
+            oos.writeObject(tmcEdges);
+        } finally {
+            oos.close();
+        }
+
+        OsmIdEdgeIndex.Builder builder = new OsmIdEdgeIndex.Builder();
+        builder.addLegacyEdges(legacyFile);
+        assertEquals(3, builder.size());
+
+        writeAndLoad(builder);
+        assertEquals(100, index.getOsmId(1));
+        assertEquals(200, index.getOsmId(2));
+        assertEquals(100, index.getOsmId(4));
+        assertArrayEquals(new int[] { 1, 4 }, index.getEdgeIds(100));
+        assertArrayEquals(new int[] { 2 }, index.getEdgeIds(200));
+    }
+
+    @Test(expected = IOException.class)
+    public void TestInvalidLegacyFile() throws IOException {
+        File legacyFile = new File(folder, OsmIdEdgeIndex.LEGACY_FILE_NAME);
+        Files.write(legacyFile.toPath(), new byte[] { 1, 2, 3 });
+
+        new OsmIdEdgeIndex.Builder().addLegacyEdges(legacyFile);
+    }
+
+    @Test
+    public void TestMissingIndex() {
+        assertNull(OsmIdEdgeIndex.load(folder.getAbsolutePath()));
+    }
+
+    @Test
+    public void TestEmptyIndex() {
+        assertEquals(0, OsmIdEdgeIndex.EMPTY.getEdgesCount());
+        assertEquals(-1, OsmIdEdgeIndex.EMPTY.getOsmId(0));
+        assertEquals(0, OsmIdEdgeIndex.EMPTY.getEdgeIds(1).length);
+        assertFalse(OsmIdEdgeIndex.EMPTY.containsOsmId(1));
+    }
+}
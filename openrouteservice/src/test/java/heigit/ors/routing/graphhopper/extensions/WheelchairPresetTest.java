@@ -0,0 +1,97 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import heigit.ors.routing.parameters.WheelchairParameters;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WheelchairPresetTest {
+    private static final String PRESET = "maximum_incline=6;maximum_sloped_curb=0.06;surface_type=cobblestone:flattened;smoothness_type=good";
+
+    private static void assertInvalid(String value) {
+        try {
+            WheelchairPreset.parse("invalid", value);
+            fail("'" + value + "' should not be parsed");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    private static WheelchairParameters createParameters(float maxIncline, float maxSlopedCurb) {
+        WheelchairParameters params = new WheelchairParameters();
+        params.setMaximumIncline(maxIncline);
+        params.setMaximumSlopedCurb(maxSlopedCurb);
+        params.setSurfaceType(WheelchairTypesEncoder.getSurfaceType("cobblestone:flattened"));
+        params.setSmoothnessType(WheelchairTypesEncoder.getSmoothnessType("good"));
+        return params;
+    }
+
+    @Test
+    public void TestParse() {
+        WheelchairPreset preset = WheelchairPreset.parse("Strict", PRESET + "; track_type=grade1");
+        assertEquals("strict", preset.getName());
+        assertEquals("wheelchair_preset_strict", preset.getWeightingName());
+
+        WheelchairParameters params = preset.getParameters();
+        assertEquals(6f, params.getMaximumIncline(), 0f);
+        assertEquals(0.06f, params.getMaximumSlopedCurb(), 0f);
+        assertEquals(WheelchairTypesEncoder.getSurfaceType("cobblestone:flattened"), params.getSurfaceType());
+        assertEquals(WheelchairTypesEncoder.getSmoothnessType("good"), params.getSmoothnessType());
+        assertEquals(WheelchairTypesEncoder.getTrackType("grade1"), params.getTrackType());
+
+        // "any" surface does not restrict the surface
+        assertEquals(0, WheelchairPreset.parse("any", "surface_type=any").getParameters().getSurfaceType());
+    }
+
+    @Test
+    public void TestParseInvalid() {
+        assertInvalid("maximum_incline");
+        assertInvalid("maximum_incline=6=7");
+        assertInvalid("surface_type=lava");
+        assertInvalid("smoothness_type=smooth");
+        assertInvalid("track_type=grade9");
+        assertInvalid("maximum_step=3");
+    }
+
+    @Test
+    public void TestMatches() {
+        WheelchairPreset preset = WheelchairPreset.parse("strict", PRESET);
+
+        assertTrue(preset.matches(createParameters(6f, 0.06f)));
+        // the values of a request may have been converted differently, e.g. from a double
+        assertTrue(preset.matches(createParameters((float) (0.6 * 10), (float) (0.03 * 2))));
+        assertFalse(preset.matches(createParameters(8f, 0.06f)));
+        assertFalse(preset.matches(createParameters(6f, 0.03f)));
+        assertFalse(preset.matches(createParameters(0f, 0.06f)));
+
+        WheelchairParameters params = createParameters(6f, 0.06f);
+        params.setSurfaceType(WheelchairTypesEncoder.getSurfaceType("asphalt"));
+        assertFalse(preset.matches(params));
+
+        params = createParameters(6f, 0.06f);
+        params.setTrackType(WheelchairTypesEncoder.getTrackType("grade1"));
+        assertFalse(preset.matches(params));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.graphhopper.routing.VirtualEdgeIteratorState;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.AllEdgesIterator;
+import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import heigit.ors.routing.graphhopper.extensions.EdgeGridIndex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AvoidAreasEdgeFilterTest {
+    private static final int SIZE = 10;
+
+    private final EncodingManager encodingManager = new EncodingManager("car");
+    private final FlagEncoder encoder = encodingManager.getEncoder("car");
+    private final GeometryFactory geomFactory = new GeometryFactory();
+    private final GraphHopperStorage graph;
+
+    public AvoidAreasEdgeFilterTest() {
+        // a grid of nodes with a spacing of 0.01 degrees starting at 8.0/49.0
+        graph = new GraphBuilder(encodingManager).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int row = 0; row < SIZE; row++)
+            for (int col = 0; col < SIZE; col++)
+                na.setNode(row * SIZE + col, 49.0 + 0.01 * row, 8.0 + 0.01 * col);
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                int node = row * SIZE + col;
+                if (col + 1 < SIZE)
+                    graph.edge(node, node + 1, 700, true);
+                if (row + 1 < SIZE)
+                    graph.edge(node, node + SIZE, 1100, true);
+            }
+        }
+    }
+
+    private Polygon createRectangle(double minCol, double minRow, double maxCol, double maxRow) {
+        double minX = 8.0 + 0.01 * minCol, maxX = 8.0 + 0.01 * maxCol;
+        double minY = 49.0 + 0.01 * minRow, maxY = 49.0 + 0.01 * maxRow;
+        return geomFactory.createPolygon(new Coordinate[] { new Coordinate(minX, minY), new Coordinate(maxX, minY),
+                new Coordinate(maxX, maxY), new Coordinate(minX, maxY), new Coordinate(minX, minY) });
+    }
+
+    /**
+     * Returns whether the interior of the given edge of the grid overlaps the rectangle in grid units.
+     */
+    private static boolean isInRectangle(int baseNode, int adjNode, double minCol, double minRow, double maxCol, double maxRow) {
+        int row1 = baseNode / SIZE, col1 = baseNode % SIZE, row2 = adjNode / SIZE, col2 = adjNode % SIZE;
+        if (row1 == row2)
+            return row1 > minRow && row1 < maxRow && Math.max(col1, col2) > minCol && Math.min(col1, col2) < maxCol;
+
+        return col1 > minCol && col1 < maxCol && Math.max(row1, row2) > minRow && Math.min(row1, row2) < maxRow;
+    }
+
+    private void assertBlockedEdges(AvoidAreasEdgeFilter filter, double[][] rectangles) {
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            boolean blocked = false;
+            for (double[] r : rectangles)
+                blocked |= isInRectangle(iter.getBaseNode(), iter.getAdjNode(), r[0], r[1], r[2], r[3]);
+            assertEquals("edge " + iter.getBaseNode() + "-" + iter.getAdjNode(), !blocked, filter.accept(iter));
+        }
+    }
+
+    private Polygon[] createPolygons(double[][] rectangles) {
+        Polygon[] polys = new Polygon[rectangles.length];
+        for (int i = 0; i < rectangles.length; i++)
+            polys[i] = createRectangle(rectangles[i][0], rectangles[i][1], rectangles[i][2], rectangles[i][3]);
+        return polys;
+    }
+
+    @Test
+    public void TestEdgesWithinAndCrossingArea() {
+        double[][] rectangles = new double[][] { { 2.5, 2.5, 5.5, 5.5 } };
+
+        assertBlockedEdges(new AvoidAreasEdgeFilter(encoder, createPolygons(rectangles)), rectangles);
+        assertBlockedEdges(new AvoidAreasEdgeFilter(encoder, createPolygons(rectangles), new EdgeGridIndex(graph)), rectangles);
+    }
+
+    @Test
+    public void TestSeveralAreas() {
+        double[][] rectangles = new double[][] { { 0.5, 0.5, 1.5, 8.5 }, { 6.2, 6.2, 6.8, 6.8 }, { 7.5, 0.5, 20, 1.5 } };
+
+        assertBlockedEdges(new AvoidAreasEdgeFilter(encoder, createPolygons(rectangles)), rectangles);
+        assertBlockedEdges(new AvoidAreasEdgeFilter(encoder, createPolygons(rectangles), new EdgeGridIndex(graph)), rectangles);
+    }
+
+    @Test
+    public void TestEdgesOnBoundary() {
+        // the edges along the boundary only touch the area
+        double[][] rectangles = new double[][] { { 3, 3, 5, 5 } };
+
+        assertBlockedEdges(new AvoidAreasEdgeFilter(encoder, createPolygons(rectangles)), rectangles);
+        assertBlockedEdges(new AvoidAreasEdgeFilter(encoder, createPolygons(rectangles), new EdgeGridIndex(graph)), rectangles);
+    }
+
+    @Test
+    public void TestVirtualEdges() {
+        AvoidAreasEdgeFilter filter = new AvoidAreasEdgeFilter(encoder, new Polygon[] { createRectangle(2.5, 2.5, 5.5, 5.5) },
+                new EdgeGridIndex(graph));
+        int edgeId = graph.getAllEdges().getMaxId();
+        long flags = encoder.setProperties(50, true, true);
+
+        // virtual edges are not in the index and are tested against the areas
+        VirtualEdgeIteratorState crossing = new VirtualEdgeIteratorState(0, edgeId, 1000, 1001, 1000, flags, "",
+                Helper.createPointList(49.04, 8.01, 49.04, 8.04));
+        VirtualEdgeIteratorState outside = new VirtualEdgeIteratorState(0, edgeId + 1, 1000, 1002, 1000, flags, "",
+                Helper.createPointList(49.04, 8.01, 49.04, 8.02));
+
+        assertFalse(filter.accept(crossing));
+        assertTrue(filter.accept(outside));
+    }
+
+    @Test
+    public void TestNoAreas() {
+        AvoidAreasEdgeFilter filter = new AvoidAreasEdgeFilter(encoder, new Polygon[0], new EdgeGridIndex(graph));
+
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            assertTrue(filter.accept(iter));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEncoder;
+import heigit.ors.routing.traffic.TrafficSnapshot;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockedEdgesEdgeFilterTest {
+    private static Graph createGraph(FlagEncoder encoder) {
+        Graph graph = new GraphBuilder(new EncodingManager(encoder)).create();
+        for (int i = 0; i < 3; i++)
+            graph.edge(i, i + 1, 100, true);
+        return graph;
+    }
+
+    private static TrafficSnapshot createSnapshot() {
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        builder.addBlockedEdge(0);
+        builder.addHeavyVehicleBlockedEdge(1);
+        return builder.build();
+    }
+
+    @Test
+    public void TestBlockedEdgesForCars() {
+        FlagEncoder encoder = new CarFlagEncoder();
+        Graph graph = createGraph(encoder);
+        BlockedEdgesEdgeFilter filter = new BlockedEdgesEdgeFilter(encoder, createSnapshot());
+
+        assertFalse(filter.accept(graph.getEdgeIteratorState(0, Integer.MIN_VALUE)));
+        assertTrue(filter.accept(graph.getEdgeIteratorState(1, Integer.MIN_VALUE)));
+        assertTrue(filter.accept(graph.getEdgeIteratorState(2, Integer.MIN_VALUE)));
+    }
+
+    @Test
+    public void TestBlockedEdgesForHeavyVehicles() {
+        FlagEncoder encoder = new HeavyVehicleFlagEncoder();
+        Graph graph = createGraph(encoder);
+        BlockedEdgesEdgeFilter filter = new BlockedEdgesEdgeFilter(encoder, createSnapshot());
+
+        assertFalse(filter.accept(graph.getEdgeIteratorState(0, Integer.MIN_VALUE)));
+        assertFalse(filter.accept(graph.getEdgeIteratorState(1, Integer.MIN_VALUE)));
+        assertTrue(filter.accept(graph.getEdgeIteratorState(2, Integer.MIN_VALUE)));
+    }
+
+    @Test
+    public void TestWithoutSnapshot() {
+        FlagEncoder encoder = new HeavyVehicleFlagEncoder();
+        Graph graph = createGraph(encoder);
+        BlockedEdgesEdgeFilter filter = new BlockedEdgesEdgeFilter(encoder, null);
+
+        for (int i = 0; i < 3; i++)
+            assertTrue(filter.accept(graph.getEdgeIteratorState(i, Integer.MIN_VALUE)));
+    }
+}
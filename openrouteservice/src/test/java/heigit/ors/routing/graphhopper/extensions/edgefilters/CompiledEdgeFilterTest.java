@@ -0,0 +1,254 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphExtension.ExtendedStorageSequence;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import heigit.ors.routing.AvoidFeatureFlags;
+import heigit.ors.routing.RouteSearchParameters;
+import heigit.ors.routing.graphhopper.extensions.storages.BordersGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.HillIndexGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.TrailDifficultyScaleGraphStorage;
+import heigit.ors.routing.graphhopper.extensions.storages.WayCategoryGraphStorage;
+import heigit.ors.routing.pathprocessors.BordersExtractor;
+import heigit.ors.routing.traffic.TrafficSnapshot;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the compiled filter with the chain of single filters it replaces on a graph with random attributes.
+ */
+public class CompiledEdgeFilterTest {
+    private static final int NODES = 200;
+    private static final int EDGES = 1000;
+
+    private final EncodingManager encodingManager = new EncodingManager("car,foot,mtb", 8);
+    private final GraphHopperStorage graph;
+    private final TrafficSnapshot snapshot;
+
+    public CompiledEdgeFilterTest() {
+        WayCategoryGraphStorage wayCategories = new WayCategoryGraphStorage();
+        HillIndexGraphStorage hillIndex = new HillIndexGraphStorage(new HashMap<String, String>());
+        TrailDifficultyScaleGraphStorage trailDifficulty = new TrailDifficultyScaleGraphStorage();
+        BordersGraphStorage borders = new BordersGraphStorage();
+        ArrayList<GraphExtension> extensions = new ArrayList<GraphExtension>();
+        extensions.add(wayCategories);
+        extensions.add(hillIndex);
+        extensions.add(trailDifficulty);
+        extensions.add(borders);
+
+        graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false, new ExtendedStorageSequence(extensions));
+        graph.create(1000);
+
+        Random random = new Random(42);
+        TrafficSnapshot.Builder traffic = new TrafficSnapshot.Builder(new Date());
+        for (int i = 0; i < EDGES; i++) {
+            int edgeId = graph.edge(random.nextInt(NODES), random.nextInt(NODES), 100, true).getEdge();
+
+            // at most three categories per edge
+            int categories = 0;
+            for (int j = 0; j < 3; j++)
+                categories |= random.nextInt(4) == 0 ? 1 << random.nextInt(8) : 0;
+            wayCategories.setEdgeValue(edgeId, categories);
+            hillIndex.setEdgeValue(edgeId, random.nextInt(16), random.nextInt(16));
+            trailDifficulty.setEdgeValue(edgeId, random.nextInt(7), random.nextInt(7), random.nextInt(7));
+
+            // as in the import, only border crossing edges have countries
+            int borderType = random.nextInt(6);
+            if (borderType == BordersGraphStorage.CONTROLLED_BORDER || borderType == BordersGraphStorage.OPEN_BORDER)
+                borders.setEdgeValue(edgeId, (short) borderType, (short) (1 + random.nextInt(4)), (short) (1 + random.nextInt(4)));
+            else
+                borders.setEdgeValue(edgeId, BordersGraphStorage.NO_BORDER, (short) 0, (short) 0);
+
+            if (random.nextInt(20) == 0)
+                traffic.addBlockedEdge(edgeId);
+            if (random.nextInt(20) == 0)
+                traffic.addHeavyVehicleBlockedEdge(edgeId);
+        }
+        snapshot = traffic.build();
+    }
+
+    private FlagEncoder getEncoder(String name) {
+        return encodingManager.getEncoder(name);
+    }
+
+    /**
+     * Checks every edge in both directions, so that the hill index is read for uphill and downhill.
+     */
+    private void assertEquivalent(EdgeFilter expected, EdgeFilter actual) {
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        int rejected = 0, checked = 0;
+        for (int node = 0; node < NODES; node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                boolean accept = expected.accept(iter);
+                assertEquals("edge " + iter.getEdge() + " from " + node, accept, actual.accept(iter));
+                if (!accept)
+                    rejected++;
+                checked++;
+            }
+        }
+
+        // the restrictions of every test must matter, but not reject the whole graph
+        assertTrue(rejected > 0);
+        assertTrue(rejected < checked);
+    }
+
+    private static EdgeFilter all(final EdgeFilter... filters) {
+        return iter -> {
+            for (EdgeFilter filter : filters) {
+                if (!filter.accept(iter))
+                    return false;
+            }
+            return true;
+        };
+    }
+
+    @Test
+    public void TestAvoidFeaturesOfCar() {
+        FlagEncoder encoder = getEncoder("car");
+        RouteSearchParameters params = new RouteSearchParameters();
+        params.setAvoidFeatureTypes(AvoidFeatureFlags.Highways | AvoidFeatureFlags.Tunnels | AvoidFeatureFlags.Ferries | AvoidFeatureFlags.Fords);
+
+        assertEquivalent(new AvoidFeaturesEdgeFilter(encoder, params, graph),
+                new CompiledEdgeFilter.Builder(encoder, graph).avoidFeatures(params).build());
+    }
+
+    @Test
+    public void TestAvoidFeaturesOfOtherCategories() {
+        // steps, paved roads and tracks are not avoided by walking profiles
+        RouteSearchParameters params = new RouteSearchParameters();
+        params.setAvoidFeatureTypes(AvoidFeatureFlags.Steps | AvoidFeatureFlags.PavedRoads | AvoidFeatureFlags.Tracks | AvoidFeatureFlags.Ferries);
+
+        for (String name : new String[] { "foot", "mtb" }) {
+            FlagEncoder encoder = getEncoder(name);
+            assertEquivalent(new AvoidFeaturesEdgeFilter(encoder, params, graph),
+                    new CompiledEdgeFilter.Builder(encoder, graph).avoidFeatures(params).build());
+        }
+    }
+
+    @Test
+    public void TestAvoidBorders() {
+        FlagEncoder encoder = getEncoder("car");
+        for (BordersExtractor.Avoid avoid : new BordersExtractor.Avoid[] { BordersExtractor.Avoid.ALL, BordersExtractor.Avoid.CONTROLLED }) {
+            RouteSearchParameters params = new RouteSearchParameters();
+            params.setAvoidBorders(avoid);
+
+            assertEquivalent(new AvoidBordersEdgeFilter(encoder, params, graph),
+                    new CompiledEdgeFilter.Builder(encoder, graph).avoidBorders(params).build());
+        }
+    }
+
+    @Test
+    public void TestAvoidCountries() {
+        FlagEncoder encoder = getEncoder("car");
+        for (int[] countries : new int[][] { { 2 }, { 1, 4 }, { 3, 5 } }) {
+            RouteSearchParameters params = new RouteSearchParameters();
+            params.setAvoidCountries(countries);
+
+            assertEquivalent(new AvoidBordersEdgeFilter(encoder, params, graph),
+                    new CompiledEdgeFilter.Builder(encoder, graph).avoidBorders(params).build());
+        }
+
+        RouteSearchParameters params = new RouteSearchParameters();
+        params.setAvoidCountries(new int[] { 3 });
+        params.setAvoidBorders(BordersExtractor.Avoid.CONTROLLED);
+        assertEquivalent(new AvoidBordersEdgeFilter(encoder, params, graph),
+                new CompiledEdgeFilter.Builder(encoder, graph).avoidBorders(params).build());
+    }
+
+    @Test
+    public void TestSteepnessAndTrailDifficultyOfMtb() {
+        FlagEncoder encoder = getEncoder("mtb");
+
+        assertEquivalent(new AvoidSteepnessEdgeFilter(encoder, graph, 9),
+                new CompiledEdgeFilter.Builder(encoder, graph).maximumSteepness(9).build());
+        assertEquivalent(new TrailDifficultyEdgeFilter(encoder, graph, 3),
+                new CompiledEdgeFilter.Builder(encoder, graph).maximumTrailDifficulty(3).build());
+        assertEquivalent(all(new AvoidSteepnessEdgeFilter(encoder, graph, 12), new TrailDifficultyEdgeFilter(encoder, graph, 4)),
+                new CompiledEdgeFilter.Builder(encoder, graph).maximumSteepness(12).maximumTrailDifficulty(4).build());
+    }
+
+    @Test
+    public void TestTrailDifficultyOfHiking() {
+        FlagEncoder encoder = getEncoder("foot");
+
+        assertEquivalent(new TrailDifficultyEdgeFilter(encoder, graph, 2),
+                new CompiledEdgeFilter.Builder(encoder, graph).maximumTrailDifficulty(2).build());
+        assertEquivalent(all(new AvoidSteepnessEdgeFilter(encoder, graph, 10), new TrailDifficultyEdgeFilter(encoder, graph, 4)),
+                new CompiledEdgeFilter.Builder(encoder, graph).maximumSteepness(10).maximumTrailDifficulty(4).build());
+    }
+
+    @Test
+    public void TestBlockedEdges() {
+        FlagEncoder encoder = getEncoder("car");
+
+        assertEquivalent(new BlockedEdgesEdgeFilter(encoder, snapshot),
+                new CompiledEdgeFilter.Builder(encoder, graph).blockedEdges(snapshot).build());
+    }
+
+    @Test
+    public void TestAllRestrictions() {
+        FlagEncoder encoder = getEncoder("mtb");
+        RouteSearchParameters params = new RouteSearchParameters();
+        params.setAvoidFeatureTypes(AvoidFeatureFlags.UnpavedRoads | AvoidFeatureFlags.Steps);
+        params.setAvoidBorders(BordersExtractor.Avoid.CONTROLLED);
+        params.setAvoidCountries(new int[] { 4 });
+
+        EdgeFilter chain = all(new AvoidFeaturesEdgeFilter(encoder, params, graph), new AvoidBordersEdgeFilter(encoder, params, graph),
+                new AvoidSteepnessEdgeFilter(encoder, graph, 13), new TrailDifficultyEdgeFilter(encoder, graph, 5),
+                new BlockedEdgesEdgeFilter(encoder, snapshot));
+        EdgeFilter compiled = new CompiledEdgeFilter.Builder(encoder, graph).avoidFeatures(params).avoidBorders(params)
+                .maximumSteepness(13).maximumTrailDifficulty(5).blockedEdges(snapshot).build();
+
+        assertEquivalent(chain, compiled);
+    }
+
+    @Test
+    public void TestOtherFilters() {
+        FlagEncoder encoder = getEncoder("car");
+        EdgeFilter evenEdges = iter -> iter.getEdge() % 2 == 0;
+        EdgeFilter smallEdges = iter -> iter.getEdge() < EDGES / 2;
+
+        // without compiled restrictions the other filters are returned as they are
+        assertNull(new CompiledEdgeFilter.Builder(encoder, graph).build());
+        assertSame(evenEdges, new CompiledEdgeFilter.Builder(encoder, graph).addFilter(evenEdges).build());
+
+        assertEquivalent(all(new BlockedEdgesEdgeFilter(encoder, snapshot), evenEdges, smallEdges),
+                new CompiledEdgeFilter.Builder(encoder, graph).blockedEdges(snapshot).addFilter(evenEdges).addFilter(smallEdges).build());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.storages;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BordersEdgeIndexTest {
+    private final BordersGraphStorage _storage;
+
+    public BordersEdgeIndexTest() {
+        _storage = new BordersGraphStorage();
+        _storage.init();
+        _storage.create(10);
+
+        // (edgeId, borderType, startCountry, endCountry)
+        _storage.setEdgeValue(1, BordersGraphStorage.CONTROLLED_BORDER, (short) 1, (short) 2);
+        _storage.setEdgeValue(2, BordersGraphStorage.OPEN_BORDER, (short) 3, (short) 4);
+        _storage.setEdgeValue(3, BordersGraphStorage.NO_BORDER, (short) 5, (short) 5);
+        _storage.setEdgeValue(5, BordersGraphStorage.OPEN_BORDER, (short) 2, (short) 3);
+        _storage.setEdgeValue(8, BordersGraphStorage.CONTROLLED_BORDER, (short) 2, (short) 1);
+        // an edge within a country that is marked as a border nevertheless
+        _storage.setEdgeValue(9, BordersGraphStorage.OPEN_BORDER, (short) 6, (short) 6);
+    }
+
+    @Test
+    public void TestBorders() {
+        BordersEdgeIndex index = new BordersEdgeIndex(_storage);
+
+        assertTrue(index.isBorder(1));
+        assertTrue(index.isBorder(2));
+        assertTrue(index.isBorder(5));
+        assertTrue(index.isBorder(8));
+        assertFalse(index.isBorder(0));
+        assertFalse(index.isBorder(3));
+        assertFalse(index.isBorder(4));
+        assertFalse(index.isBorder(-1));
+        // edges beyond the storage, e.g. virtual edges
+        assertFalse(index.isBorder(1000000));
+
+        assertTrue(index.isControlledBorder(1));
+        assertTrue(index.isControlledBorder(8));
+        assertFalse(index.isControlledBorder(2));
+        assertFalse(index.isControlledBorder(3));
+        assertFalse(index.isControlledBorder(-1));
+    }
+
+    @Test
+    public void TestCountryEdges() {
+        BordersEdgeIndex index = new BordersEdgeIndex(_storage);
+
+        assertArrayEquals(new int[] { 1, 8 }, index.getCountryEdges(new int[] { 1 }));
+        assertArrayEquals(new int[] { 1, 5, 8 }, index.getCountryEdges(new int[] { 2 }));
+        assertArrayEquals(new int[] { 2 }, index.getCountryEdges(new int[] { 4 }));
+        // an edge is listed once for a country it starts and ends in
+        assertArrayEquals(new int[] { 9 }, index.getCountryEdges(new int[] { 6 }));
+        // countries of edges which do not cross a border are not indexed
+        assertEquals(0, index.getCountryEdges(new int[] { 5 }).length);
+        assertEquals(0, index.getCountryEdges(new int[] { 7 }).length);
+        assertEquals(0, index.getCountryEdges(new int[0]).length);
+    }
+
+    @Test
+    public void TestEdgesOfSeveralCountries() {
+        BordersEdgeIndex index = new BordersEdgeIndex(_storage);
+
+        // the edges are sorted, an edge between two of the countries is contained twice
+        assertArrayEquals(new int[] { 2, 2, 5 }, index.getCountryEdges(new int[] { 4, 3 }));
+        assertArrayEquals(new int[] { 1, 1, 2, 5, 5, 8, 8 }, index.getCountryEdges(new int[] { 3, 2, 1 }));
+        assertArrayEquals(new int[] { 1, 8 }, index.getCountryEdges(new int[] { 1, 7 }));
+    }
+
+    @Test
+    public void TestIndexIsBuiltOnce() {
+        assertSame(_storage.getEdgeIndex(), _storage.getEdgeIndex());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.storages;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpeedProfilesGraphStorageTest {
+    private static byte[] createDailyPattern(int offset) {
+        byte[] speeds = new byte[SpeedProfilesGraphStorage.INTERVALS_PER_DAY];
+        for (int i = 0; i < speeds.length; i++)
+            speeds[i] = (byte) (1 + (i + offset) % 100);
+        return speeds;
+    }
+
+    private static SpeedProfilesGraphStorage createStorage(GHDirectory dir) {
+        SpeedProfilesGraphStorage storage = new SpeedProfilesGraphStorage();
+        storage.init(null, dir);
+        return storage;
+    }
+
+    @Test
+    public void TestPatterns() {
+        SpeedProfilesGraphStorage storage = createStorage(new GHDirectory("", DAType.RAM));
+        storage.create(10);
+
+        byte[] weekly = new byte[SpeedProfilesGraphStorage.INTERVALS_PER_WEEK];
+        for (int i = 0; i < weekly.length; i++)
+            weekly[i] = (byte) (i % 7 == 0 ? 120 : i % 7 - 1);
+
+        assertEquals(1, storage.addPattern(createDailyPattern(0)));
+        assertEquals(2, storage.addPattern(weekly));
+        assertEquals(2, storage.getPatternsCount());
+
+        // a daily pattern is repeated on every day of the week
+        long day = 24 * 3600 * 1000L;
+        assertEquals(1, storage.getSpeed(1, 0));
+        assertEquals(1, storage.getSpeed(1, 3 * day));
+        assertEquals(2, storage.getSpeed(1, 3 * day + SpeedProfilesGraphStorage.INTERVAL_MILLIS));
+        assertEquals(2, storage.getSpeed(1, 2 * SpeedProfilesGraphStorage.INTERVAL_MILLIS - 1));
+
+        // speeds are limited to 1..100 percent
+        assertEquals(100, storage.getSpeed(2, 0));
+        assertEquals(1, storage.getSpeed(2, SpeedProfilesGraphStorage.INTERVAL_MILLIS));
+        assertEquals(5, storage.getSpeed(2, 6 * SpeedProfilesGraphStorage.INTERVAL_MILLIS));
+
+        // times beyond the week are wrapped around
+        assertEquals(storage.getSpeed(2, 6 * SpeedProfilesGraphStorage.INTERVAL_MILLIS),
+                storage.getSpeed(2, SpeedProfilesGraphStorage.WEEK_MILLIS + 6 * SpeedProfilesGraphStorage.INTERVAL_MILLIS));
+        assertEquals(storage.getSpeed(2, SpeedProfilesGraphStorage.WEEK_MILLIS - 1), storage.getSpeed(2, -1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestInvalidPattern() {
+        SpeedProfilesGraphStorage storage = createStorage(new GHDirectory("", DAType.RAM));
+        storage.create(10);
+        storage.addPattern(new byte[10]);
+    }
+
+    @Test
+    public void TestEdgePatterns() {
+        SpeedProfilesGraphStorage storage = createStorage(new GHDirectory("", DAType.RAM));
+        storage.create(10);
+
+        storage.setEdgeValue(3, 1, 2);
+        storage.setEdgeValue(5, SpeedProfilesGraphStorage.MAX_PATTERNS, 0);
+
+        assertEquals(1, storage.getEdgePattern(3, true));
+        assertEquals(2, storage.getEdgePattern(3, false));
+        assertEquals(SpeedProfilesGraphStorage.MAX_PATTERNS, storage.getEdgePattern(5, true));
+        assertEquals(0, storage.getEdgePattern(5, false));
+        assertEquals(0, storage.getEdgePattern(4, true));
+        // edges beyond the storage have no pattern
+        assertEquals(0, storage.getEdgePattern(1000000, true));
+    }
+
+    @Test
+    public void TestFlushAndLoad() throws IOException {
+        File folder = Files.createTempDirectory("speed_profiles").toFile();
+        try {
+            SpeedProfilesGraphStorage storage = createStorage(new GHDirectory(folder.getAbsolutePath(), DAType.RAM_STORE));
+            storage.create(10);
+            int first = storage.addPattern(createDailyPattern(0));
+            int second = storage.addPattern(createDailyPattern(50));
+            storage.setEdgeValue(0, first, second);
+            storage.setEdgeValue(7, 0, second);
+            storage.flush();
+            storage.close();
+
+            SpeedProfilesGraphStorage loaded = createStorage(new GHDirectory(folder.getAbsolutePath(), DAType.RAM_STORE));
+            loaded.loadExisting();
+
+            assertEquals(2, loaded.getPatternsCount());
+            assertEquals(first, loaded.getEdgePattern(0, true));
+            assertEquals(second, loaded.getEdgePattern(0, false));
+            assertEquals(0, loaded.getEdgePattern(7, true));
+            assertEquals(second, loaded.getEdgePattern(7, false));
+
+            for (int i = 0; i < SpeedProfilesGraphStorage.INTERVALS_PER_WEEK; i++) {
+                long time = i * SpeedProfilesGraphStorage.INTERVAL_MILLIS;
+                assertEquals(1 + i % SpeedProfilesGraphStorage.INTERVALS_PER_DAY % 100, loaded.getSpeed(first, time));
+                assertEquals(1 + (i % SpeedProfilesGraphStorage.INTERVALS_PER_DAY + 50) % 100, loaded.getSpeed(second, time));
+            }
+            loaded.close();
+        } finally {
+            for (File file : folder.listFiles())
+                file.delete();
+            folder.delete();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphExtension.ExtendedStorageSequence;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import heigit.ors.routing.graphhopper.extensions.HeavyVehicleAttributes;
+import heigit.ors.routing.graphhopper.extensions.HeavyVehicleClass;
+import heigit.ors.routing.graphhopper.extensions.storages.HeavyVehicleAttributesGraphStorage;
+import heigit.ors.routing.parameters.VehicleParameters;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HeavyVehicleClassWeightingTest {
+    private static HeavyVehicleClassWeighting createWeighting(GraphHopperStorage graph, FlagEncoder encoder) {
+        VehicleParameters params = new VehicleParameters();
+        params.setWeight(7.5);
+        HeavyVehicleClass vehicleClass = new HeavyVehicleClass("small", HeavyVehicleAttributes.HGV, params);
+        return new HeavyVehicleClassWeighting(new FastestWeighting(encoder), encoder, vehicleClass, graph);
+    }
+
+    @Test
+    public void TestIsDestinationEdge() {
+        EncodingManager encodingManager = new EncodingManager("car");
+        FlagEncoder encoder = encodingManager.getEncoder("car");
+        HeavyVehicleAttributesGraphStorage storage = new HeavyVehicleAttributesGraphStorage(true);
+        ArrayList<GraphExtension> extensions = new ArrayList<GraphExtension>();
+        extensions.add(storage);
+        GraphHopperStorage graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false, new ExtendedStorageSequence(extensions));
+        graph.create(1000);
+
+        for (int i = 0; i < 5; i++)
+            graph.edge(i, i + 1, 100, true);
+
+        // destination traffic of heavy goods vehicles only
+        storage.setEdgeValue(0, HeavyVehicleAttributes.HGV, HeavyVehicleAttributes.HGV, null);
+        // closed for heavy goods vehicles
+        storage.setEdgeValue(1, HeavyVehicleAttributes.HGV, HeavyVehicleAttributes.UNKNOWN, null);
+        // destination traffic of buses only
+        storage.setEdgeValue(2, HeavyVehicleAttributes.BUS, HeavyVehicleAttributes.BUS, null);
+        // destination traffic of buses and heavy goods vehicles
+        storage.setEdgeValue(3, HeavyVehicleAttributes.HGV | HeavyVehicleAttributes.BUS, HeavyVehicleAttributes.HGV | HeavyVehicleAttributes.BUS, null);
+
+        HeavyVehicleClassWeighting weighting = createWeighting(graph, encoder);
+        assertTrue(weighting.isDestinationEdge(0));
+        assertFalse(weighting.isDestinationEdge(1));
+        assertFalse(weighting.isDestinationEdge(2));
+        assertTrue(weighting.isDestinationEdge(3));
+        assertFalse(weighting.isDestinationEdge(4));
+    }
+
+    @Test
+    public void TestIsDestinationEdgeWithoutStorage() {
+        EncodingManager encodingManager = new EncodingManager("car");
+        GraphHopperStorage graph = new GraphHopperStorage(new RAMDirectory(), encodingManager, false, new GraphExtension.NoOpExtension());
+        graph.create(1000);
+        graph.edge(0, 1, 100, true);
+
+        assertFalse(createWeighting(graph, encodingManager.getEncoder("car")).isDestinationEdge(0));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.VirtualEdgeIteratorState;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import heigit.ors.routing.graphhopper.extensions.storages.SpeedProfilesGraphStorage;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimeDependentWeightingTest {
+    private static final long INTERVAL = SpeedProfilesGraphStorage.INTERVAL_MILLIS;
+    // 15 km at 90 km/h
+    private static final long FREE_FLOW_MILLIS = 600000;
+
+    private final EncodingManager encodingManager = new EncodingManager("car");
+    private final FlagEncoder encoder = encodingManager.getEncoder("car");
+    private final GraphHopperStorage graph;
+    private final SpeedProfilesGraphStorage storage;
+    private final FastestWeighting superWeighting;
+
+    public TimeDependentWeightingTest() {
+        graph = new GraphBuilder(encodingManager).create();
+        graph.edge(0, 1).setDistance(15000).setFlags(encoder.setProperties(90, true, true));
+
+        storage = new SpeedProfilesGraphStorage();
+        storage.init(null, new GHDirectory("", DAType.RAM));
+        storage.create(10);
+
+        // half of the free flow speed within the first interval of every day
+        byte[] speeds = new byte[SpeedProfilesGraphStorage.INTERVALS_PER_DAY];
+        for (int i = 0; i < speeds.length; i++)
+            speeds[i] = 100;
+        speeds[0] = 50;
+        int pattern = storage.addPattern(speeds);
+
+        // only the direction from node 0 to node 1 is affected
+        storage.setEdgeValue(0, pattern, 0);
+
+        superWeighting = new FastestWeighting(encoder);
+    }
+
+    private TimeDependentWeighting createWeighting(long departure) {
+        return new TimeDependentWeighting(superWeighting, encoder, storage, departure);
+    }
+
+    @Test
+    public void TestTravelTimeWithinInterval() {
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 1);
+        TimeDependentWeighting weighting = createWeighting(0);
+
+        assertEquals(FREE_FLOW_MILLIS, superWeighting.calcMillis(edge, false, -1));
+        assertEquals(FREE_FLOW_MILLIS, weighting.calcMillis(edge, false, -1, INTERVAL));
+        assertEquals(FREE_FLOW_MILLIS, weighting.calcMillis(edge, false, -1, 5 * INTERVAL));
+    }
+
+    @Test
+    public void TestTravelTimeAcrossIntervalBoundary() {
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 1);
+        TimeDependentWeighting weighting = createWeighting(0);
+
+        // half of the first interval at half speed covers 225000 ms of free flow time, the rest at full speed
+        assertEquals(INTERVAL / 2 + FREE_FLOW_MILLIS - INTERVAL / 4, weighting.calcMillis(edge, false, -1, INTERVAL / 2));
+        // the whole first interval at half speed covers 450000 ms
+        assertEquals(INTERVAL + FREE_FLOW_MILLIS - INTERVAL / 2, weighting.calcMillis(edge, false, -1, 0));
+        // entered at the end of the previous day
+        assertEquals(FREE_FLOW_MILLIS + (FREE_FLOW_MILLIS - INTERVAL / 2), weighting.calcMillis(edge, false, -1, -INTERVAL / 2));
+
+        // the weight scales with the travel time
+        double weight = superWeighting.calcWeight(edge, false, -1);
+        assertEquals(weight * 825000 / FREE_FLOW_MILLIS, weighting.calcWeight(edge, false, -1, INTERVAL / 2), 1e-9);
+    }
+
+    @Test
+    public void TestLeavingLaterNeverArrivesEarlier() {
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 1);
+        TimeDependentWeighting weighting = createWeighting(0);
+
+        long lastArrival = Long.MIN_VALUE;
+        for (long time = -INTERVAL; time <= 2 * INTERVAL; time += 10000) {
+            long arrival = time + weighting.calcMillis(edge, false, -1, time);
+            assertTrue(arrival >= lastArrival);
+            lastArrival = arrival;
+        }
+    }
+
+    @Test
+    public void TestDepartureIsUsedByDefault() {
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 1);
+
+        assertEquals(825000, createWeighting(INTERVAL / 2).calcMillis(edge, false, -1));
+        assertEquals(FREE_FLOW_MILLIS, createWeighting(INTERVAL).calcMillis(edge, false, -1));
+    }
+
+    @Test
+    public void TestDirectionOfEdge() {
+        TimeDependentWeighting weighting = createWeighting(0);
+        EdgeIteratorState forward = graph.getEdgeIteratorState(0, 1);
+        EdgeIteratorState backward = graph.getEdgeIteratorState(0, 0);
+
+        assertEquals(825000, weighting.calcMillis(forward, false, -1, INTERVAL / 2));
+        assertEquals(FREE_FLOW_MILLIS, weighting.calcMillis(forward, true, -1, INTERVAL / 2));
+        assertEquals(FREE_FLOW_MILLIS, weighting.calcMillis(backward, false, -1, INTERVAL / 2));
+        assertEquals(825000, weighting.calcMillis(backward, true, -1, INTERVAL / 2));
+    }
+
+    @Test
+    public void TestDirectionOfVirtualEdge() {
+        TimeDependentWeighting weighting = createWeighting(0);
+        // edge 0 is split by the virtual node 2, the virtual edges keep the id of the original one
+        int forwardKey = GHUtility.createEdgeKey(0, 1, 0, false);
+        int backwardKey = GHUtility.createEdgeKey(1, 0, 0, false);
+        long flags = encoder.setProperties(90, true, true);
+        VirtualEdgeIteratorState fromVirtual = new VirtualEdgeIteratorState(forwardKey, 0, 2, 1, 15000, flags, "",
+                Helper.createPointList(49.4, 8.6, 49.5, 8.6));
+        VirtualEdgeIteratorState toVirtual = new VirtualEdgeIteratorState(backwardKey, 0, 1, 2, 15000, flags, "",
+                Helper.createPointList(49.5, 8.6, 49.4, 8.6));
+
+        // the virtual node has the largest id, still the virtual edge from it to node 1 runs along the original one
+        assertEquals(825000, weighting.calcMillis(fromVirtual, false, -1, INTERVAL / 2));
+        assertEquals(FREE_FLOW_MILLIS, weighting.calcMillis(fromVirtual, true, -1, INTERVAL / 2));
+        assertEquals(FREE_FLOW_MILLIS, weighting.calcMillis(toVirtual, false, -1, INTERVAL / 2));
+        assertEquals(825000, weighting.calcMillis(toVirtual, true, -1, INTERVAL / 2));
+    }
+}
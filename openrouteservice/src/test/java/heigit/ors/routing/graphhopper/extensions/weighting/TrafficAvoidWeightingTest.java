@@ -0,0 +1,154 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.util.EdgeIteratorState;
+import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEncoder;
+import heigit.ors.routing.traffic.TmcEventCodesTable;
+import heigit.ors.routing.traffic.TmcMode;
+import heigit.ors.routing.traffic.TrafficEventInfo;
+import heigit.ors.routing.traffic.TrafficSnapshot;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrafficAvoidWeightingTest {
+    private static final double DELTA = 1e-9;
+
+    private static final short[][] CODES = {
+            // speed factors: traffic problem, queuing, accident, heavy traffic
+            { 1 }, { 2 }, { 12, 80 },
+            // given speeds of 30 and 50 km/h
+            { 72, 74 },
+            // delay of 30 minutes for all vehicles
+            { 1603 },
+            // delays for heavy vehicles
+            { 1611 }, { 1612, 2 }, { 1609, 72 }, { 1610, 1603 },
+            // given speed and speed factor
+            { 2, 72 },
+            // delay and speed factor
+            { 1603, 12 },
+            // no known codes
+            { }
+    };
+
+    private static Graph createGraph(FlagEncoder encoder) {
+        Graph graph = new GraphBuilder(new EncodingManager(encoder)).create();
+        for (int i = 0; i <= CODES.length; i++)
+            graph.edge(i, i + 1, 1000 + 100 * i, true);
+        return graph;
+    }
+
+    private static TrafficSnapshot createSnapshot() {
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        for (int i = 0; i < CODES.length; i++)
+            builder.addAvoidEdge(i, CODES[i]);
+        return builder.build();
+    }
+
+    /**
+     * The weight of an edge with the given codes as it was computed before the penalties were kept in the snapshot.
+     */
+    private static double calcExpectedWeight(FlagEncoder encoder, EdgeIteratorState edge, short[] codes) {
+        double speed = encoder.getSpeed(edge.getFlags(encoder.getIndex()));
+        if (speed == 0)
+            return Double.POSITIVE_INFINITY;
+        if (codes == null)
+            return edge.getDistance() * 3600 / (1000 * speed);
+
+        double givenDelay = 0;
+        double givenSpeed = Double.MAX_VALUE;
+        double speedFactor = 1;
+        for (short code : codes) {
+            TrafficEventInfo tec = TmcEventCodesTable.getEventInfo(code);
+            if (tec.getTmcMode() == TmcMode.HEAVY_VEHICLE && encoder instanceof CarFlagEncoder)
+                continue;
+            if (tec.isDelay())
+                givenDelay = Math.max(givenDelay, tec.getDelay());
+            if (tec.getSpeedFactor() > 1)
+                givenSpeed = Math.min(givenSpeed, tec.getSpeedFactor());
+            else
+                speedFactor = Math.min(speedFactor, tec.getSpeedFactor());
+        }
+
+        if (givenDelay > 0)
+            return givenDelay * 60 + edge.getDistance() * 3600 / (1000 * speed);
+        if (givenSpeed < Double.MAX_VALUE)
+            return edge.getDistance() * 3600 / (1000 * givenSpeed);
+        return edge.getDistance() * 3600 / (1000 * speedFactor * speed);
+    }
+
+    private static void assertWeights(FlagEncoder encoder) {
+        Graph graph = createGraph(encoder);
+        TrafficAvoidWeighting weighting = new TrafficAvoidWeighting(null, encoder, createSnapshot());
+
+        for (int i = 0; i <= CODES.length; i++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(i, Integer.MIN_VALUE);
+            short[] codes = i < CODES.length ? CODES[i] : null;
+            double expected = calcExpectedWeight(encoder, edge, codes);
+            assertEquals("edge " + i, expected, weighting.calcWeight(edge, false, -1), DELTA);
+            assertEquals("edge " + i, expected, weighting.calcWeight(edge, true, -1), DELTA);
+        }
+    }
+
+    @Test
+    public void TestWeightsForCars() {
+        assertWeights(new CarFlagEncoder());
+    }
+
+    @Test
+    public void TestWeightsForHeavyVehicles() {
+        assertWeights(new HeavyVehicleFlagEncoder());
+    }
+
+    @Test
+    public void TestHeavyVehicleEventsAreIgnoredForCars() {
+        FlagEncoder car = new CarFlagEncoder();
+        Graph carGraph = createGraph(car);
+        FlagEncoder hgv = new HeavyVehicleFlagEncoder();
+        Graph hgvGraph = createGraph(hgv);
+        TrafficSnapshot snapshot = createSnapshot();
+        TrafficAvoidWeighting carWeighting = new TrafficAvoidWeighting(null, car, snapshot);
+        TrafficAvoidWeighting hgvWeighting = new TrafficAvoidWeighting(null, hgv, snapshot);
+
+        // delay for heavy lorries only
+        EdgeIteratorState carEdge = carGraph.getEdgeIteratorState(5, Integer.MIN_VALUE);
+        EdgeIteratorState hgvEdge = hgvGraph.getEdgeIteratorState(5, Integer.MIN_VALUE);
+        double carSpeed = car.getSpeed(carEdge.getFlags(car.getIndex()));
+        double hgvSpeed = hgv.getSpeed(hgvEdge.getFlags(hgv.getIndex()));
+        assertEquals(1500 * 3.6 / carSpeed, carWeighting.calcWeight(carEdge, false, -1), DELTA);
+        assertEquals(30 * 60 + 1500 * 3.6 / hgvSpeed, hgvWeighting.calcWeight(hgvEdge, false, -1), DELTA);
+
+        // a delay for heavy vehicles takes precedence over a given speed, cars use the given speed of 30 km/h
+        carEdge = carGraph.getEdgeIteratorState(7, Integer.MIN_VALUE);
+        hgvEdge = hgvGraph.getEdgeIteratorState(7, Integer.MIN_VALUE);
+        hgvSpeed = hgv.getSpeed(hgvEdge.getFlags(hgv.getIndex()));
+        assertEquals(1700 * 3.6 / 30, carWeighting.calcWeight(carEdge, false, -1), DELTA);
+        assertEquals(15 * 60 + 1700 * 3.6 / hgvSpeed, hgvWeighting.calcWeight(hgvEdge, false, -1), DELTA);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.weighting;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphExtension.ExtendedStorageSequence;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import heigit.ors.routing.graphhopper.extensions.WheelchairAttributes;
+import heigit.ors.routing.graphhopper.extensions.WheelchairPreset;
+import heigit.ors.routing.graphhopper.extensions.WheelchairTypesEncoder;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.WheelchairEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.storages.WheelchairAttributesGraphStorage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WheelchairPresetWeightingTest {
+    private final EncodingManager _encodingManager = new EncodingManager("foot");
+    private final FlagEncoder _encoder = _encodingManager.getEncoder("foot");
+    private final WheelchairAttributesGraphStorage _storage = new WheelchairAttributesGraphStorage();
+    private final List<EdgeIteratorState> _edges = new ArrayList<EdgeIteratorState>();
+
+    private GraphHopperStorage createGraph() {
+        ArrayList<GraphExtension> extensions = new ArrayList<GraphExtension>();
+        extensions.add(_storage);
+        GraphHopperStorage graph = new GraphHopperStorage(new RAMDirectory(), _encodingManager, false, new ExtendedStorageSequence(extensions));
+        graph.create(1000);
+
+        for (int i = 0; i < 6; i++)
+            _edges.add(graph.edge(i, i + 1, 100, true));
+
+        // edge 0 has no wheelchair attributes
+        WheelchairAttributes attrs = new WheelchairAttributes();
+        attrs.setSurfaceType(WheelchairTypesEncoder.getSurfaceType("cobblestone"));
+        _storage.setEdgeValues(1, attrs);
+
+        attrs = new WheelchairAttributes();
+        attrs.setIncline(10);
+        _storage.setEdgeValues(2, attrs);
+
+        attrs = new WheelchairAttributes();
+        attrs.setSlopedCurbHeight(0.1f);
+        _storage.setEdgeValues(3, attrs);
+
+        attrs = new WheelchairAttributes();
+        attrs.setSurfaceType(WheelchairTypesEncoder.getSurfaceType("asphalt"));
+        attrs.setIncline(3);
+        attrs.setSlopedCurbHeight(0.03f);
+        _storage.setEdgeValues(4, attrs);
+
+        attrs = new WheelchairAttributes();
+        attrs.setSurfaceType(WheelchairTypesEncoder.getSurfaceType("cobblestone:flattened"));
+        _storage.setEdgeValues(5, attrs);
+
+        return graph;
+    }
+
+    @Test
+    public void TestBlockedEdges() throws Exception {
+        GraphHopperStorage graph = createGraph();
+        Weighting superWeighting = new FastestWeighting(_encoder);
+        WheelchairPreset preset = WheelchairPreset.parse("strict", "maximum_incline=6;maximum_sloped_curb=0.06;surface_type=cobblestone:flattened");
+        WheelchairPresetWeighting weighting = new WheelchairPresetWeighting(superWeighting, _encoder, preset, graph);
+        assertEquals("wheelchair_preset_strict", weighting.getName());
+
+        boolean[] open = { true, false, false, false, true, true };
+        WheelchairEdgeFilter filter = new WheelchairEdgeFilter(preset.getParameters(), _encoder, graph);
+        for (int i = 0; i < _edges.size(); i++) {
+            EdgeIteratorState edge = _edges.get(i);
+            // the preparation closes exactly the edges the filter of the flexible mode rejects
+            assertEquals("edge " + i, open[i], filter.accept(edge));
+
+            double weight = weighting.calcWeight(edge, false, EdgeIterator.NO_EDGE);
+            if (open[i]) {
+                assertEquals("edge " + i, superWeighting.calcWeight(edge, false, EdgeIterator.NO_EDGE), weight, 1e-9);
+                assertEquals(superWeighting.calcMillis(edge, false, EdgeIterator.NO_EDGE), weighting.calcMillis(edge, false, EdgeIterator.NO_EDGE));
+            } else {
+                assertTrue("edge " + i, Double.isInfinite(weight));
+            }
+            assertEquals(weight, weighting.calcWeight(edge, true, EdgeIterator.NO_EDGE), 1e-9);
+        }
+    }
+
+    @Test
+    public void TestWithoutStorage() {
+        GraphHopperStorage graph = new GraphHopperStorage(new RAMDirectory(), _encodingManager, false, new GraphExtension.NoOpExtension());
+        graph.create(1000);
+        EdgeIteratorState edge = graph.edge(0, 1, 100, true);
+
+        WheelchairPreset preset = WheelchairPreset.parse("strict", "maximum_incline=6");
+        WheelchairPresetWeighting weighting = new WheelchairPresetWeighting(new FastestWeighting(_encoder), _encoder, preset, graph);
+        assertFalse(Double.isInfinite(weighting.calcWeight(edge, false, EdgeIterator.NO_EDGE)));
+    }
+}
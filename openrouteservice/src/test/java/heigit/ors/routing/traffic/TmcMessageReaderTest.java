@@ -0,0 +1,142 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TmcMessageReaderTest {
+    private static final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<TIC FGT=\"2018-01-01T10:00:00\">\n"
+            // a jam between the locations 100 and 102 with all optional elements
+            + "  <IFN>\n"
+            + "    <MNG><UPT>2018-01-01T09:55:00</UPT><EXP>2018-01-01T12:00:00</EXP></MNG>\n"
+            + "    <TTI><TSA>2018-01-01T08:00:00</TSA><TSO>2018-01-02T08:00:00</TSO></TTI>\n"
+            + "    <TRA><MES><MDA><MDC>3</MDC><MDT>Stau zwischen A und B</MDT><MDT>ignored</MDT></MDA></MES></TRA>\n"
+            + "    <LOC><LCD>100</LCD><LCD>102</LCD><LDR>0</LDR><LDR>1</LDR><EBF>1</EBF><EBF>0</EBF></LOC>\n"
+            + "    <EVE><ECO>101</ECO><ECO>abc</ECO></EVE>\n"
+            + "  </IFN>\n"
+            // a message in negative direction, its text is not part of a TRA element
+            + "  <IFN>\n"
+            + "    <MNG><UPT>2018-01-01T09:50:00</UPT></MNG>\n"
+            + "    <MDA><MDT>ignored</MDT></MDA>\n"
+            + "    <LOC><LCD>200</LCD><LCD>201</LCD><LDR>1</LDR></LOC>\n"
+            + "    <EVE><ECO>401</ECO></EVE>\n"
+            + "  </IFN>\n"
+            // a message without a location code that is located by its coordinates
+            + "  <IFN>\n"
+            + "    <LOC><LCD>0</LCD><LCO><X>868000</X><Y>4941000</Y></LCO></LOC>\n"
+            + "  </IFN>\n"
+            + "</TIC>\n";
+
+    private static TrafficLocationGraph createLocationGraph() throws IOException {
+        File file = File.createTempFile("locations", ".txt");
+        file.deleteOnExit();
+
+        FileWriter writer = new FileWriter(file);
+        writer.write("# offsets\n");
+        writer.write("1;1;100;101\n");
+        writer.write("1;1;101;102\n");
+        writer.close();
+
+        return TrafficLocationGraph.createFromFile(file);
+    }
+
+    private static TmcSegmentsCollection createSegments() {
+        GeometryFactory geomFactory = new GeometryFactory();
+        List<TmcSegment> segments = new ArrayList<TmcSegment>();
+        segments.add(new TmcSegment(1, "B3", 300, 301, 0, 2000, geomFactory.createLineString(new Coordinate[] {
+                new Coordinate(8.68, 49.40), new Coordinate(8.68, 49.42) }), null));
+        return new TmcSegmentsCollection(segments);
+    }
+
+    private static List<TrafficMessageData> read(TmcMessageReader reader) throws Exception {
+        reader.read(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8")));
+        return reader.getMessages();
+    }
+
+    @Test
+    public void TestTime() throws Exception {
+        TmcMessageReader reader = new TmcMessageReader(createSegments(), createLocationGraph());
+        read(reader);
+
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        assertEquals("2018-01-01 10:00:00", formatter.format(reader.getTime()));
+    }
+
+    @Test
+    public void TestMessages() throws Exception {
+        List<TrafficMessageData> messages = read(new TmcMessageReader(createSegments(), createLocationGraph()));
+
+        assertEquals(3, messages.size());
+
+        // the locations between 100 and 102 are taken from the location graph
+        TrafficMessageData m = messages.get(0);
+        assertEquals(Arrays.asList(100, 101, 102), m.locationCodes);
+        assertEquals(Arrays.asList(101), m.eventDataCodes);
+        assertEquals(Arrays.asList("Stau zwischen A und B"), m.messageDataText);
+        assertEquals(0, m.direction);
+        assertTrue(m.bothDirections);
+        assertEquals("2018-01-01T09:55:00", m.uptTime);
+        assertEquals("2018-01-01T12:00:00", m.expTime);
+        assertEquals("2018-01-01T08:00:00", m.startTime);
+        assertEquals("2018-01-02T08:00:00", m.endTime);
+
+        // the location codes of messages in negative direction are reversed
+        m = messages.get(1);
+        assertEquals(Arrays.asList(201, 200), m.locationCodes);
+        assertEquals(Arrays.asList(401), m.eventDataCodes);
+        assertTrue(m.messageDataText.isEmpty());
+        assertEquals(1, m.direction);
+        assertFalse(m.bothDirections);
+        assertNull(m.expTime);
+
+        // the message without location code gets the codes of the segment next to its coordinates, missing event codes are replaced by 1
+        m = messages.get(2);
+        assertEquals(Arrays.asList(300, 301), m.locationCodes);
+        assertEquals(Arrays.asList(1), m.eventDataCodes);
+    }
+
+    @Test
+    public void TestEmptyDocument() throws Exception {
+        TmcMessageReader reader = new TmcMessageReader(createSegments(), createLocationGraph());
+        reader.read(new ByteArrayInputStream("<TIC FGT=\"2018-01-01T10:00:00\"></TIC>".getBytes("UTF-8")));
+
+        assertTrue(reader.getMessages().isEmpty());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TmcSegmentsFileTest {
+    private static final String GRAPH_DATE = "2018-03-01T10:00:00Z";
+
+    private static List<TmcSegment> createSegments() {
+        GeometryFactory geomFactory = new GeometryFactory();
+        List<TmcSegment> segments = new ArrayList<TmcSegment>();
+        segments.add(new TmcSegment(1, "A5", 100, 101, 1, 1234.5, geomFactory.createLineString(new Coordinate[] {
+                new Coordinate(8.681, 49.412), new Coordinate(8.682, 49.413), new Coordinate(8.684, 49.415) }), Arrays.asList(10, 11, 12)));
+        // a segment without road number, edges and geometry
+        segments.add(new TmcSegment(2, null, 101, 100, -1, 0, null, new ArrayList<Integer>()));
+        segments.add(new TmcSegment(Long.MAX_VALUE, "B37 \u00dcmleitung", 200, 201, 1, 10, geomFactory.createLineString(new Coordinate[] {
+                new Coordinate(-1.5, -2.5), new Coordinate(1.5, 2.5) }), Arrays.asList(Integer.MAX_VALUE)));
+        return segments;
+    }
+
+    private static File createFile() throws IOException {
+        File file = File.createTempFile("tmc_segments", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void TestRoundTrip() throws IOException {
+        File file = createFile();
+        List<TmcSegment> expected = createSegments();
+        TmcSegmentsFile.save(file, GRAPH_DATE, expected);
+
+        List<TmcSegment> actual = TmcSegmentsFile.load(file, GRAPH_DATE);
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            TmcSegment e = expected.get(i);
+            TmcSegment a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getRoadnumber(), a.getRoadnumber());
+            assertEquals(e.getFrom(), a.getFrom());
+            assertEquals(e.getTo(), a.getTo());
+            assertEquals(e.getDirection(), a.getDirection());
+            assertEquals(e.getDistance(), a.getDistance(), 0);
+            assertEquals(e.getEdgeIDs(), a.getEdgeIDs());
+            if (e.getGeometry() == null)
+                assertNull(a.getGeometry());
+            else
+                assertTrue(e.getGeometry().equalsExact(a.getGeometry()));
+        }
+    }
+
+    @Test
+    public void TestEmptyList() throws IOException {
+        File file = createFile();
+        TmcSegmentsFile.save(file, GRAPH_DATE, new ArrayList<TmcSegment>());
+
+        assertEquals(0, TmcSegmentsFile.load(file, GRAPH_DATE).size());
+    }
+
+    @Test
+    public void TestOtherGraphIsIgnored() throws IOException {
+        File file = createFile();
+        TmcSegmentsFile.save(file, GRAPH_DATE, createSegments());
+
+        assertNull(TmcSegmentsFile.load(file, "2018-03-02T10:00:00Z"));
+        assertNull(TmcSegmentsFile.load(file, null));
+    }
+
+    @Test
+    public void TestTruncatedFileIsIgnored() throws IOException {
+        File file = createFile();
+        TmcSegmentsFile.save(file, GRAPH_DATE, createSegments());
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 10);
+        raf.close();
+
+        assertNull(TmcSegmentsFile.load(file, GRAPH_DATE));
+    }
+
+    @Test
+    public void TestInvalidFileIsIgnored() throws IOException {
+        File file = createFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeLong(0x1234L);
+        raf.writeInt(1);
+        raf.close();
+
+        assertNull(TmcSegmentsFile.load(file, GRAPH_DATE));
+    }
+
+    @Test
+    public void TestMissingFile() throws IOException {
+        File file = createFile();
+        file.delete();
+
+        assertNull(TmcSegmentsFile.load(file, GRAPH_DATE));
+    }
+}
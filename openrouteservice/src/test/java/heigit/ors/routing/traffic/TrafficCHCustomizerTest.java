@@ -0,0 +1,222 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrafficCHCustomizerTest {
+    private static final int SIZE = 4;
+    private static final double DELTA = 0.05;
+
+    private final EncodingManager encodingManager = new EncodingManager("car");
+    private final FlagEncoder encoder = encodingManager.getEncoder("car");
+
+    /**
+     * Fastest weighting whose weights can be multiplied by a factor per edge and direction.
+     */
+    private static class FactorWeighting extends FastestWeighting {
+        private final Map<Long, Double> _factors = new HashMap<Long, Double>();
+
+        private FactorWeighting(FlagEncoder encoder) {
+            super(encoder);
+        }
+
+        private void setFactor(int edge, int from, double factor) {
+            _factors.put(((long) edge << 32) | from, factor);
+        }
+
+        private void clear() {
+            _factors.clear();
+        }
+
+        @Override
+        public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+            if (edgeState instanceof CHEdgeIteratorState && ((CHEdgeIteratorState) edgeState).isShortcut())
+                return ((CHEdgeIteratorState) edgeState).getWeight();
+
+            int from = reverse ? edgeState.getAdjNode() : edgeState.getBaseNode();
+            Double factor = _factors.get(((long) edgeState.getOriginalEdge() << 32) | from);
+
+            return super.calcWeight(edgeState, reverse, prevOrNextEdgeId) * (factor == null ? 1.0 : factor);
+        }
+    }
+
+    private final FactorWeighting weighting = new FactorWeighting(encoder);
+    private final List<EdgeIteratorState> edges = new ArrayList<EdgeIteratorState>();
+    private GraphHopperStorage ghStorage;
+    private CHGraph chGraph;
+    private PrepareContractionHierarchies prepareCH;
+
+    /**
+     * Creates a grid of two-way roads, node r * SIZE + c is in row r and column c.
+     */
+    private void createGrid() {
+        ghStorage = new GraphBuilder(encodingManager).setCHGraph(weighting).create();
+        NodeAccess nodeAccess = ghStorage.getNodeAccess();
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++)
+                nodeAccess.setNode(r * SIZE + c, 49.0 + 0.01 * r, 8.0 + 0.01 * c);
+        }
+
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                int node = r * SIZE + c;
+                if (c + 1 < SIZE)
+                    edges.add(ghStorage.edge(node, node + 1, 1000 + 10 * node, true));
+                if (r + 1 < SIZE)
+                    edges.add(ghStorage.edge(node, node + SIZE, 1000 + 20 * node, true));
+            }
+        }
+
+        ghStorage.freeze();
+        chGraph = ghStorage.getGraph(CHGraph.class, weighting);
+        prepareCH = new PrepareContractionHierarchies(new GHDirectory("", DAType.RAM_INT), ghStorage, chGraph, weighting, TraversalMode.NODE_BASED);
+        prepareCH.doWork();
+    }
+
+    private double calcCHWeight(int from, int to) {
+        RoutingAlgorithm algo = prepareCH.createAlgo(chGraph, AlgorithmOptions.start().weighting(weighting)
+                .algorithm("dijkstrabi").traversalMode(TraversalMode.NODE_BASED).build());
+        Path path = algo.calcPath(from, to);
+        return path.isFound() ? path.getWeight() : Double.POSITIVE_INFINITY;
+    }
+
+    private double calcWeight(int from, int to) {
+        Path path = new Dijkstra(ghStorage, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+        return path.isFound() ? path.getWeight() : Double.POSITIVE_INFINITY;
+    }
+
+    private TrafficCHCustomizer customize() {
+        TrafficCHCustomizer customizer = new TrafficCHCustomizer(chGraph, encoder, weighting);
+        customizer.customize();
+        customizer.apply();
+        return customizer;
+    }
+
+    private void assertSameWeights() {
+        int nodes = SIZE * SIZE;
+        for (int from = 0; from < nodes; from++) {
+            for (int to = 0; to < nodes; to++) {
+                if (from == to)
+                    continue;
+
+                double expected = calcWeight(from, to);
+                double actual = calcCHWeight(from, to);
+                if (Double.isInfinite(expected))
+                    assertTrue(from + "->" + to, Double.isInfinite(actual));
+                else
+                    assertEquals(from + "->" + to, expected, actual, DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void TestBlockedDirectionKeepsOppositeDirection() {
+        createGrid();
+
+        // the row 4, 5, 6, 7 is the fastest connection between its end nodes in both directions
+        double forward = calcCHWeight(4, 7);
+        double backward = calcCHWeight(7, 4);
+
+        weighting.setFactor(edges.get(findEdge(5, 6)).getEdge(), 5, Double.POSITIVE_INFINITY);
+        customize();
+
+        assertEquals(backward, calcCHWeight(7, 4), DELTA);
+        assertTrue(calcCHWeight(4, 7) > forward);
+        assertSameWeights();
+    }
+
+    @Test
+    public void TestCustomizedWeightsMatchDijkstra() {
+        createGrid();
+        Random random = new Random(42);
+        double[] factors = new double[] { 0.5, 2, 5, Double.POSITIVE_INFINITY };
+
+        // every round starts from the hierarchy left by the previous customization
+        for (int round = 0; round < 5; round++) {
+            weighting.clear();
+            for (int i = 0; i < 8; i++) {
+                EdgeIteratorState edge = edges.get(random.nextInt(edges.size()));
+                int from = random.nextBoolean() ? edge.getBaseNode() : edge.getAdjNode();
+                weighting.setFactor(edge.getEdge(), from, factors[random.nextInt(factors.length)]);
+            }
+
+            customize();
+            assertSameWeights();
+        }
+    }
+
+    @Test
+    public void TestAddedShortcutsAreCounted() {
+        createGrid();
+        int prepared = TrafficCHCustomizer.countShortcuts(chGraph);
+        assertTrue(prepared > 0);
+
+        weighting.setFactor(edges.get(findEdge(5, 6)).getEdge(), 5, Double.POSITIVE_INFINITY);
+        weighting.setFactor(edges.get(findEdge(9, 10)).getEdge(), 10, 5);
+        TrafficCHCustomizer customizer = customize();
+
+        assertEquals(prepared, customizer.getShortcutsCount());
+        assertEquals(prepared + customizer.getAddedShortcutsCount(), TrafficCHCustomizer.countShortcuts(chGraph));
+
+        // the next customization starts from the grown hierarchy
+        weighting.clear();
+        customizer = customize();
+        assertEquals(TrafficCHCustomizer.countShortcuts(chGraph) - customizer.getAddedShortcutsCount(), customizer.getShortcutsCount());
+        assertTrue(customizer.getShortcutsCount() >= prepared);
+        assertSameWeights();
+    }
+
+    private int findEdge(int a, int b) {
+        for (int i = 0; i < edges.size(); i++) {
+            EdgeIteratorState edge = edges.get(i);
+            if ((edge.getBaseNode() == a && edge.getAdjNode() == b) || (edge.getBaseNode() == b && edge.getAdjNode() == a))
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TrafficMessageCacheTest {
+    private static final Logger LOGGER = Logger.getLogger(TrafficMessageCacheTest.class.getName());
+
+    private final TmcSegmentsCollection segments;
+
+    public TrafficMessageCacheTest() {
+        GeometryFactory geomFactory = new GeometryFactory();
+        List<TmcSegment> list = new ArrayList<TmcSegment>();
+        list.add(new TmcSegment(1, "A5", 10, 11, 1, 1000, geomFactory.createLineString(new Coordinate[] {
+                new Coordinate(8.0, 49.0), new Coordinate(8.0, 49.01) }), Arrays.asList(100, 101)));
+        list.add(new TmcSegment(2, "A6", 20, 21, 1, 1000, geomFactory.createLineString(new Coordinate[] {
+                new Coordinate(9.0, 49.0), new Coordinate(9.0, 49.01) }), Arrays.asList(200)));
+        segments = new TmcSegmentsCollection(list);
+    }
+
+    private static TrafficMessageData createMessage(int from, int to, String text) {
+        TrafficMessageData m = new TrafficMessageData();
+        m.locationCodes.add(from);
+        m.locationCodes.add(to);
+        m.eventDataCodes.add(101);
+        m.messageDataText.add(text);
+        m.uptTime = "2018-01-01T10:00:00";
+        return m;
+    }
+
+    private static Date parseDate(String value) throws Exception {
+        return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse(value);
+    }
+
+    @Test
+    public void TestAddedMessages() throws Exception {
+        TrafficMessageCache cache = new TrafficMessageCache();
+        List<TrafficFeatureInfo> features = cache.update(Arrays.asList(createMessage(10, 11, "jam"), createMessage(20, 21, "accident")),
+                segments, 0, new Date(), LOGGER);
+
+        assertEquals(2, features.size());
+        assertEquals(Arrays.asList(100, 101), features.get(0).getEdgeIds());
+        assertEquals(Arrays.asList(200), features.get(1).getEdgeIds());
+        assertEquals(2, cache.getAddedCount());
+        assertEquals(0, cache.getUnchangedCount());
+        assertEquals(0, cache.getRemovedCount());
+    }
+
+    @Test
+    public void TestUnchangedMessagesAreReused() throws Exception {
+        TrafficMessageCache cache = new TrafficMessageCache();
+        List<TrafficFeatureInfo> features1 = cache.update(Arrays.asList(createMessage(10, 11, "jam"), createMessage(20, 21, "accident")),
+                segments, 0, new Date(), LOGGER);
+        // the first message is received again, the second one is replaced by a changed version
+        List<TrafficFeatureInfo> features2 = cache.update(Arrays.asList(createMessage(10, 11, "jam"), createMessage(20, 21, "roadworks")),
+                segments, 0, new Date(), LOGGER);
+
+        assertEquals(2, features2.size());
+        assertSame(features1.get(0), features2.get(0));
+        assertNotSame(features1.get(1), features2.get(1));
+        assertEquals("roadworks", features2.get(1).getMessages().get(0));
+        assertEquals(1, cache.getAddedCount());
+        assertEquals(1, cache.getUnchangedCount());
+        assertEquals(1, cache.getRemovedCount());
+    }
+
+    @Test
+    public void TestRemovedMessages() throws Exception {
+        TrafficMessageCache cache = new TrafficMessageCache();
+        cache.update(Arrays.asList(createMessage(10, 11, "jam"), createMessage(20, 21, "accident")), segments, 0, new Date(), LOGGER);
+        List<TrafficFeatureInfo> features = cache.update(new ArrayList<TrafficMessageData>(), segments, 0, new Date(), LOGGER);
+
+        assertEquals(0, features.size());
+        assertEquals(0, cache.getAddedCount());
+        assertEquals(2, cache.getRemovedCount());
+    }
+
+    @Test
+    public void TestDuplicateMessages() throws Exception {
+        TrafficMessageCache cache = new TrafficMessageCache();
+        List<TrafficFeatureInfo> features = cache.update(Arrays.asList(createMessage(10, 11, "jam"), createMessage(10, 11, "jam")),
+                segments, 0, new Date(), LOGGER);
+
+        assertEquals(1, features.size());
+        assertEquals(1, cache.getAddedCount());
+    }
+
+    @Test
+    public void TestUnmatchedMessages() throws Exception {
+        TrafficMessageCache cache = new TrafficMessageCache();
+        List<TrafficFeatureInfo> features = cache.update(Arrays.asList(createMessage(30, 31, "jam")), segments, 0, new Date(), LOGGER);
+
+        assertEquals(0, features.size());
+        assertEquals(1, cache.getAddedCount());
+
+        cache.update(Arrays.asList(createMessage(30, 31, "jam")), segments, 0, new Date(), LOGGER);
+        assertEquals(1, cache.getUnchangedCount());
+    }
+
+    @Test
+    public void TestExpiredMessages() throws Exception {
+        TrafficMessageData m = createMessage(10, 11, "jam");
+        m.expTime = "2018-01-01T12:00:00";
+
+        TrafficMessageCache cache = new TrafficMessageCache();
+        List<TrafficFeatureInfo> features = cache.update(Arrays.asList(m), segments, 0, parseDate("2018-01-01T11:00:00"), LOGGER);
+        assertEquals(1, features.size());
+
+        // the message is still known, but its features must not be returned after it has expired
+        features = cache.update(Arrays.asList(m), segments, 0, parseDate("2018-01-01T13:00:00"), LOGGER);
+        assertEquals(0, features.size());
+        assertEquals(1, cache.getUnchangedCount());
+    }
+
+    @Test
+    public void TestClear() throws Exception {
+        TrafficMessageCache cache = new TrafficMessageCache();
+        cache.update(Arrays.asList(createMessage(10, 11, "jam")), segments, 0, new Date(), LOGGER);
+        cache.clear();
+        cache.update(Arrays.asList(createMessage(10, 11, "jam")), segments, 0, new Date(), LOGGER);
+
+        assertEquals(1, cache.getAddedCount());
+        assertEquals(0, cache.getUnchangedCount());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import heigit.ors.routing.RoutingProfileManager;
+import heigit.ors.routing.RoutingProfileType;
+import heigit.ors.routing.RoutingRequest;
+
+/**
+ * Measures how long traffic updates take to be applied and how much considering traffic slows down routing queries.
+ * It is not run with the unit tests, start it with a configuration for the Heidelberg test graph, e.g.
+ * <pre>
+ * java -Dors.app_config=openrouteservice-api-tests/conf/app.config.test heigit.ors.routing.traffic.TrafficReplayBenchmark [updates] [queries]
+ * </pre>
+ * in which traffic is enabled for the car profile (traffic: true) and the messages are replayed step by step from a
+ * directory of recorded TMC messages (traffic.source: "type=file;path=PATH/TO/RECORDINGS;replay_speed=0"), with
+ * update_interval: 0 so that only the benchmark triggers updates.
+ */
+public class TrafficReplayBenchmark {
+	// extent of the Heidelberg test graph
+	private static final double MIN_LON = 8.573, MAX_LON = 8.794, MIN_LAT = 49.352, MAX_LAT = 49.459;
+	private static final int WARMUP_QUERIES = 200;
+
+	public static void main(String[] args) throws Exception {
+		int updates = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		RoutingProfileManager manager = RoutingProfileManager.getInstance();
+		RealTrafficDataProvider provider = RealTrafficDataProvider.getInstance();
+		if (!provider.isInitialized())
+			throw new IllegalStateException("Traffic is not enabled in the configuration.");
+
+		try {
+			long[] updateTimes = new long[updates];
+			for (int i = 0; i < updates; i++) {
+				provider.runUpdateEdges();
+				updateTimes[i] = provider.getLastUpdateDuration();
+				if (updateTimes[i] < 0)
+					throw new IllegalStateException("Traffic update " + i + " failed, see the log for details.");
+			}
+			print("update [ms]", updateTimes);
+
+			Random random = new Random(42);
+			runQueries(manager, random, WARMUP_QUERIES);
+
+			long[][] times = runQueries(manager, random, queries);
+			print("route without traffic [us]", times[0]);
+			print("route with traffic [us]", times[1]);
+		} finally {
+			manager.destroy();
+		}
+	}
+
+	/**
+	 * Calculates the same random routes without and with traffic and returns the times in microseconds.
+	 */
+	private static long[][] runQueries(RoutingProfileManager manager, Random random, int count) {
+		long[] plain = new long[count];
+		long[] traffic = new long[count];
+		int n = 0;
+
+		for (int i = 0; i < count; i++) {
+			Coordinate[] coords = new Coordinate[] { randomCoordinate(random), randomCoordinate(random) };
+
+			try {
+				// alternate the order so that caches favour neither of both
+				boolean trafficFirst = (i & 1) == 1;
+				long first = route(manager, coords, trafficFirst);
+				long second = route(manager, coords, !trafficFirst);
+				plain[n] = trafficFirst ? second : first;
+				traffic[n] = trafficFirst ? first : second;
+				n++;
+			} catch (Exception ex) {
+				// no route between the random points
+			}
+		}
+
+		return new long[][] { Arrays.copyOf(plain, n), Arrays.copyOf(traffic, n) };
+	}
+
+	private static long route(RoutingProfileManager manager, Coordinate[] coords, boolean considerTraffic) throws Exception {
+		RoutingRequest req = new RoutingRequest();
+		req.setCoordinates(coords);
+		req.setIncludeGeometry(true);
+		req.setIncludeInstructions(false);
+		req.getSearchParameters().setProfileType(RoutingProfileType.DRIVING_CAR);
+		req.getSearchParameters().setConsiderTraffic(considerTraffic);
+
+		long start = System.nanoTime();
+		manager.computeRoute(req);
+		return (System.nanoTime() - start) / 1000;
+	}
+
+	private static Coordinate randomCoordinate(Random random) {
+		return new Coordinate(MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON), MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT));
+	}
+
+	private static void print(String name, long[] values) {
+		if (values.length == 0) {
+			System.out.println(name + ": no samples");
+			return;
+		}
+
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		long sum = 0;
+		for (long v : sorted)
+			sum += v;
+
+		System.out.println(String.format("%s: n=%d, mean=%d, p50=%d, p90=%d, p99=%d, max=%d", name, sorted.length, sum / sorted.length,
+				sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.9)], sorted[(int) (sorted.length * 0.99)], sorted[sorted.length - 1]));
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TrafficSnapshotTest {
+    private static TrafficFeatureInfo createFeature(List<String> messages, Integer... edgeIds) {
+        return new TrafficFeatureInfo(Arrays.asList(101), messages, Arrays.asList(edgeIds));
+    }
+
+    @Test
+    public void TestMessagesOfEdges() {
+        TrafficFeatureInfo jam = createFeature(Arrays.asList("A5", "jam"), 1, 2, 3);
+        TrafficFeatureInfo accident = createFeature(Arrays.asList("accident"), 7);
+
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        for (int edgeId : jam.getEdgeIds())
+            builder.addEdge(edgeId, jam, new short[] { 101, 1603 });
+        builder.addEdge(7, accident, new short[] { 201 });
+        TrafficSnapshot snapshot = builder.build();
+
+        assertEquals("101,1603 | A5 jam", snapshot.getEdgeMessage(1));
+        assertEquals("201 | accident", snapshot.getEdgeMessage(7));
+        assertEquals(4, snapshot.getEdgesCount());
+
+        assertNull(snapshot.getEdgeMessage(0));
+        assertNull(snapshot.getEdgeMessage(4));
+        assertNull(snapshot.getEdgeMessage(-1));
+    }
+
+    @Test
+    public void TestMessageIsBuiltOncePerFeature() {
+        TrafficFeatureInfo jam = createFeature(Arrays.asList("jam"), 1, 2, 3);
+        TrafficFeatureInfo otherJam = createFeature(Arrays.asList("jam"), 4);
+
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        builder.addEdge(1, jam, new short[] { 101 });
+        builder.addEdge(2, jam, new short[] { 101 });
+        builder.addEdge(3, jam, new short[] { 101 });
+        builder.addEdge(4, otherJam, new short[] { 101 });
+        TrafficSnapshot snapshot = builder.build();
+
+        // edges of the same feature reference the same message
+        assertSame(snapshot.getEdgeMessage(1), snapshot.getEdgeMessage(2));
+        assertSame(snapshot.getEdgeMessage(1), snapshot.getEdgeMessage(3));
+        // features are told apart by identity, not by their text
+        assertEquals(snapshot.getEdgeMessage(1), snapshot.getEdgeMessage(4));
+    }
+
+    @Test
+    public void TestLastFeatureOfEdgeWins() {
+        TrafficFeatureInfo jam = createFeature(Arrays.asList("jam"), 1, 2);
+        TrafficFeatureInfo roadworks = createFeature(Arrays.asList("roadworks"), 2);
+
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        builder.addEdge(1, jam, new short[] { 101 });
+        builder.addEdge(2, jam, new short[] { 101 });
+        builder.addEdge(2, roadworks, new short[] { 701 });
+        TrafficSnapshot snapshot = builder.build();
+
+        assertEquals("101 | jam", snapshot.getEdgeMessage(1));
+        assertEquals("701 | roadworks", snapshot.getEdgeMessage(2));
+        assertEquals(2, snapshot.getEdgesCount());
+    }
+
+    @Test
+    public void TestEdgeAnnotator() {
+        TrafficFeatureInfo jam = createFeature(Arrays.asList("jam"), 5);
+
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        builder.addEdge(5, jam, new short[] { 101 });
+        TrafficSnapshot snapshot = builder.build();
+
+        TrafficEdgeAnnotator annotator = snapshot.getEdgeAnnotator();
+        assertSame(annotator, snapshot.getEdgeAnnotator());
+        assertSame(snapshot.getEdgeMessage(5), annotator.getAnnotation(5));
+        assertNull(annotator.getAnnotation(6));
+    }
+
+    @Test
+    public void TestPenaltiesWithAndWithoutHeavyVehicleEvents() {
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        // queuing traffic and a delay of one hour for heavy lorries
+        builder.addAvoidEdge(3, new short[] { 2, 1612 });
+        // traffic congestion with an average speed of 30 km/h
+        builder.addAvoidEdge(8, new short[] { 72 });
+        TrafficSnapshot snapshot = builder.build();
+
+        int carPenalty = snapshot.getPenaltyIndex(3, false);
+        int hgvPenalty = snapshot.getPenaltyIndex(3, true);
+        assertEquals(carPenalty + 1, hgvPenalty);
+        assertTrue(snapshot.getDelay(carPenalty) < 0);
+        assertEquals(0.2, snapshot.getSpeedFactor(carPenalty), 1e-6);
+        assertEquals(Double.MAX_VALUE, snapshot.getSpeed(carPenalty), 0);
+        assertEquals(60, snapshot.getDelay(hgvPenalty), 0);
+        assertEquals(60 * 60 + 1000 * 3.6 / 50, snapshot.calcTravelTime(hgvPenalty, 1000, 50), 1e-9);
+        assertEquals(1000 * 3.6 / ((double) 0.2f * 50), snapshot.calcTravelTime(carPenalty, 1000, 50), 1e-9);
+
+        int speedPenalty = snapshot.getPenaltyIndex(8, false);
+        assertEquals(30, snapshot.getSpeed(speedPenalty), 0);
+        assertEquals(1000 * 3.6 / 30, snapshot.calcTravelTime(speedPenalty, 1000, 50), 1e-9);
+        assertEquals(speedPenalty + 1, snapshot.getPenaltyIndex(8, true));
+
+        assertEquals(-1, snapshot.getPenaltyIndex(4, false));
+        assertEquals(-1, snapshot.getPenaltyIndex(4, true));
+    }
+
+    @Test
+    public void TestFirstCodesOfAvoidEdgeWin() {
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        builder.addAvoidEdge(1, new short[] { 12 });
+        builder.addAvoidEdge(1, new short[] { 2 });
+        builder.addAvoidEdge(2, new short[] { 1 });
+        TrafficSnapshot snapshot = builder.build();
+
+        assertEquals(0.5, snapshot.getSpeedFactor(snapshot.getPenaltyIndex(1, false)), 1e-6);
+        assertEquals(0.5, snapshot.getSpeedFactor(snapshot.getPenaltyIndex(1, true)), 1e-6);
+        assertEquals(0.9, snapshot.getSpeedFactor(snapshot.getPenaltyIndex(2, false)), 1e-6);
+    }
+
+    @Test
+    public void TestBlockedEdges() {
+        TrafficSnapshot.Builder builder = new TrafficSnapshot.Builder(new Date());
+        builder.addBlockedEdge(2);
+        builder.addHeavyVehicleBlockedEdge(5);
+        TrafficSnapshot snapshot = builder.build();
+
+        assertTrue(snapshot.hasBlockedEdges());
+        assertTrue(snapshot.isBlocked(2));
+        assertFalse(snapshot.isBlockedForHeavyVehicles(2));
+        assertFalse(snapshot.isBlocked(5));
+        assertTrue(snapshot.isBlockedForHeavyVehicles(5));
+        assertFalse(snapshot.isBlocked(3));
+        assertFalse(snapshot.isBlocked(-1));
+        assertFalse(snapshot.isBlockedForHeavyVehicles(-1));
+        assertFalse(TrafficSnapshot.EMPTY.hasBlockedEdges());
+    }
+
+    @Test
+    public void TestEmptySnapshot() {
+        assertEquals(0, TrafficSnapshot.EMPTY.getEdgesCount());
+        assertNull(TrafficSnapshot.EMPTY.getEdgeMessage(0));
+        assertNull(TrafficSnapshot.EMPTY.getEdgeAnnotator().getAnnotation(0));
+        assertEquals(-1, TrafficSnapshot.EMPTY.getPenaltyIndex(0, true));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TrafficTileCacheTest {
+    private static final double EPS = 1e-9;
+    // latitude limit of the web mercator projection
+    private static final double MAX_LAT = 85.0511287798066;
+
+    private static String decompress(byte[] tile) throws IOException {
+        GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(tile));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = input.read(buffer)) > 0)
+            output.write(buffer, 0, n);
+        input.close();
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void TestIsValidTile() {
+        assertTrue(TrafficTileCache.isValidTile(0, 0, 0));
+        assertTrue(TrafficTileCache.isValidTile(1, 1, 1));
+        assertTrue(TrafficTileCache.isValidTile(TrafficTileCache.MAX_ZOOM, (1 << TrafficTileCache.MAX_ZOOM) - 1, (1 << TrafficTileCache.MAX_ZOOM) - 1));
+
+        assertFalse(TrafficTileCache.isValidTile(-1, 0, 0));
+        assertFalse(TrafficTileCache.isValidTile(TrafficTileCache.MAX_ZOOM + 1, 0, 0));
+        assertFalse(TrafficTileCache.isValidTile(0, 1, 0));
+        assertFalse(TrafficTileCache.isValidTile(0, 0, 1));
+        assertFalse(TrafficTileCache.isValidTile(3, 8, 0));
+        assertFalse(TrafficTileCache.isValidTile(3, 0, -1));
+    }
+
+    @Test
+    public void TestTileEnvelope() {
+        Envelope world = TrafficTileCache.getTileEnvelope(0, 0, 0);
+        assertEquals(-180, world.getMinX(), EPS);
+        assertEquals(180, world.getMaxX(), EPS);
+        assertEquals(-MAX_LAT, world.getMinY(), 1e-6);
+        assertEquals(MAX_LAT, world.getMaxY(), 1e-6);
+
+        // the north-east quarter of the world
+        Envelope ne = TrafficTileCache.getTileEnvelope(1, 1, 0);
+        assertEquals(0, ne.getMinX(), EPS);
+        assertEquals(180, ne.getMaxX(), EPS);
+        assertEquals(0, ne.getMinY(), EPS);
+        assertEquals(MAX_LAT, ne.getMaxY(), 1e-6);
+
+        // the tile containing Heidelberg
+        Envelope hd = TrafficTileCache.getTileEnvelope(14, 8587, 5598);
+        assertTrue(hd.contains(8.68, 49.41));
+        assertEquals(360.0 / (1 << 14), hd.getWidth(), EPS);
+    }
+
+    @Test
+    public void TestNeighbouringTilesShareEdges() {
+        Envelope tile = TrafficTileCache.getTileEnvelope(10, 300, 400);
+        Envelope east = TrafficTileCache.getTileEnvelope(10, 301, 400);
+        Envelope south = TrafficTileCache.getTileEnvelope(10, 300, 401);
+
+        assertEquals(tile.getMaxX(), east.getMinX(), EPS);
+        assertEquals(tile.getMinY(), east.getMinY(), EPS);
+        assertEquals(tile.getMinY(), south.getMaxY(), EPS);
+        assertEquals(tile.getMinX(), south.getMinX(), EPS);
+    }
+
+    @Test
+    public void TestKeysAreUnique() {
+        int max = (1 << TrafficTileCache.MAX_ZOOM) - 1;
+        Set<Long> keys = new HashSet<Long>();
+        int[][] tiles = new int[][] { { 0, 0, 0 }, { 1, 0, 0 }, { 1, 1, 0 }, { 1, 0, 1 }, { 1, 1, 1 },
+                { TrafficTileCache.MAX_ZOOM, 0, 0 }, { TrafficTileCache.MAX_ZOOM, max, 0 }, { TrafficTileCache.MAX_ZOOM, 0, max },
+                { TrafficTileCache.MAX_ZOOM, max, max }, { TrafficTileCache.MAX_ZOOM - 1, max >> 1, max >> 1 } };
+
+        for (int[] t : tiles) {
+            long key = TrafficTileCache.getKey(t[0], t[1], t[2]);
+            assertTrue(key >= 0);
+            assertTrue(keys.add(key));
+        }
+
+        // every field can be recovered from the key
+        long key = TrafficTileCache.getKey(TrafficTileCache.MAX_ZOOM, max, max - 1);
+        assertEquals(TrafficTileCache.MAX_ZOOM, key >>> 58);
+        assertEquals(max, (key >>> 29) & ((1 << 29) - 1));
+        assertEquals(max - 1, key & ((1 << 29) - 1));
+    }
+
+    @Test
+    public void TestPutAndGet() throws IOException {
+        TrafficTileCache cache = new TrafficTileCache();
+        String json = "{\"type\":\"FeatureCollection\",\"features\":[]}";
+
+        assertNull(cache.get(5, 1, 2));
+        byte[] tile = cache.put(5, 1, 2, json);
+        assertEquals(json, decompress(tile));
+        assertSame(tile, cache.get(5, 1, 2));
+        assertNull(cache.get(5, 2, 1));
+        assertEquals(1, cache.size());
+
+        // a concurrently serialized tile does not replace the first one
+        assertSame(tile, cache.put(5, 1, 2, json));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void TestMissingJsonIsNotCached() throws IOException {
+        TrafficTileCache cache = new TrafficTileCache();
+
+        assertNull(cache.put(5, 1, 2, null));
+        assertNull(cache.get(5, 1, 2));
+        assertEquals(0, cache.size());
+    }
+}
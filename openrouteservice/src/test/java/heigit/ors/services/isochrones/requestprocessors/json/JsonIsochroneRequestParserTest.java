@@ -0,0 +1,78 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.services.isochrones.requestprocessors.json;
+
+import heigit.ors.exceptions.ParameterValueException;
+import heigit.ors.isochrones.IsochroneRequest;
+import heigit.ors.isochrones.IsochroneSearchParameters;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonIsochroneRequestParserTest {
+    private static final String TRAVELLERS = "\"travellers\":[{\"profile\":\"driving-car\",\"location\":[8.68,49.41],\"range\":[300]},"
+            + "{\"profile\":\"driving-car\",\"location\":[8.69,49.42],\"range\":[300]}]";
+
+    private static IsochroneRequest parse(String json) throws Exception {
+        return JsonIsochroneRequestParser.parseFromStream(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void TestLabelOrigins() throws Exception {
+        IsochroneRequest req = parse("{" + TRAVELLERS + ",\"union\":true,\"label_origins\":true}");
+
+        assertTrue(req.getUnion());
+        assertTrue(req.getLabelOrigins());
+
+        IsochroneSearchParameters params = req.getSearchParameters(0);
+        assertTrue(params.isMultiSource());
+        assertEquals(2, params.getLocations().length);
+        assertTrue(params.getLabelOrigins());
+    }
+
+    @Test
+    public void TestLabelOriginsDefault() throws Exception {
+        IsochroneRequest req = parse("{" + TRAVELLERS + ",\"union\":true}");
+
+        assertFalse(req.getLabelOrigins());
+        assertFalse(req.getSearchParameters(0).getLabelOrigins());
+    }
+
+    @Test
+    public void TestLabelOriginsWithoutUnion() throws Exception {
+        IsochroneRequest req = parse("{" + TRAVELLERS + ",\"label_origins\":true}");
+
+        IsochroneSearchParameters params = req.getSearchParameters(0);
+        assertFalse(params.isMultiSource());
+        assertNull(params.getLocations());
+        assertFalse(params.getLabelOrigins());
+    }
+
+    @Test(expected = ParameterValueException.class)
+    public void TestInvalidLabelOrigins() throws Exception {
+        parse("{" + TRAVELLERS + ",\"union\":true,\"label_origins\":\"yes\"}");
+    }
+}